@@ -0,0 +1,117 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.common.message.MetadataResponseData;
+import org.apache.kafka.common.message.ProduceRequestData;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.protocol.ApiMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import io.kroxylicious.proxy.filter.KrpcFilterContext;
+import io.kroxylicious.proxy.filter.MetadataResponseFilter;
+import io.kroxylicious.proxy.filter.ProduceRequestFilter;
+import io.kroxylicious.proxy.frame.DecodedRequestFrame;
+import io.kroxylicious.proxy.frame.DecodedResponseFrame;
+import io.kroxylicious.proxy.internal.codec.FrameFixtures;
+
+/**
+ * Measures the cost of dispatching a decoded request, and a decoded response,
+ * through a chain of {@link FilterHandler}s whose filters just forward them,
+ * i.e. the overhead the proxy adds per filter, excluding the work the filters themselves do.
+ * The frames are swallowed at the ends of the pipeline, rather than queued by the channel,
+ * so that running with {@code -prof gc} shows the allocation of the dispatch alone, which should be none.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterHandlerBenchmark {
+
+    @Param({ "1", "5", "16" })
+    public int filters;
+
+    private EmbeddedChannel channel;
+    private ChannelPipeline pipeline;
+    private DecodedRequestFrame<ApiMessage> request;
+    private DecodedResponseFrame<ApiMessage> response;
+
+    private static class ForwardingFilter implements ProduceRequestFilter, MetadataResponseFilter {
+
+        @Override
+        public void onProduceRequest(ProduceRequestData request, KrpcFilterContext context) {
+            context.forwardRequest(request);
+        }
+
+        @Override
+        public void onMetadataResponse(MetadataResponseData response, KrpcFilterContext context) {
+            context.forwardResponse(response);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        var handlers = new ChannelHandler[filters + 2];
+        handlers[0] = new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+                // The request has reached the broker
+            }
+        };
+        for (int i = 1; i <= filters; i++) {
+            handlers[i] = new FilterHandler(new ForwardingFilter(), 20000);
+        }
+        handlers[filters + 1] = new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                // The response has reached the client
+            }
+        };
+        channel = new EmbeddedChannel(handlers);
+        pipeline = channel.pipeline();
+        request = FrameFixtures.requestFrame(ApiKeys.PRODUCE);
+        response = FrameFixtures.responseFrame(ApiKeys.METADATA);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public void produceRequest() {
+        pipeline.write(request, channel.voidPromise());
+    }
+
+    @Benchmark
+    public void metadataResponse() {
+        pipeline.fireChannelRead(response);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.codec;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of correlating a request with its response on a connection
+ * with a given number of requests in flight: each operation puts a new request
+ * and removes the correlation for the oldest one, as a pipelining client would cause.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CorrelationManagerBenchmark {
+
+    @Param({ "1", "5", "64", "1024" })
+    public int inFlight;
+
+    private CorrelationManager correlationManager;
+    private int oldestUpstreamId;
+    private int downstreamId;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        correlationManager = new CorrelationManager();
+        oldestUpstreamId = put();
+        for (int i = 1; i < inFlight; i++) {
+            put();
+        }
+    }
+
+    private int put() {
+        return correlationManager.putBrokerRequest(ApiKeys.FETCH.id, ApiKeys.FETCH.latestVersion(), downstreamId++, true, null, null, false);
+    }
+
+    @Benchmark
+    public int putAndGet() {
+        put();
+        return correlationManager.getBrokerCorrelation(oldestUpstreamId++).downstreamCorrelationId();
+    }
+}
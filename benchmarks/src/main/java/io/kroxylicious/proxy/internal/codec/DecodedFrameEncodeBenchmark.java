@@ -0,0 +1,94 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.codec;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.common.message.RequestHeaderData;
+import org.apache.kafka.common.message.ResponseHeaderData;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.protocol.ApiMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import io.kroxylicious.proxy.frame.DecodedFrame;
+import io.kroxylicious.proxy.frame.DecodedRequestFrame;
+import io.kroxylicious.proxy.frame.DecodedResponseFrame;
+
+/**
+ * Measures the cost of sizing and encoding a decoded frame, as the proxy does
+ * when a filter has decoded it: the Produce request and the Metadata and Fetch responses
+ * of the {@link FrameFixtures}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodedFrameEncodeBenchmark {
+
+    @Param({ "PRODUCE", "METADATA", "FETCH" })
+    public String api;
+
+    private final ByteBufAllocator alloc = PooledByteBufAllocator.DEFAULT;
+    private ApiKeys apiKey;
+    private RequestHeaderData requestHeader;
+    private ResponseHeaderData responseHeader;
+    private ApiMessage body;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        apiKey = ApiKeys.valueOf(api);
+        if (apiKey == ApiKeys.PRODUCE) {
+            DecodedRequestFrame<ApiMessage> frame = FrameFixtures.requestFrame(apiKey);
+            requestHeader = frame.header();
+            body = frame.body();
+        }
+        else {
+            DecodedResponseFrame<ApiMessage> frame = FrameFixtures.responseFrame(apiKey);
+            responseHeader = frame.header();
+            body = frame.body();
+        }
+    }
+
+    /**
+     * @return A new frame, so that its encoded size isn't already cached.
+     */
+    private DecodedFrame<?, ?> frame() {
+        if (requestHeader != null) {
+            return new DecodedRequestFrame<>(apiKey.latestVersion(), FrameFixtures.CORRELATION_ID, true, requestHeader, body);
+        }
+        return new DecodedResponseFrame<>(apiKey.latestVersion(), FrameFixtures.CORRELATION_ID, responseHeader, body);
+    }
+
+    @Benchmark
+    public int encode() {
+        var frame = frame();
+        ByteBuf out = alloc.directBuffer(frame.estimateEncodedSize());
+        try {
+            frame.encode(new ByteBufAccessorImpl(out));
+            return out.writerIndex();
+        }
+        finally {
+            out.release();
+        }
+    }
+}
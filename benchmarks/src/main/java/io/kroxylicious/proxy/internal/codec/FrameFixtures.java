@@ -0,0 +1,236 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.codec;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.kafka.common.Uuid;
+import org.apache.kafka.common.message.FetchRequestData;
+import org.apache.kafka.common.message.FetchResponseData;
+import org.apache.kafka.common.message.MetadataRequestData;
+import org.apache.kafka.common.message.MetadataResponseData;
+import org.apache.kafka.common.message.ProduceRequestData;
+import org.apache.kafka.common.message.RequestHeaderData;
+import org.apache.kafka.common.message.ResponseHeaderData;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.protocol.ApiMessage;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.MemoryRecordsBuilder;
+import org.apache.kafka.common.record.TimestampType;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
+
+import io.kroxylicious.proxy.frame.DecodedRequestFrame;
+import io.kroxylicious.proxy.frame.DecodedResponseFrame;
+import io.kroxylicious.proxy.frame.Frame;
+import io.kroxylicious.proxy.frame.OpaqueFrame;
+
+/**
+ * Frames, as they'd be sent over the wire (i.e. with their length prefix) by a Java client (for requests)
+ * or a broker (for responses), shaped like those of a modest production workload:
+ * <ul>
+ *     <li>A Produce request with a batch of 16 × 1 KB records for each of 4 partitions.</li>
+ *     <li>A Metadata request for 10 topics, and its response from a 3 broker cluster,
+ *     where each topic has 12 partitions with 3 replicas.</li>
+ *     <li>A Fetch request for 16 partitions, and its response carrying 16 × 1 KB records for each.</li>
+ * </ul>
+ * All frames use the latest version of their API.
+ * Each call returns a new heap buffer, which the caller owns.
+ */
+public final class FrameFixtures {
+
+    public static final int CORRELATION_ID = 42;
+
+    private static final int BROKERS = 3;
+    private static final int TOPICS = 10;
+    private static final int PARTITIONS_PER_TOPIC = 12;
+    private static final int PRODUCE_PARTITIONS = 4;
+    private static final int FETCH_PARTITIONS = 16;
+    private static final int RECORDS_PER_BATCH = 16;
+    private static final int VALUE_SIZE = 1024;
+
+    private FrameFixtures() {
+    }
+
+    /**
+     * @param apiKey The API.
+     * @return An encoded request frame for the given API.
+     */
+    public static ByteBuf request(ApiKeys apiKey) {
+        return encode(requestFrame(apiKey));
+    }
+
+    /**
+     * @param apiKey The API.
+     * @return An encoded response frame for the given API.
+     */
+    public static ByteBuf response(ApiKeys apiKey) {
+        return encode(responseFrame(apiKey));
+    }
+
+    /**
+     * @param apiKey The API.
+     * @return A decoded request frame for the given API.
+     */
+    public static DecodedRequestFrame<ApiMessage> requestFrame(ApiKeys apiKey) {
+        return requestFrame(requestBody(apiKey));
+    }
+
+    /**
+     * @param body The request body.
+     * @param <B> The type of the request body.
+     * @return A decoded request frame with the given body.
+     */
+    public static <B extends ApiMessage> DecodedRequestFrame<B> requestFrame(B body) {
+        ApiKeys apiKey = ApiKeys.forId(body.apiKey());
+        var header = new RequestHeaderData()
+                .setRequestApiKey(apiKey.id)
+                .setRequestApiVersion(apiKey.latestVersion())
+                .setCorrelationId(CORRELATION_ID)
+                .setClientId("producer-1");
+        return new DecodedRequestFrame<>(apiKey.latestVersion(), CORRELATION_ID, true, header, body);
+    }
+
+    /**
+     * @param apiKey The API.
+     * @return A decoded response frame for the given API.
+     */
+    public static DecodedResponseFrame<ApiMessage> responseFrame(ApiKeys apiKey) {
+        var header = new ResponseHeaderData().setCorrelationId(CORRELATION_ID);
+        return new DecodedResponseFrame<>(apiKey.latestVersion(), CORRELATION_ID, header, responseBody(apiKey));
+    }
+
+    /**
+     * Releases a frame, or a buffer, emitted by a decoder.
+     * @param msg The message.
+     */
+    public static void release(Object msg) {
+        if (msg instanceof OpaqueFrame) {
+            ((OpaqueFrame) msg).release();
+        }
+        else {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    private static ByteBuf encode(Frame frame) {
+        ByteBuf buf = Unpooled.buffer(frame.estimateEncodedSize());
+        frame.encode(new ByteBufAccessorImpl(buf));
+        return buf;
+    }
+
+    private static String topicName(int topic) {
+        return "topic-" + topic;
+    }
+
+    /**
+     * @return A batch of uncompressed records, as a Java producer would send them.
+     */
+    public static MemoryRecords records() {
+        byte[] value = new byte[VALUE_SIZE];
+        MemoryRecordsBuilder builder = MemoryRecords.builder(ByteBuffer.allocate(RECORDS_PER_BATCH * (VALUE_SIZE + 64)),
+                CompressionType.NONE, TimestampType.CREATE_TIME, 0);
+        for (int i = 0; i < RECORDS_PER_BATCH; i++) {
+            value[0] = (byte) i;
+            builder.append(i, ("key-" + i).getBytes(), value);
+        }
+        return builder.build();
+    }
+
+    private static ApiMessage requestBody(ApiKeys apiKey) {
+        switch (apiKey) {
+            case PRODUCE:
+                return produceRequest();
+            case METADATA:
+                var metadata = new MetadataRequestData();
+                for (int t = 0; t < TOPICS; t++) {
+                    metadata.topics().add(new MetadataRequestData.MetadataRequestTopic().setName(topicName(t)));
+                }
+                return metadata;
+            case FETCH:
+                var fetch = new FetchRequestData()
+                        .setReplicaId(-1)
+                        .setMaxWaitMs(500)
+                        .setMinBytes(1)
+                        .setMaxBytes(50 * 1024 * 1024);
+                var fetchTopic = new FetchRequestData.FetchTopic().setTopic(topicName(0)).setTopicId(Uuid.ZERO_UUID);
+                for (int p = 0; p < FETCH_PARTITIONS; p++) {
+                    fetchTopic.partitions().add(new FetchRequestData.FetchPartition()
+                            .setPartition(p)
+                            .setFetchOffset(1000L * p)
+                            .setPartitionMaxBytes(1024 * 1024));
+                }
+                fetch.topics().add(fetchTopic);
+                return fetch;
+            default:
+                throw new IllegalArgumentException("No fixture for " + apiKey);
+        }
+    }
+
+    /**
+     * @return A Produce request with a batch of records for each of a few partitions of a single topic.
+     * The records are shared with the returned request, but not with those of previous calls.
+     */
+    public static ProduceRequestData produceRequest() {
+        List<ProduceRequestData.PartitionProduceData> partitions = new ArrayList<>();
+        for (int p = 0; p < PRODUCE_PARTITIONS; p++) {
+            partitions.add(new ProduceRequestData.PartitionProduceData().setIndex(p).setRecords(records()));
+        }
+        var topics = new ProduceRequestData.TopicProduceDataCollection();
+        topics.add(new ProduceRequestData.TopicProduceData().setName(topicName(0)).setPartitionData(partitions));
+        return new ProduceRequestData()
+                .setAcks((short) -1)
+                .setTimeoutMs(30000)
+                .setTopicData(topics);
+    }
+
+    private static ApiMessage responseBody(ApiKeys apiKey) {
+        switch (apiKey) {
+            case METADATA:
+                var metadata = new MetadataResponseData().setClusterId("cluster").setControllerId(0);
+                for (int b = 0; b < BROKERS; b++) {
+                    metadata.brokers().add(new MetadataResponseData.MetadataResponseBroker()
+                            .setNodeId(b)
+                            .setHost("broker-" + b + ".kafka.svc.cluster.local")
+                            .setPort(9092)
+                            .setRack("rack-" + b));
+                }
+                for (int t = 0; t < TOPICS; t++) {
+                    var topic = new MetadataResponseData.MetadataResponseTopic()
+                            .setName(topicName(t))
+                            .setTopicId(new Uuid(t, t));
+                    for (int p = 0; p < PARTITIONS_PER_TOPIC; p++) {
+                        List<Integer> replicas = List.of(p % BROKERS, (p + 1) % BROKERS, (p + 2) % BROKERS);
+                        topic.partitions().add(new MetadataResponseData.MetadataResponsePartition()
+                                .setPartitionIndex(p)
+                                .setLeaderId(p % BROKERS)
+                                .setReplicaNodes(replicas)
+                                .setIsrNodes(replicas));
+                    }
+                    metadata.topics().add(topic);
+                }
+                return metadata;
+            case FETCH:
+                var fetchTopic = new FetchResponseData.FetchableTopicResponse().setTopic(topicName(0)).setTopicId(Uuid.ZERO_UUID);
+                for (int p = 0; p < FETCH_PARTITIONS; p++) {
+                    fetchTopic.partitions().add(new FetchResponseData.PartitionData()
+                            .setPartitionIndex(p)
+                            .setHighWatermark(1000L * p + RECORDS_PER_BATCH)
+                            .setRecords(records()));
+                }
+                var fetch = new FetchResponseData();
+                fetch.responses().add(fetchTopic);
+                return fetch;
+            default:
+                throw new IllegalArgumentException("No fixture for " + apiKey);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.codec;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.common.message.ProduceRequestData;
+import org.apache.kafka.common.message.RequestHeaderData;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.MemoryRecordsBuilder;
+import org.apache.kafka.common.record.TimestampType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import io.kroxylicious.proxy.frame.DecodedRequestFrame;
+import io.kroxylicious.proxy.internal.util.NettyMemoryRecords;
+
+/**
+ * Measures the cost of encoding a Produce request carrying a single record set,
+ * as the proxy does when a filter has decoded it.
+ * The records are either heap-backed (as produced by Kafka's own builders)
+ * or held in a pooled direct {@link ByteBuf} (as produced via {@link NettyMemoryRecords}),
+ * and encoded either to a contiguous buffer or to a composite buffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordsEncodeBenchmark {
+
+    @Param({ "16384", "131072", "1048576" })
+    public int recordSetBytes;
+
+    @Param({ "heap", "netty" })
+    public String recordsSource;
+
+    private final ByteBufAllocator alloc = PooledByteBufAllocator.DEFAULT;
+    private ByteBuf recordsBuf;
+    private RequestHeaderData header;
+    private ProduceRequestData body;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final MemoryRecords records;
+        byte[] value = new byte[1024];
+        int numRecords = Math.max(1, recordSetBytes / (value.length + 64));
+        if ("netty".equals(recordsSource)) {
+            recordsBuf = alloc.directBuffer(recordSetBytes);
+            MemoryRecordsBuilder builder = NettyMemoryRecords.builder(recordsBuf, CompressionType.NONE, TimestampType.CREATE_TIME, 0);
+            for (int i = 0; i < numRecords; i++) {
+                builder.append(i, null, value);
+            }
+            records = builder.build();
+        }
+        else {
+            MemoryRecordsBuilder builder = MemoryRecords.builder(ByteBuffer.allocate(recordSetBytes), CompressionType.NONE, TimestampType.CREATE_TIME, 0);
+            for (int i = 0; i < numRecords; i++) {
+                builder.append(i, null, value);
+            }
+            records = builder.build();
+        }
+        header = new RequestHeaderData()
+                .setRequestApiKey(ApiKeys.PRODUCE.id)
+                .setRequestApiVersion(ApiKeys.PRODUCE.latestVersion())
+                .setCorrelationId(1)
+                .setClientId("benchmark");
+        var partitions = new ProduceRequestData.PartitionProduceData()
+                .setIndex(0)
+                .setRecords(records);
+        var topics = new ProduceRequestData.TopicProduceDataCollection();
+        topics.add(new ProduceRequestData.TopicProduceData()
+                .setName("topic")
+                .setPartitionData(List.of(partitions)));
+        body = new ProduceRequestData()
+                .setAcks((short) -1)
+                .setTimeoutMs(30000)
+                .setTopicData(topics);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (recordsBuf != null) {
+            recordsBuf.release();
+        }
+    }
+
+    private DecodedRequestFrame<ProduceRequestData> frame() {
+        return new DecodedRequestFrame<>(ApiKeys.PRODUCE.latestVersion(), 1, false, header, body);
+    }
+
+    @Benchmark
+    public int encodeContiguous() {
+        var frame = frame();
+        ByteBuf out = alloc.directBuffer(frame.estimateEncodedSize());
+        try {
+            frame.encode(new ByteBufAccessorImpl(out));
+            return out.writerIndex();
+        }
+        finally {
+            out.release();
+        }
+    }
+
+    @Benchmark
+    public int encodeComposite() {
+        var frame = frame();
+        frame.estimateEncodedSize();
+        ByteBuf out = alloc.compositeDirectBuffer(Integer.MAX_VALUE);
+        try {
+            frame.encode(new ByteBufAccessorImpl(out));
+            return out.writerIndex();
+        }
+        finally {
+            out.release();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.codec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+/**
+ * Measures the cost of decoding a response from a broker, either to an opaque frame
+ * (when no filter is interested in it) or fully.
+ * Each operation includes correlating the response with its request.
+ * The responses are the {@link FrameFixtures}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseDecoderBenchmark {
+
+    @Param({ "METADATA", "FETCH" })
+    public String api;
+
+    @Param({ "false", "true" })
+    public boolean decode;
+
+    private final List<Object> out = new ArrayList<>(1);
+    private ApiKeys apiKey;
+    private ByteBuf frame;
+    private CorrelationManager correlationManager;
+    private KafkaResponseDecoder decoder;
+    private EmbeddedChannel channel;
+    private ChannelHandlerContext ctx;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        apiKey = ApiKeys.valueOf(api);
+        frame = FrameFixtures.response(apiKey);
+        correlationManager = new CorrelationManager();
+        decoder = new KafkaResponseDecoder(correlationManager);
+        channel = new EmbeddedChannel(decoder);
+        ctx = channel.pipeline().context(decoder);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+        frame.release();
+    }
+
+    @Benchmark
+    public Object decode() {
+        int upstreamCorrelationId = correlationManager.putBrokerRequest(apiKey.id, apiKey.latestVersion(),
+                FrameFixtures.CORRELATION_ID, true, null, null, decode);
+        frame.setInt(Integer.BYTES, upstreamCorrelationId);
+        frame.readerIndex(0);
+        decoder.decode(ctx, frame, out);
+        Object msg = out.get(0);
+        out.clear();
+        FrameFixtures.release(msg);
+        return msg;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.common.message.ProduceRequestData;
+import org.apache.kafka.common.message.ProduceRequestData.PartitionProduceData;
+import org.apache.kafka.common.message.ProduceRequestData.TopicProduceData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import io.kroxylicious.proxy.frame.DecodedRequestFrame;
+import io.kroxylicious.proxy.internal.FilterHandler;
+import io.kroxylicious.proxy.internal.codec.FrameFixtures;
+
+/**
+ * Measures the cost of rewriting the records of the {@link FrameFixtures} Produce request
+ * with the {@link ProduceRequestTransformationFilter}, including dispatching the request to the filter
+ * and releasing the rewritten records.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProduceRequestTransformationFilterBenchmark {
+
+    private EmbeddedChannel channel;
+    private ProduceRequestData request;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        var filter = new ProduceRequestTransformationFilter(
+                new ProduceRequestTransformationFilter.ProduceRequestTransformationFilterConfig(ProduceRequestTransformationFilter.UpperCasing.class.getName()));
+        channel = new EmbeddedChannel(new FilterHandler(filter, 20000));
+        request = FrameFixtures.produceRequest();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    /**
+     * @return A copy of the request, sharing its records, since the filter replaces them.
+     */
+    private ProduceRequestData copyOfRequest() {
+        var topics = new ProduceRequestData.TopicProduceDataCollection();
+        for (TopicProduceData topic : request.topicData()) {
+            List<PartitionProduceData> partitions = new ArrayList<>(topic.partitionData().size());
+            for (PartitionProduceData partition : topic.partitionData()) {
+                partitions.add(new PartitionProduceData().setIndex(partition.index()).setRecords(partition.records()));
+            }
+            topics.add(new TopicProduceData().setName(topic.name()).setPartitionData(partitions));
+        }
+        return new ProduceRequestData()
+                .setAcks(request.acks())
+                .setTimeoutMs(request.timeoutMs())
+                .setTopicData(topics);
+    }
+
+    @Benchmark
+    public int transform() {
+        DecodedRequestFrame<ProduceRequestData> frame = FrameFixtures.requestFrame(copyOfRequest());
+        channel.writeOutbound(frame);
+        DecodedRequestFrame<ProduceRequestData> transformed = channel.readOutbound();
+        try {
+            return transformed.body().topicData().iterator().next().partitionData().get(0).records().sizeInBytes();
+        }
+        finally {
+            transformed.release();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.future;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.netty.util.concurrent.ImmediateEventExecutor;
+
+import io.kroxylicious.proxy.future.Future;
+
+/**
+ * Measures building a chain of {@code map} or {@code compose} operations on a promise, as a filter would on the
+ * future returned by {@code sendRequest}, and then completing the promise,
+ * for both a promise confined to an event loop and an unconfined one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromiseBenchmark {
+
+    @Param({ "true", "false" })
+    public boolean confined;
+
+    private PromiseImpl<Integer> promise() {
+        return confined ? new PromiseImpl<>(ImmediateEventExecutor.INSTANCE) : new PromiseImpl<>();
+    }
+
+    @Benchmark
+    public void mapChain(Blackhole blackhole) {
+        var promise = promise();
+        promise.map(i -> i + 1)
+                .map(i -> i * 2)
+                .map(i -> i - 1)
+                .onSuccess(blackhole::consume);
+        promise.complete(1);
+    }
+
+    @Benchmark
+    public void composeChain(Blackhole blackhole) {
+        var promise = promise();
+        var inner = promise();
+        promise.compose(i -> inner.map(j -> i + j))
+                .compose(Future::succeededFuture)
+                .onSuccess(blackhole::consume);
+        promise.complete(1);
+        inner.complete(2);
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.loadtest;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.apache.kafka.common.Uuid;
+import org.apache.kafka.common.message.ApiVersionsRequestData;
+import org.apache.kafka.common.message.FetchRequestData;
+import org.apache.kafka.common.message.MetadataRequestData;
+import org.apache.kafka.common.message.ProduceRequestData;
+import org.apache.kafka.common.message.RequestHeaderData;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.protocol.ApiMessage;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.MemoryRecordsBuilder;
+import org.apache.kafka.common.record.TimestampType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+
+import io.kroxylicious.proxy.frame.DecodedRequestFrame;
+import io.kroxylicious.proxy.internal.codec.ByteBufAccessorImpl;
+
+/**
+ * Drives a fixed number of connections to a Kafka broker (or to a proxy in front of one), each keeping
+ * a fixed number of Produce or Fetch requests in flight, and measures the throughput and latency of their responses.
+ * Each connection sends the same, pre-encoded, request over and over (to a single partition), so that the generator
+ * itself does as little work per request as possible.
+ */
+public final class LoadGenerator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadGenerator.class);
+
+    /** Frame length, API key, API version, correlation id */
+    private static final int REQUEST_PREFIX_LENGTH = Integer.BYTES + Short.BYTES + Short.BYTES + Integer.BYTES;
+    /** Latencies above this are recorded as this */
+    private static final long MAX_LATENCY_NANOS = TimeUnit.SECONDS.toNanos(60);
+    /** The last version of Fetch which identifies topics by name, rather than by id */
+    private static final short FETCH_VERSION = 12;
+
+    public enum Workload {
+        PRODUCE,
+        FETCH
+    }
+
+    private final String host;
+    private final int port;
+    private final Workload workload;
+    private final int connections;
+    private final int inFlight;
+    private final String topic;
+    private final int partitions;
+    private final MemoryRecords records;
+    private final List<ConnectionHandler> handlers = new ArrayList<>();
+    private volatile boolean recording;
+    private volatile boolean stopped;
+
+    /**
+     * @param host The host of the broker, or proxy.
+     * @param port The port of the broker, or proxy.
+     * @param workload The requests to send.
+     * @param connections The number of connections.
+     * @param inFlight The number of requests in flight on each connection.
+     * @param topic The topic to produce to, or fetch from.
+     * @param partitions The number of partitions of the topic, over which the connections are spread.
+     * @param recordSize The size, in bytes, of the value of each produced record.
+     * @param recordsPerBatch The number of records in each produced batch.
+     */
+    public LoadGenerator(String host, int port, Workload workload, int connections, int inFlight,
+                         String topic, int partitions, int recordSize, int recordsPerBatch) {
+        this.host = host;
+        this.port = port;
+        this.workload = workload;
+        this.connections = connections;
+        this.inFlight = inFlight;
+        this.topic = topic;
+        this.partitions = partitions;
+        this.records = records(recordSize, recordsPerBatch);
+    }
+
+    private static MemoryRecords records(int recordSize, int recordsPerBatch) {
+        byte[] value = new byte[recordSize];
+        MemoryRecordsBuilder builder = MemoryRecords.builder(ByteBuffer.allocate(recordsPerBatch * (recordSize + 64)),
+                CompressionType.NONE, TimestampType.CREATE_TIME, 0);
+        for (int i = 0; i < recordsPerBatch; i++) {
+            builder.append(i, null, value);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param partition The partition.
+     * @return The request to send to the given partition, encoded with a correlation id of 0.
+     */
+    private ByteBuf request(int partition) {
+        ApiMessage body;
+        short apiVersion;
+        if (workload == Workload.PRODUCE) {
+            var topics = new ProduceRequestData.TopicProduceDataCollection();
+            topics.add(new ProduceRequestData.TopicProduceData()
+                    .setName(topic)
+                    .setPartitionData(List.of(new ProduceRequestData.PartitionProduceData()
+                            .setIndex(partition)
+                            .setRecords(records))));
+            body = new ProduceRequestData()
+                    .setAcks((short) -1)
+                    .setTimeoutMs(30000)
+                    .setTopicData(topics);
+            apiVersion = ApiKeys.PRODUCE.latestVersion();
+        }
+        else {
+            var fetch = new FetchRequestData()
+                    .setReplicaId(-1)
+                    .setMaxWaitMs(500)
+                    .setMinBytes(1)
+                    .setMaxBytes(50 * 1024 * 1024);
+            fetch.topics().add(new FetchRequestData.FetchTopic()
+                    .setTopic(topic)
+                    .setTopicId(Uuid.ZERO_UUID)
+                    .setPartitions(List.of(new FetchRequestData.FetchPartition()
+                            .setPartition(partition)
+                            .setPartitionMaxBytes(1024 * 1024))));
+            body = fetch;
+            apiVersion = FETCH_VERSION;
+        }
+        return encode(body, apiVersion);
+    }
+
+    /**
+     * @return The ApiVersions and Metadata requests which each connection sends, one at a time, before sending any load,
+     * as a Kafka client does.
+     */
+    private ByteBuf[] handshakeRequests() {
+        var apiVersions = new ApiVersionsRequestData()
+                .setClientSoftwareName("load-generator")
+                .setClientSoftwareVersion("1.0");
+        var metadata = new MetadataRequestData();
+        metadata.topics().add(new MetadataRequestData.MetadataRequestTopic().setName(topic));
+        return new ByteBuf[]{
+                encode(apiVersions, ApiKeys.API_VERSIONS.latestVersion()),
+                encode(metadata, ApiKeys.METADATA.latestVersion())
+        };
+    }
+
+    private static ByteBuf encode(ApiMessage body, short apiVersion) {
+        ApiKeys apiKey = ApiKeys.forId(body.apiKey());
+        var header = new RequestHeaderData()
+                .setRequestApiKey(apiKey.id)
+                .setRequestApiVersion(apiVersion)
+                .setCorrelationId(0)
+                .setClientId("load-generator");
+        var frame = new DecodedRequestFrame<>(apiVersion, 0, false, header, body);
+        ByteBuf buf = Unpooled.directBuffer(frame.estimateEncodedSize());
+        frame.encode(new ByteBufAccessorImpl(buf));
+        return buf;
+    }
+
+    /**
+     * Runs the load.
+     * @param warmupSeconds How long to run before measuring.
+     * @param durationSeconds How long to measure for.
+     * @param threads The number of event loop threads.
+     * @return The results.
+     */
+    public Result run(int warmupSeconds, int durationSeconds, int threads) throws InterruptedException {
+        EventLoopGroup group = Transports.newEventLoopGroup(threads);
+        try {
+            var bootstrap = new Bootstrap().group(group)
+                    .channel(Transports.channelClass())
+                    .option(ChannelOption.TCP_NODELAY, true);
+            for (int i = 0; i < connections; i++) {
+                var handler = new ConnectionHandler(request(i % partitions));
+                handlers.add(handler);
+                bootstrap.clone()
+                        .handler(new ChannelInitializer<Channel>() {
+                            @Override
+                            protected void initChannel(Channel ch) {
+                                ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(Integer.MAX_VALUE, 0, Integer.BYTES, 0, Integer.BYTES),
+                                        handler);
+                            }
+                        })
+                        .connect(host, port).sync();
+            }
+            LOGGER.info("Warming up {} connections to {}:{} for {}s", connections, host, port, warmupSeconds);
+            Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds));
+            recording = true;
+            long startNanos = System.nanoTime();
+            LOGGER.info("Measuring for {}s", durationSeconds);
+            Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+            recording = false;
+            long elapsedNanos = System.nanoTime() - startNanos;
+            stopped = true;
+            // Shutting down makes the handlers' state visible to this thread
+            group.shutdownGracefully(0, 5, TimeUnit.SECONDS).sync();
+            return result(elapsedNanos);
+        }
+        finally {
+            group.shutdownGracefully();
+        }
+    }
+
+    private Result result(long elapsedNanos) {
+        var latencies = new Histogram(MAX_LATENCY_NANOS, 3);
+        long bytes = 0;
+        for (ConnectionHandler handler : handlers) {
+            latencies.add(handler.latencies);
+            bytes += handler.bytes;
+        }
+        return new Result(latencies, bytes, elapsedNanos);
+    }
+
+    /**
+     * Sends the requests of a single connection, and records the latency of their responses.
+     */
+    private class ConnectionHandler extends SimpleChannelInboundHandler<ByteBuf> {
+
+        private final ByteBuf request;
+        private final int requestLength;
+        /** Indexed by correlation id modulo the number of requests in flight, since responses arrive in order */
+        private final long[] sentNanos = new long[inFlight];
+        private final Histogram latencies = new Histogram(MAX_LATENCY_NANOS, 3);
+        private final ByteBuf[] handshakeRequests = handshakeRequests();
+        private int handshakeResponses;
+        private int nextCorrelationId;
+        private long bytes;
+
+        ConnectionHandler(ByteBuf request) {
+            this.request = request;
+            this.requestLength = request.readableBytes();
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            ctx.writeAndFlush(handshakeRequests[0], ctx.voidPromise());
+        }
+
+        private void send(ChannelHandlerContext ctx) {
+            int correlationId = nextCorrelationId++;
+            sentNanos[Integer.remainderUnsigned(correlationId, inFlight)] = System.nanoTime();
+            ByteBuf prefix = ctx.alloc().buffer(REQUEST_PREFIX_LENGTH)
+                    .writeBytes(request, 0, REQUEST_PREFIX_LENGTH - Integer.BYTES)
+                    .writeInt(correlationId);
+            ctx.write(prefix, ctx.voidPromise());
+            ctx.write(request.retainedSlice(REQUEST_PREFIX_LENGTH, requestLength - REQUEST_PREFIX_LENGTH), ctx.voidPromise());
+            if (recording && workload == Workload.PRODUCE) {
+                bytes += requestLength;
+            }
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf response) {
+            if (handshakeResponses < handshakeRequests.length) {
+                if (++handshakeResponses < handshakeRequests.length) {
+                    ctx.writeAndFlush(handshakeRequests[handshakeResponses], ctx.voidPromise());
+                }
+                else {
+                    for (int i = 0; i < inFlight; i++) {
+                        send(ctx);
+                    }
+                }
+                return;
+            }
+            int correlationId = response.getInt(response.readerIndex());
+            long latency = System.nanoTime() - sentNanos[Integer.remainderUnsigned(correlationId, inFlight)];
+            if (recording) {
+                latencies.recordValue(Math.min(latency, MAX_LATENCY_NANOS));
+                if (workload == Workload.FETCH) {
+                    bytes += Integer.BYTES + response.readableBytes();
+                }
+            }
+            if (!stopped) {
+                send(ctx);
+            }
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) {
+            ctx.flush();
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            request.release();
+            if (!stopped) {
+                LOGGER.warn("{}: Connection closed before the end of the run", ctx.channel());
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            LOGGER.warn("{}: Closing connection: {}", ctx.channel(), cause.getMessage(), cause);
+            ctx.close();
+        }
+    }
+
+    /**
+     * The throughput and latency measured by a run.
+     */
+    public static final class Result {
+        private final Histogram latencies;
+        private final long bytes;
+        private final long elapsedNanos;
+
+        Result(Histogram latencies, long bytes, long elapsedNanos) {
+            this.latencies = latencies;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return The number of responses received per second.
+         */
+        public double requestsPerSecond() {
+            return latencies.getTotalCount() * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * @return The number of bytes of Produce requests sent, or Fetch responses received, per second.
+         */
+        public double bytesPerSecond() {
+            return bytes * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * @param percentile The percentile, e.g. 99.9.
+         * @return The latency at the given percentile, in microseconds.
+         */
+        public double latencyMicros(double percentile) {
+            return latencies.getValueAtPercentile(percentile) / 1e3;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,.0f requests/sec (%,.2f MB/sec), latency (us): p50 %,.0f, p99 %,.0f, p99.9 %,.0f, max %,.0f",
+                    requestsPerSecond(),
+                    bytesPerSecond() / (1024 * 1024),
+                    latencyMicros(50),
+                    latencyMicros(99),
+                    latencyMicros(99.9),
+                    latencies.getMaxValue() / 1e3);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.loadtest;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import io.kroxylicious.proxy.KafkaProxy;
+import io.kroxylicious.proxy.config.ConfigParser;
+
+/**
+ * Measures the throughput and latency of the proxy, in isolation from the cost of a real Kafka broker,
+ * by running a {@link LoadGenerator} against a {@link StubBroker}, first directly and then through a proxy,
+ * all in this JVM.
+ *
+ * <p>Options are given as {@code --name=value}:</p>
+ * <ul>
+ *     <li>{@code workload}: {@code produce} (the default) or {@code fetch}.</li>
+ *     <li>{@code connections}: the number of client connections (default 16).</li>
+ *     <li>{@code in-flight}: the number of requests in flight on each connection (default 8).</li>
+ *     <li>{@code record-size}: the size of each produced record value, in bytes (default 1024).</li>
+ *     <li>{@code records-per-batch}: the number of records in each produced batch (default 16).</li>
+ *     <li>{@code fetch-bytes}: the size of the records in each fetched partition, in bytes (default 65536).</li>
+ *     <li>{@code partitions}: the number of partitions the load is spread over (default 16).</li>
+ *     <li>{@code warmup}: the number of seconds to run before measuring (default 10).</li>
+ *     <li>{@code duration}: the number of seconds to measure for (default 30).</li>
+ *     <li>{@code target}: {@code both} (the default), {@code direct} or {@code proxy}.</li>
+ *     <li>{@code proxy-port}: the port the proxy listens on (default 9192).</li>
+ *     <li>{@code filters}: a comma-separated list of the types of filters the proxy applies,
+ *     limited to those which need no configuration (default none).</li>
+ *     <li>{@code multiplexed-upstream-connections}, {@code prewarmed-upstream-connections} and {@code max-accept-rate}:
+ *     as in the proxy's configuration (default 0 each).</li>
+ *     <li>{@code passthrough} and {@code coalesce-produce-requests}: as in the proxy's configuration (default false each).</li>
+ *     <li>{@code produce-coalescing-window-micros}: as in the proxy's configuration (default 0).</li>
+ *     <li>{@code flush-max-writes} and {@code flush-max-bytes}: as in the cluster's configuration (default 0 each).</li>
+ *     <li>{@code broker-threads} and {@code client-threads}: the number of event loop threads used by the stub broker
+ *     and the load generator (default 2 each).</li>
+ * </ul>
+ */
+public final class LoadTest {
+
+    private static final String HOST = "localhost";
+    private static final String TOPIC = "load-test";
+
+    private final Map<String, String> options;
+
+    private LoadTest(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                throw new IllegalArgumentException("Expected an option of the form --name=value, but got " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        new LoadTest(options).run();
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private int intOption(String name, int defaultValue) {
+        return Integer.parseInt(option(name, Integer.toString(defaultValue)));
+    }
+
+    private void run() throws InterruptedException {
+        String target = option("target", "both");
+        int partitions = intOption("partitions", 16);
+        try (var broker = new StubBroker(partitions, intOption("fetch-bytes", 65536))) {
+            broker.start(HOST, 0, intOption("broker-threads", 2));
+            LoadGenerator.Result direct = null;
+            LoadGenerator.Result proxied = null;
+            if (!"proxy".equals(target)) {
+                direct = load(broker.port());
+            }
+            if (!"direct".equals(target)) {
+                KafkaProxy proxy = startProxy(broker);
+                try {
+                    proxied = load(proxy.proxyPort());
+                }
+                finally {
+                    proxy.shutdown();
+                }
+            }
+            if (direct != null) {
+                System.out.println("Direct: " + direct);
+            }
+            if (proxied != null) {
+                System.out.println("Proxy:  " + proxied);
+            }
+        }
+    }
+
+    private KafkaProxy startProxy(StubBroker broker) throws InterruptedException {
+        StringBuilder filters = new StringBuilder();
+        for (String type : option("filters", "").split(",")) {
+            if (!type.isBlank()) {
+                filters.append("  - type: ").append(type.trim()).append('\n');
+            }
+        }
+        String config = "proxy:\n"
+                + "  address: " + HOST + ":" + intOption("proxy-port", 9192) + "\n"
+                + "  multiplexedUpstreamConnections: " + intOption("multiplexed-upstream-connections", 0) + "\n"
+                + "  prewarmedUpstreamConnections: " + intOption("prewarmed-upstream-connections", 0) + "\n"
+                + "  maxAcceptRate: " + intOption("max-accept-rate", 0) + "\n"
+                + "  passthrough: " + Boolean.parseBoolean(option("passthrough", "false")) + "\n"
+                + "  coalesceProduceRequests: " + Boolean.parseBoolean(option("coalesce-produce-requests", "false")) + "\n"
+                + "  produceCoalescingWindowMicros: " + intOption("produce-coalescing-window-micros", 0) + "\n"
+                + "clusters:\n"
+                + "  demo:\n"
+                + "    bootstrap_servers: " + broker.address() + "\n"
+                + "    flush_max_writes: " + intOption("flush-max-writes", 0) + "\n"
+                + "    flush_max_bytes: " + intOption("flush-max-bytes", 0) + "\n"
+                + (filters.length() == 0 ? "filters: []\n" : "filters:\n" + filters);
+        return new KafkaProxy(new ConfigParser().parseConfiguration(config)).startup();
+    }
+
+    private LoadGenerator.Result load(int port) throws InterruptedException {
+        var generator = new LoadGenerator(HOST, port,
+                LoadGenerator.Workload.valueOf(option("workload", "produce").toUpperCase(Locale.ROOT)),
+                intOption("connections", 16),
+                intOption("in-flight", 8),
+                TOPIC,
+                intOption("partitions", 16),
+                intOption("record-size", 1024),
+                intOption("records-per-batch", 16));
+        return generator.run(intOption("warmup", 10), intOption("duration", 30), intOption("client-threads", 2));
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.loadtest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.kafka.common.Uuid;
+import org.apache.kafka.common.message.ApiVersionsResponseData;
+import org.apache.kafka.common.message.FetchRequestData;
+import org.apache.kafka.common.message.FetchResponseData;
+import org.apache.kafka.common.message.MetadataRequestData;
+import org.apache.kafka.common.message.MetadataResponseData;
+import org.apache.kafka.common.message.ProduceRequestData;
+import org.apache.kafka.common.message.ProduceResponseData;
+import org.apache.kafka.common.message.ResponseHeaderData;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.protocol.ApiMessage;
+import org.apache.kafka.common.protocol.Errors;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.MemoryRecordsBuilder;
+import org.apache.kafka.common.record.MutableRecordBatch;
+import org.apache.kafka.common.record.TimestampType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+
+import io.kroxylicious.proxy.frame.DecodedRequestFrame;
+import io.kroxylicious.proxy.frame.DecodedResponseFrame;
+import io.kroxylicious.proxy.internal.codec.DecodePredicate;
+import io.kroxylicious.proxy.internal.codec.KafkaRequestDecoder;
+import io.kroxylicious.proxy.internal.codec.KafkaResponseEncoder;
+
+/**
+ * A single Kafka broker which keeps nothing but the next offset of each partition, so that it can answer
+ * as fast as its clients can ask.
+ * It supports just enough of the protocol to be produced to, and fetched from:
+ * <ul>
+ *     <li>ApiVersions: advertises only the APIs below.</li>
+ *     <li>Metadata: every topic exists, with the configured number of partitions, all led by this broker.</li>
+ *     <li>Produce: records are counted, to advance the partition's offset, and discarded.</li>
+ *     <li>Fetch: every partition returns the same canned batch of records, whatever the fetch offset.</li>
+ * </ul>
+ * Connections which send any other request are closed.
+ */
+public final class StubBroker implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StubBroker.class);
+
+    private static final int NODE_ID = 0;
+    private static final List<ApiKeys> SUPPORTED_APIS = List.of(ApiKeys.API_VERSIONS, ApiKeys.METADATA, ApiKeys.PRODUCE, ApiKeys.FETCH);
+
+    private static final DecodePredicate DECODE_REQUESTS = new DecodePredicate() {
+        @Override
+        public boolean shouldDecodeRequest(ApiKeys apiKey, short apiVersion) {
+            return true;
+        }
+
+        @Override
+        public boolean shouldDecodeResponse(ApiKeys apiKey, short apiVersion) {
+            return false;
+        }
+    };
+
+    private final int partitions;
+    private final MemoryRecords fetchRecords;
+    /** The next offset of each partition, by topic name */
+    private final Map<String, AtomicLongArray> offsets = new ConcurrentHashMap<>();
+    private final Map<Uuid, String> topicNames = new ConcurrentHashMap<>();
+    private EventLoopGroup group;
+    private Channel serverChannel;
+    private String advertisedHost;
+    private int port;
+
+    /**
+     * @param partitions The number of partitions of every topic.
+     * @param fetchBytes The approximate size, in bytes, of the batch of records fetched from each partition.
+     */
+    public StubBroker(int partitions, int fetchBytes) {
+        this.partitions = partitions;
+        this.fetchRecords = fetchRecords(fetchBytes);
+    }
+
+    private static MemoryRecords fetchRecords(int fetchBytes) {
+        if (fetchBytes <= 0) {
+            return MemoryRecords.EMPTY;
+        }
+        byte[] value = new byte[Math.min(fetchBytes, 1024)];
+        MemoryRecordsBuilder builder = MemoryRecords.builder(ByteBuffer.allocate(fetchBytes + 1024), CompressionType.NONE, TimestampType.CREATE_TIME, 0);
+        for (int written = 0; written < fetchBytes; written += value.length) {
+            builder.append(0, null, value);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Starts this broker.
+     * @param host The host to bind to, and advertise in Metadata responses.
+     * @param port The port to bind to, or 0 for an ephemeral port.
+     * @param threads The number of event loop threads.
+     * @return This broker.
+     */
+    public StubBroker start(String host, int port, int threads) throws InterruptedException {
+        if (serverChannel != null) {
+            throw new IllegalStateException("This broker is already running");
+        }
+        group = Transports.newEventLoopGroup(threads);
+        serverChannel = new ServerBootstrap().group(group)
+                .channel(Transports.serverChannelClass())
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new ChannelInitializer<>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline().addLast(new KafkaRequestDecoder(DECODE_REQUESTS),
+                                new KafkaResponseEncoder(),
+                                new RequestHandler());
+                    }
+                })
+                .bind(host, port).sync().channel();
+        this.advertisedHost = host;
+        this.port = ((InetSocketAddress) serverChannel.localAddress()).getPort();
+        LOGGER.info("Stub broker listening on {}:{}", advertisedHost, this.port);
+        return this;
+    }
+
+    /**
+     * @return The port this broker is listening on.
+     */
+    public int port() {
+        return port;
+    }
+
+    /**
+     * @return The address of this broker, as a bootstrap server.
+     */
+    public String address() {
+        return advertisedHost + ":" + port;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        if (group != null) {
+            group.shutdownGracefully().sync();
+            group = null;
+            serverChannel = null;
+        }
+    }
+
+    private static Uuid topicId(String topicName) {
+        // Never the zero UUID, which means "no topic id"
+        return new Uuid(1L, topicName.hashCode());
+    }
+
+    private AtomicLongArray offsets(String topicName) {
+        return offsets.computeIfAbsent(topicName, name -> new AtomicLongArray(partitions));
+    }
+
+    private class RequestHandler extends SimpleChannelInboundHandler<DecodedRequestFrame<?>> {
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, DecodedRequestFrame<?> frame) {
+            ApiMessage response;
+            switch (frame.apiKey()) {
+                case API_VERSIONS:
+                    response = apiVersions();
+                    break;
+                case METADATA:
+                    response = metadata((MetadataRequestData) frame.body());
+                    break;
+                case PRODUCE:
+                    var produce = (ProduceRequestData) frame.body();
+                    response = produce(produce);
+                    if (produce.acks() == 0) {
+                        return;
+                    }
+                    break;
+                case FETCH:
+                    response = fetch((FetchRequestData) frame.body(), frame.apiVersion());
+                    break;
+                default:
+                    LOGGER.warn("{}: Closing connection which sent unsupported {} request", ctx.channel(), frame.apiKey());
+                    ctx.close();
+                    return;
+            }
+            var header = new ResponseHeaderData().setCorrelationId(frame.correlationId());
+            ctx.write(new DecodedResponseFrame<>(frame.apiVersion(), frame.correlationId(), header, response));
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) {
+            ctx.flush();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            if (cause instanceof IOException) {
+                // e.g. the load generator closing its connections at the end of a run
+                LOGGER.debug("{}: Closing connection: {}", ctx.channel(), cause.getMessage());
+            }
+            else {
+                LOGGER.warn("{}: Closing connection: {}", ctx.channel(), cause.getMessage(), cause);
+            }
+            ctx.close();
+        }
+    }
+
+    private ApiMessage apiVersions() {
+        var response = new ApiVersionsResponseData();
+        for (ApiKeys apiKey : SUPPORTED_APIS) {
+            response.apiKeys().add(new ApiVersionsResponseData.ApiVersion()
+                    .setApiKey(apiKey.id)
+                    .setMinVersion(apiKey.oldestVersion())
+                    .setMaxVersion(apiKey.latestVersion()));
+        }
+        return response;
+    }
+
+    private ApiMessage metadata(MetadataRequestData request) {
+        var response = new MetadataResponseData()
+                .setClusterId("stub")
+                .setControllerId(NODE_ID);
+        response.brokers().add(new MetadataResponseData.MetadataResponseBroker()
+                .setNodeId(NODE_ID)
+                .setHost(advertisedHost)
+                .setPort(port));
+        List<String> names = new ArrayList<>();
+        if (request.topics() == null) {
+            names.addAll(offsets.keySet());
+        }
+        else {
+            for (MetadataRequestData.MetadataRequestTopic topic : request.topics()) {
+                names.add(topic.name() != null ? topic.name() : topicNames.get(topic.topicId()));
+            }
+        }
+        List<Integer> replicas = List.of(NODE_ID);
+        for (String name : names) {
+            var topic = new MetadataResponseData.MetadataResponseTopic();
+            if (name == null) {
+                topic.setErrorCode(Errors.UNKNOWN_TOPIC_ID.code());
+                response.topics().add(topic);
+                continue;
+            }
+            Uuid topicId = topicId(name);
+            topicNames.put(topicId, name);
+            offsets(name);
+            topic.setName(name).setTopicId(topicId);
+            for (int p = 0; p < partitions; p++) {
+                topic.partitions().add(new MetadataResponseData.MetadataResponsePartition()
+                        .setPartitionIndex(p)
+                        .setLeaderId(NODE_ID)
+                        .setReplicaNodes(replicas)
+                        .setIsrNodes(replicas));
+            }
+            response.topics().add(topic);
+        }
+        return response;
+    }
+
+    private ApiMessage produce(ProduceRequestData request) {
+        var response = new ProduceResponseData();
+        for (ProduceRequestData.TopicProduceData topic : request.topicData()) {
+            var topicResponse = new ProduceResponseData.TopicProduceResponse().setName(topic.name());
+            AtomicLongArray topicOffsets = offsets(topic.name());
+            for (ProduceRequestData.PartitionProduceData partition : topic.partitionData()) {
+                var partitionResponse = new ProduceResponseData.PartitionProduceResponse().setIndex(partition.index());
+                if (partition.index() >= partitions) {
+                    partitionResponse.setErrorCode(Errors.UNKNOWN_TOPIC_OR_PARTITION.code());
+                }
+                else {
+                    long records = 0;
+                    for (MutableRecordBatch batch : ((MemoryRecords) partition.records()).batches()) {
+                        records += batch.lastOffset() - batch.baseOffset() + 1;
+                    }
+                    partitionResponse.setBaseOffset(topicOffsets.getAndAdd(partition.index(), records));
+                }
+                topicResponse.partitionResponses().add(partitionResponse);
+            }
+            response.responses().add(topicResponse);
+        }
+        return response;
+    }
+
+    private ApiMessage fetch(FetchRequestData request, short apiVersion) {
+        var response = new FetchResponseData();
+        for (FetchRequestData.FetchTopic topic : request.topics()) {
+            // Topics are identified by name before v13, and by id since
+            String name = apiVersion < 13 ? topic.topic() : topicNames.get(topic.topicId());
+            var topicResponse = new FetchResponseData.FetchableTopicResponse()
+                    .setTopic(topic.topic())
+                    .setTopicId(topic.topicId());
+            AtomicLongArray topicOffsets = name == null ? null : offsets(name);
+            for (FetchRequestData.FetchPartition partition : topic.partitions()) {
+                var partitionResponse = new FetchResponseData.PartitionData().setPartitionIndex(partition.partition());
+                if (topicOffsets == null) {
+                    partitionResponse.setErrorCode(Errors.UNKNOWN_TOPIC_ID.code());
+                }
+                else if (partition.partition() >= partitions) {
+                    partitionResponse.setErrorCode(Errors.UNKNOWN_TOPIC_OR_PARTITION.code());
+                }
+                else {
+                    partitionResponse.setHighWatermark(topicOffsets.get(partition.partition()))
+                            .setRecords(fetchRecords);
+                }
+                topicResponse.partitions().add(partitionResponse);
+            }
+            response.responses().add(topicResponse);
+        }
+        return response;
+    }
+}
@@ -6,17 +6,16 @@
 package io.kroxylicious.proxy;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.security.KeyStore;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
-import java.security.UnrecoverableKeyException;
-import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-
-import javax.net.ssl.KeyManagerFactory;
+import java.util.Set;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,30 +23,52 @@ import org.slf4j.LoggerFactory;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.ServerChannel;
 import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
 import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
 import io.netty.channel.kqueue.KQueue;
 import io.netty.channel.kqueue.KQueueEventLoopGroup;
 import io.netty.channel.kqueue.KQueueServerSocketChannel;
+import io.netty.channel.kqueue.KQueueSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.ssl.SslContext;
-import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.incubator.channel.uring.IOUring;
 import io.netty.incubator.channel.uring.IOUringEventLoopGroup;
 import io.netty.incubator.channel.uring.IOUringServerSocketChannel;
+import io.netty.incubator.channel.uring.IOUringSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
 
 import io.kroxylicious.proxy.bootstrap.FilterChainFactory;
+import io.kroxylicious.proxy.config.Cluster;
 import io.kroxylicious.proxy.config.Configuration;
 import io.kroxylicious.proxy.config.admin.AdminHttpConfiguration;
+import io.kroxylicious.proxy.filter.NetFilter;
+import io.kroxylicious.proxy.internal.AcceptRateLimiter;
+import io.kroxylicious.proxy.internal.ApiVersionsCache;
+import io.kroxylicious.proxy.internal.DefaultTopicMetadataCache;
+import io.kroxylicious.proxy.internal.FlushConsolidator;
 import io.kroxylicious.proxy.internal.KafkaProxyInitializer;
 import io.kroxylicious.proxy.internal.MeterRegistries;
+import io.kroxylicious.proxy.internal.PrewarmedUpstreamPool;
+import io.kroxylicious.proxy.internal.SniRouter;
+import io.kroxylicious.proxy.internal.SslContexts;
+import io.kroxylicious.proxy.internal.UpstreamConnectionPool;
 import io.kroxylicious.proxy.internal.admin.AdminHttpInitializer;
+import io.kroxylicious.proxy.internal.filter.BrokerAddressFilter;
+import io.kroxylicious.proxy.internal.filter.BrokerRoutes;
+import io.kroxylicious.proxy.internal.filter.BrokerRoutingNetFilter;
 import io.kroxylicious.proxy.internal.filter.FixedNetFilter;
+import io.kroxylicious.proxy.internal.filter.PortPerBrokerRoutes;
+import io.kroxylicious.proxy.internal.filter.SniBrokerRoutes;
 
 public final class KafkaProxy {
 
@@ -60,21 +81,57 @@ public final class KafkaProxy {
     private final boolean logNetwork;
     private final boolean logFrames;
     private final boolean useIoUring;
-    private final FilterChainFactory filterChainFactory;
+    private final int multiplexedUpstreamConnections;
+    private final int maxFrameSize;
+    private final boolean decodeTopicMetadata;
+    private final int acceptBacklog;
+    private final int maxAcceptRate;
+    private final int prewarmedUpstreamConnections;
+    private final int workerThreads;
+    private final int ioRatio;
+    private final Configuration config;
     private final AdminHttpConfiguration adminHttpConfig;
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
-    private Channel acceptorChannel;
+    private EventLoopGroup adminGroup;
+    private final List<Channel> acceptorChannels = new ArrayList<>();
     private Channel metricsChannel;
     private Optional<File> keyStoreFile;
     private Optional<String> keyStorePassword;
+    private final List<String> tlsCiphers;
+    private final int tlsSessionCacheSize;
+    private final int tlsSessionTimeoutSeconds;
+    private final boolean passthrough;
+    private final boolean coalesceProduceRequests;
+    private final int produceCoalescingWindowMicros;
 
     public KafkaProxy(Configuration config) {
         String proxyAddress = config.proxy().address();
         String[] proxyAddressParts = proxyAddress.split(":");
 
-        // TODO: deal with list
-        String brokerAddress = config.clusters().entrySet().iterator().next().getValue().bootstrapServers();
+        boolean brokerAddressFilter = config.filters().stream().anyMatch(f -> BrokerAddressFilter.TYPE.equals(f.type()));
+        config.clusters().forEach((name, cluster) -> {
+            if (cluster.brokerPorts() > 0 && !brokerAddressFilter) {
+                throw new IllegalArgumentException("Cluster " + name + " has broker ports, which need the " + BrokerAddressFilter.TYPE + " filter");
+            }
+            if (cluster.sniBootstrapHostname().isPresent() != cluster.sniBrokerHostnamePattern().isPresent()) {
+                throw new IllegalArgumentException("Cluster " + name + " needs both an SNI bootstrap hostname and an SNI broker hostname pattern, or neither");
+            }
+            if (cluster.sniBootstrapHostname().isPresent()) {
+                if (cluster.brokerPorts() > 0) {
+                    throw new IllegalArgumentException("Cluster " + name + " can't have both broker ports and SNI hostnames");
+                }
+                if (config.proxy().keyStoreFile().isEmpty()) {
+                    throw new IllegalArgumentException("Cluster " + name + " has SNI hostnames, which need the proxy to use TLS");
+                }
+                if (!brokerAddressFilter) {
+                    throw new IllegalArgumentException("Cluster " + name + " has SNI hostnames, which need the " + BrokerAddressFilter.TYPE + " filter");
+                }
+            }
+        });
+        checkProxyPortsDistinct(config.clusters(), proxyAddress);
+        Cluster firstCluster = config.clusters().values().iterator().next();
+        String brokerAddress = firstCluster.bootstrapServers();
         String[] brokerAddressParts = brokerAddress.split(":");
 
         this.proxyHost = proxyAddressParts[0];
@@ -84,12 +141,49 @@ public final class KafkaProxy {
         this.logNetwork = config.proxy().logNetwork();
         this.logFrames = config.proxy().logFrames();
         this.useIoUring = config.proxy().useIoUring();
+        this.multiplexedUpstreamConnections = config.proxy().multiplexedUpstreamConnections();
+        this.maxFrameSize = config.proxy().maxFrameSize();
+        this.decodeTopicMetadata = config.proxy().decodeTopicMetadata();
+        this.acceptBacklog = config.proxy().acceptBacklog();
+        this.maxAcceptRate = config.proxy().maxAcceptRate();
+        this.prewarmedUpstreamConnections = config.proxy().prewarmedUpstreamConnections();
+        this.workerThreads = config.proxy().workerThreads();
+        this.ioRatio = config.proxy().ioRatio();
         this.adminHttpConfig = config.adminHttpConfig();
-
-        this.filterChainFactory = new FilterChainFactory(config);
+        this.config = config;
 
         this.keyStoreFile = config.proxy().keyStoreFile().map(File::new);
         this.keyStorePassword = config.proxy().keyPassword();
+        this.tlsCiphers = config.proxy().tlsCiphers();
+        this.tlsSessionCacheSize = config.proxy().tlsSessionCacheSize();
+        this.tlsSessionTimeoutSeconds = config.proxy().tlsSessionTimeoutSeconds();
+        this.passthrough = config.proxy().passthrough();
+        this.coalesceProduceRequests = config.proxy().coalesceProduceRequests();
+        this.produceCoalescingWindowMicros = config.proxy().produceCoalescingWindowMicros();
+    }
+
+    /**
+     * Checks that no two clusters listen on the same proxy port, other than clusters which share a proxy address by SNI hostname.
+     */
+    private static void checkProxyPortsDistinct(Map<String, Cluster> clusters, String proxyAddress) {
+        Map<String, String> clusterByAddress = new HashMap<>();
+        Set<String> sniAddresses = new HashSet<>();
+        clusters.forEach((name, cluster) -> {
+            String[] addressParts = cluster.proxyAddress().orElse(proxyAddress).split(":");
+            int port = Integer.parseInt(addressParts[1]);
+            boolean sni = cluster.sniBootstrapHostname().isPresent();
+            // The bootstrap port and any broker ports
+            for (int i = 0; i <= cluster.brokerPorts(); i++) {
+                String address = addressParts[0] + ":" + (port + i);
+                String other = clusterByAddress.putIfAbsent(address, name);
+                if (other != null && !(sni && sniAddresses.contains(address))) {
+                    throw new IllegalArgumentException("Clusters " + other + " and " + name + " both use proxy address " + address);
+                }
+                if (sni) {
+                    sniAddresses.add(address);
+                }
+            }
+        });
     }
 
     public String proxyHost() {
@@ -104,10 +198,16 @@ public final class KafkaProxy {
         return proxyHost() + ":" + proxyPort();
     }
 
+    /**
+     * @return The host of the first cluster's bootstrap broker.
+     */
     public String brokerHost() {
         return brokerHost;
     }
 
+    /**
+     * @return The port of the first cluster's bootstrap broker.
+     */
     public int brokerPort() {
         return brokerPort;
     }
@@ -125,91 +225,198 @@ public final class KafkaProxy {
      * @return This proxy.
      */
     public KafkaProxy startup() throws InterruptedException {
-        if (acceptorChannel != null) {
+        if (!acceptorChannels.isEmpty()) {
             throw new IllegalStateException("This proxy is already running");
         }
 
-        LOGGER.info("Proxying local {} to remote {}",
-                proxyAddress(), brokerAddress());
-
-        Optional<SslContext> sslContext = keyStoreFile.map(ksf -> {
-            try (var is = new FileInputStream(ksf)) {
-                var password = keyStorePassword.map(String::toCharArray).orElse(null);
-                var keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
-                keyStore.load(is, password);
-                var keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
-                keyManagerFactory.init(keyStore, password);
-                return SslContextBuilder.forServer(keyManagerFactory).build();
-            }
-            catch (KeyStoreException | IOException | NoSuchAlgorithmException | CertificateException | UnrecoverableKeyException e) {
-                throw new RuntimeException(e);
-            }
-        });
-
-        KafkaProxyInitializer initializer = new KafkaProxyInitializer(false,
-                Map.of(),
-                new FixedNetFilter(brokerHost,
-                        brokerPort,
-                        filterChainFactory),
-                logNetwork,
-                logFrames,
-                sslContext);
-
-        final int availableCores = Runtime.getRuntime().availableProcessors();
+        // availableProcessors() honours the process's CPU affinity, e.g. as set by taskset or numactl
+        final int workerCount = workerThreads > 0 ? workerThreads : Runtime.getRuntime().availableProcessors();
+        // Named so that the threads can be told apart, and pinned, from outside the JVM
+        final ThreadFactory bossThreads = new DefaultThreadFactory("kroxylicious-acceptor");
+        final ThreadFactory workerThreadFactory = new DefaultThreadFactory("kroxylicious-worker");
+        final ThreadFactory adminThreads = new DefaultThreadFactory("kroxylicious-admin");
 
         // Configure the bootstrap.
         final Class<? extends ServerChannel> channelClass;
+        final Class<? extends Channel> clientChannelClass;
         if (useIoUring) {
             if (!IOUring.isAvailable()) {
                 throw new IllegalStateException("io_uring not available due to: " + IOUring.unavailabilityCause());
             }
-            bossGroup = new IOUringEventLoopGroup(1);
-            workerGroup = new IOUringEventLoopGroup(availableCores);
+            if (ioRatio > 0) {
+                throw new IllegalStateException("ioRatio is not supported with io_uring");
+            }
+            bossGroup = new IOUringEventLoopGroup(1, bossThreads);
+            workerGroup = new IOUringEventLoopGroup(workerCount, workerThreadFactory);
+            adminGroup = new IOUringEventLoopGroup(1, adminThreads);
             channelClass = IOUringServerSocketChannel.class;
+            clientChannelClass = IOUringSocketChannel.class;
         }
         else if (Epoll.isAvailable()) {
-            bossGroup = new EpollEventLoopGroup(1);
-            workerGroup = new EpollEventLoopGroup(availableCores);
+            bossGroup = new EpollEventLoopGroup(1, bossThreads);
+            var epollWorkerGroup = new EpollEventLoopGroup(workerCount, workerThreadFactory);
+            if (ioRatio > 0) {
+                epollWorkerGroup.setIoRatio(ioRatio);
+            }
+            workerGroup = epollWorkerGroup;
+            adminGroup = new EpollEventLoopGroup(1, adminThreads);
             channelClass = EpollServerSocketChannel.class;
+            clientChannelClass = EpollSocketChannel.class;
         }
         else if (KQueue.isAvailable()) {
-            bossGroup = new KQueueEventLoopGroup(1);
-            workerGroup = new KQueueEventLoopGroup(availableCores);
+            bossGroup = new KQueueEventLoopGroup(1, bossThreads);
+            var kqueueWorkerGroup = new KQueueEventLoopGroup(workerCount, workerThreadFactory);
+            if (ioRatio > 0) {
+                kqueueWorkerGroup.setIoRatio(ioRatio);
+            }
+            workerGroup = kqueueWorkerGroup;
+            adminGroup = new KQueueEventLoopGroup(1, adminThreads);
             channelClass = KQueueServerSocketChannel.class;
+            clientChannelClass = KQueueSocketChannel.class;
         }
         else {
-            bossGroup = new NioEventLoopGroup(1);
-            workerGroup = new NioEventLoopGroup(availableCores);
+            bossGroup = new NioEventLoopGroup(1, bossThreads);
+            var nioWorkerGroup = new NioEventLoopGroup(workerCount, workerThreadFactory);
+            if (ioRatio > 0) {
+                nioWorkerGroup.setIoRatio(ioRatio);
+            }
+            workerGroup = nioWorkerGroup;
+            adminGroup = new NioEventLoopGroup(1, adminThreads);
             channelClass = NioServerSocketChannel.class;
+            clientChannelClass = NioSocketChannel.class;
+        }
+
+        Optional<SslContext> sslContext = keyStoreFile.map(ksf -> SslContexts.forServer(ksf, keyStorePassword,
+                tlsCiphers, tlsSessionCacheSize, tlsSessionTimeoutSeconds));
+        PrewarmedUpstreamPool prewarmedPool = multiplexedUpstreamConnections <= 0 && prewarmedUpstreamConnections > 0
+                ? new PrewarmedUpstreamPool(prewarmedUpstreamConnections)
+                : null;
+        // The clusters with SNI hostnames which share each proxy address
+        Map<String, SniRouter> sniRouters = new LinkedHashMap<>();
+        for (Map.Entry<String, Cluster> entry : config.clusters().entrySet()) {
+            startCluster(entry.getKey(), entry.getValue(), sslContext, prewarmedPool, channelClass, clientChannelClass, sniRouters);
+        }
+        for (Map.Entry<String, SniRouter> entry : sniRouters.entrySet()) {
+            String[] addressParts = entry.getKey().split(":");
+            bind(channelClass, entry.getValue(), addressParts[0], Integer.parseInt(addressParts[1]));
         }
 
         MeterRegistries meterRegistries = new MeterRegistries();
-        maybeStartMetricsListener(bossGroup, workerGroup, channelClass, meterRegistries);
+        maybeStartMetricsListener(adminGroup, channelClass, meterRegistries);
+        return this;
+    }
 
+    /**
+     * Starts accepting the connections of a single cluster's clients, on its bootstrap port and any broker ports,
+     * or, if it has SNI hostnames, adds it to the router of its proxy address.
+     * Each cluster has its own filter chains and upstream connections, as well as its own view of the
+     * cluster's ApiVersions and topic metadata.
+     */
+    private void startCluster(String name,
+                              Cluster cluster,
+                              Optional<SslContext> sslContext,
+                              PrewarmedUpstreamPool prewarmedPool,
+                              Class<? extends ServerChannel> channelClass,
+                              Class<? extends Channel> clientChannelClass,
+                              Map<String, SniRouter> sniRouters)
+            throws InterruptedException {
+        String[] proxyAddressParts = cluster.proxyAddress().orElse(proxyAddress()).split(":");
+        String clusterProxyHost = proxyAddressParts[0];
+        int clusterProxyPort = Integer.parseInt(proxyAddressParts[1]);
+        String[] brokerAddressParts = cluster.bootstrapServers().split(":");
+        String clusterBrokerHost = brokerAddressParts[0];
+        int clusterBrokerPort = Integer.parseInt(brokerAddressParts[1]);
+
+        LOGGER.info("Proxying local {}:{} to cluster {} at remote {}",
+                clusterProxyHost, clusterProxyPort, name, cluster.bootstrapServers());
+
+        SslContext upstreamSslContext = cluster.tls()
+                ? SslContexts.forClient(cluster.trustStoreFile(), cluster.trustStorePassword(), tlsCiphers, tlsSessionCacheSize, tlsSessionTimeoutSeconds)
+                : null;
+        SniBrokerRoutes sniRoutes = cluster.sniBootstrapHostname().isPresent()
+                ? new SniBrokerRoutes(name, cluster.sniBootstrapHostname().get(), cluster.sniBrokerHostnamePattern().get(), clusterProxyPort,
+                        clusterBrokerHost, clusterBrokerPort)
+                : null;
+        PortPerBrokerRoutes portRoutes = cluster.brokerPorts() > 0
+                ? new PortPerBrokerRoutes(name, clusterProxyHost, clusterProxyPort, cluster.brokerPorts(), clusterBrokerHost, clusterBrokerPort)
+                : null;
+        BrokerRoutes routes = sniRoutes != null ? sniRoutes : portRoutes;
+        FilterChainFactory filterChainFactory = new FilterChainFactory(config, routes);
+        NetFilter netFilter = routes != null
+                ? new BrokerRoutingNetFilter(routes, filterChainFactory)
+                : new FixedNetFilter(clusterBrokerHost, clusterBrokerPort, filterChainFactory);
+
+        ApiVersionsCache apiVersionsCache = new ApiVersionsCache();
+        KafkaProxyInitializer initializer = new KafkaProxyInitializer(false,
+                Map.of(),
+                netFilter,
+                logNetwork,
+                logFrames,
+                // The router of an SNI cluster's proxy address handles TLS
+                sniRoutes != null ? Optional.empty() : sslContext,
+                upstreamSslContext,
+                multiplexedUpstreamConnections > 0 ? new UpstreamConnectionPool(multiplexedUpstreamConnections, logNetwork, upstreamSslContext) : null,
+                prewarmedPool,
+                maxFrameSize,
+                new DefaultTopicMetadataCache(),
+                decodeTopicMetadata,
+                apiVersionsCache,
+                passthrough,
+                coalesceProduceRequests,
+                produceCoalescingWindowMicros,
+                cluster.flushMaxWrites(),
+                cluster.flushMaxBytes(),
+                FlushConsolidator.writesPerFlush(name));
+
+        // Keep the ApiVersions response the proxy sends itself in step with the cluster, e.g. across upgrades
+        workerGroup.scheduleAtFixedRate(() -> apiVersionsCache.refresh(workerGroup, clientChannelClass, upstreamSslContext, clusterBrokerHost, clusterBrokerPort),
+                0, ApiVersionsCache.REFRESH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        if (prewarmedPool != null) {
+            prewarmedPool.prewarm(workerGroup, clientChannelClass, clusterBrokerHost, clusterBrokerPort);
+        }
+
+        if (sniRoutes != null) {
+            sniRouters.computeIfAbsent(clusterProxyHost + ":" + clusterProxyPort, address -> new SniRouter(sslContext.get()))
+                    .addCluster(sniRoutes, initializer);
+            return;
+        }
+        int[] ports = portRoutes != null ? portRoutes.ports() : new int[]{ clusterProxyPort };
+        for (int port : ports) {
+            bind(channelClass, initializer, clusterProxyHost, port);
+        }
+    }
+
+    private void bind(Class<? extends ServerChannel> channelClass, ChannelHandler childHandler, String host, int port) throws InterruptedException {
         ServerBootstrap serverBootstrap = new ServerBootstrap().group(bossGroup, workerGroup)
                 .channel(channelClass)
-                .childHandler(initializer)
+                .childHandler(childHandler)
                 .childOption(ChannelOption.AUTO_READ, false)
                 .childOption(ChannelOption.TCP_NODELAY, true);
-        ChannelFuture bindFuture;
-        if (proxyHost != null) {
-            bindFuture = serverBootstrap.bind(proxyHost, proxyPort);
+        if (acceptBacklog > 0) {
+            serverBootstrap.option(ChannelOption.SO_BACKLOG, acceptBacklog);
         }
-        else {
-            bindFuture = serverBootstrap.bind(proxyPort);
+        if (passthrough && channelClass == EpollServerSocketChannel.class) {
+            // Splicing needs level-triggered channels; the upstream channels follow their client channel's mode
+            serverBootstrap.childOption(EpollChannelOption.EPOLL_MODE, EpollMode.LEVEL_TRIGGERED);
         }
-        acceptorChannel = bindFuture.sync().channel();
-        return this;
+        if (maxAcceptRate > 0) {
+            // Each port has its own limit, since a limiter belongs to a single server channel
+            serverBootstrap.handler(new AcceptRateLimiter(maxAcceptRate));
+        }
+        ChannelFuture bindFuture = serverBootstrap.bind(host, port);
+        acceptorChannels.add(bindFuture.sync().channel());
     }
 
-    private void maybeStartMetricsListener(EventLoopGroup bossGroup,
-                                           EventLoopGroup workerGroup,
+    /**
+     * Starts the admin HTTP endpoint on an event loop of its own, so that it doesn't delay the handling of Kafka traffic.
+     */
+    private void maybeStartMetricsListener(EventLoopGroup adminGroup,
                                            Class<? extends ServerChannel> channelClass,
                                            MeterRegistries meterRegistries)
             throws InterruptedException {
         if (adminHttpConfig != null
                 && adminHttpConfig.getEndpoints().maybePrometheus().isPresent()) {
-            ServerBootstrap metricsBootstrap = new ServerBootstrap().group(bossGroup, workerGroup)
+            ServerBootstrap metricsBootstrap = new ServerBootstrap().group(adminGroup)
                     .channel(channelClass)
                     .childHandler(new AdminHttpInitializer(meterRegistries, adminHttpConfig));
             metricsChannel = metricsBootstrap.bind(adminHttpConfig.getHost(), adminHttpConfig.getPort()).sync().channel();
@@ -222,10 +429,12 @@ public final class KafkaProxy {
      * @throws InterruptedException
      */
     public void block() throws InterruptedException {
-        if (acceptorChannel == null) {
+        if (acceptorChannels.isEmpty()) {
             throw new IllegalStateException("This proxy is not running");
         }
-        acceptorChannel.closeFuture().sync();
+        for (Channel acceptorChannel : acceptorChannels) {
+            acceptorChannel.closeFuture().sync();
+        }
     }
 
     /**
@@ -233,14 +442,16 @@ public final class KafkaProxy {
      * @throws InterruptedException
      */
     public void shutdown() throws InterruptedException {
-        if (acceptorChannel == null) {
+        if (acceptorChannels.isEmpty()) {
             throw new IllegalStateException("This proxy is not running");
         }
         bossGroup.shutdownGracefully().sync();
         workerGroup.shutdownGracefully().sync();
+        adminGroup.shutdownGracefully().sync();
         bossGroup = null;
         workerGroup = null;
-        acceptorChannel = null;
+        adminGroup = null;
+        acceptorChannels.clear();
         metricsChannel = null;
     }
 
@@ -6,7 +6,10 @@
 package io.kroxylicious.proxy.bootstrap;
 
 import io.kroxylicious.proxy.config.Configuration;
+import io.kroxylicious.proxy.config.FilterDefinition;
 import io.kroxylicious.proxy.filter.KrpcFilter;
+import io.kroxylicious.proxy.internal.codec.DecodePredicate;
+import io.kroxylicious.proxy.internal.filter.BrokerAddressFilter.AddressMapping;
 import io.kroxylicious.proxy.internal.filter.FilterContributorManager;
 
 /**
@@ -18,8 +21,35 @@ public class FilterChainFactory {
 
     private final Configuration config;
 
+    /** The mapping of the BrokerAddress filters, or null for the proxy address. */
+    private final AddressMapping addressMapping;
+
+    /**
+     * Which requests and responses the chains need decoded.
+     * Chains created from the same configuration make the same decisions, so this is computed
+     * from the first chain created and shared by all of them.
+     */
+    private volatile DecodePredicate decodePredicate;
+
+    /** The timeouts of the requests sent by the filters of each chain, in the order of the filters. */
+    private final long[] requestTimeoutsMs;
+
     public FilterChainFactory(Configuration config) {
+        this(config, null);
+    }
+
+    /**
+     * @param config The configuration.
+     * @param addressMapping The mapping of the broker addresses which the {@code BrokerAddress} filters rewrite,
+     * or null to rewrite them all to the proxy address.
+     */
+    public FilterChainFactory(Configuration config, AddressMapping addressMapping) {
         this.config = config;
+        this.addressMapping = addressMapping;
+        this.requestTimeoutsMs = config.filters()
+                .stream()
+                .mapToLong(FilterDefinition::requestTimeoutMs)
+                .toArray();
     }
 
     /**
@@ -29,9 +59,33 @@ public class FilterChainFactory {
     public KrpcFilter[] createFilters() {
         FilterContributorManager filterContributorManager = FilterContributorManager.getInstance();
 
-        return config.filters()
+        KrpcFilter[] filters = config.filters()
                 .stream()
-                .map(f -> filterContributorManager.getFilter(f.type(), config.proxy(), f.config()))
+                .map(f -> addressMapping != null
+                        ? filterContributorManager.getFilter(f.type(), config.proxy(), f.config(), addressMapping)
+                        : filterContributorManager.getFilter(f.type(), config.proxy(), f.config()))
                 .toArray(KrpcFilter[]::new);
+        if (decodePredicate == null) {
+            // A race here just means the predicate is computed more than once
+            decodePredicate = DecodePredicate.forFilters(filters);
+        }
+        return filters;
+    }
+
+    /**
+     * @return The timeouts, in milliseconds, of the requests sent by each of the filters in a chain, in the same order as the filters.
+     */
+    public long[] requestTimeoutsMs() {
+        return requestTimeoutsMs;
+    }
+
+    /**
+     * @return The predicate for decoding the requests and responses which the chains created by this factory deserialize.
+     */
+    public DecodePredicate decodePredicate() {
+        if (decodePredicate == null) {
+            createFilters();
+        }
+        return decodePredicate;
     }
 }
@@ -5,22 +5,133 @@
  */
 package io.kroxylicious.proxy.config;
 
+import java.util.Optional;
+
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 public class Cluster {
 
     private final String bootstrapServers;
+    private final boolean tls;
+    private final Optional<String> trustStoreFile;
+    private final Optional<String> trustStorePassword;
+    private final Optional<String> proxyAddress;
+    private final int brokerPorts;
+    private final Optional<String> sniBootstrapHostname;
+    private final Optional<String> sniBrokerHostnamePattern;
+    private final int flushMaxWrites;
+    private final int flushMaxBytes;
 
-    public Cluster(@JsonProperty(value = "bootstrap_servers") String bootstrapServers) {
+    public Cluster(@JsonProperty(value = "bootstrap_servers") String bootstrapServers,
+                   @JsonProperty(value = "tls") boolean tls,
+                   @JsonProperty(value = "trust_store_file") Optional<String> trustStoreFile,
+                   @JsonProperty(value = "trust_store_password") Optional<String> trustStorePassword,
+                   @JsonProperty(value = "proxy_address") Optional<String> proxyAddress,
+                   @JsonProperty(value = "broker_ports") int brokerPorts,
+                   @JsonProperty(value = "sni_bootstrap_hostname") Optional<String> sniBootstrapHostname,
+                   @JsonProperty(value = "sni_broker_hostname_pattern") Optional<String> sniBrokerHostnamePattern,
+                   @JsonProperty(value = "flush_max_writes") int flushMaxWrites,
+                   @JsonProperty(value = "flush_max_bytes") int flushMaxBytes) {
         this.bootstrapServers = bootstrapServers;
+        this.tls = tls;
+        this.trustStoreFile = trustStoreFile;
+        this.trustStorePassword = trustStorePassword;
+        this.proxyAddress = proxyAddress;
+        this.brokerPorts = brokerPorts;
+        this.sniBootstrapHostname = sniBootstrapHostname;
+        this.sniBrokerHostnamePattern = sniBrokerHostnamePattern;
+        this.flushMaxWrites = flushMaxWrites;
+        this.flushMaxBytes = flushMaxBytes;
     }
 
     public String bootstrapServers() {
         return bootstrapServers;
     }
 
+    /**
+     * @return Whether the proxy connects to the cluster's brokers using TLS.
+     */
+    public boolean tls() {
+        return tls;
+    }
+
+    /**
+     * @return The trust store holding the certificates of the brokers, or their CA,
+     * or empty to trust the JDK's default CAs.
+     */
+    public Optional<String> trustStoreFile() {
+        return trustStoreFile;
+    }
+
+    public Optional<String> trustStorePassword() {
+        return trustStorePassword;
+    }
+
+    /**
+     * @return The address on which the proxy accepts the cluster's clients, in {@code host:port} form,
+     * or empty (the default) for the proxy's own address.
+     * Each cluster must have a port, or range of ports, of its own, unless it has {@linkplain #sniBootstrapHostname() SNI hostnames}.
+     */
+    public Optional<String> proxyAddress() {
+        return proxyAddress;
+    }
+
+    /**
+     * @return The number of ports, following the port of the {@linkplain #proxyAddress() proxy address},
+     * on which the proxy accepts connections to the cluster's individual brokers, or 0 (the default)
+     * if all the cluster's clients connect to its bootstrap broker via the proxy address.
+     * Each broker is given the next free port the first time the proxy sees it, whatever its id,
+     * so this must be at least the number of brokers in the cluster:
+     * a response naming a broker once the ports have run out fails, closing the client's connection.
+     * The ports mustn't overlap those of another cluster.
+     * Needs the {@code BrokerAddress} filter, which tells clients these ports in place of the brokers' addresses.
+     */
+    public int brokerPorts() {
+        return brokerPorts;
+    }
+
+    /**
+     * @return The <a href="https://en.wikipedia.org/wiki/Server_Name_Indication">SNI</a> hostname via which the cluster's
+     * clients bootstrap, or empty (the default) if the cluster's clients are told apart by the proxy port they connect to.
+     * Clusters with SNI hostnames can share a {@linkplain #proxyAddress() proxy address}, which must use TLS.
+     * Needs a {@linkplain #sniBrokerHostnamePattern() broker hostname pattern}.
+     */
+    public Optional<String> sniBootstrapHostname() {
+        return sniBootstrapHostname;
+    }
+
+    /**
+     * @return The pattern of the SNI hostnames of the cluster's individual brokers, in which {@code $(nodeId)}
+     * stands for the broker's id, e.g. {@code broker-$(nodeId).cluster.example.com}.
+     * Needs the {@code BrokerAddress} filter, which tells clients these hostnames in place of the brokers' addresses.
+     */
+    public Optional<String> sniBrokerHostnamePattern() {
+        return sniBrokerHostnamePattern;
+    }
+
+    /**
+     * @return The number of writes to a client connection after which its socket is flushed straight away,
+     * or 0 (the default) if the socket is flushed whenever responses have been written to it.
+     * Otherwise a flush of the socket is put off until the proxy has finished handling the connections
+     * which are ready, so that the responses to a client from several reads of upstream connections
+     * are sent with fewer syscalls, at the cost of a little latency.
+     * The {@code kroxylicious.downstream.writes.per.flush} metric shows how many writes each flush covers.
+     */
+    public int flushMaxWrites() {
+        return flushMaxWrites;
+    }
+
+    /**
+     * @return The number of bytes written to a client connection after which its socket is flushed straight away,
+     * or 0 (the default) for no limit. Only used with {@linkplain #flushMaxWrites() a limit on the number of writes}.
+     */
+    public int flushMaxBytes() {
+        return flushMaxBytes;
+    }
+
     @Override
     public String toString() {
-        return "Cluster [bootstrapServers=" + bootstrapServers + "]";
+        return "Cluster [bootstrapServers=" + bootstrapServers + ", tls=" + tls + ", proxyAddress=" + proxyAddress + ", brokerPorts=" + brokerPorts
+                + ", sniBootstrapHostname=" + sniBootstrapHostname + "]";
     }
 }
@@ -13,14 +13,20 @@ import io.kroxylicious.proxy.internal.filter.FilterConfig;
 
 public class FilterDefinition {
 
+    /** The timeout of the requests a filter sends, unless configured otherwise. */
+    public static final long DEFAULT_REQUEST_TIMEOUT_MS = 20000;
+
     private final String type;
     private final FilterConfig config;
+    private final long requestTimeoutMs;
 
     @JsonCreator
     public FilterDefinition(String type,
-                            @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.EXTERNAL_PROPERTY, property = "type") @JsonTypeIdResolver(FilterConfigTypeIdResolver.class) FilterConfig config) {
+                            @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.EXTERNAL_PROPERTY, property = "type") @JsonTypeIdResolver(FilterConfigTypeIdResolver.class) FilterConfig config,
+                            long requestTimeoutMs) {
         this.type = type;
         this.config = config;
+        this.requestTimeoutMs = requestTimeoutMs;
     }
 
     public String type() {
@@ -30,4 +36,12 @@ public class FilterDefinition {
     public FilterConfig config() {
         return config;
     }
+
+    /**
+     * @return The time, in milliseconds, after which a request the filter sends to the broker fails,
+     * if no response has arrived. Defaults to {@value #DEFAULT_REQUEST_TIMEOUT_MS}.
+     */
+    public long requestTimeoutMs() {
+        return requestTimeoutMs > 0 ? requestTimeoutMs : DEFAULT_REQUEST_TIMEOUT_MS;
+    }
 }
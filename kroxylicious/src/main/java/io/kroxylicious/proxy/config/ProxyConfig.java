@@ -5,6 +5,7 @@
  */
 package io.kroxylicious.proxy.config;
 
+import java.util.List;
 import java.util.Optional;
 
 public class ProxyConfig {
@@ -15,14 +16,46 @@ public class ProxyConfig {
     private final boolean useIoUring;
     private final Optional<String> keyStoreFile;
     private final Optional<String> keyPassword;
+    private final int multiplexedUpstreamConnections;
+    private final int maxFrameSize;
+    private final boolean decodeTopicMetadata;
+    private final int acceptBacklog;
+    private final int maxAcceptRate;
+    private final int prewarmedUpstreamConnections;
+    private final int workerThreads;
+    private final int ioRatio;
+    private final List<String> tlsCiphers;
+    private final int tlsSessionCacheSize;
+    private final int tlsSessionTimeoutSeconds;
+    private final boolean passthrough;
+    private final boolean coalesceProduceRequests;
+    private final int produceCoalescingWindowMicros;
 
-    public ProxyConfig(String address, boolean logNetwork, boolean logFrames, boolean useIoUring, Optional<String> keyStoreFile, Optional<String> keyPassword) {
+    public ProxyConfig(String address, boolean logNetwork, boolean logFrames, boolean useIoUring, Optional<String> keyStoreFile, Optional<String> keyPassword,
+                       int multiplexedUpstreamConnections, int maxFrameSize, boolean decodeTopicMetadata, int acceptBacklog, int maxAcceptRate,
+                       int prewarmedUpstreamConnections, int workerThreads, int ioRatio,
+                       List<String> tlsCiphers, int tlsSessionCacheSize, int tlsSessionTimeoutSeconds, boolean passthrough,
+                       boolean coalesceProduceRequests, int produceCoalescingWindowMicros) {
         this.address = address;
         this.logNetwork = logNetwork;
         this.logFrames = logFrames;
         this.useIoUring = useIoUring;
         this.keyStoreFile = keyStoreFile;
         this.keyPassword = keyPassword;
+        this.multiplexedUpstreamConnections = multiplexedUpstreamConnections;
+        this.maxFrameSize = maxFrameSize;
+        this.decodeTopicMetadata = decodeTopicMetadata;
+        this.acceptBacklog = acceptBacklog;
+        this.maxAcceptRate = maxAcceptRate;
+        this.prewarmedUpstreamConnections = prewarmedUpstreamConnections;
+        this.workerThreads = workerThreads;
+        this.ioRatio = ioRatio;
+        this.tlsCiphers = tlsCiphers;
+        this.tlsSessionCacheSize = tlsSessionCacheSize;
+        this.tlsSessionTimeoutSeconds = tlsSessionTimeoutSeconds;
+        this.passthrough = passthrough;
+        this.coalesceProduceRequests = coalesceProduceRequests;
+        this.produceCoalescingWindowMicros = produceCoalescingWindowMicros;
     }
 
     public String address() {
@@ -48,4 +81,136 @@ public class ProxyConfig {
     public Optional<String> keyPassword() {
         return keyPassword;
     }
+
+    /**
+     * @return The number of upstream connections to each broker which are shared by the client connections
+     * on each event loop, or 0 (the default) if each client connection has upstream connections of its own.
+     * Clients can't authenticate to the brokers via shared connections.
+     */
+    public int multiplexedUpstreamConnections() {
+        return multiplexedUpstreamConnections;
+    }
+
+    /**
+     * @return The size, in bytes, of the largest request or response frame which the proxy will buffer,
+     * or 0 (the default) if there is no limit.
+     * Larger frames which no filter needs to decode are streamed through the proxy as their bytes arrive.
+     * Larger frames which need to be decoded cause the connection to be closed.
+     */
+    public int maxFrameSize() {
+        return maxFrameSize;
+    }
+
+    /**
+     * @return Whether all Metadata, CreateTopics and DeleteTopics responses are decoded, so that the topic metadata
+     * cache which filters can use knows of every topic a client has asked about.
+     * Otherwise (the default) the cache only learns from those responses which the filters need decoded anyway,
+     * including the Metadata requests filters send themselves.
+     */
+    public boolean decodeTopicMetadata() {
+        return decodeTopicMetadata;
+    }
+
+    /**
+     * @return The length of the queue of client connections which the OS has accepted but the proxy has not,
+     * or 0 (the default) for the OS's default ({@code somaxconn} on Linux).
+     * This is where connections wait when they arrive faster than the {@link #maxAcceptRate()}.
+     */
+    public int acceptBacklog() {
+        return acceptBacklog;
+    }
+
+    /**
+     * @return The maximum sustained rate, in connections per second, at which the proxy accepts client connections,
+     * or 0 (the default) if there is no limit. Up to a second's worth of connections are accepted in a burst.
+     */
+    public int maxAcceptRate() {
+        return maxAcceptRate;
+    }
+
+    /**
+     * @return The number of idle upstream connections to each broker which each event loop keeps open
+     * for new client connections to adopt, or 0 (the default) if client connections connect upstream themselves.
+     * Ignored when the upstream connections are {@linkplain #multiplexedUpstreamConnections() shared}.
+     */
+    public int prewarmedUpstreamConnections() {
+        return prewarmedUpstreamConnections;
+    }
+
+    /**
+     * @return The number of event loop threads which handle client and upstream connections,
+     * or 0 (the default) for one per available processor.
+     * The available processors are those the proxy's process is allowed to run on,
+     * so running the proxy under {@code taskset} or {@code numactl} pins the worker threads to those cores.
+     * The worker threads are named {@code kroxylicious-worker-*}, so that they can be pinned individually.
+     * The acceptor and the admin HTTP endpoint each have a thread of their own.
+     */
+    public int workerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * @return The percentage of time the worker threads spend on I/O, rather than other tasks,
+     * or 0 (the default) for Netty's default of 50.
+     * Not supported with io_uring, which is tuned via Netty's {@code io.netty.iouring.*} system properties.
+     */
+    public int ioRatio() {
+        return ioRatio;
+    }
+
+    /**
+     * @return The TLS cipher suites to enable, for both client and broker connections,
+     * or null (the default) for the TLS provider's defaults.
+     */
+    public List<String> tlsCiphers() {
+        return tlsCiphers;
+    }
+
+    /**
+     * @return The number of TLS sessions cached for resumption, on each of the client and broker sides,
+     * or 0 (the default) for the TLS provider's default.
+     */
+    public int tlsSessionCacheSize() {
+        return tlsSessionCacheSize;
+    }
+
+    /**
+     * @return The lifetime, in seconds, of cached TLS sessions, or 0 (the default) for the TLS provider's default.
+     */
+    public int tlsSessionTimeoutSeconds() {
+        return tlsSessionTimeoutSeconds;
+    }
+
+    /**
+     * @return Whether a connection whose filters decode nothing stops decoding frames altogether,
+     * once it has no request awaiting a response, and just relays bytes between the client and the broker.
+     * With epoll, and without TLS or network logging, the bytes are spliced between the sockets in the kernel.
+     * The proxy's per-API latency metrics don't cover such connections. Off by default.
+     * Ignored when upstream connections are {@linkplain #multiplexedUpstreamConnections() shared},
+     * or when the proxy handles SASL authentication or {@linkplain #decodeTopicMetadata() decodes topic metadata}.
+     */
+    public boolean passthrough() {
+        return passthrough;
+    }
+
+    /**
+     * @return Whether the Produce requests which a client sends in quick succession (e.g. with {@code linger.ms=0})
+     * are merged into a single request to the broker, whose response is split back into a response to each of them.
+     * Only requests with the same {@code acks} and timeout, other than transactional and {@code acks=0} requests,
+     * which produce to different partitions are merged. Off by default.
+     * Filters still see each of the client's requests and responses.
+     */
+    public boolean coalesceProduceRequests() {
+        return coalesceProduceRequests;
+    }
+
+    /**
+     * @return How long, in microseconds, Produce requests are held for other requests to be merged with them,
+     * or 0 (the default) if only those requests which are read from the client together are merged.
+     * Each Produce request can be delayed by up to this long.
+     * Only used when {@linkplain #coalesceProduceRequests() coalescing Produce requests}.
+     */
+    public int produceCoalescingWindowMicros() {
+        return produceCoalescingWindowMicros;
+    }
 }
@@ -5,7 +5,6 @@
  */
 package io.kroxylicious.proxy.example.topicencryption;
 
-import org.apache.kafka.common.Uuid;
 import org.apache.kafka.common.message.FetchResponseData;
 import org.apache.kafka.common.message.ProduceRequestData;
 
@@ -15,9 +14,6 @@ import io.kroxylicious.proxy.filter.ProduceRequestFilter;
 
 public class TopicEncryption implements ProduceRequestFilter, FetchResponseFilter {
 
-    // TODO to support topic ids in fetch requests we need metadata
-    // but other filters will be interested in keeping track of metadata
-
     @Override
     public void onProduceRequest(ProduceRequestData request, KrpcFilterContext context) {
         boolean fragmented = false;
@@ -37,16 +33,11 @@ public class TopicEncryption implements ProduceRequestFilter, FetchResponseFilte
         for (var topicResponse : response.responses()) {
             String topicName = topicResponse.topic();
             if (topicName == null) {
-                topicName = lookupTopic(topicResponse.topicId());
+                topicName = context.topicMetadata().topicName(topicResponse.topicId());
             }
             // TODO the rest of it
         }
         context.forwardResponse(response);
     }
 
-    private String lookupTopic(Uuid topicId) {
-        // TODO look up the topic name from the TopicNameFilter
-        return null;
-    }
-
 }
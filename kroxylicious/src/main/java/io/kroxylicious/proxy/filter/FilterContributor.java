@@ -6,6 +6,7 @@
 package io.kroxylicious.proxy.filter;
 
 import io.kroxylicious.proxy.config.ProxyConfig;
+import io.kroxylicious.proxy.internal.filter.BrokerAddressFilter.AddressMapping;
 import io.kroxylicious.proxy.internal.filter.FilterConfig;
 
 public interface FilterContributor {
@@ -13,4 +14,13 @@ public interface FilterContributor {
     Class<? extends FilterConfig> getConfigType(String shortName);
 
     KrpcFilter getFilter(String shortName, ProxyConfig proxyConfig, FilterConfig filterConfig);
+
+    /**
+     * Creates a filter for a cluster whose brokers the proxy gives addresses of their own.
+     * By default the addresses are of no concern to the filter.
+     * @param addressMapping The mapping of the cluster's broker addresses to the proxy's.
+     */
+    default KrpcFilter getFilter(String shortName, ProxyConfig proxyConfig, FilterConfig filterConfig, AddressMapping addressMapping) {
+        return getFilter(shortName, proxyConfig, filterConfig);
+    }
 }
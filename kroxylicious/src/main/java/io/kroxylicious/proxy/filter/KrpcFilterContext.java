@@ -21,13 +21,25 @@ public interface KrpcFilterContext {
     String channelDescriptor();
 
     /**
-     * Allocate a ByteBuffer of the given capacity.
+     * Allocate a ByteBuffer of the given capacity, of the kind the transport prefers for I/O.
+     * That's usually a pooled direct buffer, which, when it holds records, can be written to the socket
+     * without first being copied out of the heap.
      * The buffer will be deallocated when the request processing is completed
      * @param initialCapacity The initial capacity of the buffer.
      * @return The allocated buffer
      */
     ByteBuf allocate(int initialCapacity);
 
+    /**
+     * Allocate a ByteBuffer of the given capacity, either direct or on the heap.
+     * Filters which need the buffer's backing array should ask for a heap buffer.
+     * The buffer will be deallocated when the request processing is completed
+     * @param initialCapacity The initial capacity of the buffer.
+     * @param direct Whether the buffer should be direct.
+     * @return The allocated buffer
+     */
+    ByteBuf allocate(int initialCapacity, boolean direct);
+
     /**
      * Send a request towards the broker, invoking upstream filters.
      * @param request The request to forward to the broker.
@@ -53,5 +65,11 @@ public interface KrpcFilterContext {
      */
     void forwardResponse(ApiMessage response);
 
+    /**
+     * @return The metadata of the topics which the proxy knows of, which a filter can use rather than
+     * sending a Metadata request of its own.
+     */
+    TopicMetadataCache topicMetadata();
+
     // TODO an API to allow a filter to add/remove another filter from the pipeline
 }
@@ -43,6 +43,11 @@ public interface NetFilter {
          */
         public SocketAddress srcAddress();
 
+        /**
+         * @return The address of the proxy which the client connected to.
+         */
+        public SocketAddress localAddress();
+
         /**
          * The authorized id, or null if there is no authentication configured for this listener.
          * @return
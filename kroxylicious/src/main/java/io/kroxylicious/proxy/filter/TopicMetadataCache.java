@@ -0,0 +1,37 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.filter;
+
+import org.apache.kafka.common.Uuid;
+
+/**
+ * The metadata of the topics which the proxy has learned of from the responses of the brokers,
+ * shared by all the connections through the proxy.
+ * The cache is only as up to date as the last response which mentioned a topic, so a filter which
+ * finds nothing in it (or which needs to be sure) should ask the broker, via
+ * {@link KrpcFilterContext#sendRequest(short, org.apache.kafka.common.protocol.ApiMessage)}.
+ */
+public interface TopicMetadataCache {
+
+    /**
+     * @param topicId The topic id.
+     * @return The name of the topic with the given id, or null if it's not known.
+     */
+    String topicName(Uuid topicId);
+
+    /**
+     * @param topicName The topic name.
+     * @return The id of the topic with the given name, or null if it's not known.
+     */
+    Uuid topicId(String topicName);
+
+    /**
+     * @param topicName The topic name.
+     * @param partition The partition index.
+     * @return The id of the broker which leads the given partition, or -1 if it's not known.
+     */
+    int partitionLeader(String topicName, int partition);
+}
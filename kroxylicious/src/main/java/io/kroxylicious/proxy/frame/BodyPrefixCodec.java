@@ -0,0 +1,46 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.frame;
+
+import java.util.Set;
+
+import org.apache.kafka.common.protocol.ApiMessage;
+import org.apache.kafka.common.protocol.MessageSizeAccumulator;
+import org.apache.kafka.common.protocol.ObjectSerializationCache;
+import org.apache.kafka.common.protocol.Readable;
+import org.apache.kafka.common.protocol.Writable;
+
+/**
+ * Reads and writes a leading part of a message body, that is the fields which precede some point in the body's schema.
+ * This allows the rest of the body to be passed through without being decoded.
+ *
+ * @param <B> The body type
+ */
+public interface BodyPrefixCodec<B extends ApiMessage> {
+
+    /**
+     * @return The names (as used in the Kafka message schemas) of the top-level fields in the prefix.
+     */
+    Set<String> fields();
+
+    /**
+     * Reads the prefix.
+     * @param in The input, positioned at the start of the body.
+     * @param apiVersion The API version.
+     * @return A body with only the fields in the prefix set.
+     */
+    B read(Readable in, short apiVersion);
+
+    /**
+     * Adds the encoded size of the prefix of the given {@code body} to the given {@code sizer}.
+     */
+    void addSize(B body, MessageSizeAccumulator sizer, ObjectSerializationCache cache, short apiVersion);
+
+    /**
+     * Writes the prefix of the given {@code body} to the given {@code out}.
+     */
+    void write(B body, Writable out, ObjectSerializationCache cache, short apiVersion);
+}
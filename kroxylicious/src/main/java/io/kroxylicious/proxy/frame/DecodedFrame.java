@@ -88,7 +88,7 @@ public abstract class DecodedFrame<H extends ApiMessage, B extends ApiMessage>
         MessageSizeAccumulator sizer = new MessageSizeAccumulator();
         ObjectSerializationCache cache = new ObjectSerializationCache();
         header().addSize(sizer, cache, headerVersion);
-        body().addSize(sizer, cache, apiVersion());
+        addBodySize(sizer, cache);
         headerAndBodyEncodedLength = sizer.totalSize();
         serializationCache = cache;
         return FRAME_SIZE_LENGTH + headerAndBodyEncodedLength;
@@ -109,10 +109,28 @@ public abstract class DecodedFrame<H extends ApiMessage, B extends ApiMessage>
         out.writeInt(headerAndBodyEncodedLength);
         final ObjectSerializationCache cache = serializationCache;
         header.write(out, cache, headerVersion());
-        body.write(out, cache, apiVersion());
+        writeBody(out, cache);
         assert (out.writerIndex() - initialIndex) == encodedSize;
     }
 
+    /**
+     * Adds the encoded size of the body to the given {@code sizer}.
+     * @param sizer The size accumulator.
+     * @param cache The serialization cache.
+     */
+    protected void addBodySize(MessageSizeAccumulator sizer, ObjectSerializationCache cache) {
+        body.addSize(sizer, cache, apiVersion);
+    }
+
+    /**
+     * Writes the body to the given {@code out}.
+     * @param out The output.
+     * @param cache The serialization cache populated by {@link #addBodySize(MessageSizeAccumulator, ObjectSerializationCache)}.
+     */
+    protected void writeBody(ByteBufAccessor out, ObjectSerializationCache cache) {
+        body.write(out, cache, apiVersion);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "(" +
@@ -25,10 +25,22 @@ public abstract class OpaqueFrame implements Frame {
      */
     private static final int FRAME_SIZE_LENGTH = Integer.BYTES;
 
+    /**
+     * Number of leading bytes which are always copied, rather than possibly shared with {@link #buf},
+     * because encoders may rewrite them (request api key, api version and correlation id).
+     */
+    private static final int HEADER_PREFIX_LENGTH = Short.BYTES + Short.BYTES + Integer.BYTES;
+
     protected final int length;
     protected final int correlationId;
-    /** The message buffer excluding the frame size, including the header and body. */
+    /**
+     * The message buffer excluding the frame size, including the header and body
+     * (or just the start of them, if the frame is {@linkplain #isStreamed() streamed}).
+     */
     protected final ByteBuf buf;
+    /** The number of bytes of the frame within {@link #buf} */
+    private final int bufLength;
+    private final boolean streamed;
 
     /**
      * @param buf The message buffer (excluding the frame size)
@@ -36,14 +48,36 @@ public abstract class OpaqueFrame implements Frame {
      * @param length The length of the frame within {@code buf}.
      */
     OpaqueFrame(ByteBuf buf, int correlationId, int length) {
+        this(buf, correlationId, length, false);
+    }
+
+    /**
+     * @param buf The message buffer (excluding the frame size), which for a streamed frame holds just the start of it.
+     * @param correlationId The correlation id
+     * @param length The length of the frame.
+     * @param streamed Whether the rest of the frame follows this one as {@link ByteBuf}s.
+     */
+    OpaqueFrame(ByteBuf buf, int correlationId, int length, boolean streamed) {
         this.length = length;
         this.correlationId = correlationId;
         this.buf = buf.asReadOnly();
-        if (buf.readableBytes() != length) {
-            throw new AssertionError("readable: " + buf.readableBytes() + " length: " + length);
+        this.bufLength = buf.readableBytes();
+        this.streamed = streamed;
+        if (streamed ? bufLength >= length : bufLength != length) {
+            throw new AssertionError("readable: " + bufLength + " length: " + length + " streamed: " + streamed);
         }
     }
 
+    /**
+     * A frame which is too large to be buffered by the proxy is streamed: this frame holds just the
+     * start of it, and encodes to the size prefix and those bytes. The remaining bytes follow
+     * this frame through the pipeline as {@link ByteBuf}s, which are written as-is.
+     * @return Whether this frame is streamed.
+     */
+    public boolean isStreamed() {
+        return streamed;
+    }
+
     @Override
     public int correlationId() {
         return correlationId;
@@ -51,7 +85,7 @@ public abstract class OpaqueFrame implements Frame {
 
     @Override
     public int estimateEncodedSize() {
-        return FRAME_SIZE_LENGTH + length;
+        return FRAME_SIZE_LENGTH + bufLength;
     }
 
     @Override
@@ -62,7 +96,16 @@ public abstract class OpaqueFrame implements Frame {
         }
         out.ensureWritable(estimateEncodedSize());
         out.writeInt(length);
-        out.writeBytes(buf, length);
+        int prefix = Math.min(bufLength, HEADER_PREFIX_LENGTH);
+        out.writeBytes(buf, prefix);
+        out.writeBytes(buf, bufLength - prefix);
+        buf.release();
+    }
+
+    /**
+     * Releases the buffer of a frame which is being discarded, rather than {@linkplain #encode(ByteBufAccessor) encoded}.
+     */
+    public void release() {
         buf.release();
     }
 
@@ -75,6 +118,7 @@ public abstract class OpaqueFrame implements Frame {
     public String toString() {
         return getClass().getSimpleName() + "(" +
                 "length=" + length +
+                ", streamed=" + streamed +
                 ", buf=" + buf +
                 ')';
     }
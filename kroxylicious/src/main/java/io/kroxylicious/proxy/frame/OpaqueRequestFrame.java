@@ -23,7 +23,23 @@ public class OpaqueRequestFrame extends OpaqueFrame implements RequestFrame {
                               int correlationId,
                               boolean decodeResponse,
                               int length) {
-        super(buf, correlationId, length);
+        this(buf, correlationId, decodeResponse, length, false);
+    }
+
+    /**
+     * @param buf The message buffer (excluding the frame size), which for a streamed frame holds just the start of it.
+     * @param correlationId The correlation id
+     * @param decodeResponse Whether the response should be decoded
+     * @param length The length of the frame
+     * @param streamed Whether the rest of the frame follows this one
+     * @see OpaqueFrame#isStreamed()
+     */
+    public OpaqueRequestFrame(ByteBuf buf,
+                              int correlationId,
+                              boolean decodeResponse,
+                              int length,
+                              boolean streamed) {
+        super(buf, correlationId, length, streamed);
         this.decodeResponse = decodeResponse;
     }
 
@@ -42,6 +58,7 @@ public class OpaqueRequestFrame extends OpaqueFrame implements RequestFrame {
             short apiVersion = buf.readShort();
             return getClass().getSimpleName() + "(" +
                     "length=" + length +
+                    ", streamed=" + isStreamed() +
                     ", apiKey=" + apiKey +
                     ", apiVersion=" + apiVersion +
                     ", buf=" + buf +
@@ -12,6 +12,17 @@ public class OpaqueResponseFrame extends OpaqueFrame implements ResponseFrame {
         super(buf, correlationId, length);
     }
 
+    /**
+     * @param buf The message buffer (excluding the frame size), which for a streamed frame holds just the start of it.
+     * @param correlationId The correlation id
+     * @param length The length of the frame
+     * @param streamed Whether the rest of the frame follows this one
+     * @see OpaqueFrame#isStreamed()
+     */
+    public OpaqueResponseFrame(ByteBuf buf, int correlationId, int length, boolean streamed) {
+        super(buf, correlationId, length, streamed);
+    }
+
     @Override
     public String toString() {
         int index = buf.readerIndex();
@@ -19,6 +30,7 @@ public class OpaqueResponseFrame extends OpaqueFrame implements ResponseFrame {
             var correlationId = buf.readInt();
             return getClass().getSimpleName() + "(" +
                     "length=" + length +
+                    ", streamed=" + isStreamed() +
                     ", correlationId=" + correlationId +
                     ", buf=" + buf +
                     ')';
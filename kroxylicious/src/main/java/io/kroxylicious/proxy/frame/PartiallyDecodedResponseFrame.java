@@ -0,0 +1,57 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.frame;
+
+import org.apache.kafka.common.message.ResponseHeaderData;
+import org.apache.kafka.common.protocol.ApiMessage;
+import org.apache.kafka.common.protocol.MessageSizeAccumulator;
+import org.apache.kafka.common.protocol.ObjectSerializationCache;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * A response frame whose body has only been decoded as far as the fields read by a {@link BodyPrefixCodec}.
+ * The {@link #body()} has only those fields set, and the rest of the body is held undecoded and
+ * encoded verbatim after them.
+ */
+public class PartiallyDecodedResponseFrame<B extends ApiMessage>
+        extends DecodedResponseFrame<B> {
+
+    private final BodyPrefixCodec<B> codec;
+    /** The undecoded remainder of the body, owned by this frame. */
+    private final ByteBuf remainder;
+
+    public PartiallyDecodedResponseFrame(short apiVersion, int correlationId, ResponseHeaderData header, B body,
+                                         BodyPrefixCodec<B> codec, ByteBuf remainder) {
+        super(apiVersion, correlationId, header, body);
+        this.codec = codec;
+        this.remainder = remainder;
+        add(remainder);
+    }
+
+    @Override
+    protected void addBodySize(MessageSizeAccumulator sizer, ObjectSerializationCache cache) {
+        codec.addSize(body, sizer, cache, apiVersion);
+        sizer.addBytes(remainder.readableBytes());
+    }
+
+    @Override
+    protected void writeBody(ByteBufAccessor out, ObjectSerializationCache cache) {
+        codec.write(body, out, cache, apiVersion);
+        // Write from a duplicate, so that this frame could be encoded again
+        out.writeBytes(remainder.duplicate(), remainder.readableBytes());
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" +
+                apiKey() + "(" + apiVersion + ")v" + apiVersion +
+                ", header=" + header +
+                ", body=" + body +
+                ", remainder=" + remainder +
+                ')';
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+import io.kroxylicious.proxy.tag.VisibleForTesting;
+
+/**
+ * Limits the rate at which the proxy accepts client connections, so that a storm of reconnecting clients,
+ * e.g. after a broker roll, becomes a steady stream of upstream connects.
+ * This handler belongs to the pipeline of the server channel, where each message read is an accepted connection.
+ * When the rate is exceeded it stops the server channel reading until the rate allows another connection,
+ * so that the connections beyond the rate wait in the listen backlog, rather than being refused.
+ * Up to a second's worth of connections can be accepted in a burst.
+ */
+public class AcceptRateLimiter extends ChannelInboundHandlerAdapter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AcceptRateLimiter.class);
+
+    private final long nanosPerConnection;
+    private final long burstNanos;
+    private final LongSupplier nanoTime;
+    /** The time at which the accepted connections would have been accepted, had they been accepted at the rate */
+    private long theoreticalAcceptNanos;
+    private boolean paused;
+
+    /**
+     * @param connectionsPerSecond The maximum sustained rate at which connections are accepted.
+     */
+    public AcceptRateLimiter(int connectionsPerSecond) {
+        this(connectionsPerSecond, System::nanoTime);
+    }
+
+    /**
+     * @param connectionsPerSecond The maximum sustained rate at which connections are accepted.
+     * @param nanoTime The source of the time at which each connection is accepted.
+     */
+    @VisibleForTesting
+    AcceptRateLimiter(int connectionsPerSecond, LongSupplier nanoTime) {
+        if (connectionsPerSecond <= 0) {
+            throw new IllegalArgumentException("connectionsPerSecond must be positive");
+        }
+        this.nanosPerConnection = TimeUnit.SECONDS.toNanos(1) / connectionsPerSecond;
+        this.burstNanos = TimeUnit.SECONDS.toNanos(1);
+        this.nanoTime = nanoTime;
+        this.theoreticalAcceptNanos = nanoTime.getAsLong() - burstNanos;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        ctx.fireChannelRead(msg);
+        long now = nanoTime.getAsLong();
+        theoreticalAcceptNanos = Math.max(theoreticalAcceptNanos, now - burstNanos) + nanosPerConnection;
+        long delayNanos = theoreticalAcceptNanos - now;
+        if (delayNanos > 0 && !paused) {
+            // The connections already read in this batch are still accepted
+            paused = true;
+            ctx.channel().config().setAutoRead(false);
+            LOGGER.debug("{}: Accept rate exceeded, pausing accepts for {}ns", ctx.channel(), delayNanos);
+            ctx.executor().schedule(() -> {
+                paused = false;
+                ctx.channel().config().setAutoRead(true);
+            }, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.kafka.common.protocol.ApiKeys;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Latency histograms, per API key and version, for the stages of handling a request.
+ * The timer for each API key and version is registered with the global registry the first time it's recorded,
+ * and cached, so that recording a latency doesn't allocate.
+ */
+public final class ApiLatencyMetrics {
+
+    // Must be initialized before the instances below, which size their arrays using it
+    private static final int MAX_API_KEY = maxApiKey();
+
+    /** Time from decoding a request from the client to encoding the response to it. */
+    public static final ApiLatencyMetrics PROXY = new ApiLatencyMetrics("kroxylicious.proxy.latency",
+            "Time from decoding a request from the client to encoding the response to it");
+
+    /** Time from encoding a request to the broker to decoding the response to it. */
+    public static final ApiLatencyMetrics UPSTREAM = new ApiLatencyMetrics("kroxylicious.upstream.latency",
+            "Time from encoding a request to the broker to decoding the response to it");
+
+    /**
+     * Time spent in each filter's handling of a request or response, excluding the handlers it passes them on to
+     * and any asynchronous work it does. Each filter a frame passes through records a sample.
+     */
+    public static final ApiLatencyMetrics FILTER = new ApiLatencyMetrics("kroxylicious.filter.latency",
+            "Time spent in each filter's handling of a request or response, excluding the handlers it passes them on to and any asynchronous work it does");
+
+    private final String name;
+    private final String description;
+    /** Indexed by API key, then by API version */
+    private final AtomicReferenceArray<AtomicReferenceArray<Timer>> timers = new AtomicReferenceArray<>(MAX_API_KEY + 1);
+
+    private ApiLatencyMetrics(String name, String description) {
+        this.name = name;
+        this.description = description;
+    }
+
+    private static int maxApiKey() {
+        int max = 0;
+        for (ApiKeys apiKey : ApiKeys.values()) {
+            max = Math.max(max, apiKey.id);
+        }
+        return max;
+    }
+
+    /**
+     * @return The name of the timers.
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Records a latency.
+     * @param apiKey The API key.
+     * @param apiVersion The API version.
+     * @param nanos The latency, in nanoseconds.
+     */
+    public void record(short apiKey, short apiVersion, long nanos) {
+        Timer timer = timer(apiKey, apiVersion);
+        if (timer != null) {
+            timer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Timer timer(short apiKey, short apiVersion) {
+        if (apiKey < 0 || apiKey > MAX_API_KEY || apiVersion < 0) {
+            return null;
+        }
+        AtomicReferenceArray<Timer> versions = timers.get(apiKey);
+        if (versions == null) {
+            if (!ApiKeys.hasId(apiKey)) {
+                return null;
+            }
+            timers.compareAndSet(apiKey, null, new AtomicReferenceArray<>(ApiKeys.forId(apiKey).latestVersion() + 1));
+            versions = timers.get(apiKey);
+        }
+        if (apiVersion >= versions.length()) {
+            return null;
+        }
+        Timer timer = versions.get(apiVersion);
+        if (timer == null) {
+            // Registering is idempotent, so racing threads get the same timer
+            timer = Timer.builder(name)
+                    .description(description)
+                    .tag("api_key", ApiKeys.forId(apiKey).name())
+                    .tag("api_version", Short.toString(apiVersion))
+                    .publishPercentileHistogram()
+                    .register(Metrics.globalRegistry);
+            versions.set(apiVersion, timer);
+        }
+        return timer;
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.common.message.ApiVersionsRequestData;
+import org.apache.kafka.common.message.ApiVersionsResponseData;
+import org.apache.kafka.common.message.ApiVersionsResponseDataJsonConverter;
+import org.apache.kafka.common.message.RequestHeaderData;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.protocol.Errors;
+import org.apache.kafka.common.protocol.MessageUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.handler.ssl.SslContext;
+
+import io.kroxylicious.proxy.frame.DecodedRequestFrame;
+import io.kroxylicious.proxy.frame.DecodedResponseFrame;
+import io.kroxylicious.proxy.frame.OpaqueResponseFrame;
+import io.kroxylicious.proxy.internal.codec.CorrelationManager;
+import io.kroxylicious.proxy.internal.codec.DecodePredicate;
+import io.kroxylicious.proxy.internal.codec.KafkaRequestEncoder;
+import io.kroxylicious.proxy.internal.codec.KafkaResponseDecoder;
+import io.kroxylicious.proxy.internal.filter.ApiVersionsFilter;
+import io.kroxylicious.proxy.tag.VisibleForTesting;
+
+/**
+ * The ApiVersions response which the proxy sends itself, before it has connected to a broker on a client's behalf,
+ * for a single upstream cluster.
+ *
+ * <p>The response is the intersection of the versions the cluster supports with those the proxy supports,
+ * which is {@linkplain #refresh(EventLoopGroup, Class, SslContext, String, int) refreshed} periodically by asking the cluster.
+ * Until the cluster has been asked, the response is that of a Kafka 3.2 broker.
+ * It's held encoded for each version of ApiVersions, so that answering a client costs just a copy.</p>
+ */
+public class ApiVersionsCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ApiVersionsCache.class);
+
+    /** The interval at which the proxy should {@linkplain #refresh(EventLoopGroup, Class, SslContext, String, int) refresh} the cache. */
+    public static final long REFRESH_INTERVAL_MS = 5 * 60 * 1000;
+
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    private static final long REQUEST_TIMEOUT_MS = 30000;
+    private static final short REQUEST_VERSION = 3;
+    private static final String CLIENT_SOFTWARE_NAME = "kroxylicious";
+
+    /** The response bodies, indexed by version. */
+    private volatile byte[][] encodedResponses;
+
+    /**
+     * Creates a cache holding the response of a Kafka 3.2 broker.
+     */
+    public ApiVersionsCache() {
+        var objectMapper = new ObjectMapper();
+        try (var parser = ApiVersionsCache.class.getResourceAsStream("/ApiVersions-3.2.json")) {
+            update("ApiVersions-3.2.json", ApiVersionsResponseDataJsonConverter.read(objectMapper.readTree(parser), (short) 3));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Replaces the cached response with the given cluster's response, limited to the versions the proxy supports.
+     * @param source Where the response came from, for logging.
+     * @param response The cluster's response, which is modified.
+     */
+    @VisibleForTesting
+    void update(String source, ApiVersionsResponseData response) {
+        ApiVersionsFilter.intersectApiVersions(source, response);
+        byte[][] encoded = new byte[ApiKeys.API_VERSIONS.latestVersion() + 1][];
+        for (short version = 0; version < encoded.length; version++) {
+            ByteBuffer buffer = MessageUtil.toByteBuffer(response, version);
+            encoded[version] = new byte[buffer.remaining()];
+            buffer.get(encoded[version]);
+        }
+        encodedResponses = encoded;
+    }
+
+    /**
+     * @param apiVersion The version of a client's ApiVersions request.
+     * @return Whether there's a cached response for that version. A request of any other version,
+     * say from a client newer than the proxy, is for the cluster to answer.
+     */
+    public boolean hasResponse(short apiVersion) {
+        return apiVersion >= 0 && apiVersion < encodedResponses.length;
+    }
+
+    /**
+     * @param alloc The allocator for the frame's buffer.
+     * @param apiVersion The version of the client's request.
+     * @param correlationId The correlation id of the client's request.
+     * @return A response frame for a client's ApiVersions request.
+     * @throws IllegalArgumentException If there's no {@linkplain #hasResponse(short) response} for the given version.
+     */
+    public OpaqueResponseFrame responseFrame(ByteBufAllocator alloc, short apiVersion, int correlationId) {
+        if (!hasResponse(apiVersion)) {
+            throw new IllegalArgumentException("No ApiVersions response for version " + apiVersion);
+        }
+        // ApiVersions responses always have a v0 header, i.e. just the correlation id
+        byte[] body = encodedResponses[apiVersion];
+        ByteBuf buf = alloc.buffer(Integer.BYTES + body.length);
+        buf.writeInt(correlationId);
+        buf.writeBytes(body);
+        return new OpaqueResponseFrame(buf, correlationId, buf.readableBytes());
+    }
+
+    /**
+     * Asks the cluster for its ApiVersions, via a connection of its own, and updates the cache with the response.
+     * Failure leaves the cache as it was.
+     * @param group The event loop group for the connection.
+     * @param channelClass The class of the connection.
+     * @param sslContext The TLS context of the connection, or null if the cluster doesn't use TLS.
+     * @param host The host of a broker in the cluster.
+     * @param port The port of that broker.
+     */
+    public void refresh(EventLoopGroup group, Class<? extends Channel> channelClass, SslContext sslContext, String host, int port) {
+        refresh(group, channelClass, sslContext, host, port, REQUEST_TIMEOUT_MS);
+    }
+
+    /**
+     * @param requestTimeoutMs The time after which the connection is closed if the cluster hasn't responded.
+     * @return The future of the connection.
+     */
+    @VisibleForTesting
+    ChannelFuture refresh(EventLoopGroup group, Class<? extends Channel> channelClass, SslContext sslContext, String host, int port, long requestTimeoutMs) {
+        var correlationManager = new CorrelationManager();
+        return new Bootstrap()
+                .group(group)
+                .channel(channelClass)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT_MS)
+                .handler(new ChannelInitializer<>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        if (sslContext != null) {
+                            ch.pipeline().addLast(SslContexts.newUpstreamHandler(sslContext, ch.alloc(), host, port));
+                        }
+                        ch.pipeline().addLast(new KafkaRequestEncoder(correlationManager),
+                                new KafkaResponseDecoder(correlationManager, DecodePredicate.forFilters()),
+                                new RefreshHandler(requestTimeoutMs));
+                    }
+                })
+                .connect(host, port)
+                .addListener(future -> {
+                    if (!future.isSuccess()) {
+                        LOGGER.warn("Couldn't connect to {}:{} to refresh the ApiVersions response: {}", host, port, future.cause().toString());
+                    }
+                });
+    }
+
+    /**
+     * Sends a single ApiVersions request and updates the cache with its response.
+     */
+    private class RefreshHandler extends ChannelInboundHandlerAdapter {
+
+        private final long requestTimeoutMs;
+
+        RefreshHandler(long requestTimeoutMs) {
+            this.requestTimeoutMs = requestTimeoutMs;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            // A cluster which accepts the connection but never responds mustn't leave it open
+            var timeout = ctx.executor().schedule(() -> {
+                LOGGER.warn("Couldn't refresh the ApiVersions response from {}: no response within {}ms", ctx.channel().remoteAddress(), requestTimeoutMs);
+                ctx.close();
+            }, requestTimeoutMs, TimeUnit.MILLISECONDS);
+            ctx.channel().closeFuture().addListener(future -> timeout.cancel(false));
+            var header = new RequestHeaderData()
+                    .setRequestApiKey(ApiKeys.API_VERSIONS.id)
+                    .setRequestApiVersion(REQUEST_VERSION)
+                    .setCorrelationId(0)
+                    .setClientId(CLIENT_SOFTWARE_NAME);
+            var request = new ApiVersionsRequestData()
+                    .setClientSoftwareName(CLIENT_SOFTWARE_NAME)
+                    .setClientSoftwareVersion("0");
+            ctx.writeAndFlush(new DecodedRequestFrame<>(REQUEST_VERSION, 0, true, header, request));
+            ctx.fireChannelActive();
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if (msg instanceof DecodedResponseFrame
+                    && ((DecodedResponseFrame<?>) msg).body() instanceof ApiVersionsResponseData) {
+                var response = (ApiVersionsResponseData) ((DecodedResponseFrame<?>) msg).body();
+                if (response.errorCode() == Errors.NONE.code()) {
+                    update(String.valueOf(ctx.channel().remoteAddress()), response);
+                    LOGGER.debug("Refreshed the ApiVersions response from {}", ctx.channel().remoteAddress());
+                }
+                else {
+                    LOGGER.warn("Couldn't refresh the ApiVersions response from {}: {}",
+                            ctx.channel().remoteAddress(), Errors.forCode(response.errorCode()));
+                }
+            }
+            ctx.close();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            LOGGER.warn("Couldn't refresh the ApiVersions response from {}: {}", ctx.channel().remoteAddress(), cause.toString());
+            ctx.close();
+        }
+    }
+}
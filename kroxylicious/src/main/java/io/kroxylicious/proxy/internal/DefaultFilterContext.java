@@ -5,9 +5,6 @@
  */
 package io.kroxylicious.proxy.internal;
 
-import java.util.concurrent.TimeUnit;
-
-import org.apache.kafka.common.errors.TimeoutException;
 import org.apache.kafka.common.message.ProduceRequestData;
 import org.apache.kafka.common.message.RequestHeaderData;
 import org.apache.kafka.common.protocol.ApiKeys;
@@ -21,33 +18,75 @@ import io.netty.channel.ChannelPromise;
 
 import io.kroxylicious.proxy.filter.KrpcFilter;
 import io.kroxylicious.proxy.filter.KrpcFilterContext;
+import io.kroxylicious.proxy.filter.TopicMetadataCache;
 import io.kroxylicious.proxy.frame.DecodedFrame;
+import io.kroxylicious.proxy.frame.DecodedRequestFrame;
+import io.kroxylicious.proxy.frame.DecodedResponseFrame;
 import io.kroxylicious.proxy.future.Future;
 import io.kroxylicious.proxy.future.Promise;
+import io.kroxylicious.proxy.internal.future.PromiseImpl;
 
 /**
  * Implementation of {@link KrpcFilterContext}.
+ *
+ * <p>A context is {@linkplain #reset(DecodedFrame, ChannelPromise) reset} for each frame dispatched to the filter,
+ * so that the {@link FilterHandler} can reuse it for the next frame once the filter is done with it
+ * (see {@link #isReusable()}), rather than allocating a context per frame.</p>
  */
 class DefaultFilterContext implements KrpcFilterContext {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultFilterContext.class);
 
-    private final DecodedFrame<?, ?> decodedFrame;
     private final ChannelHandlerContext channelContext;
-    private final ChannelPromise promise;
     private final KrpcFilter filter;
     private final long timeoutMs;
+    private final TopicMetadataCache topicMetadata;
+    private DecodedFrame<?, ?> decodedFrame;
+    private ChannelPromise promise;
+    private boolean forwarded;
+    private boolean sentRequest;
+    /** The time spent in the handlers which the filter has passed the current frame, or requests of its own, on to */
+    private long passedOnNanos;
 
     DefaultFilterContext(KrpcFilter filter,
                          ChannelHandlerContext channelContext,
-                         DecodedFrame<?, ?> decodedFrame,
-                         ChannelPromise promise,
-                         long timeoutMs) {
+                         long timeoutMs,
+                         TopicMetadataCache topicMetadata) {
         this.filter = filter;
         this.channelContext = channelContext;
+        this.timeoutMs = timeoutMs;
+        this.topicMetadata = topicMetadata;
+    }
+
+    /**
+     * Prepares this context for dispatching the given frame to the filter.
+     * @param decodedFrame The frame, or null to release the previous one.
+     * @param promise The promise of the write of a request, or null for a response.
+     */
+    void reset(DecodedFrame<?, ?> decodedFrame, ChannelPromise promise) {
         this.decodedFrame = decodedFrame;
         this.promise = promise;
-        this.timeoutMs = timeoutMs;
+        this.forwarded = false;
+        this.sentRequest = false;
+        this.passedOnNanos = 0;
+    }
+
+    /**
+     * @return The time, in nanoseconds, which the filter's handling of the current frame has spent
+     * in the handlers it passed the frame, or requests of its own, on to. That time isn't the filter's own.
+     */
+    long passedOnNanos() {
+        return passedOnNanos;
+    }
+
+    /**
+     * @return Whether the filter has finished with the current frame, having forwarded it,
+     * and has not sent any requests of its own, whose completion might use this context.
+     * A filter which neither forwarded nor dropped the frame by the time its {@code on*()} method returns
+     * may forward it later, so its context mustn't be reused.
+     */
+    boolean isReusable() {
+        return forwarded && !sentRequest;
     }
 
     /**
@@ -60,7 +99,7 @@ class DefaultFilterContext implements KrpcFilterContext {
     }
 
     /**
-     * Allocate a buffer with the given {@code initialCapacity}.
+     * Allocate a buffer with the given {@code initialCapacity}, of the kind the channel's allocator prefers for I/O.
      * The returned buffer will be released automatically
      * TODO when?
      * @param initialCapacity The initial capacity of the buffer.
@@ -68,7 +107,23 @@ class DefaultFilterContext implements KrpcFilterContext {
      */
     @Override
     public ByteBuf allocate(int initialCapacity) {
-        final ByteBuf buffer = channelContext.alloc().heapBuffer(initialCapacity);
+        return add(channelContext.alloc().ioBuffer(initialCapacity));
+    }
+
+    /**
+     * Allocate a direct or heap buffer with the given {@code initialCapacity}.
+     * The returned buffer will be released automatically
+     * @param initialCapacity The initial capacity of the buffer.
+     * @param direct Whether the buffer should be direct.
+     * @return The allocated buffer.
+     */
+    @Override
+    public ByteBuf allocate(int initialCapacity, boolean direct) {
+        return add(direct ? channelContext.alloc().directBuffer(initialCapacity) : channelContext.alloc().heapBuffer(initialCapacity));
+    }
+
+    private ByteBuf add(ByteBuf buffer) {
+        // Released along with the frame
         decodedFrame.add(buffer);
         return buffer;
     }
@@ -84,20 +139,23 @@ class DefaultFilterContext implements KrpcFilterContext {
             throw new IllegalStateException();
         }
         // check it's a request
-        String name = message.getClass().getName();
-        if (!name.endsWith("RequestData")) {
-            throw new AssertionError("Attempt to use forwardRequest with a non-request: " + name);
+        if (!(decodedFrame instanceof DecodedRequestFrame)) {
+            throw new AssertionError("Attempt to use forwardRequest with a non-request: " + message.getClass().getName());
         }
 
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("{}: Forwarding request: {}", channelDescriptor(), decodedFrame);
         }
         // TODO check we've not forwarded it already
+        forwarded = true;
+        long startNanos = System.nanoTime();
         channelContext.write(decodedFrame, promise);
+        passedOnNanos += System.nanoTime() - startNanos;
     }
 
     @Override
     public <T extends ApiMessage> Future<T> sendRequest(short apiVersion, ApiMessage message) {
+        sentRequest = true;
         short key = message.apiKey();
         var apiKey = ApiKeys.forId(key);
         short headerVersion = apiKey.requestHeaderVersion(apiVersion);
@@ -110,7 +168,8 @@ class DefaultFilterContext implements KrpcFilterContext {
         }
         boolean hasResponse = apiKey != ApiKeys.PRODUCE
                 || ((ProduceRequestData) message).acks() != 0;
-        var filterPromise = Promise.<T> promise();
+        // The promise is completed on this channel's event loop, so needn't be synchronized
+        Promise<T> filterPromise = new PromiseImpl<>(channelContext.executor());
         var frame = new InternalRequestFrame<>(
                 apiVersion, -1, hasResponse,
                 filter, filterPromise, header, message);
@@ -123,28 +182,25 @@ class DefaultFilterContext implements KrpcFilterContext {
         // outboundCtx.write(frame, writePromise);
         // }
         // else {
+        long startNanos = System.nanoTime();
         channelContext.writeAndFlush(frame, writePromise);
+        passedOnNanos += System.nanoTime() - startNanos;
         // }
 
-        if (!hasResponse) {
-            // Complete the filter promise for an ack-less Produce
-            // based on the success of the channel write
-            // (for all other requests the filter promise will be completed
-            // when handling the response).
-            writePromise.addListener(f -> {
-                if (f.isSuccess()) {
-                    filterPromise.complete(null);
-                }
-                else {
-                    filterPromise.fail(f.cause());
-                }
-            });
-        }
-
-        channelContext.executor().schedule(() -> {
-            LOGGER.debug("{}: Timing out {} request after {}ms", channelContext, apiKey, timeoutMs);
-            filterPromise.tryFail(new TimeoutException());
-        }, timeoutMs, TimeUnit.MILLISECONDS);
+        // Complete the filter promise for an ack-less Produce
+        // based on the success of the channel write
+        // (for all other requests the filter promise will be completed
+        // when handling the response, unless the write fails).
+        writePromise.addListener(f -> {
+            if (!f.isSuccess()) {
+                filterPromise.tryFail(f.cause());
+            }
+            else if (!hasResponse) {
+                filterPromise.complete(null);
+            }
+        });
+
+        RequestTimeouts.forEventLoop(channelContext.executor()).add(filterPromise, timeoutMs, channelContext.channel(), apiKey);
         return filterPromise.future();
     }
 
@@ -156,16 +212,22 @@ class DefaultFilterContext implements KrpcFilterContext {
     @Override
     public void forwardResponse(ApiMessage response) {
         // check it's a response
-        String name = response.getClass().getName();
-        if (!name.endsWith("ResponseData")) {
-            throw new AssertionError("Attempt to use forwardResponse with a non-response: " + name);
+        if (!(decodedFrame instanceof DecodedResponseFrame)) {
+            throw new AssertionError("Attempt to use forwardResponse with a non-response: " + response.getClass().getName());
         }
         // TODO check we've not forwarded it already
+        forwarded = true;
 
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("{}: Forwarding response: {}", channelDescriptor(), decodedFrame);
         }
+        long startNanos = System.nanoTime();
         channelContext.fireChannelRead(decodedFrame);
+        passedOnNanos += System.nanoTime() - startNanos;
     }
 
+    @Override
+    public TopicMetadataCache topicMetadata() {
+        return topicMetadata;
+    }
 }
@@ -0,0 +1,158 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.kafka.common.Uuid;
+import org.apache.kafka.common.message.CreateTopicsResponseData;
+import org.apache.kafka.common.message.DeleteTopicsResponseData;
+import org.apache.kafka.common.message.MetadataResponseData;
+import org.apache.kafka.common.protocol.ApiMessage;
+import org.apache.kafka.common.protocol.Errors;
+
+import io.kroxylicious.proxy.filter.TopicMetadataCache;
+
+/**
+ * A {@link TopicMetadataCache} which is updated with the Metadata, CreateTopics and DeleteTopics responses
+ * seen on any connection (by a {@link TopicMetadataHandler}), and which is safe to use from any thread.
+ */
+public class DefaultTopicMetadataCache implements TopicMetadataCache {
+
+    private static final int[] NO_LEADERS = new int[0];
+
+    /** What's known of a topic, which is replaced, rather than modified, when more is learned. */
+    private static final class Topic {
+        private final Uuid id;
+        private final int[] leaders;
+
+        Topic(Uuid id, int[] leaders) {
+            this.id = id;
+            this.leaders = leaders;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Topic> topics = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Uuid, String> names = new ConcurrentHashMap<>();
+
+    @Override
+    public String topicName(Uuid topicId) {
+        return names.get(topicId);
+    }
+
+    @Override
+    public Uuid topicId(String topicName) {
+        Topic topic = topics.get(topicName);
+        return topic == null ? null : topic.id;
+    }
+
+    @Override
+    public int partitionLeader(String topicName, int partition) {
+        Topic topic = topics.get(topicName);
+        if (topic == null || partition < 0 || partition >= topic.leaders.length) {
+            return -1;
+        }
+        return topic.leaders[partition];
+    }
+
+    /**
+     * Update the cache with what the given response says about topics, if it's a response which does.
+     * @param response The response body.
+     */
+    public void update(ApiMessage response) {
+        if (response instanceof MetadataResponseData) {
+            update((MetadataResponseData) response);
+        }
+        else if (response instanceof CreateTopicsResponseData) {
+            update((CreateTopicsResponseData) response);
+        }
+        else if (response instanceof DeleteTopicsResponseData) {
+            update((DeleteTopicsResponseData) response);
+        }
+    }
+
+    private void update(MetadataResponseData response) {
+        for (var topic : response.topics()) {
+            if (topic.errorCode() == Errors.NONE.code()) {
+                int[] leaders = NO_LEADERS;
+                for (var partition : topic.partitions()) {
+                    int index = partition.partitionIndex();
+                    if (index >= leaders.length) {
+                        int length = leaders.length;
+                        leaders = Arrays.copyOf(leaders, Math.max(index + 1, topic.partitions().size()));
+                        Arrays.fill(leaders, length, leaders.length, -1);
+                    }
+                    leaders[index] = partition.leaderId();
+                }
+                put(topic.name(), topic.topicId(), leaders);
+            }
+            else if (topic.errorCode() == Errors.UNKNOWN_TOPIC_OR_PARTITION.code()
+                    || topic.errorCode() == Errors.UNKNOWN_TOPIC_ID.code()) {
+                remove(topic.name(), topic.topicId());
+            }
+        }
+    }
+
+    private void update(CreateTopicsResponseData response) {
+        for (var topic : response.topics()) {
+            if (topic.errorCode() == Errors.NONE.code()) {
+                put(topic.name(), topic.topicId(), null);
+            }
+        }
+    }
+
+    private void update(DeleteTopicsResponseData response) {
+        for (var topic : response.responses()) {
+            if (topic.errorCode() == Errors.NONE.code()) {
+                remove(topic.name(), topic.topicId());
+            }
+        }
+    }
+
+    /**
+     * @param id The id, or the zero id if the response didn't include it.
+     * @param leaders The leaders, or null if the response didn't include them.
+     */
+    private void put(String name, Uuid id, int[] leaders) {
+        if (name == null) {
+            return;
+        }
+        Uuid knownId = Uuid.ZERO_UUID.equals(id) ? null : id;
+        Topic previous = topics.get(name);
+        if (previous != null) {
+            if (knownId == null) {
+                knownId = previous.id;
+            }
+            else if (!knownId.equals(previous.id) && previous.id != null) {
+                // The topic has been deleted and recreated
+                names.remove(previous.id, name);
+            }
+            if (leaders == null && knownId != null && knownId.equals(previous.id)) {
+                leaders = previous.leaders;
+            }
+        }
+        topics.put(name, new Topic(knownId, leaders == null ? NO_LEADERS : leaders));
+        if (knownId != null) {
+            names.put(knownId, name);
+        }
+    }
+
+    private void remove(String name, Uuid id) {
+        if (id != null && !Uuid.ZERO_UUID.equals(id)) {
+            String knownName = names.remove(id);
+            if (name == null) {
+                name = knownName;
+            }
+        }
+        if (name != null) {
+            Topic topic = topics.remove(name);
+            if (topic != null && topic.id != null) {
+                names.remove(topic.id, name);
+            }
+        }
+    }
+}
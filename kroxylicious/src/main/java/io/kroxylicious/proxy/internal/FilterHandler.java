@@ -11,12 +11,14 @@ import org.apache.kafka.common.protocol.ApiMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
 
 import io.kroxylicious.proxy.filter.KrpcFilter;
+import io.kroxylicious.proxy.filter.TopicMetadataCache;
+import io.kroxylicious.proxy.frame.DecodedFrame;
 import io.kroxylicious.proxy.frame.DecodedRequestFrame;
 import io.kroxylicious.proxy.frame.DecodedResponseFrame;
 import io.kroxylicious.proxy.frame.OpaqueRequestFrame;
@@ -34,10 +36,39 @@ public class FilterHandler
     private static final Logger LOGGER = LoggerFactory.getLogger(FilterHandler.class);
     private final KrpcFilter filter;
     private final long timeoutMs;
+    private final TopicMetadataCache topicMetadata;
+    /** A context which the filter has finished with, for reuse by the next frame */
+    private DefaultFilterContext idleContext;
 
     public FilterHandler(KrpcFilter filter, long timeoutMs) {
+        this(filter, timeoutMs, new DefaultTopicMetadataCache());
+    }
+
+    public FilterHandler(KrpcFilter filter, long timeoutMs, TopicMetadataCache topicMetadata) {
         this.filter = Objects.requireNonNull(filter);
         this.timeoutMs = Assertions.requireStrictlyPositive(timeoutMs, "timeout");
+        this.topicMetadata = Objects.requireNonNull(topicMetadata);
+    }
+
+    private DefaultFilterContext filterContext(ChannelHandlerContext ctx, DecodedFrame<?, ?> decodedFrame, ChannelPromise promise) {
+        DefaultFilterContext filterContext = idleContext;
+        if (filterContext == null) {
+            filterContext = new DefaultFilterContext(filter, ctx, timeoutMs, topicMetadata);
+        }
+        else {
+            // Taken, in case the filter re-enters this handler
+            idleContext = null;
+        }
+        filterContext.reset(decodedFrame, promise);
+        return filterContext;
+    }
+
+    private void recycle(DefaultFilterContext filterContext) {
+        if (filterContext.isReusable()) {
+            // Don't pin the frame in memory
+            filterContext.reset(null, null);
+            idleContext = filterContext;
+        }
     }
 
     String filterDescriptor() {
@@ -50,12 +81,17 @@ public class FilterHandler
             DecodedRequestFrame<?> decodedFrame = (DecodedRequestFrame<?>) msg;
             // Guard against invoking the filter unexpectedly
             if (filter.shouldDeserializeRequest(decodedFrame.apiKey(), decodedFrame.apiVersion())) {
-                var filterContext = new DefaultFilterContext(filter, ctx, decodedFrame, promise, timeoutMs);
+                var filterContext = filterContext(ctx, decodedFrame, promise);
                 if (LOGGER.isDebugEnabled()) {
                     LOGGER.debug("{}: Dispatching downstream {} request to filter{}: {}",
                             ctx.channel(), decodedFrame.apiKey(), filterDescriptor(), msg);
                 }
+                long startNanos = System.nanoTime();
                 filter.onRequest(decodedFrame, filterContext);
+                // Only this filter's own time, not that of the handlers after it, which a forward spends synchronously
+                ApiLatencyMetrics.FILTER.record(decodedFrame.apiKey().id, decodedFrame.apiVersion(),
+                        System.nanoTime() - startNanos - filterContext.passedOnNanos());
+                recycle(filterContext);
             }
             else {
                 ctx.write(msg, promise);
@@ -63,8 +99,9 @@ public class FilterHandler
         }
         else {
             if (!(msg instanceof OpaqueRequestFrame)
-                    && msg != Unpooled.EMPTY_BUFFER) {
+                    && !(msg instanceof ByteBuf)) {
                 // Unpooled.EMPTY_BUFFER is used by KafkaProxyFrontendHandler#closeOnFlush
+                // and other buffers are the continuations of streamed frames
                 // but otherwise we don't expect any other kind of message
                 LOGGER.warn("Unexpected message writing to upstream: {}", msg, new IllegalStateException());
             }
@@ -95,19 +132,25 @@ public class FilterHandler
                 }
             }
             else if (filter.shouldDeserializeResponse(decodedFrame.apiKey(), decodedFrame.apiVersion())) {
-                var filterContext = new DefaultFilterContext(filter, ctx, decodedFrame, null, timeoutMs);
+                var filterContext = filterContext(ctx, decodedFrame, null);
                 if (LOGGER.isDebugEnabled()) {
                     LOGGER.debug("{}: Dispatching upstream {} response to filter {}: {}",
                             ctx.channel(), decodedFrame.apiKey(), filterDescriptor(), msg);
                 }
+                long startNanos = System.nanoTime();
                 filter.onResponse(decodedFrame, filterContext);
+                ApiLatencyMetrics.FILTER.record(decodedFrame.apiKey().id, decodedFrame.apiVersion(),
+                        System.nanoTime() - startNanos - filterContext.passedOnNanos());
+                recycle(filterContext);
             }
             else {
                 ctx.fireChannelRead(msg);
             }
         }
         else {
-            if (!(msg instanceof OpaqueResponseFrame)) {
+            if (!(msg instanceof OpaqueResponseFrame)
+                    && !(msg instanceof ByteBuf)) {
+                // Buffers are the continuations of streamed frames
                 LOGGER.warn("Unexpected message reading from upstream: {}", msg, new IllegalStateException());
             }
             ctx.fireChannelRead(msg);
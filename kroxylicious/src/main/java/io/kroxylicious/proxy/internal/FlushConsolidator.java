@@ -0,0 +1,167 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * Decides when the flushes of a client channel reach the socket, and records how many writes each flush covers.
+ *
+ * <p>Responses are flushed to a client once the upstream channel they were read from has no more to read,
+ * so a client whose responses come from several upstream channels, or which is sent responses in several read cycles,
+ * gets a flush, and so a syscall, for each. Without limits each flush goes straight to the socket.
+ * With a limit on the number of writes a flush is put off until the event loop has finished its current I/O,
+ * so that the flushes of one pass over the ready channels become one, or until the writes since the last flush
+ * reach the limit on their number or their bytes, to bound the data waiting to be sent.</p>
+ *
+ * <p>The handler sits next to the socket, after any TLS handler, so it sees the bytes actually written.</p>
+ */
+public class FlushConsolidator extends ChannelDuplexHandler {
+
+    private final int maxWrites;
+    private final long maxBytes;
+    private final DistributionSummary writesPerFlush;
+
+    private int writes;
+    private long bytes;
+    private boolean readInProgress;
+    private boolean flushPending;
+    private boolean flushScheduled;
+    private ChannelHandlerContext ctx;
+    private final Runnable flushTask = () -> {
+        flushScheduled = false;
+        if (flushPending) {
+            flushNow(ctx);
+        }
+    };
+
+    /**
+     * @param maxWrites The number of writes after which a flush goes to the socket straight away,
+     * or 0 if every flush does.
+     * @param maxBytes The number of written bytes after which a flush goes to the socket straight away,
+     * or 0 for no limit. Only used when there's a limit on the number of writes.
+     * @param writesPerFlush The summary of the number of writes covered by each flush of the socket.
+     */
+    public FlushConsolidator(int maxWrites, int maxBytes, DistributionSummary writesPerFlush) {
+        this.maxWrites = maxWrites;
+        this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+        this.writesPerFlush = writesPerFlush;
+    }
+
+    /**
+     * @param cluster The name of the cluster whose clients' flushes are summarised.
+     * @return The summary of the number of writes covered by each flush to the clients of the given cluster.
+     */
+    public static DistributionSummary writesPerFlush(String cluster) {
+        return DistributionSummary.builder("kroxylicious.downstream.writes.per.flush")
+                .description("Number of writes to a client connection covered by each flush of its socket")
+                .tag("cluster", cluster)
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry);
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        writes++;
+        if (msg instanceof ByteBuf) {
+            bytes += ((ByteBuf) msg).readableBytes();
+        }
+        else if (msg instanceof ByteBufHolder) {
+            bytes += ((ByteBufHolder) msg).content().readableBytes();
+        }
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) {
+        if (maxWrites <= 0 || writes >= maxWrites || bytes >= maxBytes) {
+            flushNow(ctx);
+            return;
+        }
+        flushPending = true;
+        // A flush during a read of this channel waits for the read to complete, anything else for the event loop
+        if (!readInProgress && !flushScheduled) {
+            flushScheduled = true;
+            ctx.channel().eventLoop().execute(flushTask);
+        }
+    }
+
+    private void flushNow(ChannelHandlerContext ctx) {
+        flushPending = false;
+        if (writes > 0) {
+            writesPerFlush.record(writes);
+            writes = 0;
+            bytes = 0;
+        }
+        ctx.flush();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        readInProgress = true;
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        readInProgress = false;
+        if (flushPending) {
+            flushNow(ctx);
+        }
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        // Once the channel is unwritable there's no point holding back what's been written
+        if (flushPending && !ctx.channel().isWritable()) {
+            flushNow(ctx);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        if (flushPending) {
+            flushNow(ctx);
+        }
+        ctx.fireExceptionCaught(cause);
+    }
+
+    @Override
+    public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) {
+        if (flushPending) {
+            flushNow(ctx);
+        }
+        ctx.disconnect(promise);
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) {
+        if (flushPending) {
+            flushNow(ctx);
+        }
+        ctx.close(promise);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        if (flushPending) {
+            flushNow(ctx);
+        }
+    }
+}
@@ -78,6 +78,7 @@ public class KafkaProxyBackendHandler extends ChannelInboundHandlerAdapter {
             ctx.channel().config().setAutoRead(false);
             this.blockedOutboundCtx = ctx;
         }
+        frontendHandler.maybeStartPassthrough();
     }
 
     @Override
@@ -5,70 +5,85 @@
  */
 package io.kroxylicious.proxy.internal;
 
-import java.io.IOException;
-import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.kafka.common.message.ApiVersionsRequestData;
-import org.apache.kafka.common.message.ApiVersionsResponseData;
-import org.apache.kafka.common.message.ApiVersionsResponseDataJsonConverter;
-import org.apache.kafka.common.message.ResponseHeaderData;
 import org.apache.kafka.common.protocol.ApiKeys;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.epoll.AbstractEpollStreamChannel;
+import io.netty.channel.epoll.EpollChannelConfig;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollMode;
 import io.netty.handler.codec.haproxy.HAProxyMessage;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.ssl.SniCompletionEvent;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslHandler;
 
+import io.kroxylicious.proxy.bootstrap.FilterChainFactory;
+import io.kroxylicious.proxy.config.FilterDefinition;
 import io.kroxylicious.proxy.filter.KrpcFilter;
 import io.kroxylicious.proxy.filter.NetFilter;
 import io.kroxylicious.proxy.frame.DecodedRequestFrame;
-import io.kroxylicious.proxy.frame.DecodedResponseFrame;
+import io.kroxylicious.proxy.frame.OpaqueFrame;
 import io.kroxylicious.proxy.frame.RequestFrame;
 import io.kroxylicious.proxy.internal.codec.CorrelationManager;
 import io.kroxylicious.proxy.internal.codec.DecodePredicate;
+import io.kroxylicious.proxy.internal.codec.KafkaMessageDecoder;
+import io.kroxylicious.proxy.internal.codec.KafkaMessageEncoder;
 import io.kroxylicious.proxy.internal.codec.KafkaRequestEncoder;
 import io.kroxylicious.proxy.internal.codec.KafkaResponseDecoder;
+import io.kroxylicious.proxy.internal.filter.FilterChainConnector;
 import io.kroxylicious.proxy.tag.VisibleForTesting;
 
 public class KafkaProxyFrontendHandler
         extends ChannelInboundHandlerAdapter
-        implements NetFilter.NetFilterContext {
+        implements NetFilter.NetFilterContext, FilterChainConnector {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(KafkaProxyFrontendHandler.class);
 
-    /** Cache ApiVersions response which we use when returning ApiVersions ourselves */
-    private static final ApiVersionsResponseData API_VERSIONS_RESPONSE;
-    static {
-        var objectMapper = new ObjectMapper();
-        try (var parser = KafkaProxyFrontendHandler.class.getResourceAsStream("/ApiVersions-3.2.json")) {
-            API_VERSIONS_RESPONSE = ApiVersionsResponseDataJsonConverter.read(objectMapper.readTree(parser), (short) 3);
-        }
-        catch (IOException e) {
-            throw new UncheckedIOException(e);
-        }
-    }
+    private static final Timer CONNECT_LATENCY = connectLatencyTimer("new");
+    private static final Timer PREWARMED_CONNECT_LATENCY = connectLatencyTimer("prewarmed");
+    private static final Timer SHARED_CONNECT_LATENCY = connectLatencyTimer("shared");
 
     private final boolean logNetwork;
     private final boolean logFrames;
+    private final SslContext upstreamSslContext;
+    private final UpstreamConnectionPool upstreamPool;
+    private final PrewarmedUpstreamPool prewarmedPool;
+    private final int maxFrameSize;
+    private final DefaultTopicMetadataCache topicMetadata;
+    private final ApiVersionsCache apiVersions;
+    private final boolean passthrough;
+    private final int produceCoalescingWindowMicros;
 
     private ChannelHandlerContext outboundCtx;
     private KafkaProxyBackendHandler backendHandler;
     private boolean pendingFlushes;
+    // The correlations of our own upstream connection, or null if the connection is shared
+    private CorrelationManager upstreamCorrelations;
+    // Whether we'll switch to passthrough as soon as no request is awaiting a response
+    private boolean passthroughPending;
 
     private final NetFilter filter;
     private final SaslDecodePredicate dp;
@@ -84,6 +99,8 @@ public class KafkaProxyFrontendHandler
     // There can only be one such because auto read is disabled until outbound
     // channel activation
     private Object bufferedMsg;
+    // The continuations of the buffered message, if it's a streamed frame
+    private final List<ByteBuf> bufferedChunks = new ArrayList<>(0);
     // Flag if we receive a channelReadComplete() prior to outbound connection activation
     // so we can perform the channelReadComplete()/outbound flush & auto_read
     // once the outbound channel is active
@@ -128,10 +145,54 @@ public class KafkaProxyFrontendHandler
                               SaslDecodePredicate dp,
                               boolean logNetwork,
                               boolean logFrames) {
+        this(filter, dp, logNetwork, logFrames, null, null, null, 0, new DefaultTopicMetadataCache(), new ApiVersionsCache(), false, -1);
+    }
+
+    /**
+     * @param upstreamSslContext The TLS context of our upstream connections, or null if they don't use TLS.
+     * @param upstreamPool The pool of shared upstream connections, or null if each client connection
+     * should have upstream connections of its own.
+     * @param prewarmedPool The pool of idle upstream connections to adopt, or null if we should always connect ourselves.
+     * @param maxFrameSize The size, in bytes, of the largest response which will be buffered,
+     * or 0 if there is no limit.
+     * @param topicMetadata The topic metadata cache shared by all the connections.
+     * @param apiVersions The ApiVersions response which we use when returning ApiVersions ourselves.
+     * @param passthrough Whether to relay bytes, without decoding frames, once nothing needs decoding.
+     * @param produceCoalescingWindowMicros How long, in microseconds, held Produce requests wait for others to merge with,
+     * or -1 if Produce requests aren't merged.
+     */
+    KafkaProxyFrontendHandler(NetFilter filter,
+                              SaslDecodePredicate dp,
+                              boolean logNetwork,
+                              boolean logFrames,
+                              SslContext upstreamSslContext,
+                              UpstreamConnectionPool upstreamPool,
+                              PrewarmedUpstreamPool prewarmedPool,
+                              int maxFrameSize,
+                              DefaultTopicMetadataCache topicMetadata,
+                              ApiVersionsCache apiVersions,
+                              boolean passthrough,
+                              int produceCoalescingWindowMicros) {
         this.filter = filter;
         this.dp = dp;
         this.logNetwork = logNetwork;
         this.logFrames = logFrames;
+        this.upstreamSslContext = upstreamSslContext;
+        this.upstreamPool = upstreamPool;
+        this.prewarmedPool = prewarmedPool;
+        this.maxFrameSize = maxFrameSize;
+        this.topicMetadata = topicMetadata;
+        this.apiVersions = apiVersions;
+        this.passthrough = passthrough;
+        this.produceCoalescingWindowMicros = produceCoalescingWindowMicros;
+    }
+
+    private static Timer connectLatencyTimer(String upstream) {
+        return Timer.builder("kroxylicious.upstream.connect.latency")
+                .description("Time from a client connection selecting its broker to its upstream connection being connected")
+                .tag("upstream", upstream)
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry);
     }
 
     private IllegalStateException illegalState(String msg) {
@@ -154,6 +215,10 @@ public class KafkaProxyFrontendHandler
         // connection is complete, so first forward the buffered message
         forwardOutbound(ctx, bufferedMsg);
         bufferedMsg = null; // don't pin in memory once we no longer need it
+        for (ByteBuf chunk : bufferedChunks) {
+            forwardOutbound(ctx, chunk);
+        }
+        bufferedChunks.clear();
         if (pendingReadComplete) {
             pendingReadComplete = false;
             channelReadComplete(ctx);
@@ -188,7 +253,8 @@ public class KafkaProxyFrontendHandler
             else if ((state == State.START
                     || state == State.HA_PROXY)
                     && msg instanceof DecodedRequestFrame
-                    && ((DecodedRequestFrame<?>) msg).apiKey() == ApiKeys.API_VERSIONS) {
+                    && ((DecodedRequestFrame<?>) msg).apiKey() == ApiKeys.API_VERSIONS
+                    && apiVersions.hasResponse(((DecodedRequestFrame<?>) msg).apiVersion())) {
                 // This handler can respond to ApiVersions itself
                 writeApiVersionsResponse(ctx, (DecodedRequestFrame<ApiVersionsRequestData>) msg);
                 // Request to read the following request
@@ -214,6 +280,14 @@ public class KafkaProxyFrontendHandler
                 // Note filter.upstreamBroker will call back on the connect() method below
                 filter.selectServer(this);
             }
+            else if ((state == State.CONNECTING
+                    || state == State.CONNECTED)
+                    && msg instanceof ByteBuf
+                    && bufferedMsg instanceof OpaqueFrame
+                    && ((OpaqueFrame) bufferedMsg).isStreamed()) {
+                // The continuation of a streamed frame
+                bufferedChunks.add((ByteBuf) msg);
+            }
             else {
                 throw illegalState("Unexpected channelRead() message of " + msg.getClass());
             }
@@ -222,6 +296,18 @@ public class KafkaProxyFrontendHandler
 
     @Override
     public void initiateConnect(String remoteHost, int remotePort, KrpcFilter[] filters) {
+        long[] requestTimeoutsMs = new long[filters.length];
+        Arrays.fill(requestTimeoutsMs, FilterDefinition.DEFAULT_REQUEST_TIMEOUT_MS);
+        initiateConnect(remoteHost, remotePort, filters, requestTimeoutsMs, DecodePredicate.forFilters(filters));
+    }
+
+    @Override
+    public void initiateConnect(String remoteHost, int remotePort, FilterChainFactory filterChainFactory) {
+        KrpcFilter[] filters = filterChainFactory.createFilters();
+        initiateConnect(remoteHost, remotePort, filters, filterChainFactory.requestTimeoutsMs(), filterChainFactory.decodePredicate());
+    }
+
+    private void initiateConnect(String remoteHost, int remotePort, KrpcFilter[] filters, long[] requestTimeoutsMs, DecodePredicate filtersDecodePredicate) {
         if (backendHandler != null) {
             throw new IllegalStateException();
         }
@@ -229,41 +315,107 @@ public class KafkaProxyFrontendHandler
             LOGGER.debug("{}: Connecting to backend broker {}:{} using filters {}",
                     inboundCtx.channel().id(), remoteHost, remotePort, Arrays.toString(filters));
         }
-        var correlationManager = new CorrelationManager();
-
         final Channel inboundChannel = inboundCtx.channel();
+        backendHandler = new KafkaProxyBackendHandler(this, inboundCtx);
+
+        if (upstreamPool != null) {
+            initiateMultiplexedConnect(remoteHost, remotePort, filters, requestTimeoutsMs, filtersDecodePredicate);
+            return;
+        }
+        long startNanos = System.nanoTime();
+        Channel prewarmedChannel = prewarmedPool != null
+                ? prewarmedPool.take(inboundChannel.eventLoop(), inboundChannel.getClass(), remoteHost, remotePort)
+                : null;
+        if (prewarmedChannel != null) {
+            LOGGER.trace("Adopting idle connection to outbound {}:{}", remoteHost, remotePort);
+            ChannelPipeline pipeline = prewarmedChannel.pipeline();
+            pipeline.addLast(backendHandler);
+            addCodecAndFiltersToPipeline(filters, requestTimeoutsMs, pipeline, remoteHost, remotePort);
+            addConnectListener(prewarmedChannel.newSucceededFuture(), filtersDecodePredicate, PREWARMED_CONNECT_LATENCY, startNanos);
+            // The channel became active before it had our handlers
+            pipeline.fireChannelActive();
+            return;
+        }
 
         // Start the upstream connection attempt.
         Bootstrap b = new Bootstrap();
-        backendHandler = new KafkaProxyBackendHandler(this, inboundCtx);
         b.group(inboundChannel.eventLoop())
                 .channel(inboundChannel.getClass())
                 .handler(backendHandler)
                 .option(ChannelOption.AUTO_READ, true)
                 .option(ChannelOption.TCP_NODELAY, true);
+        if (inboundChannel.config() instanceof EpollChannelConfig) {
+            // Splicing needs both channels to be in the same mode
+            b.option(EpollChannelOption.EPOLL_MODE, ((EpollChannelConfig) inboundChannel.config()).getEpollMode());
+        }
 
         LOGGER.trace("Connecting to outbound {}:{}", remoteHost, remotePort);
         ChannelFuture connectFuture = initConnection(remoteHost, remotePort, b);
-        Channel outboundChannel = connectFuture.channel();
-        ChannelPipeline pipeline = outboundChannel.pipeline();
+        addCodecAndFiltersToPipeline(filters, requestTimeoutsMs, connectFuture.channel().pipeline(), remoteHost, remotePort);
 
+        addConnectListener(connectFuture, filtersDecodePredicate, CONNECT_LATENCY, startNanos);
+    }
+
+    /**
+     * Adds the handlers of a connection of our own ahead of the backend handler.
+     */
+    private void addCodecAndFiltersToPipeline(KrpcFilter[] filters, long[] requestTimeoutsMs, ChannelPipeline pipeline,
+                                              String remoteHost, int remotePort) {
+        var correlationManager = new CorrelationManager();
+        upstreamCorrelations = correlationManager;
         if (logFrames) {
             pipeline.addFirst("frameLogger", new LoggingHandler("io.kroxylicious.proxy.internal.UpstreamFrameLogger"));
         }
-        addFiltersToPipeline(filters, pipeline);
-        pipeline.addFirst("responseDecoder", new KafkaResponseDecoder(correlationManager));
+        addFiltersToPipeline(filters, requestTimeoutsMs, pipeline);
+        pipeline.addFirst("responseDecoder", maxFrameSize > 0
+                ? new KafkaResponseDecoder(correlationManager, dp, maxFrameSize, true)
+                : new KafkaResponseDecoder(correlationManager, dp));
         pipeline.addFirst("requestEncoder", new KafkaRequestEncoder(correlationManager));
         if (logNetwork) {
             pipeline.addFirst("networkLogger", new LoggingHandler("io.kroxylicious.proxy.internal.UpstreamNetworkLogger"));
         }
+        if (upstreamSslContext != null) {
+            // An adopted connection is already active, so the handshake starts as soon as this is added
+            pipeline.addFirst("ssl", SslContexts.newUpstreamHandler(upstreamSslContext, pipeline.channel().alloc(), remoteHost, remotePort));
+        }
+    }
 
+    /**
+     * Connects via a shared upstream connection from the pool.
+     * The outbound channel has the same handlers as a connection of our own, except for the codec,
+     * which belongs to the shared connection.
+     */
+    private void initiateMultiplexedConnect(String remoteHost, int remotePort, KrpcFilter[] filters, long[] requestTimeoutsMs,
+                                            DecodePredicate filtersDecodePredicate) {
+        final Channel inboundChannel = inboundCtx.channel();
+        long startNanos = System.nanoTime();
+        LOGGER.trace("Connecting to outbound {}:{} via a shared connection", remoteHost, remotePort);
+        Channel outboundChannel = upstreamPool.newChannel(inboundChannel.eventLoop(), inboundChannel.getClass(), remoteHost, remotePort);
+        ChannelPipeline pipeline = outboundChannel.pipeline();
+        pipeline.addLast(backendHandler);
+        if (logFrames) {
+            pipeline.addFirst("frameLogger", new LoggingHandler("io.kroxylicious.proxy.internal.UpstreamFrameLogger"));
+        }
+        addFiltersToPipeline(filters, requestTimeoutsMs, pipeline);
+
+        addConnectListener(outboundChannel.connect(InetSocketAddress.createUnresolved(remoteHost, remotePort)), filtersDecodePredicate,
+                SHARED_CONNECT_LATENCY, startNanos);
+    }
+
+    private void addConnectListener(ChannelFuture connectFuture, DecodePredicate filtersDecodePredicate, Timer connectLatency, long startNanos) {
+        final Channel inboundChannel = inboundCtx.channel();
         connectFuture.addListener(future -> {
             if (future.isSuccess()) {
+                connectLatency.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
                 state = State.CONNECTED;
                 LOGGER.trace("{}: Outbound connected", inboundCtx.channel().id());
                 // Now we know which filters are to be used we need to update the DecodePredicate
                 // so that the decoder starts decoding the messages that the filters want to intercept
-                dp.setDelegate(DecodePredicate.forFilters(filters));
+                dp.setDelegate(filtersDecodePredicate);
+                passthroughPending = passthrough
+                        && upstreamCorrelations != null
+                        && !dp.decodesForProxy()
+                        && DecodePredicate.decodesNothing(filtersDecodePredicate);
             }
             else {
                 state = State.FAILED;
@@ -274,15 +426,102 @@ public class KafkaProxyFrontendHandler
         });
     }
 
+    /**
+     * Switches this connection to passthrough, if nothing on it needs decoding, once no request is awaiting a response.
+     * From then on the client's correlation ids are valid on our upstream connection, so the codecs (and the filters,
+     * which have nothing to do) are removed from both channels and the bytes are relayed as they arrive.
+     * Where both channels are epoll channels without TLS the bytes are spliced from one socket to the other
+     * without being copied into user space.
+     * Called once the responses which have been read from the upstream channel have been flushed to the client.
+     * A flush which a {@link FlushConsolidator} is holding back leaves them unflushed, in which case passthrough waits
+     * until the next time the upstream channel is read.
+     */
+    void maybeStartPassthrough() {
+        if (!passthroughPending
+                || state != State.OUTBOUND_ACTIVE
+                || upstreamCorrelations.pendingRequests() > 0) {
+            return;
+        }
+        Channel inboundChannel = inboundCtx.channel();
+        Channel outboundChannel = outboundCtx.channel();
+        // Spliced bytes bypass the channels' outbound buffers and the flow control based on auto-read
+        if (!isIdle(inboundChannel) || !isIdle(outboundChannel)) {
+            return;
+        }
+        passthroughPending = false;
+        LOGGER.debug("{}: Passing through to {}", inboundChannel, outboundChannel);
+        removeCodecsAndFilters(outboundChannel.pipeline());
+        // Any part of the next request which the decoder has buffered is forwarded as it's removed
+        removeCodecsAndFilters(inboundChannel.pipeline());
+        if (canSplice(inboundChannel) && canSplice(outboundChannel)) {
+            splice(inboundChannel, outboundChannel);
+            splice(outboundChannel, inboundChannel);
+        }
+    }
+
+    private static boolean isIdle(Channel channel) {
+        var outboundBuffer = channel.unsafe().outboundBuffer();
+        // isEmpty() only counts flushed writes, but the unflushed ones mustn't be overtaken either
+        return outboundBuffer != null
+                && outboundBuffer.isEmpty()
+                && outboundBuffer.totalPendingWriteBytes() == 0
+                && channel.config().isAutoRead();
+    }
+
+    /**
+     * Removes the handlers which work on frames. Those which remain are safe to pass bytes through:
+     * a {@link ProduceCoalescer} is never added to a connection which can pass through, since it needs
+     * Produce requests decoded, and a {@link FlushConsolidator} just counts what's written,
+     * and has no flush held back once the channel is idle.
+     */
+    private static void removeCodecsAndFilters(ChannelPipeline pipeline) {
+        for (var entry : pipeline) {
+            ChannelHandler handler = entry.getValue();
+            if (handler instanceof KafkaMessageDecoder
+                    || handler instanceof KafkaMessageEncoder
+                    || handler instanceof FilterHandler
+                    || handler instanceof TopicMetadataHandler) {
+                pipeline.remove(handler);
+            }
+        }
+    }
+
+    private boolean canSplice(Channel channel) {
+        return channel instanceof AbstractEpollStreamChannel
+                && ((EpollChannelConfig) channel.config()).getEpollMode() == EpollMode.LEVEL_TRIGGERED
+                && channel.pipeline().get(SslHandler.class) == null
+                && !logNetwork;
+    }
+
+    private static void splice(Channel from, Channel to) {
+        // A splice completes once it has moved the given number of bytes, so it's renewed until either channel is closed
+        ((AbstractEpollStreamChannel) from).spliceTo((AbstractEpollStreamChannel) to, Integer.MAX_VALUE).addListener(future -> {
+            if (future.isSuccess()) {
+                if (from.isOpen() && to.isOpen()) {
+                    splice(from, to);
+                }
+            }
+            else if (from.isOpen()) {
+                LOGGER.debug("{}: Splicing to {} failed, closing", from, to, future.cause());
+                closeOnFlush(from);
+            }
+        });
+    }
+
     @VisibleForTesting
     ChannelFuture initConnection(String remoteHost, int remotePort, Bootstrap b) {
         return b.connect(remoteHost, remotePort);
     }
 
-    private void addFiltersToPipeline(KrpcFilter[] filters, ChannelPipeline pipeline) {
-        for (var filter : filters) {
-            // TODO configurable timeout
-            pipeline.addFirst(filter.toString(), new FilterHandler(filter, 20000));
+    private void addFiltersToPipeline(KrpcFilter[] filters, long[] requestTimeoutsMs, ChannelPipeline pipeline) {
+        for (int i = 0; i < filters.length; i++) {
+            pipeline.addFirst(filters[i].toString(), new FilterHandler(filters[i], requestTimeoutsMs[i], topicMetadata));
+        }
+        // Ahead of the filters, so the cache learns from the responses before any filter can change them
+        pipeline.addFirst("topicMetadata", new TopicMetadataHandler(topicMetadata));
+        if (produceCoalescingWindowMicros >= 0) {
+            // Next to the codecs, so the filters see each request and response of the client
+            pipeline.addFirst("produceCoalescer", new ProduceCoalescer(produceCoalescingWindowMicros));
         }
     }
 
@@ -322,13 +561,8 @@ public class KafkaProxyFrontendHandler
         this.clientSoftwareName = frame.body().clientSoftwareName();
         this.clientSoftwareVersion = frame.body().clientSoftwareVersion();
 
-        short apiVersion = frame.apiVersion();
-        int correlationId = frame.correlationId();
-        ResponseHeaderData header = new ResponseHeaderData()
-                .setCorrelationId(correlationId);
         LOGGER.debug("{}: Writing ApiVersions response", ctx.channel());
-        ctx.writeAndFlush(new DecodedResponseFrame<>(
-                apiVersion, correlationId, header, API_VERSIONS_RESPONSE));
+        ctx.writeAndFlush(apiVersions.responseFrame(ctx.alloc(), frame.apiVersion(), frame.correlationId()));
     }
 
     public void outboundWritabilityChanged(ChannelHandlerContext outboundCtx) {
@@ -400,7 +634,11 @@ public class KafkaProxyFrontendHandler
             if (sniCompletionEvent.isSuccess()) {
                 this.sniHostname = sniCompletionEvent.hostname();
             }
-            // TODO handle the failure case
+            else {
+                LOGGER.warn("{}: Couldn't read the SNI hostname, closing: {}", ctx.channel(), String.valueOf(sniCompletionEvent.cause()));
+                closeOnFlush(ctx.channel());
+                return;
+            }
         }
         else if (event instanceof AuthenticationEvent) {
             this.authentication = (AuthenticationEvent) event;
@@ -445,6 +683,11 @@ public class KafkaProxyFrontendHandler
         return inboundCtx.channel().remoteAddress();
     }
 
+    @Override
+    public SocketAddress localAddress() {
+        return inboundCtx.channel().localAddress();
+    }
+
     @Override
     public String authorizedId() {
         return authentication != null ? authentication.authorizationId() : null;
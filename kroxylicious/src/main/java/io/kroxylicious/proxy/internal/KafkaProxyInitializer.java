@@ -12,6 +12,7 @@ import org.apache.kafka.common.security.auth.AuthenticateCallbackHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.micrometer.core.instrument.DistributionSummary;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
@@ -23,6 +24,7 @@ import io.netty.handler.ssl.SslContext;
 import io.kroxylicious.proxy.filter.NetFilter;
 import io.kroxylicious.proxy.internal.codec.KafkaRequestDecoder;
 import io.kroxylicious.proxy.internal.codec.KafkaResponseEncoder;
+import io.kroxylicious.proxy.internal.codec.RequestLatencyTracker;
 
 public class KafkaProxyInitializer extends ChannelInitializer<SocketChannel> {
 
@@ -34,6 +36,19 @@ public class KafkaProxyInitializer extends ChannelInitializer<SocketChannel> {
     private final Map<KafkaAuthnHandler.SaslMechanism, AuthenticateCallbackHandler> authnHandlers;
     private final NetFilter netFilter;
     private final Optional<SslContext> sslContext;
+    private final SslContext upstreamSslContext;
+    private final UpstreamConnectionPool upstreamPool;
+    private final PrewarmedUpstreamPool prewarmedPool;
+    private final int maxFrameSize;
+    private final DefaultTopicMetadataCache topicMetadata;
+    private final boolean decodeTopicMetadata;
+    private final ApiVersionsCache apiVersions;
+    private final boolean passthrough;
+    private final boolean coalesceProduceRequests;
+    private final int produceCoalescingWindowMicros;
+    private final int flushMaxWrites;
+    private final int flushMaxBytes;
+    private final DistributionSummary writesPerFlush;
 
     public KafkaProxyInitializer(boolean haproxyProtocol,
                                  Map<KafkaAuthnHandler.SaslMechanism, AuthenticateCallbackHandler> authnMechanismHandlers,
@@ -41,12 +56,69 @@ public class KafkaProxyInitializer extends ChannelInitializer<SocketChannel> {
                                  boolean logNetwork,
                                  boolean logFrames,
                                  Optional<SslContext> sslContext) {
+        this(haproxyProtocol, authnMechanismHandlers, netFilter, logNetwork, logFrames, sslContext, null, null, null, 0, new DefaultTopicMetadataCache(), false,
+                new ApiVersionsCache(), false, false, 0, 0, 0, null);
+    }
+
+    /**
+     * @param upstreamSslContext The TLS context of the upstream connections, or null if they don't use TLS.
+     * @param upstreamPool The pool of shared upstream connections, or null if each client connection
+     * should have upstream connections of its own.
+     * @param prewarmedPool The pool of idle upstream connections for client connections to adopt, or null if
+     * client connections should connect upstream themselves. Only used when upstream connections are not shared.
+     * @param maxFrameSize The size, in bytes, of the largest frame which will be buffered, or 0 if there is no limit.
+     * Larger frames are streamed if they need not be decoded (and the upstream connection is not shared),
+     * otherwise they are rejected.
+     * @param topicMetadata The topic metadata cache shared by all the connections.
+     * @param decodeTopicMetadata Whether to decode all the responses from which the topic metadata cache learns.
+     * @param apiVersions The ApiVersions response the proxy sends itself.
+     * @param passthrough Whether connections relay bytes, without decoding frames, once nothing needs decoding.
+     * @param coalesceProduceRequests Whether each connection merges the Produce requests its client sends in quick succession.
+     * @param produceCoalescingWindowMicros How long, in microseconds, held Produce requests wait for others to merge with.
+     * @param flushMaxWrites The number of writes after which a client connection is flushed straight away,
+     * or 0 if it's flushed whenever asked.
+     * @param flushMaxBytes The number of written bytes after which a client connection is flushed straight away, or 0 for no limit.
+     * @param writesPerFlush The summary of the writes covered by each flush of a client connection,
+     * or null if the flushes of client connections are neither put off nor measured.
+     */
+    public KafkaProxyInitializer(boolean haproxyProtocol,
+                                 Map<KafkaAuthnHandler.SaslMechanism, AuthenticateCallbackHandler> authnMechanismHandlers,
+                                 NetFilter netFilter,
+                                 boolean logNetwork,
+                                 boolean logFrames,
+                                 Optional<SslContext> sslContext,
+                                 SslContext upstreamSslContext,
+                                 UpstreamConnectionPool upstreamPool,
+                                 PrewarmedUpstreamPool prewarmedPool,
+                                 int maxFrameSize,
+                                 DefaultTopicMetadataCache topicMetadata,
+                                 boolean decodeTopicMetadata,
+                                 ApiVersionsCache apiVersions,
+                                 boolean passthrough,
+                                 boolean coalesceProduceRequests,
+                                 int produceCoalescingWindowMicros,
+                                 int flushMaxWrites,
+                                 int flushMaxBytes,
+                                 DistributionSummary writesPerFlush) {
         this.haproxyProtocol = haproxyProtocol;
         this.authnHandlers = authnMechanismHandlers != null ? authnMechanismHandlers : Map.of();
         this.netFilter = netFilter;
         this.logNetwork = logNetwork;
         this.logFrames = logFrames;
         this.sslContext = sslContext;
+        this.upstreamSslContext = upstreamSslContext;
+        this.upstreamPool = upstreamPool;
+        this.prewarmedPool = prewarmedPool;
+        this.maxFrameSize = maxFrameSize;
+        this.topicMetadata = topicMetadata;
+        this.decodeTopicMetadata = decodeTopicMetadata;
+        this.apiVersions = apiVersions;
+        this.passthrough = passthrough;
+        this.coalesceProduceRequests = coalesceProduceRequests;
+        this.produceCoalescingWindowMicros = produceCoalescingWindowMicros;
+        this.flushMaxWrites = flushMaxWrites;
+        this.flushMaxBytes = flushMaxBytes;
+        this.writesPerFlush = writesPerFlush;
     }
 
     @Override
@@ -71,13 +143,18 @@ public class KafkaProxyInitializer extends ChannelInitializer<SocketChannel> {
             pipeline.addLast("HAProxyMessageDecoder", new HAProxyMessageDecoder());
         }
 
-        var dp = new SaslDecodePredicate(!authnHandlers.isEmpty());
+        var dp = new SaslDecodePredicate(!authnHandlers.isEmpty(), decodeTopicMetadata, coalesceProduceRequests);
         // The decoder, this only cares about the filters
         // because it needs to know whether to decode requests
-        KafkaRequestDecoder decoder = new KafkaRequestDecoder(dp);
+        // Streamed requests can't be interleaved with the requests of other clients on a shared connection
+        var latencyTracker = new RequestLatencyTracker();
+        KafkaRequestDecoder decoder = new KafkaRequestDecoder(dp,
+                maxFrameSize > 0 ? maxFrameSize : Integer.MAX_VALUE,
+                maxFrameSize > 0 && upstreamPool == null,
+                latencyTracker);
         pipeline.addLast("requestDecoder", decoder);
 
-        pipeline.addLast("responseEncoder", new KafkaResponseEncoder());
+        pipeline.addLast("responseEncoder", new KafkaResponseEncoder(KafkaResponseEncoder.DEFAULT_COMPOSITE_THRESHOLD, latencyTracker));
         if (logFrames) {
             pipeline.addLast("frameLogger", new LoggingHandler("io.kroxylicious.proxy.internal.DownstreamFrameLogger", LogLevel.INFO));
         }
@@ -87,7 +164,12 @@ public class KafkaProxyInitializer extends ChannelInitializer<SocketChannel> {
             pipeline.addLast(new KafkaAuthnHandler(ch, authnHandlers));
         }
 
-        pipeline.addLast("netHandler", new KafkaProxyFrontendHandler(netFilter, dp, logNetwork, logFrames));
+        pipeline.addLast("netHandler", new KafkaProxyFrontendHandler(netFilter, dp, logNetwork, logFrames, upstreamSslContext, upstreamPool, prewarmedPool, maxFrameSize,
+                topicMetadata, apiVersions, passthrough, coalesceProduceRequests ? produceCoalescingWindowMicros : -1));
+        if (writesPerFlush != null) {
+            // Next to the socket, after any TLS handler, so it decides when the bytes actually written are flushed
+            pipeline.addFirst("flushConsolidator", new FlushConsolidator(flushMaxWrites, flushMaxBytes, writesPerFlush));
+        }
         LOGGER.debug("{}: Initial pipeline: {}", ch, pipeline);
     }
 
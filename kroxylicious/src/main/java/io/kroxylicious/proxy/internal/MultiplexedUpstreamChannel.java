@@ -0,0 +1,305 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import java.net.SocketAddress;
+import java.nio.channels.AlreadyConnectedException;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.kafka.common.protocol.ApiKeys;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.AbstractChannel;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelMetadata;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultChannelConfig;
+import io.netty.channel.EventLoop;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.internal.StringUtil;
+
+import io.kroxylicious.proxy.frame.BareSaslRequest;
+import io.kroxylicious.proxy.frame.DecodedRequestFrame;
+import io.kroxylicious.proxy.frame.Frame;
+import io.kroxylicious.proxy.frame.OpaqueFrame;
+import io.kroxylicious.proxy.frame.OpaqueRequestFrame;
+import io.kroxylicious.proxy.internal.codec.MultiplexedFrame;
+
+/**
+ * A client connection's view of an upstream connection which is shared with other client connections
+ * on the same event loop.
+ * This has the same pipeline as an upstream connection of its own (filters and the
+ * {@link KafkaProxyBackendHandler}), but without the codec: requests written to it are passed to the shared
+ * connection as {@link MultiplexedFrame}s, and the shared connection's {@link MultiplexedUpstreamHandler}
+ * routes the corresponding responses back to it.
+ * Closing this channel does not close the shared connection.
+ * SASL requests can't be written to this channel, since authentication is per-connection,
+ * so a client authenticating the shared connection would authenticate every other client sharing it.
+ */
+class MultiplexedUpstreamChannel extends AbstractChannel {
+
+    private static final ChannelMetadata METADATA = new ChannelMetadata(false);
+
+    private enum State {
+        OPEN,
+        ACTIVE,
+        CLOSED
+    }
+
+    private final Channel upstream;
+    private final ChannelFuture upstreamConnectFuture;
+    private final MultiplexedUpstreamHandler upstreamHandler;
+    private final ChannelConfig config;
+    /** Responses received while auto read is disabled */
+    private final ArrayDeque<Frame> pendingResponses = new ArrayDeque<>();
+    private volatile State state = State.OPEN;
+    /** The number of requests at the front of the outbound buffer which have been written to the shared connection */
+    private int forwarding;
+    private int skipped;
+    /** The flushed requests which are yet to be written to the shared connection, reused by each write */
+    private final List<Object> unforwarded = new ArrayList<>();
+    private final ChannelOutboundBuffer.MessageProcessor collectUnforwarded = msg -> {
+        if (skipped < forwarding) {
+            skipped++;
+        }
+        else {
+            unforwarded.add(msg);
+        }
+        return true;
+    };
+    private final ChannelFutureListener forwarded = this::forwarded;
+
+    MultiplexedUpstreamChannel(ChannelFuture upstreamConnectFuture, MultiplexedUpstreamHandler upstreamHandler) {
+        super(upstreamConnectFuture.channel());
+        this.upstream = upstreamConnectFuture.channel();
+        this.upstreamConnectFuture = upstreamConnectFuture;
+        this.upstreamHandler = upstreamHandler;
+        this.config = new DefaultChannelConfig(this);
+    }
+
+    /**
+     * Called by the shared connection's handler with a response to one of this channel's requests.
+     */
+    void deliver(Frame frame) {
+        if (!isActive()) {
+            release(frame);
+        }
+        else if (config.isAutoRead() && pendingResponses.isEmpty()) {
+            pipeline().fireChannelRead(frame);
+        }
+        else {
+            pendingResponses.add(frame);
+        }
+    }
+
+    /**
+     * Releases a frame which is being discarded.
+     */
+    static void release(Frame frame) {
+        if (frame instanceof OpaqueFrame) {
+            ((OpaqueFrame) frame).release();
+        }
+        else {
+            ReferenceCountUtil.release(frame);
+        }
+    }
+
+    @Override
+    protected AbstractUnsafe newUnsafe() {
+        return new MultiplexedUnsafe();
+    }
+
+    @Override
+    protected boolean isCompatible(EventLoop loop) {
+        // Responses are delivered from the shared connection's event loop
+        return loop == upstream.eventLoop();
+    }
+
+    @Override
+    protected SocketAddress localAddress0() {
+        return upstream.localAddress();
+    }
+
+    @Override
+    protected SocketAddress remoteAddress0() {
+        return upstream.remoteAddress();
+    }
+
+    @Override
+    protected void doBind(SocketAddress localAddress) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected void doDisconnect() {
+        doClose();
+    }
+
+    @Override
+    protected void doClose() {
+        state = State.CLOSED;
+        forwarding = 0;
+        upstreamHandler.remove(this);
+        Frame frame;
+        while ((frame = pendingResponses.poll()) != null) {
+            release(frame);
+        }
+    }
+
+    @Override
+    protected void doBeginRead() {
+        // Called when auto read is (re-)enabled, so deliver the responses received while it was disabled
+        Frame frame;
+        boolean delivered = false;
+        while (isActive() && config.isAutoRead() && (frame = pendingResponses.poll()) != null) {
+            pipeline().fireChannelRead(frame);
+            delivered = true;
+        }
+        if (delivered) {
+            pipeline().fireChannelReadComplete();
+        }
+    }
+
+    @Override
+    protected Object filterOutboundMessage(Object msg) {
+        if (!(msg instanceof Frame)) {
+            throw new UnsupportedOperationException("Unsupported message type: " + StringUtil.simpleClassName(msg));
+        }
+        if (isSasl((Frame) msg)) {
+            // The channel only releases reference counted messages it rejects
+            if (msg instanceof OpaqueFrame) {
+                ((OpaqueFrame) msg).release();
+            }
+            throw new IllegalStateException("SASL authentication can't be passed through a shared upstream connection");
+        }
+        return msg;
+    }
+
+    private static boolean isSasl(Frame frame) {
+        short apiKey;
+        if (frame instanceof BareSaslRequest) {
+            return true;
+        }
+        else if (frame instanceof DecodedRequestFrame) {
+            apiKey = ((DecodedRequestFrame<?>) frame).body().apiKey();
+        }
+        else if (frame instanceof OpaqueRequestFrame) {
+            ByteBuf buf = ((OpaqueRequestFrame) frame).buf();
+            apiKey = buf.getShort(buf.readerIndex());
+        }
+        else {
+            return false;
+        }
+        return apiKey == ApiKeys.SASL_HANDSHAKE.id || apiKey == ApiKeys.SASL_AUTHENTICATE.id;
+    }
+
+    /**
+     * Writes the flushed requests which haven't been written yet to the shared connection.
+     * Each stays in the outbound buffer until its write to the shared connection completes,
+     * so that its promise gets the outcome of that write, and the buffer's size reflects what's yet to be written.
+     */
+    @Override
+    protected void doWrite(ChannelOutboundBuffer in) throws Exception {
+        skipped = 0;
+        in.forEachFlushedMessage(collectUnforwarded);
+        for (int i = 0; i < unforwarded.size(); i++) {
+            Object msg = unforwarded.get(i);
+            forwarding++;
+            // Ownership of the frame passes to the shared connection
+            ReferenceCountUtil.retain(msg);
+            ChannelPromise promise = upstream.newPromise();
+            promise.addListener(forwarded);
+            upstream.write(new MultiplexedFrame(this, (Frame) msg), promise);
+        }
+        unforwarded.clear();
+        upstream.flush();
+    }
+
+    /**
+     * Completes the oldest request written to the shared connection.
+     * The writes of a channel complete in the order they were made.
+     */
+    private void forwarded(ChannelFuture future) {
+        ChannelOutboundBuffer in = unsafe().outboundBuffer();
+        // Once closed, the outbound buffer has failed the requests itself
+        if (forwarding == 0 || in == null) {
+            return;
+        }
+        forwarding--;
+        if (future.isSuccess()) {
+            in.remove();
+        }
+        else {
+            in.remove(future.cause());
+        }
+    }
+
+    @Override
+    public boolean isWritable() {
+        return super.isWritable() && upstream.isWritable();
+    }
+
+    @Override
+    public ChannelConfig config() {
+        return config;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return state != State.CLOSED;
+    }
+
+    @Override
+    public boolean isActive() {
+        return state == State.ACTIVE;
+    }
+
+    @Override
+    public ChannelMetadata metadata() {
+        return METADATA;
+    }
+
+    private final class MultiplexedUnsafe extends AbstractUnsafe {
+        @Override
+        public void connect(SocketAddress remoteAddress, SocketAddress localAddress, ChannelPromise promise) {
+            if (!promise.setUncancellable() || !ensureOpen(promise)) {
+                return;
+            }
+            if (state == State.ACTIVE) {
+                promise.setFailure(new AlreadyConnectedException());
+                return;
+            }
+            // Always complete asynchronously, like a real connection, so the caller can add listeners
+            // to the returned future before the channel becomes active
+            upstreamConnectFuture.addListener(future -> eventLoop().execute(() -> {
+                if (!future.isSuccess()) {
+                    promise.tryFailure(future.cause());
+                    close(voidPromise());
+                }
+                else if (!isOpen()) {
+                    promise.tryFailure(new ClosedChannelException());
+                }
+                else if (!upstream.isActive()) {
+                    promise.tryFailure(new ClosedChannelException());
+                    close(voidPromise());
+                }
+                else {
+                    state = State.ACTIVE;
+                    upstreamHandler.add(MultiplexedUpstreamChannel.this);
+                    promise.trySuccess();
+                    pipeline().fireChannelActive();
+                }
+            }));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
+
+import io.kroxylicious.proxy.internal.codec.MultiplexedFrame;
+
+/**
+ * The last handler in the pipeline of an upstream connection which is shared between several client connections.
+ * It routes each response to the {@link MultiplexedUpstreamChannel} which sent the request, and closes all of those
+ * channels if the shared connection is closed.
+ */
+class MultiplexedUpstreamHandler extends ChannelInboundHandlerAdapter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MultiplexedUpstreamHandler.class);
+
+    private final Set<MultiplexedUpstreamChannel> channels = new LinkedHashSet<>();
+    /** The channels which have been delivered a response since the last read complete */
+    private final Set<MultiplexedUpstreamChannel> pendingReadComplete = new LinkedHashSet<>();
+
+    void add(MultiplexedUpstreamChannel channel) {
+        channels.add(channel);
+    }
+
+    void remove(MultiplexedUpstreamChannel channel) {
+        channels.remove(channel);
+        pendingReadComplete.remove(channel);
+    }
+
+    /**
+     * @return The number of client connections using the shared connection.
+     */
+    int channels() {
+        return channels.size();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (msg instanceof MultiplexedFrame) {
+            MultiplexedFrame multiplexedFrame = (MultiplexedFrame) msg;
+            MultiplexedUpstreamChannel channel = (MultiplexedUpstreamChannel) multiplexedFrame.channel();
+            if (channels.contains(channel)) {
+                channel.deliver(multiplexedFrame.frame());
+                pendingReadComplete.add(channel);
+            }
+            else {
+                LOGGER.trace("{}: Dropping response for closed channel {}", ctx.channel(), channel);
+                MultiplexedUpstreamChannel.release(multiplexedFrame.frame());
+            }
+        }
+        else {
+            LOGGER.warn("{}: Dropping unexpected message {}", ctx.channel(), msg);
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        if (pendingReadComplete.isEmpty()) {
+            return;
+        }
+        var completed = new ArrayList<>(pendingReadComplete);
+        pendingReadComplete.clear();
+        for (var channel : completed) {
+            channel.pipeline().fireChannelReadComplete();
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        for (var channel : new ArrayList<>(channels)) {
+            channel.pipeline().fireChannelWritabilityChanged();
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        LOGGER.trace("{}: Shared upstream connection inactive, closing {} client channels", ctx.channel(), channels.size());
+        for (var channel : new ArrayList<>(channels)) {
+            channel.close();
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        LOGGER.warn("Netty caught exception from a shared backend connection: {}", cause.getMessage(), cause);
+        ctx.close();
+    }
+}
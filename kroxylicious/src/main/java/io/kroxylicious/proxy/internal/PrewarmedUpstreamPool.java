@@ -0,0 +1,163 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.EventExecutor;
+
+import io.kroxylicious.proxy.tag.VisibleForTesting;
+
+/**
+ * A pool of idle upstream connections, which client connections on the same event loop adopt
+ * rather than connecting to the broker themselves.
+ * Each event loop keeps up to a fixed number of idle connections to each broker it has connected to,
+ * replacing each connection as it's adopted.
+ * This takes the broker's connection setup out of the latency of a client's first request,
+ * and spreads the connects of a storm of reconnecting clients over time.
+ * Unlike the {@link UpstreamConnectionPool}, each client has an upstream connection of its own,
+ * so this is suitable when the proxy passes SASL authentication through to the brokers.
+ */
+public class PrewarmedUpstreamPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PrewarmedUpstreamPool.class);
+
+    private final int idlePerBroker;
+    /** The idle connections of each event loop, which are only accessed from that event loop */
+    private final Map<EventLoop, Map<String, IdleConnections>> eventLoopConnections = new ConcurrentHashMap<>();
+
+    /**
+     * @param idlePerBroker The number of idle connections each event loop keeps to each broker.
+     */
+    public PrewarmedUpstreamPool(int idlePerBroker) {
+        if (idlePerBroker <= 0) {
+            throw new IllegalArgumentException("idlePerBroker must be positive");
+        }
+        this.idlePerBroker = idlePerBroker;
+    }
+
+    /**
+     * Opens the idle connections of every event loop in the given group to the given broker,
+     * e.g. to the bootstrap broker, ahead of any client connecting.
+     * @param group The event loops of the client connections.
+     * @param channelClass The type of channel used for the upstream connections.
+     * @param remoteHost The broker host.
+     * @param remotePort The broker port.
+     */
+    public void prewarm(EventLoopGroup group, Class<? extends Channel> channelClass, String remoteHost, int remotePort) {
+        for (EventExecutor executor : group) {
+            EventLoop eventLoop = (EventLoop) executor;
+            eventLoop.execute(() -> replenish(eventLoop, connections(eventLoop, remoteHost, remotePort), channelClass, remoteHost, remotePort));
+        }
+    }
+
+    /**
+     * Takes an idle connection to the given broker, if there is one, and starts opening its replacement.
+     * The connection is active and its pipeline is empty.
+     * Must be called from the given event loop.
+     * @param eventLoop The event loop of the client connection.
+     * @param channelClass The type of channel used for the upstream connections.
+     * @param remoteHost The broker host.
+     * @param remotePort The broker port.
+     * @return The connection, or null if there's no idle connection, in which case the caller should connect itself.
+     */
+    Channel take(EventLoop eventLoop, Class<? extends Channel> channelClass, String remoteHost, int remotePort) {
+        if (!eventLoop.inEventLoop()) {
+            throw new IllegalStateException("Not called from the event loop");
+        }
+        IdleConnections connections = connections(eventLoop, remoteHost, remotePort);
+        Channel channel = connections.idle.pollFirst();
+        replenish(eventLoop, connections, channelClass, remoteHost, remotePort);
+        if (channel != null) {
+            channel.pipeline().remove(IdleHandler.class);
+        }
+        return channel;
+    }
+
+    /**
+     * Must be called from the given event loop.
+     * @return The number of idle connections the given event loop has to the given broker.
+     */
+    @VisibleForTesting
+    int idle(EventLoop eventLoop, String remoteHost, int remotePort) {
+        if (!eventLoop.inEventLoop()) {
+            throw new IllegalStateException("Not called from the event loop");
+        }
+        return connections(eventLoop, remoteHost, remotePort).idle.size();
+    }
+
+    private IdleConnections connections(EventLoop eventLoop, String remoteHost, int remotePort) {
+        return eventLoopConnections.computeIfAbsent(eventLoop, loop -> new HashMap<>())
+                .computeIfAbsent(remoteHost + ":" + remotePort, address -> new IdleConnections());
+    }
+
+    private void replenish(EventLoop eventLoop, IdleConnections connections, Class<? extends Channel> channelClass, String remoteHost, int remotePort) {
+        while (connections.idle.size() + connections.connecting < idlePerBroker) {
+            connections.connecting++;
+            new Bootstrap()
+                    .group(eventLoop)
+                    .channel(channelClass)
+                    .handler(IdleHandler.INSTANCE)
+                    .option(ChannelOption.AUTO_READ, true)
+                    .option(ChannelOption.TCP_NODELAY, true)
+                    .connect(remoteHost, remotePort)
+                    .addListener((ChannelFutureListener) future -> {
+                        connections.connecting--;
+                        Channel channel = future.channel();
+                        if (future.isSuccess() && channel.isActive()) {
+                            connections.idle.addLast(channel);
+                            // The broker closes connections which are idle for too long
+                            channel.closeFuture().addListener(closed -> connections.idle.remove(channel));
+                        }
+                        else {
+                            // The next client connection will try again
+                            LOGGER.debug("Couldn't open an idle connection to {}:{}: {}", remoteHost, remotePort, String.valueOf(future.cause()));
+                        }
+                    });
+        }
+    }
+
+    private static final class IdleConnections {
+        private final ArrayDeque<Channel> idle = new ArrayDeque<>();
+        private int connecting;
+    }
+
+    /**
+     * The handler of a connection which no client has adopted yet. A broker has nothing to say to such a connection.
+     */
+    @ChannelHandler.Sharable
+    private static final class IdleHandler extends ChannelInboundHandlerAdapter {
+
+        private static final IdleHandler INSTANCE = new IdleHandler();
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ReferenceCountUtil.release(msg);
+            ctx.close();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            ctx.close();
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.message.ProduceRequestData;
+import org.apache.kafka.common.message.ProduceResponseData;
+import org.apache.kafka.common.message.ResponseHeaderData;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.protocol.Errors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.ReferenceCountUtil;
+
+import io.kroxylicious.proxy.frame.DecodedRequestFrame;
+import io.kroxylicious.proxy.frame.DecodedResponseFrame;
+
+/**
+ * Merges the small Produce requests which a client sends in quick succession, e.g. with {@code linger.ms=0},
+ * into a single upstream Produce request, and splits the broker's response back into a response to each of them.
+ * This reduces the rate of requests the broker has to handle.
+ *
+ * <p>The handler sits on an upstream channel, between the codecs and the filters, so the filters
+ * still see each request and response of the client. A Produce request is merged with those which follow it
+ * when they have the same version, {@code acks} and timeout, none is transactional or needs no response
+ * ({@code acks=0}), and no partition is produced to twice. Requests are never reordered: any other request
+ * is preceded by the Produce requests held before it.</p>
+ *
+ * <p>By default the held requests are sent on the next flush, so only the requests which are read from the client
+ * together get merged. With a window the flush of held requests is put off by up to the window,
+ * so that requests arriving during it can join them, at the cost of that much latency.</p>
+ */
+public class ProduceCoalescer extends ChannelDuplexHandler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProduceCoalescer.class);
+
+    private final long windowNanos;
+
+    // The Produce requests being held to be merged, with the promises of their writes
+    private final List<DecodedRequestFrame<ProduceRequestData>> pending = new ArrayList<>();
+    private final List<ChannelPromise> pendingPromises = new ArrayList<>();
+    private final Set<TopicPartition> pendingPartitions = new HashSet<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    // The requests merged into each request awaiting a response, by the correlation id of the merged request
+    private final Map<Integer, List<DecodedRequestFrame<ProduceRequestData>>> inFlight = new HashMap<>();
+
+    /**
+     * @param windowMicros How long, in microseconds, to put off flushing held requests,
+     * or 0 to flush them with the requests they were read with.
+     */
+    public ProduceCoalescer(int windowMicros) {
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+    }
+
+    private static boolean isMergeable(Object msg) {
+        if (!(msg instanceof DecodedRequestFrame)
+                || msg instanceof InternalRequestFrame
+                || ((DecodedRequestFrame<?>) msg).apiKey() != ApiKeys.PRODUCE) {
+            return false;
+        }
+        var body = (ProduceRequestData) ((DecodedRequestFrame<?>) msg).body();
+        return body.acks() != 0 && body.transactionalId() == null;
+    }
+
+    private boolean canJoinPending(DecodedRequestFrame<ProduceRequestData> frame) {
+        if (pending.isEmpty()) {
+            return true;
+        }
+        var first = pending.get(0);
+        if (first.apiVersion() != frame.apiVersion()
+                || first.body().acks() != frame.body().acks()
+                || first.body().timeoutMs() != frame.body().timeoutMs()) {
+            return false;
+        }
+        for (var topic : frame.body().topicData()) {
+            for (var partition : topic.partitionData()) {
+                if (pendingPartitions.contains(new TopicPartition(topic.name(), partition.index()))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        if (!isMergeable(msg)) {
+            writePending(ctx);
+            ctx.write(msg, promise);
+            return;
+        }
+        var frame = (DecodedRequestFrame<ProduceRequestData>) msg;
+        if (!canJoinPending(frame)) {
+            writePending(ctx);
+        }
+        pending.add(frame);
+        pendingPromises.add(promise);
+        for (var topic : frame.body().topicData()) {
+            for (var partition : topic.partitionData()) {
+                pendingPartitions.add(new TopicPartition(topic.name(), partition.index()));
+            }
+        }
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) {
+        if (windowNanos > 0 && !pending.isEmpty()) {
+            if (scheduledFlush == null) {
+                scheduledFlush = ctx.executor().schedule(() -> {
+                    scheduledFlush = null;
+                    writePending(ctx);
+                    ctx.flush();
+                }, windowNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        else {
+            writePending(ctx);
+        }
+        ctx.flush();
+    }
+
+    /**
+     * Writes the held requests, merged into one if there are several.
+     */
+    private void writePending(ChannelHandlerContext ctx) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        if (pending.size() == 1) {
+            ctx.write(pending.get(0), pendingPromises.get(0));
+        }
+        else {
+            var frames = List.copyOf(pending);
+            var promises = List.copyOf(pendingPromises);
+            var first = frames.get(0);
+            var merged = new ProduceRequestData()
+                    .setAcks(first.body().acks())
+                    .setTimeoutMs(first.body().timeoutMs());
+            for (var frame : frames) {
+                for (var topic : frame.body().topicData()) {
+                    // A topic can only belong to one collection, but its partitions can be shared
+                    var mergedTopic = merged.topicData().find(topic.name());
+                    if (mergedTopic == null) {
+                        mergedTopic = new ProduceRequestData.TopicProduceData().setName(topic.name());
+                        merged.topicData().add(mergedTopic);
+                    }
+                    mergedTopic.partitionData().addAll(topic.partitionData());
+                }
+            }
+            if (LOGGER.isTraceEnabled()) {
+                LOGGER.trace("{}: Merging {} Produce requests into one with correlation id {}", ctx.channel(), frames.size(), first.correlationId());
+            }
+            inFlight.put(first.correlationId(), frames);
+            // The merged request shares the records of the requests, so they're released once it's been written
+            ChannelPromise mergedPromise = ctx.newPromise();
+            mergedPromise.addListener(future -> {
+                for (int i = 0; i < frames.size(); i++) {
+                    ReferenceCountUtil.release(frames.get(i));
+                    if (future.isSuccess()) {
+                        promises.get(i).trySuccess();
+                    }
+                    else {
+                        promises.get(i).tryFailure(future.cause());
+                    }
+                }
+            });
+            ctx.write(new DecodedRequestFrame<>(first.apiVersion(), first.correlationId(), true, first.header(), merged), mergedPromise);
+        }
+        pending.clear();
+        pendingPromises.clear();
+        pendingPartitions.clear();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        List<DecodedRequestFrame<ProduceRequestData>> requests;
+        if (!(msg instanceof DecodedResponseFrame)
+                || inFlight.isEmpty()
+                || (requests = inFlight.remove(((DecodedResponseFrame<?>) msg).correlationId())) == null) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        var response = (DecodedResponseFrame<ProduceResponseData>) msg;
+        try {
+            for (var request : requests) {
+                var header = new ResponseHeaderData().setCorrelationId(request.correlationId());
+                ctx.fireChannelRead(new DecodedResponseFrame<>(request.apiVersion(), request.correlationId(), header, split(response.body(), request.body())));
+            }
+        }
+        finally {
+            response.release();
+        }
+    }
+
+    /**
+     * @return The part of the response to a merged request which is the response to the given request.
+     */
+    private static ProduceResponseData split(ProduceResponseData response, ProduceRequestData request) {
+        var result = new ProduceResponseData().setThrottleTimeMs(response.throttleTimeMs());
+        for (var topic : request.topicData()) {
+            var responseTopic = response.responses().find(topic.name());
+            var resultTopic = new ProduceResponseData.TopicProduceResponse().setName(topic.name());
+            for (var partition : topic.partitionData()) {
+                ProduceResponseData.PartitionProduceResponse partitionResponse = null;
+                if (responseTopic != null) {
+                    for (var candidate : responseTopic.partitionResponses()) {
+                        if (candidate.index() == partition.index()) {
+                            partitionResponse = candidate;
+                            break;
+                        }
+                    }
+                }
+                if (partitionResponse == null) {
+                    // Brokers respond for every partition, but the client must not be left waiting if one doesn't
+                    partitionResponse = new ProduceResponseData.PartitionProduceResponse()
+                            .setIndex(partition.index())
+                            .setErrorCode(Errors.UNKNOWN_SERVER_ERROR.code());
+                }
+                resultTopic.partitionResponses().add(partitionResponse);
+            }
+            result.responses().add(resultTopic);
+        }
+        return result;
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        for (int i = 0; i < pending.size(); i++) {
+            ReferenceCountUtil.release(pending.get(i));
+            ChannelPromise promise = pendingPromises.get(i);
+            if (!promise.isVoid()) {
+                promise.tryFailure(new ClosedChannelException());
+            }
+        }
+        pending.clear();
+        pendingPromises.clear();
+        pendingPartitions.clear();
+        inFlight.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "ProduceCoalescer(" +
+                "windowNanos=" + windowNanos +
+                ", pending=" + pending.size() +
+                ", inFlight=" + inFlight.size() +
+                ')';
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.channel.Channel;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.FastThreadLocal;
+
+import io.kroxylicious.proxy.future.AsyncResult;
+import io.kroxylicious.proxy.future.Handler;
+import io.kroxylicious.proxy.future.Promise;
+import io.kroxylicious.proxy.tag.VisibleForTesting;
+
+/**
+ * Times out the requests which filters send via {@link DefaultFilterContext#sendRequest(short, org.apache.kafka.common.protocol.ApiMessage)}.
+ *
+ * <p>There is one instance per event loop, used only on that event loop.
+ * Rather than scheduling a task per request, the requests are held in a hashed timing wheel:
+ * a ring of slots each holding a list of the requests whose deadline falls in the slot's tick.
+ * A single task, scheduled only while there are requests outstanding, advances the wheel each tick and
+ * fails the requests whose deadline has passed. A request is removed from the wheel as soon as its
+ * promise is completed, so the wheel only ever holds the requests which are actually outstanding.</p>
+ */
+final class RequestTimeouts {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestTimeouts.class);
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final int WHEEL_SIZE = 512;
+
+    private static final FastThreadLocal<RequestTimeouts> INSTANCES = new FastThreadLocal<>();
+
+    private final EventExecutor executor;
+    private final long startNanos;
+    private final Timeout<?>[] slots = new Timeout<?>[WHEEL_SIZE];
+    private final Runnable tickTask = this::tick;
+    private long processedTick;
+    private boolean tickScheduled;
+    private int size;
+
+    @VisibleForTesting
+    RequestTimeouts(EventExecutor executor) {
+        this.executor = executor;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * @param executor The event loop, which must be the current thread's.
+     * @return The instance for the given event loop.
+     */
+    static RequestTimeouts forEventLoop(EventExecutor executor) {
+        assert executor.inEventLoop();
+        RequestTimeouts timeouts = INSTANCES.get();
+        // An embedded event loop runs on the thread that uses it, so a thread can have more than one
+        if (timeouts == null || timeouts.executor != executor) {
+            timeouts = new RequestTimeouts(executor);
+            INSTANCES.set(timeouts);
+        }
+        return timeouts;
+    }
+
+    /**
+     * Fail the given promise with a {@link TimeoutException} if it's not completed within the given timeout.
+     * @param promise The promise of the response.
+     * @param timeoutMs The timeout, in milliseconds.
+     * @param channel The channel the request was sent on.
+     * @param apiKey The API key of the request.
+     * @param <T> The type of the response.
+     */
+    <T> void add(Promise<T> promise, long timeoutMs, Channel channel, ApiKeys apiKey) {
+        long deadlineTick = (System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMs) + TICK_NANOS - 1) / TICK_NANOS;
+        var timeout = new Timeout<>(promise, timeoutMs, channel, apiKey, deadlineTick);
+        link(timeout);
+        promise.future().onComplete(timeout);
+        if (!tickScheduled) {
+            scheduleTick();
+        }
+    }
+
+    /**
+     * @return The number of requests which are outstanding.
+     */
+    int size() {
+        return size;
+    }
+
+    private void scheduleTick() {
+        tickScheduled = true;
+        executor.schedule(tickTask, TICK_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    private void tick() {
+        tickScheduled = false;
+        long currentTick = (System.nanoTime() - startNanos) / TICK_NANOS;
+        // A whole turn of the wheel visits every slot, however far behind the ticks are
+        for (long tick = Math.max(processedTick + 1, currentTick - WHEEL_SIZE + 1); tick <= currentTick; tick++) {
+            expire((int) (tick & (WHEEL_SIZE - 1)), currentTick);
+        }
+        processedTick = currentTick;
+        if (size > 0) {
+            scheduleTick();
+        }
+    }
+
+    private void expire(int slot, long currentTick) {
+        // The last entry passed over, which stays in the slot for a later turn of the wheel
+        Timeout<?> kept = null;
+        Timeout<?> timeout = slots[slot];
+        while (timeout != null) {
+            if (timeout.deadlineTick <= currentTick) {
+                unlink(timeout);
+                // Failing the promise runs its callbacks, which can complete, and so unlink, any other request,
+                // so carry on from an entry which is known to still be in the slot
+                timeout.expire();
+                timeout = kept != null && kept.slot == slot ? kept.next : slots[slot];
+            }
+            else {
+                kept = timeout;
+                timeout = timeout.next;
+            }
+        }
+    }
+
+    private void link(Timeout<?> timeout) {
+        int slot = (int) (timeout.deadlineTick & (WHEEL_SIZE - 1));
+        timeout.slot = slot;
+        timeout.next = slots[slot];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        slots[slot] = timeout;
+        size++;
+    }
+
+    private void unlink(Timeout<?> timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        }
+        else {
+            slots[timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.slot = -1;
+        size--;
+    }
+
+    /**
+     * An outstanding request, which removes itself from the wheel when its promise is completed.
+     */
+    private final class Timeout<T> implements Handler<AsyncResult<T>> {
+
+        private final Promise<T> promise;
+        private final long timeoutMs;
+        private final Channel channel;
+        private final ApiKeys apiKey;
+        private final long deadlineTick;
+        private int slot;
+        private Timeout<?> prev;
+        private Timeout<?> next;
+
+        Timeout(Promise<T> promise, long timeoutMs, Channel channel, ApiKeys apiKey, long deadlineTick) {
+            this.promise = promise;
+            this.timeoutMs = timeoutMs;
+            this.channel = channel;
+            this.apiKey = apiKey;
+            this.deadlineTick = deadlineTick;
+        }
+
+        @Override
+        public void handle(AsyncResult<T> result) {
+            if (slot >= 0) {
+                unlink(this);
+            }
+        }
+
+        void expire() {
+            LOGGER.debug("{}: Timing out {} request after {}ms", channel, apiKey, timeoutMs);
+            promise.tryFail(new TimeoutException());
+        }
+    }
+}
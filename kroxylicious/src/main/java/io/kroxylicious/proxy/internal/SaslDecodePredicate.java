@@ -5,6 +5,8 @@
  */
 package io.kroxylicious.proxy.internal;
 
+import java.util.Set;
+
 import org.apache.kafka.common.protocol.ApiKeys;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,10 +18,43 @@ class SaslDecodePredicate implements DecodePredicate {
     private static final Logger LOGGER = LoggerFactory.getLogger(SaslDecodePredicate.class);
 
     private final boolean handleSasl;
+    private final boolean decodeTopicMetadata;
+    private final boolean decodeProduceRequests;
     private DecodePredicate delegate = null;
 
     public SaslDecodePredicate(boolean handleSasl) {
+        this(handleSasl, false);
+    }
+
+    /**
+     * @param handleSasl Whether the proxy handles SASL itself.
+     * @param decodeTopicMetadata Whether the responses from which the proxy learns topic metadata are always decoded.
+     */
+    public SaslDecodePredicate(boolean handleSasl, boolean decodeTopicMetadata) {
+        this(handleSasl, decodeTopicMetadata, false);
+    }
+
+    /**
+     * @param handleSasl Whether the proxy handles SASL itself.
+     * @param decodeTopicMetadata Whether the responses from which the proxy learns topic metadata are always decoded.
+     * @param decodeProduceRequests Whether Produce requests are always decoded, so that they can be merged.
+     */
+    public SaslDecodePredicate(boolean handleSasl, boolean decodeTopicMetadata, boolean decodeProduceRequests) {
         this.handleSasl = handleSasl;
+        this.decodeTopicMetadata = decodeTopicMetadata;
+        this.decodeProduceRequests = decodeProduceRequests;
+    }
+
+    private boolean isTopicMetadata(ApiKeys apiKey) {
+        return decodeTopicMetadata
+                && (apiKey == ApiKeys.METADATA || apiKey == ApiKeys.CREATE_TOPICS || apiKey == ApiKeys.DELETE_TOPICS);
+    }
+
+    /**
+     * @return Whether the proxy itself needs some requests or responses decoded, whatever the filters need.
+     */
+    boolean decodesForProxy() {
+        return handleSasl || decodeTopicMetadata || decodeProduceRequests;
     }
 
     public void setDelegate(DecodePredicate delegate) {
@@ -54,6 +89,9 @@ class SaslDecodePredicate implements DecodePredicate {
                 || apiKey == ApiKeys.SASL_AUTHENTICATE) {
             result = handleSasl;
         }
+        else if (apiKey == ApiKeys.PRODUCE && decodeProduceRequests) {
+            result = true;
+        }
         else {
             result = delegate == null || delegate.shouldDecodeRequest(apiKey, apiVersion);
         }
@@ -62,13 +100,21 @@ class SaslDecodePredicate implements DecodePredicate {
 
     @Override
     public boolean shouldDecodeResponse(ApiKeys apiKey, short apiVersion) {
-        return delegate == null || delegate.shouldDecodeResponse(apiKey, apiVersion);
+        return delegate == null || isTopicMetadata(apiKey) || delegate.shouldDecodeResponse(apiKey, apiVersion);
+    }
+
+    @Override
+    public Set<String> responseFields(ApiKeys apiKey, short apiVersion) {
+        // The topic metadata responses are decoded in full
+        return delegate == null || isTopicMetadata(apiKey) ? null : delegate.responseFields(apiKey, apiVersion);
     }
 
     @Override
     public String toString() {
         return "SaslDecodePredicate(" +
                 "handleSasl=" + handleSasl +
+                ", decodeTopicMetadata=" + decodeTopicMetadata +
+                ", decodeProduceRequests=" + decodeProduceRequests +
                 ", delegate=" + delegate +
                 ')';
     }
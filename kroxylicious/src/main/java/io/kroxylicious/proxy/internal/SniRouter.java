@@ -0,0 +1,133 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.ssl.SniCompletionEvent;
+import io.netty.handler.ssl.SniHandler;
+import io.netty.handler.ssl.SslContext;
+
+import io.kroxylicious.proxy.internal.filter.SniBrokerRoutes;
+
+/**
+ * The initializer of a TLS listener shared by several clusters, whose clients identify the cluster and broker they want
+ * by their <a href="https://en.wikipedia.org/wiki/Server_Name_Indication">SNI</a> hostname.
+ * Once the client has sent its SNI hostname, the connection is initialized by the initializer of the cluster
+ * which has that hostname, which routes it to the broker, just as if the cluster had a listener of its own.
+ *
+ * <p>The clusters are found by hashing, rather than by matching each cluster's hostnames in turn,
+ * so that the cost of routing a connection doesn't grow with the number of clusters.
+ * A broker hostname is matched by trying each run of digits in it as the broker id,
+ * which takes a lookup or two for typical hostnames.</p>
+ */
+public class SniRouter extends ChannelInitializer<SocketChannel> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SniRouter.class);
+
+    private final SslContext sslContext;
+    private final Map<String, KafkaProxyInitializer> bootstrapHostnames = new HashMap<>();
+    private final Map<String, KafkaProxyInitializer> brokerHostnamePatterns = new HashMap<>();
+    private final RoutingHandler routingHandler = new RoutingHandler();
+
+    /**
+     * @param sslContext The TLS context of the listener.
+     */
+    public SniRouter(SslContext sslContext) {
+        this.sslContext = sslContext;
+    }
+
+    /**
+     * Adds a cluster. All clusters must be added before the listener starts.
+     * @param routes The cluster's routes.
+     * @param initializer The initializer of the cluster's client connections, which must not add a TLS handler of its own.
+     */
+    public void addCluster(SniBrokerRoutes routes, KafkaProxyInitializer initializer) {
+        if (bootstrapHostnames.putIfAbsent(routes.bootstrapHostname(), initializer) != null) {
+            throw new IllegalArgumentException("Bootstrap hostname " + routes.bootstrapHostname() + " is used by more than one cluster");
+        }
+        if (brokerHostnamePatterns.putIfAbsent(routes.brokerHostnamePattern(), initializer) != null) {
+            throw new IllegalArgumentException("Broker hostname pattern " + routes.brokerHostnamePattern() + " is used by more than one cluster");
+        }
+    }
+
+    /**
+     * @param hostname An SNI hostname.
+     * @return The initializer of the cluster which has the given hostname, or null if there is no such cluster.
+     */
+    KafkaProxyInitializer route(String hostname) {
+        KafkaProxyInitializer initializer = bootstrapHostnames.get(hostname);
+        if (initializer != null) {
+            return initializer;
+        }
+        int length = hostname.length();
+        int start = 0;
+        while (start < length) {
+            if (!Character.isDigit(hostname.charAt(start))) {
+                start++;
+                continue;
+            }
+            int end = start + 1;
+            while (end < length && Character.isDigit(hostname.charAt(end))) {
+                end++;
+            }
+            initializer = brokerHostnamePatterns.get(hostname.substring(0, start) + SniBrokerRoutes.NODE_ID + hostname.substring(end));
+            if (initializer != null) {
+                return initializer;
+            }
+            start = end;
+        }
+        return null;
+    }
+
+    @Override
+    protected void initChannel(SocketChannel ch) {
+        ch.pipeline().addLast(new SniHandler(hostname -> sslContext), routingHandler);
+    }
+
+    /**
+     * Initializes a connection for its cluster once the client has sent its SNI hostname, then gets out of the way.
+     */
+    @ChannelHandler.Sharable
+    private class RoutingHandler extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            // Connections don't auto-read, and the cluster's handlers aren't there to read yet
+            ctx.read();
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object event) throws Exception {
+            if (!(event instanceof SniCompletionEvent)) {
+                super.userEventTriggered(ctx, event);
+                return;
+            }
+            SniCompletionEvent sniCompletionEvent = (SniCompletionEvent) event;
+            String hostname = sniCompletionEvent.hostname();
+            KafkaProxyInitializer initializer = sniCompletionEvent.isSuccess() && hostname != null ? route(hostname) : null;
+            if (initializer == null) {
+                LOGGER.warn("{}: No cluster has SNI hostname {}, closing", ctx.channel(), hostname);
+                ctx.close();
+                return;
+            }
+            // The cluster's handlers follow this one, so they see the events which they would have seen had they been there from the start
+            initializer.initChannel((SocketChannel) ctx.channel());
+            ctx.fireChannelActive();
+            ctx.fireUserEventTriggered(event);
+            ctx.pipeline().remove(this);
+        }
+    }
+}
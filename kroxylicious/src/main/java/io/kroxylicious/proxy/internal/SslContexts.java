@@ -0,0 +1,150 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.List;
+import java.util.Optional;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslCachingX509KeyManagerFactory;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
+
+/**
+ * Builds the TLS contexts of the proxy's downstream (client-facing) and upstream (broker-facing) connections.
+ *
+ * <p>OpenSSL (or BoringSSL) is used when netty-tcnative is on the classpath, since it handshakes and
+ * encrypts at a fraction of the CPU cost of the JDK's TLS; otherwise the JDK's TLS is used.
+ * Both sides cache sessions, so that a client reconnecting to the proxy, and the proxy reconnecting to a broker,
+ * can resume a session rather than doing a full handshake.</p>
+ */
+public final class SslContexts {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SslContexts.class);
+
+    private SslContexts() {
+    }
+
+    /**
+     * @return OpenSSL, if it's available, otherwise the JDK.
+     */
+    public static SslProvider provider() {
+        return OpenSsl.isAvailable() ? SslProvider.OPENSSL : SslProvider.JDK;
+    }
+
+    /**
+     * @param keyStoreFile The key store holding the proxy's key and certificate.
+     * @param keyStorePassword The password of the key store and key.
+     * @param ciphers The cipher suites to enable, or null for the provider's defaults.
+     * @param sessionCacheSize The number of sessions to cache, or 0 for the provider's default.
+     * @param sessionTimeoutSeconds The lifetime of cached sessions, or 0 for the provider's default.
+     * @return The context for the connections from clients.
+     */
+    public static SslContext forServer(File keyStoreFile, Optional<String> keyStorePassword,
+                                       List<String> ciphers, int sessionCacheSize, int sessionTimeoutSeconds) {
+        return forServer(provider(), keyStoreFile, keyStorePassword, ciphers, sessionCacheSize, sessionTimeoutSeconds);
+    }
+
+    static SslContext forServer(SslProvider provider, File keyStoreFile, Optional<String> keyStorePassword,
+                                List<String> ciphers, int sessionCacheSize, int sessionTimeoutSeconds) {
+        LOGGER.info("Using {} TLS for client connections", provider);
+        try (var is = new FileInputStream(keyStoreFile)) {
+            var password = keyStorePassword.map(String::toCharArray).orElse(null);
+            var keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+            keyStore.load(is, password);
+            KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            if (provider == SslProvider.OPENSSL) {
+                // Converts the key and certificate chain to OpenSSL's form once, rather than on every handshake
+                keyManagerFactory = new OpenSslCachingX509KeyManagerFactory(keyManagerFactory);
+            }
+            keyManagerFactory.init(keyStore, password);
+            return SslContextBuilder.forServer(keyManagerFactory)
+                    .sslProvider(provider)
+                    .ciphers(ciphers)
+                    .sessionCacheSize(sessionCacheSize)
+                    .sessionTimeout(sessionTimeoutSeconds)
+                    .build();
+        }
+        catch (GeneralSecurityException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param trustStoreFile The trust store holding the certificates of the brokers, or their CA,
+     * or empty to trust the JDK's default CAs.
+     * @param trustStorePassword The password of the trust store.
+     * @param ciphers The cipher suites to enable, or null for the provider's defaults.
+     * @param sessionCacheSize The number of sessions to cache, or 0 for the provider's default.
+     * @param sessionTimeoutSeconds The lifetime of cached sessions, or 0 for the provider's default.
+     * @return The context for the connections to brokers.
+     */
+    public static SslContext forClient(Optional<String> trustStoreFile, Optional<String> trustStorePassword,
+                                       List<String> ciphers, int sessionCacheSize, int sessionTimeoutSeconds) {
+        return forClient(provider(), trustStoreFile, trustStorePassword, ciphers, sessionCacheSize, sessionTimeoutSeconds);
+    }
+
+    static SslContext forClient(SslProvider provider, Optional<String> trustStoreFile, Optional<String> trustStorePassword,
+                                List<String> ciphers, int sessionCacheSize, int sessionTimeoutSeconds) {
+        LOGGER.info("Using {} TLS for broker connections", provider);
+        try {
+            var builder = SslContextBuilder.forClient()
+                    .sslProvider(provider)
+                    .ciphers(ciphers)
+                    .sessionCacheSize(sessionCacheSize)
+                    .sessionTimeout(sessionTimeoutSeconds);
+            if (trustStoreFile.isPresent()) {
+                try (var is = new FileInputStream(trustStoreFile.get())) {
+                    var trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+                    trustStore.load(is, trustStorePassword.map(String::toCharArray).orElse(null));
+                    var trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+                    trustManagerFactory.init(trustStore);
+                    builder.trustManager(trustManagerFactory);
+                }
+            }
+            return builder.build();
+        }
+        catch (GeneralSecurityException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Creates the TLS handler of a connection to a broker.
+     * The session of a previous connection to the same broker is resumed, if it's still cached,
+     * and the broker's certificate must match its host name, as for a Kafka client.
+     * @param sslContext The context for the connections to brokers.
+     * @param alloc The allocator of the connection.
+     * @param remoteHost The broker host.
+     * @param remotePort The broker port.
+     * @return The handler.
+     */
+    public static SslHandler newUpstreamHandler(SslContext sslContext, ByteBufAllocator alloc, String remoteHost, int remotePort) {
+        // The host and port are the key of the session cache
+        SslHandler handler = sslContext.newHandler(alloc, remoteHost, remotePort);
+        SSLEngine engine = handler.engine();
+        SSLParameters parameters = engine.getSSLParameters();
+        parameters.setEndpointIdentificationAlgorithm("HTTPS");
+        engine.setSSLParameters(parameters);
+        return handler;
+    }
+}
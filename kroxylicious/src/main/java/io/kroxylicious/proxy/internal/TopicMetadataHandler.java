@@ -0,0 +1,32 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+import io.kroxylicious.proxy.frame.DecodedResponseFrame;
+
+/**
+ * Updates the {@link DefaultTopicMetadataCache} with the decoded responses from the broker,
+ * before any filter sees them.
+ */
+class TopicMetadataHandler extends ChannelInboundHandlerAdapter {
+
+    private final DefaultTopicMetadataCache topicMetadata;
+
+    TopicMetadataHandler(DefaultTopicMetadataCache topicMetadata) {
+        this.topicMetadata = topicMetadata;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (msg instanceof DecodedResponseFrame) {
+            topicMetadata.update(((DecodedResponseFrame<?>) msg).body());
+        }
+        ctx.fireChannelRead(msg);
+    }
+}
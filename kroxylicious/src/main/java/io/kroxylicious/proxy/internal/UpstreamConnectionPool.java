@@ -0,0 +1,135 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoop;
+import io.netty.handler.logging.LoggingHandler;
+import io.netty.handler.ssl.SslContext;
+
+import io.kroxylicious.proxy.internal.codec.CorrelationManager;
+import io.kroxylicious.proxy.internal.codec.KafkaResponseDecoder;
+import io.kroxylicious.proxy.internal.codec.MultiplexingRequestEncoder;
+
+/**
+ * A pool of upstream connections which are shared between the client connections on the same event loop.
+ * Each event loop has up to a fixed number of connections to each broker, which are assigned to client
+ * connections round-robin.
+ * This reduces the number of connections the brokers need to handle when there are many clients,
+ * at the cost of the broker processing the requests of all the clients sharing a connection one at a time.
+ * It is not suitable when the proxy passes SASL authentication through to the brokers,
+ * since authentication is per-connection: SASL requests written to a shared connection fail,
+ * and the client's connection is closed.
+ */
+public class UpstreamConnectionPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UpstreamConnectionPool.class);
+
+    private final int connectionsPerBroker;
+    private final boolean logNetwork;
+    private final SslContext sslContext;
+    /** The connections of each event loop, which are only accessed from that event loop */
+    private final Map<EventLoop, Map<String, Connections>> eventLoopConnections = new ConcurrentHashMap<>();
+
+    /**
+     * @param connectionsPerBroker The maximum number of connections each event loop has to each broker.
+     * @param logNetwork Whether to log the network traffic of the shared connections.
+     * @param sslContext The TLS context of the shared connections, or null if they don't use TLS.
+     */
+    public UpstreamConnectionPool(int connectionsPerBroker, boolean logNetwork, SslContext sslContext) {
+        if (connectionsPerBroker <= 0) {
+            throw new IllegalArgumentException("connectionsPerBroker must be positive");
+        }
+        this.connectionsPerBroker = connectionsPerBroker;
+        this.logNetwork = logNetwork;
+        this.sslContext = sslContext;
+    }
+
+    /**
+     * Returns a new channel, registered with the given event loop, which uses a shared connection to the given broker.
+     * The channel is not connected until {@link Channel#connect(java.net.SocketAddress)} is called on it,
+     * which completes once the shared connection is active.
+     * Must be called from the given event loop.
+     * @param eventLoop The event loop of the client connection.
+     * @param channelClass The type of channel used for the shared connection.
+     * @param remoteHost The broker host.
+     * @param remotePort The broker port.
+     * @return The channel.
+     */
+    Channel newChannel(EventLoop eventLoop, Class<? extends Channel> channelClass, String remoteHost, int remotePort) {
+        if (!eventLoop.inEventLoop()) {
+            throw new IllegalStateException("Not called from the event loop");
+        }
+        Connections connections = eventLoopConnections.computeIfAbsent(eventLoop, loop -> new HashMap<>())
+                .computeIfAbsent(remoteHost + ":" + remotePort, address -> new Connections(connectionsPerBroker));
+        int index = connections.next;
+        connections.next = (index + 1) % connectionsPerBroker;
+        ChannelFuture connectFuture = connections.connectFutures[index];
+        MultiplexedUpstreamHandler upstreamHandler = connections.upstreamHandlers[index];
+        if (connectFuture == null || !connectFuture.channel().isOpen()) {
+            LOGGER.debug("Opening shared connection {} to {}:{}", index, remoteHost, remotePort);
+            upstreamHandler = new MultiplexedUpstreamHandler();
+            connectFuture = connect(eventLoop, channelClass, remoteHost, remotePort, upstreamHandler);
+            connections.connectFutures[index] = connectFuture;
+            connections.upstreamHandlers[index] = upstreamHandler;
+        }
+        var channel = new MultiplexedUpstreamChannel(connectFuture, upstreamHandler);
+        eventLoop.register(channel);
+        return channel;
+    }
+
+    private ChannelFuture connect(EventLoop eventLoop,
+                                  Class<? extends Channel> channelClass,
+                                  String remoteHost,
+                                  int remotePort,
+                                  MultiplexedUpstreamHandler upstreamHandler) {
+        var correlationManager = new CorrelationManager();
+        Bootstrap b = new Bootstrap();
+        b.group(eventLoop)
+                .channel(channelClass)
+                .handler(new ChannelInitializer<>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ChannelPipeline pipeline = ch.pipeline();
+                        if (sslContext != null) {
+                            pipeline.addLast("ssl", SslContexts.newUpstreamHandler(sslContext, ch.alloc(), remoteHost, remotePort));
+                        }
+                        if (logNetwork) {
+                            pipeline.addLast("networkLogger", new LoggingHandler("io.kroxylicious.proxy.internal.UpstreamNetworkLogger"));
+                        }
+                        pipeline.addLast("requestEncoder", new MultiplexingRequestEncoder(correlationManager));
+                        pipeline.addLast("responseDecoder", new KafkaResponseDecoder(correlationManager));
+                        pipeline.addLast("multiplexer", upstreamHandler);
+                    }
+                })
+                .option(ChannelOption.AUTO_READ, true)
+                .option(ChannelOption.TCP_NODELAY, true);
+        return b.connect(remoteHost, remotePort);
+    }
+
+    private static final class Connections {
+        private final ChannelFuture[] connectFutures;
+        private final MultiplexedUpstreamHandler[] upstreamHandlers;
+        private int next;
+
+        private Connections(int size) {
+            connectFutures = new ChannelFuture[size];
+            upstreamHandlers = new MultiplexedUpstreamHandler[size];
+        }
+    }
+}
@@ -6,13 +6,18 @@
 package io.kroxylicious.proxy.internal.codec;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.kafka.common.protocol.Readable;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
 
 import io.kroxylicious.proxy.frame.ByteBufAccessor;
+import io.kroxylicious.proxy.frame.DecodedFrame;
 
 /**
  * An implementation of Kafka's Readable and Writable abstraction in terms of
@@ -22,13 +27,51 @@ import io.kroxylicious.proxy.frame.ByteBufAccessor;
  * This isn't completely ideal because the Kafka APIs for decoding of Records
  * depends on NIO ByteBuffer, so copying between ByteBuffer and ByteBuf cannot
  * always be avoided.
+ * In zero-copy mode {@link #readByteBuffer(int)} returns an NIO view of a retained
+ * slice of the underlying buffer, rather than a copy.
+ * Those slices must be handed to the frame being decoded
+ * (see {@link #transferSlicesTo(DecodedFrame)}), so that they're released with it.
+ * When writing to a {@link CompositeByteBuf} large buffers are added as components
+ * of the composite, rather than being copied into it.
+ * The other bytes are copied into slices of a small scratch buffer, which are added
+ * as components just before they're needed, because letting the composite grow itself
+ * would pad it with a component as large as everything written so far.
  */
 public class ByteBufAccessorImpl implements ByteBufAccessor, Readable {
 
+    /**
+     * The minimum size of a buffer which will be added as a component of a composite output buffer.
+     * Smaller buffers are cheaper to copy than to track as a separate component.
+     */
+    static final int MIN_COMPONENT_BYTES = 1024;
+
+    /**
+     * The maximum size of the scratch buffers allocated for the bytes copied into a composite output buffer,
+     * unless a single write needs more.
+     */
+    static final int SCRATCH_BYTES = 1024;
+
     private final ByteBuf buf;
+    private final CompositeByteBuf composite;
+    private final boolean zeroCopy;
+    private List<ByteBuf> retainedSlices;
+    /** The buffer whose slices receive the bytes copied into the composite, which holds its only references */
+    private ByteBuf scratch;
+    /** The writer index of the composite once the current frame has been written to it, or -1 if not known */
+    private int expectedWriterIndex = -1;
 
     public ByteBufAccessorImpl(ByteBuf buf) {
+        this(buf, false);
+    }
+
+    /**
+     * @param buf The buffer to read from or write to.
+     * @param zeroCopy Whether {@link #readByteBuffer(int)} should avoid copying, where possible.
+     */
+    public ByteBufAccessorImpl(ByteBuf buf, boolean zeroCopy) {
         this.buf = buf;
+        this.composite = buf instanceof CompositeByteBuf ? (CompositeByteBuf) buf : null;
+        this.zeroCopy = zeroCopy;
     }
 
     private static IllegalArgumentException illegalVarintException(int value) {
@@ -154,11 +197,45 @@ public class ByteBufAccessorImpl implements ByteBufAccessor, Readable {
 
     @Override
     public ByteBuffer readByteBuffer(int length) {
-        // TODO use buf.nioBufferCount() and buf.nioBuffers() to avoid the copy if possible
+        if (zeroCopy) {
+            ByteBuf slice = buf.retainedSlice(buf.readerIndex(), length);
+            if (slice.nioBufferCount() == 1) {
+                if (retainedSlices == null) {
+                    retainedSlices = new ArrayList<>(1);
+                }
+                retainedSlices.add(slice);
+                buf.skipBytes(length);
+                return slice.nioBuffer();
+            }
+            // A composite buffer can't be exposed as a single ByteBuffer, so fall back to copying
+            slice.release();
+        }
         ByteBuffer wrap = ByteBuffer.wrap(ByteBufUtil.getBytes(buf, buf.readerIndex(), length, false));
         buf.readerIndex(buf.readerIndex() + length);
         return wrap;
+    }
 
+    /**
+     * Transfer ownership of the slices retained by {@link #readByteBuffer(int)} in zero-copy mode
+     * to the given {@code frame}, so they are released when the frame is.
+     * @param frame The frame that was decoded using this accessor.
+     */
+    public void transferSlicesTo(DecodedFrame<?, ?> frame) {
+        if (retainedSlices != null) {
+            retainedSlices.forEach(frame::add);
+            retainedSlices = null;
+        }
+    }
+
+    /**
+     * Release any slices retained by {@link #readByteBuffer(int)} in zero-copy mode
+     * which have not been transferred to a frame, for example because decoding failed.
+     */
+    public void releaseSlices() {
+        if (retainedSlices != null) {
+            retainedSlices.forEach(ByteBuf::release);
+            retainedSlices = null;
+        }
     }
 
     @Override
@@ -178,59 +255,72 @@ public class ByteBufAccessorImpl implements ByteBufAccessor, Readable {
 
     @Override
     public void writeByte(byte val) {
-        buf.writeByte(val);
+        out(1).writeByte(val);
     }
 
     @Override
     public void writeShort(short val) {
-        buf.writeShort(val);
+        out(2).writeShort(val);
     }
 
     @Override
     public void writeInt(int val) {
-        buf.writeInt(val);
+        out(4).writeInt(val);
     }
 
     @Override
     public void writeLong(long val) {
-        buf.writeLong(val);
+        out(8).writeLong(val);
     }
 
     @Override
     public void writeDouble(double val) {
-        buf.writeDouble(val);
+        out(8).writeDouble(val);
     }
 
     @Override
     public void writeByteArray(byte[] arr) {
-        buf.writeBytes(arr);
+        out(arr.length).writeBytes(arr);
     }
 
     @Override
     public void writeUnsignedVarint(int i) {
-        writeUnsignedVarint(i, buf);
+        writeUnsignedVarint(i, out(5));
     }
 
     @Override
     public void writeByteBuffer(ByteBuffer byteBuffer) {
-        while (byteBuffer.hasRemaining()) {
-            buf.writeByte(byteBuffer.get());
+        if (composite != null && byteBuffer.remaining() >= MIN_COMPONENT_BYTES) {
+            // The caller is responsible for keeping the memory of the byteBuffer valid
+            // until the composite has been written
+            addComponent(Unpooled.wrappedBuffer(byteBuffer));
+            byteBuffer.position(byteBuffer.limit());
+        }
+        else {
+            out(byteBuffer.remaining()).writeBytes(byteBuffer);
         }
     }
 
     @Override
     public void writeVarint(int i) {
-        writeVarint(i, buf);
+        writeVarint(i, out(5));
     }
 
     @Override
     public void writeVarlong(long i) {
-        writeVarlong(i, buf);
+        writeVarlong(i, out(10));
     }
 
     @Override
     public void ensureWritable(int encodedSize) {
-        buf.ensureWritable(encodedSize);
+        if (composite == null) {
+            buf.ensureWritable(encodedSize);
+        }
+        else {
+            // We don't want to allocate memory for bytes which will end up in their own components,
+            // but knowing how many bytes are to come bounds the size of the scratch buffers
+            expectedWriterIndex = composite.writerIndex() + encodedSize;
+        }
     }
 
     @Override
@@ -240,6 +330,66 @@ public class ByteBufAccessorImpl implements ByteBufAccessor, Readable {
 
     @Override
     public void writeBytes(ByteBuf buf, int length) {
-        this.buf.writeBytes(buf, length);
+        if (composite != null && length >= MIN_COMPONENT_BYTES) {
+            addComponent(buf.readRetainedSlice(length));
+        }
+        else {
+            out(length).writeBytes(buf, length);
+        }
+    }
+
+    private void addComponent(ByteBuf component) {
+        trimComposite();
+        composite.addComponent(true, component);
+    }
+
+    /**
+     * @param bytes The number of bytes about to be copied into the output buffer.
+     * @return The output buffer, which can take the given number of bytes without growing itself.
+     */
+    private ByteBuf out(int bytes) {
+        if (composite != null && composite.writableBytes() < bytes) {
+            appendScratch(bytes);
+        }
+        return buf;
+    }
+
+    /**
+     * Appends a slice of the scratch buffer to the composite, allocating a new scratch buffer
+     * if the unused part of the current one is smaller than the given number of bytes.
+     */
+    private void appendScratch(int bytes) {
+        trimComposite();
+        if (scratch != null && scratch.writableBytes() >= bytes) {
+            appendScratchSlice();
+            return;
+        }
+        int remaining = expectedWriterIndex - composite.writerIndex();
+        int size = remaining > 0 ? Math.min(SCRATCH_BYTES, remaining) : SCRATCH_BYTES;
+        scratch = composite.alloc().buffer(Math.max(bytes, size));
+        appendScratchSlice();
+        // The composite's components now hold the references to the scratch buffer
+        scratch.release();
+    }
+
+    private void appendScratchSlice() {
+        int length = scratch.writableBytes();
+        composite.addComponent(false, scratch.retainedSlice(scratch.writerIndex(), length));
+        scratch.writerIndex(scratch.writerIndex() + length);
+    }
+
+    /**
+     * Components are laid out end-to-end by capacity, so the unwritten capacity
+     * of the current last component must be discarded before appending another.
+     * When that's the unused end of a scratch slice it can go in the next slice instead.
+     */
+    private void trimComposite() {
+        int unwritten = composite.capacity() - composite.writerIndex();
+        if (unwritten > 0) {
+            composite.capacity(composite.writerIndex());
+            if (scratch != null) {
+                scratch.writerIndex(scratch.writerIndex() - unwritten);
+            }
+        }
     }
 }
@@ -5,6 +5,7 @@
  */
 package io.kroxylicious.proxy.internal.codec;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -13,6 +14,8 @@ import org.apache.kafka.common.protocol.ApiKeys;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.netty.channel.Channel;
+
 import io.kroxylicious.proxy.filter.KrpcFilter;
 import io.kroxylicious.proxy.future.Promise;
 import io.kroxylicious.proxy.tag.VisibleForTesting;
@@ -20,14 +23,49 @@ import io.kroxylicious.proxy.tag.VisibleForTesting;
 /**
  * Manages correlation ids for a single connection (across the proxy) between a single client
  * and a single broker.
+ * When an upstream connection is shared between several client connections each request also records
+ * the (downstream) channel it was received from, so that its response can be routed back to it.
  */
 public class CorrelationManager {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CorrelationManager.class);
 
-    // TODO use a specialized map
-    @VisibleForTesting
-    final Map<Integer, Correlation> brokerRequests = new HashMap<>();
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 14;
+
+    private static final byte USED = 1;
+    private static final byte DECODE_RESPONSE = 2;
+
+    /*
+     * A ring of slots indexed by the low bits of the upstream correlation id, with the correlations flattened into
+     * parallel arrays so that neither the key nor the correlation is allocated per request.
+     * Upstream ids are allocated sequentially, so while the ids awaiting a response span fewer ids than
+     * there are slots each has a slot of its own, and puts and gets are a single array access.
+     * If a put would collide with an older entry the ring is doubled, so its capacity tracks the pipelining depth
+     * of the connection.
+     * The ring only grows so far, so that a request whose response is a long time coming doesn't make it
+     * ever larger: once it can't grow, the older of two colliding entries moves to a map.
+     */
+    private int[] upstreamIds;
+    private byte[] flags;
+    private short[] apiKeys;
+    private short[] apiVersions;
+    private int[] downstreamIds;
+    private KrpcFilter[] recipients;
+    private Promise<?>[] promises;
+    private Channel[] channels;
+    private long[] sentNanos;
+    private int mask;
+    private int size;
+
+    /** The requests moved out of the ring, or null if there have been none. */
+    private Map<Integer, Correlation> overflow;
+
+    /** Scratch space for {@link #hasDistinctSlots(int, int)}, so that it doesn't allocate on each probe. */
+    private boolean[] taken;
+
+    /** Returned by {@link #getBrokerCorrelation(int)}, to avoid allocating per response. */
+    private final Correlation correlation = new Correlation();
 
     /** The correlation id with the upstream broker */
     private int upstreamId;
@@ -38,6 +76,7 @@ public class CorrelationManager {
 
     public CorrelationManager(int initialCorrelationId) {
         upstreamId = initialCorrelationId;
+        allocate(INITIAL_CAPACITY);
     }
 
     /**
@@ -55,54 +94,268 @@ public class CorrelationManager {
                                 KrpcFilter recipient,
                                 Promise<? extends Object> promise,
                                 boolean decodeResponse) {
+        return putBrokerRequest(apiKey, apiVersion, downstreamCorrelationId, hasResponse, recipient, promise, decodeResponse, null);
+    }
+
+    /**
+     * Allocate and return a correlation id for an outgoing request to the broker.
+     * @param apiKey The API key.
+     * @param apiVersion The API version.
+     * @param downstreamCorrelationId The downstream client's correlation id.
+     * @param decodeResponse Whether the response should be decoded.
+     * @param hasResponse Whether a response is expected.
+     * @param channel The channel the response should be routed to, or null if this manager's
+     * upstream connection is not shared.
+     */
+    public int putBrokerRequest(short apiKey,
+                                short apiVersion,
+                                int downstreamCorrelationId,
+                                boolean hasResponse,
+                                KrpcFilter recipient,
+                                Promise<? extends Object> promise,
+                                boolean decodeResponse,
+                                Channel channel) {
         // need to allocate an id and put in a map for quick lookup, along with the "tag"
         int upstreamCorrelationId = upstreamId++;
         LOGGER.trace("Allocated upstream id {} for downstream id {}", upstreamCorrelationId, downstreamCorrelationId);
         if (hasResponse) {
-            Correlation existing = this.brokerRequests.put(upstreamCorrelationId,
-                    new Correlation(apiKey, apiVersion, downstreamCorrelationId, decodeResponse, recipient, promise));
-            if (existing != null) {
-                LOGGER.error("Duplicate upstream correlation id {}", upstreamCorrelationId);
+            int slot = upstreamCorrelationId & mask;
+            if (flags[slot] != 0) {
+                if (upstreamIds[slot] == upstreamCorrelationId) {
+                    LOGGER.error("Duplicate upstream correlation id {}", upstreamCorrelationId);
+                    size--;
+                }
+                else {
+                    if (flags.length < MAX_CAPACITY) {
+                        grow(upstreamCorrelationId);
+                        slot = upstreamCorrelationId & mask;
+                    }
+                    if (flags[slot] != 0) {
+                        overflow(slot);
+                    }
+                }
             }
+            upstreamIds[slot] = upstreamCorrelationId;
+            flags[slot] = decodeResponse ? USED | DECODE_RESPONSE : USED;
+            apiKeys[slot] = apiKey;
+            apiVersions[slot] = apiVersion;
+            downstreamIds[slot] = downstreamCorrelationId;
+            recipients[slot] = recipient;
+            promises[slot] = promise;
+            channels[slot] = channel;
+            sentNanos[slot] = System.nanoTime();
+            size++;
         }
         return upstreamCorrelationId;
     }
 
     /**
-     * Find (and remove) the Correlation for an incoming response from the broker
+     * Find (and remove) the Correlation for an incoming response from the broker.
+     * The returned instance is owned by this manager, and is only valid until the next call to this method.
+     * The caller should {@linkplain Correlation#release() release} it once it's done with it.
      * @param upstreamCorrelationId The (upstream) correlation id in the response.
+     * @return The correlation, or null if there is no request with the given id awaiting a response.
      */
     public Correlation getBrokerCorrelation(int upstreamCorrelationId) {
-        // Set the tag on the response object
-        return brokerRequests.remove(upstreamCorrelationId);
+        int slot = find(upstreamCorrelationId);
+        if (slot < 0) {
+            Correlation overflowed = overflow != null ? overflow.remove(upstreamCorrelationId) : null;
+            if (overflowed != null) {
+                size--;
+            }
+            return overflowed;
+        }
+        correlation.set(apiKeys[slot], apiVersions[slot], downstreamIds[slot], (flags[slot] & DECODE_RESPONSE) != 0,
+                recipients[slot], promises[slot], channels[slot], sentNanos[slot]);
+        remove(slot);
+        return correlation;
+    }
+
+    /**
+     * @return The number of requests awaiting a response from the broker.
+     */
+    public int pendingRequests() {
+        return size;
+    }
+
+    /**
+     * @param upstreamCorrelationId The (upstream) correlation id.
+     * @return Whether a request with the given id is awaiting a response from the broker.
+     */
+    @VisibleForTesting
+    boolean hasBrokerCorrelation(int upstreamCorrelationId) {
+        return find(upstreamCorrelationId) >= 0 || (overflow != null && overflow.containsKey(upstreamCorrelationId));
+    }
+
+    /**
+     * @return The number of slots in the ring.
+     */
+    @VisibleForTesting
+    int capacity() {
+        return flags.length;
+    }
+
+    private int find(int upstreamCorrelationId) {
+        int slot = upstreamCorrelationId & mask;
+        return flags[slot] != 0 && upstreamIds[slot] == upstreamCorrelationId ? slot : -1;
+    }
+
+    private void remove(int slot) {
+        size--;
+        clear(slot);
+    }
+
+    /**
+     * Moves the entry in the given slot out of the ring.
+     */
+    private void overflow(int slot) {
+        var entry = new Correlation();
+        entry.set(apiKeys[slot], apiVersions[slot], downstreamIds[slot], (flags[slot] & DECODE_RESPONSE) != 0,
+                recipients[slot], promises[slot], channels[slot], sentNanos[slot]);
+        overflow(upstreamIds[slot], entry);
+        clear(slot);
+    }
+
+    private void overflow(int upstreamCorrelationId, Correlation entry) {
+        if (overflow == null) {
+            overflow = new HashMap<>();
+        }
+        LOGGER.debug("Moving upstream correlation id {} out of the ring", upstreamCorrelationId);
+        overflow.put(upstreamCorrelationId, entry);
+    }
+
+    private void clear(int slot) {
+        flags[slot] = 0;
+        recipients[slot] = null;
+        promises[slot] = null;
+        channels[slot] = null;
+    }
+
+    private void allocate(int capacity) {
+        upstreamIds = new int[capacity];
+        flags = new byte[capacity];
+        apiKeys = new short[capacity];
+        apiVersions = new short[capacity];
+        downstreamIds = new int[capacity];
+        recipients = new KrpcFilter[capacity];
+        promises = new Promise<?>[capacity];
+        channels = new Channel[capacity];
+        sentNanos = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Increases the capacity until the given id, and every id awaiting a response, has a slot of its own,
+     * or to the maximum capacity, where the older of two ids which share a slot moves out of the ring.
+     */
+    private void grow(int upstreamCorrelationId) {
+        int[] oldUpstreamIds = upstreamIds;
+        byte[] oldFlags = flags;
+        short[] oldApiKeys = apiKeys;
+        short[] oldApiVersions = apiVersions;
+        int[] oldDownstreamIds = downstreamIds;
+        KrpcFilter[] oldRecipients = recipients;
+        Promise<?>[] oldPromises = promises;
+        Channel[] oldChannels = channels;
+        long[] oldSentNanos = sentNanos;
+        int capacity = oldFlags.length * 2;
+        while (capacity < MAX_CAPACITY && !hasDistinctSlots(capacity, upstreamCorrelationId)) {
+            capacity *= 2;
+        }
+        allocate(capacity);
+        for (int i = 0; i < oldFlags.length; i++) {
+            if (oldFlags[i] != 0) {
+                int slot = oldUpstreamIds[i] & mask;
+                if (flags[slot] != 0) {
+                    // Only at the maximum capacity. Ids are allocated sequentially, so the older is the stale one
+                    if (oldUpstreamIds[i] - upstreamIds[slot] < 0) {
+                        var entry = new Correlation();
+                        entry.set(oldApiKeys[i], oldApiVersions[i], oldDownstreamIds[i], (oldFlags[i] & DECODE_RESPONSE) != 0,
+                                oldRecipients[i], oldPromises[i], oldChannels[i], oldSentNanos[i]);
+                        overflow(oldUpstreamIds[i], entry);
+                        continue;
+                    }
+                    overflow(slot);
+                }
+                upstreamIds[slot] = oldUpstreamIds[i];
+                flags[slot] = oldFlags[i];
+                apiKeys[slot] = oldApiKeys[i];
+                apiVersions[slot] = oldApiVersions[i];
+                downstreamIds[slot] = oldDownstreamIds[i];
+                recipients[slot] = oldRecipients[i];
+                promises[slot] = oldPromises[i];
+                channels[slot] = oldChannels[i];
+                sentNanos[slot] = oldSentNanos[i];
+            }
+        }
+    }
+
+    private boolean hasDistinctSlots(int capacity, int upstreamCorrelationId) {
+        int newMask = capacity - 1;
+        if (taken == null || taken.length < capacity) {
+            taken = new boolean[capacity];
+        }
+        else {
+            Arrays.fill(taken, 0, capacity, false);
+        }
+        taken[upstreamCorrelationId & newMask] = true;
+        for (int i = 0; i < flags.length; i++) {
+            if (flags[i] != 0) {
+                int slot = upstreamIds[i] & newMask;
+                if (taken[slot]) {
+                    return false;
+                }
+                taken[slot] = true;
+            }
+        }
+        return true;
     }
 
     /**
      * A record for which responses should be decoded, together with their
      * API key and version.
+     * Instances are reused by their {@link CorrelationManager}.
      */
-    // TODO a perfect value type
     public static class Correlation {
-        private final short apiKey;
-        private final short apiVersion;
-
-        private final int downstreamCorrelationId;
-        private final boolean decodeResponse;
-        private final KrpcFilter recipient;
-        private final Promise<?> promise;
-
-        private Correlation(short apiKey,
-                            short apiVersion,
-                            int downstreamCorrelationId,
-                            boolean decodeResponse,
-                            KrpcFilter recipient,
-                            Promise<?> promise) {
+        private short apiKey;
+        private short apiVersion;
+
+        private int downstreamCorrelationId;
+        private boolean decodeResponse;
+        private KrpcFilter recipient;
+        private Promise<?> promise;
+        private Channel channel;
+        private long sentNanos;
+
+        private Correlation() {
+        }
+
+        private void set(short apiKey,
+                         short apiVersion,
+                         int downstreamCorrelationId,
+                         boolean decodeResponse,
+                         KrpcFilter recipient,
+                         Promise<?> promise,
+                         Channel channel,
+                         long sentNanos) {
             this.apiKey = apiKey;
             this.apiVersion = apiVersion;
             this.downstreamCorrelationId = downstreamCorrelationId;
             this.decodeResponse = decodeResponse;
             this.recipient = recipient;
             this.promise = promise;
+            this.channel = channel;
+            this.sentNanos = sentNanos;
+        }
+
+        /**
+         * Drops this correlation's references to the recipient, promise and channel of the request,
+         * once the response has been dealt with, so that a reused instance doesn't keep them reachable.
+         */
+        public void release() {
+            recipient = null;
+            promise = null;
+            channel = null;
         }
 
         public int downstreamCorrelationId() {
@@ -156,5 +409,20 @@ public class CorrelationManager {
         public Promise<?> promise() {
             return promise;
         }
+
+        /**
+         * @return The channel the response should be routed to, or null if the upstream connection
+         * is not shared between client connections.
+         */
+        public Channel channel() {
+            return channel;
+        }
+
+        /**
+         * @return The {@link System#nanoTime()} at which the request was sent to the broker.
+         */
+        public long sentNanos() {
+            return sentNanos;
+        }
     }
 }
@@ -5,7 +5,7 @@
  */
 package io.kroxylicious.proxy.internal.codec;
 
-import java.util.Arrays;
+import java.util.Set;
 
 import org.apache.kafka.common.protocol.ApiKeys;
 
@@ -20,37 +20,40 @@ import io.kroxylicious.proxy.filter.KrpcFilter;
  * who the authorized user or, or which back-end cluster they're connected to.
  */
 public interface DecodePredicate {
+    /**
+     * @param filters The filters.
+     * @return A predicate which decodes the requests and responses which any of the given filters deserialize.
+     */
     public static DecodePredicate forFilters(KrpcFilter... filters) {
-        return new DecodePredicate() {
-            @Override
-            public boolean shouldDecodeResponse(ApiKeys apiKey, short apiVersion) {
-                for (var filter : filters) {
-                    if (filter.shouldDeserializeResponse(apiKey, apiVersion)) {
-                        return true;
-                    }
-                }
-                return false;
-            }
+        return new FilterDecodeTable(filters);
+    }
 
-            @Override
-            public boolean shouldDecodeRequest(ApiKeys apiKey, short apiVersion) {
-                for (var filter : filters) {
-                    if (filter.shouldDeserializeRequest(apiKey, apiVersion)) {
-                        return true;
-                    }
+    /**
+     * @param predicate A predicate.
+     * @return Whether the given predicate decodes no request or response of any version of any API.
+     */
+    public static boolean decodesNothing(DecodePredicate predicate) {
+        for (ApiKeys apiKey : ApiKeys.values()) {
+            for (short apiVersion = apiKey.oldestVersion(); apiVersion <= apiKey.latestVersion(); apiVersion++) {
+                if (predicate.shouldDecodeRequest(apiKey, apiVersion) || predicate.shouldDecodeResponse(apiKey, apiVersion)) {
+                    return false;
                 }
-                return false;
             }
-
-            @Override
-            public String toString() {
-                return "DecodePredicate$forFilters{" + Arrays.toString(filters) + "}";
-            }
-        };
+        }
+        return true;
     }
 
     public boolean shouldDecodeRequest(ApiKeys apiKey, short apiVersion);
 
     public boolean shouldDecodeResponse(ApiKeys apiKey, short apiVersion);
 
+    /**
+     * @return The names of the top-level fields of a decoded response which are used,
+     * or null if all of them might be.
+     * @see io.kroxylicious.proxy.filter.KrpcFilter#responseFields(ApiKeys, short)
+     */
+    public default Set<String> responseFields(ApiKeys apiKey, short apiVersion) {
+        return null;
+    }
+
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.codec;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.kafka.common.protocol.ApiKeys;
+
+import io.kroxylicious.proxy.filter.KrpcFilter;
+
+/**
+ * A {@link DecodePredicate} for a chain of filters, computed up front for every API key and version
+ * known to the Kafka client library, so that each decision is an array lookup rather than a
+ * call to each of the filters.
+ * This assumes that a filter's {@link KrpcFilter#shouldDeserializeRequest(ApiKeys, short)},
+ * {@link KrpcFilter#shouldDeserializeResponse(ApiKeys, short)} and {@link KrpcFilter#responseFields(ApiKeys, short)}
+ * depend only on its class and configuration, so that the table can be shared by chains created from the same configuration.
+ */
+final class FilterDecodeTable implements DecodePredicate {
+
+    private static final byte DECODE_REQUEST = 1;
+    private static final byte DECODE_RESPONSE = 2;
+
+    private final KrpcFilter[] filters;
+    /** Indexed by API key id, then API version. */
+    private final byte[][] decode;
+    /** Indexed by API key id, then API version. A null entry means that all fields are used. */
+    private final Set<String>[][] responseFields;
+
+    @SuppressWarnings("unchecked")
+    FilterDecodeTable(KrpcFilter... filters) {
+        this.filters = filters.clone();
+        int maxId = Arrays.stream(ApiKeys.values()).mapToInt(apiKey -> apiKey.id).max().orElse(-1);
+        decode = new byte[maxId + 1][];
+        responseFields = new Set[maxId + 1][];
+        for (ApiKeys apiKey : ApiKeys.values()) {
+            int versions = apiKey.latestVersion() + 1;
+            byte[] decodeRow = new byte[versions];
+            Set<String>[] fieldsRow = new Set[versions];
+            for (short apiVersion = apiKey.oldestVersion(); apiVersion < versions; apiVersion++) {
+                if (anyShouldDeserializeRequest(apiKey, apiVersion)) {
+                    decodeRow[apiVersion] |= DECODE_REQUEST;
+                }
+                if (anyShouldDeserializeResponse(apiKey, apiVersion)) {
+                    decodeRow[apiVersion] |= DECODE_RESPONSE;
+                    fieldsRow[apiVersion] = unionOfResponseFields(apiKey, apiVersion);
+                }
+            }
+            decode[apiKey.id] = decodeRow;
+            responseFields[apiKey.id] = fieldsRow;
+        }
+    }
+
+    @Override
+    public boolean shouldDecodeRequest(ApiKeys apiKey, short apiVersion) {
+        byte[] row = decode[apiKey.id];
+        if (apiVersion < 0 || apiVersion >= row.length) {
+            return anyShouldDeserializeRequest(apiKey, apiVersion);
+        }
+        return (row[apiVersion] & DECODE_REQUEST) != 0;
+    }
+
+    @Override
+    public boolean shouldDecodeResponse(ApiKeys apiKey, short apiVersion) {
+        byte[] row = decode[apiKey.id];
+        if (apiVersion < 0 || apiVersion >= row.length) {
+            return anyShouldDeserializeResponse(apiKey, apiVersion);
+        }
+        return (row[apiVersion] & DECODE_RESPONSE) != 0;
+    }
+
+    @Override
+    public Set<String> responseFields(ApiKeys apiKey, short apiVersion) {
+        Set<String>[] row = responseFields[apiKey.id];
+        if (apiVersion < 0 || apiVersion >= row.length) {
+            return unionOfResponseFields(apiKey, apiVersion);
+        }
+        return row[apiVersion];
+    }
+
+    private boolean anyShouldDeserializeRequest(ApiKeys apiKey, short apiVersion) {
+        for (var filter : filters) {
+            if (filter.shouldDeserializeRequest(apiKey, apiVersion)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean anyShouldDeserializeResponse(ApiKeys apiKey, short apiVersion) {
+        for (var filter : filters) {
+            if (filter.shouldDeserializeResponse(apiKey, apiVersion)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Set<String> unionOfResponseFields(ApiKeys apiKey, short apiVersion) {
+        Set<String> result = new HashSet<>();
+        for (var filter : filters) {
+            if (filter.shouldDeserializeResponse(apiKey, apiVersion)) {
+                Set<String> fields = filter.responseFields(apiKey, apiVersion);
+                if (fields == null) {
+                    return null;
+                }
+                result.addAll(fields);
+            }
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    @Override
+    public String toString() {
+        return "DecodePredicate$forFilters{" + Arrays.toString(filters) + "}";
+    }
+}
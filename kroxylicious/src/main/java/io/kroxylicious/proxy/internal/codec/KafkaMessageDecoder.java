@@ -12,21 +12,70 @@ import org.slf4j.Logger;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.TooLongFrameException;
 
 import io.kroxylicious.proxy.frame.Frame;
+import io.kroxylicious.proxy.frame.OpaqueFrame;
 
 /**
  * Abstraction for request and response decoders.
+ *
+ * <p>Frames are buffered until they can be decoded whole, unless they are larger than
+ * the {@linkplain #maxFrameSize() max frame size}.
+ * If streaming is enabled an oversized frame which doesn't need to be decoded is instead forwarded as it arrives:
+ * as a "head" {@link OpaqueFrame} holding its first bytes (see {@link OpaqueFrame#isStreamed()}),
+ * followed by the remaining bytes as {@link ByteBuf}s.
+ * Other oversized frames are rejected with a {@link TooLongFrameException}.</p>
  */
 public abstract class KafkaMessageDecoder extends ByteToMessageDecoder {
 
+    /**
+     * The number of bytes at the start of a streamed frame which are buffered, so that its header can be read.
+     */
+    static final int STREAMED_HEAD_LENGTH = 16 * 1024;
+
+    /**
+     * The fewest bytes at the start of a streamed frame from which its api key, version and correlation id can be read.
+     */
+    static final int MIN_STREAMED_HEAD_LENGTH = Short.BYTES + Short.BYTES + Integer.BYTES;
+
+    private final int maxFrameSize;
+    private final boolean streaming;
+    /** The number of bytes of the current streamed frame which are yet to be read */
+    private int streamedRemaining;
+
     protected abstract Logger log();
 
     public KafkaMessageDecoder() {
+        this(Integer.MAX_VALUE, false);
+    }
+
+    /**
+     * @param maxFrameSize The size, in bytes, of the largest frame which will be buffered.
+     * @param streaming Whether larger frames which need not be decoded are streamed, rather than rejected.
+     */
+    public KafkaMessageDecoder(int maxFrameSize, boolean streaming) {
+        if (maxFrameSize <= 0) {
+            throw new IllegalArgumentException("maxFrameSize must be positive");
+        }
+        this.maxFrameSize = maxFrameSize;
+        this.streaming = streaming;
+    }
+
+    /**
+     * @return The size, in bytes, of the largest frame which will be buffered.
+     */
+    public int maxFrameSize() {
+        return maxFrameSize;
     }
 
     @Override
     public void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        while (streamedRemaining > 0 && in.isReadable()) {
+            int chunkSize = Math.min(streamedRemaining, in.readableBytes());
+            out.add(in.readRetainedSlice(chunkSize));
+            streamedRemaining -= chunkSize;
+        }
         while (in.readableBytes() > 4) {
             try {
                 int sof = in.readerIndex();
@@ -35,8 +84,24 @@ public abstract class KafkaMessageDecoder extends ByteToMessageDecoder {
                 if (log().isTraceEnabled()) { // avoid boxing
                     log().trace("{}: Frame of {} bytes ({} readable)", ctx, frameSize, readable);
                 }
-                // TODO handle too-large frames
-                if (readable >= frameSize) { // We can read the whole frame
+                if (frameSize > maxFrameSize) {
+                    // The head must be shorter than the frame, which it's not when the max frame size is smaller than the usual head
+                    int headLength = Math.min(maxFrameSize, STREAMED_HEAD_LENGTH);
+                    if (readable < headLength) {
+                        in.readerIndex(sof);
+                        break;
+                    }
+                    out.add(streamedHead(ctx, in, frameSize, headLength));
+                    int chunkSize = Math.min(frameSize - headLength, in.readableBytes());
+                    if (chunkSize > 0) {
+                        out.add(in.readRetainedSlice(chunkSize));
+                    }
+                    streamedRemaining = frameSize - headLength - chunkSize;
+                    if (streamedRemaining > 0) {
+                        break;
+                    }
+                }
+                else if (readable >= frameSize) { // We can read the whole frame
                     var idx = in.readerIndex();
                     out.add(decodeHeaderAndBody(ctx,
                             in.readSlice(frameSize), // Prevent decodeHeaderAndBody() from reading beyond the frame
@@ -58,6 +123,31 @@ public abstract class KafkaMessageDecoder extends ByteToMessageDecoder {
         }
     }
 
-    protected abstract Frame decodeHeaderAndBody(ChannelHandlerContext ctx, ByteBuf in, int length);
+    private Object streamedHead(ChannelHandlerContext ctx, ByteBuf in, int frameSize, int headLength) {
+        Object head = streaming && headLength >= MIN_STREAMED_HEAD_LENGTH ? decodeStreamedHead(ctx, in.readSlice(headLength), frameSize) : null;
+        if (head == null) {
+            throw new TooLongFrameException("Frame of " + frameSize + " bytes exceeds the maximum of " + maxFrameSize + " bytes");
+        }
+        if (log().isDebugEnabled()) {
+            log().debug("{}: Streaming frame of {} bytes: {}", ctx, frameSize, head);
+        }
+        return head;
+    }
+
+    /**
+     * Decodes a single frame, which is exactly the readable bytes of the given buffer.
+     * @return The decoded {@link Frame}, or a message wrapping it.
+     */
+    protected abstract Object decodeHeaderAndBody(ChannelHandlerContext ctx, ByteBuf in, int length);
+
+    /**
+     * Decodes the head of a frame which is too large to be buffered, which is exactly the readable bytes of the given buffer.
+     * @param length The length of the whole frame.
+     * @return A streamed {@link OpaqueFrame}, or a message wrapping it,
+     * or null if the frame cannot be streamed (for example because it needs to be decoded).
+     */
+    protected Object decodeStreamedHead(ChannelHandlerContext ctx, ByteBuf in, int length) {
+        return null;
+    }
 
 }
@@ -8,25 +8,58 @@ package io.kroxylicious.proxy.internal.codec;
 import org.slf4j.Logger;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.EncoderException;
 import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
 
 import io.kroxylicious.proxy.frame.Frame;
 
 /**
  * Abstraction for request and response encoders.
+ *
+ * <p>Frames whose estimated encoded size is at least the {@linkplain #compositeThreshold() composite threshold}
+ * are encoded to a {@link CompositeByteBuf}, in the manner of Kafka's
+ * {@code org.apache.kafka.common.protocol.SendBuilder.buildSend}: large record sections become components which
+ * reference the buffers already holding them, rather than being copied into a single contiguous buffer.
+ * The channel's transport can then write the frame using gather I/O.
+ * The fields between the record sections are copied into small buffers sized by
+ * {@link ByteBufAccessorImpl}, so the composite's capacity stays close to the size of the frame.</p>
  */
 public abstract class KafkaMessageEncoder<F extends Frame> extends MessageToByteEncoder<F> {
 
-    /*
-     * TODO In org.apache.kafka.common.protocol.SendBuilder.buildSend Kafka gets to optimize how it writes to the
-     * output buffer because it can sometimes use zero copy and so avoid needing to allocate a buffer for the whole message
-     * To do similar we'd need to override io.netty.handler.codec.MessageToByteEncoder.write()
-     * so we had control over buffer allocation
+    /**
+     * The default composite threshold, in bytes.
+     */
+    public static final int DEFAULT_COMPOSITE_THRESHOLD = 64 * 1024;
+
+    private final int compositeThreshold;
+
+    protected KafkaMessageEncoder() {
+        this(DEFAULT_COMPOSITE_THRESHOLD);
+    }
+
+    /**
+     * @param compositeThreshold The estimated encoded size, in bytes, at or above which frames are encoded
+     * to a {@link CompositeByteBuf}. A negative value disables composite encoding.
      */
+    protected KafkaMessageEncoder(int compositeThreshold) {
+        this.compositeThreshold = compositeThreshold;
+    }
 
     protected abstract Logger log();
 
+    /**
+     * @return The estimated encoded size, in bytes, at or above which frames are encoded
+     * to a {@link CompositeByteBuf}, or a negative value if composite encoding is disabled.
+     */
+    public int compositeThreshold() {
+        return compositeThreshold;
+    }
+
     /**
      * This has been overridden in order to use {@link Frame#estimateEncodedSize()} to pre-size correctly the holding buffer
      * and save expensive enlarging to happen under the hood, during the encoding process.
@@ -40,6 +73,47 @@ public abstract class KafkaMessageEncoder<F extends Frame> extends MessageToByte
         return ctx.alloc().heapBuffer(bytes);
     }
 
+    /**
+     * This has been overridden so that large frames can be encoded to a {@link CompositeByteBuf}.
+     * The components of such a buffer may reference buffers owned by the frame, so unlike
+     * {@link MessageToByteEncoder#write(ChannelHandlerContext, Object, ChannelPromise)} the frame is only released
+     * once the write has completed.
+     */
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (compositeThreshold < 0 || !acceptOutboundMessage(msg)) {
+            super.write(ctx, msg, promise);
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        F frame = (F) msg;
+        if (frame.estimateEncodedSize() < compositeThreshold) {
+            super.write(ctx, msg, promise);
+            return;
+        }
+        // Components are never consolidated, since that would copy the record sections
+        CompositeByteBuf out = ctx.alloc().compositeBuffer(Integer.MAX_VALUE);
+        try {
+            encode(ctx, frame, out);
+        }
+        catch (Throwable e) {
+            out.release();
+            ReferenceCountUtil.release(frame);
+            if (e instanceof EncoderException) {
+                throw (EncoderException) e;
+            }
+            throw new EncoderException(e);
+        }
+        if (frame instanceof ReferenceCounted) {
+            ChannelPromise writePromise = promise.unvoid();
+            writePromise.addListener(future -> ReferenceCountUtil.release(frame));
+            ctx.write(out, writePromise);
+        }
+        else {
+            ctx.write(out, promise);
+        }
+    }
+
     @Override
     protected void encode(ChannelHandlerContext ctx, F frame, ByteBuf out) throws Exception {
         log().trace("{}: Encoding {} to buffer {}", ctx, frame, out);
@@ -55,10 +55,33 @@ public class KafkaRequestDecoder extends KafkaMessageDecoder {
     private static final Logger LOGGER = LoggerFactory.getLogger(KafkaRequestDecoder.class);
 
     private final DecodePredicate decodePredicate;
+    private final RequestLatencyTracker latencyTracker;
 
     public KafkaRequestDecoder(DecodePredicate decodePredicate) {
         super();
         this.decodePredicate = decodePredicate;
+        this.latencyTracker = null;
+    }
+
+    /**
+     * @param decodePredicate The decode predicate.
+     * @param maxFrameSize The size, in bytes, of the largest request which will be buffered.
+     * @param streaming Whether larger requests which need not be decoded are streamed, rather than rejected.
+     */
+    public KafkaRequestDecoder(DecodePredicate decodePredicate, int maxFrameSize, boolean streaming) {
+        this(decodePredicate, maxFrameSize, streaming, null);
+    }
+
+    /**
+     * @param decodePredicate The decode predicate.
+     * @param maxFrameSize The size, in bytes, of the largest request which will be buffered.
+     * @param streaming Whether larger requests which need not be decoded are streamed, rather than rejected.
+     * @param latencyTracker The tracker to notify of each request, or null.
+     */
+    public KafkaRequestDecoder(DecodePredicate decodePredicate, int maxFrameSize, boolean streaming, RequestLatencyTracker latencyTracker) {
+        super(maxFrameSize, streaming);
+        this.decodePredicate = decodePredicate;
+        this.latencyTracker = latencyTracker;
     }
 
     @Override
@@ -81,14 +104,18 @@ public class KafkaRequestDecoder extends KafkaMessageDecoder {
             log().trace("{}: apiVersion: {}", ctx, apiVersion);
         }
         int correlationId = in.readInt();
-        LOGGER.debug("{}: {} downstream correlation id: {}", ctx, apiKey, correlationId);
-
+        if (latencyTracker != null) {
+            latencyTracker.requestReceived(correlationId, apiId, apiVersion, System.nanoTime());
+        }
         RequestHeaderData header = null;
         final ByteBufAccessorImpl accessor;
         var decodeRequest = decodePredicate.shouldDecodeRequest(apiKey, apiVersion);
-        LOGGER.debug("Decode {}/v{} request? {}, Predicate {} ", apiKey, apiVersion, decodeRequest, decodePredicate);
         boolean decodeResponse = decodePredicate.shouldDecodeResponse(apiKey, apiVersion);
-        LOGGER.debug("Decode {}/v{} response? {}, Predicate {}", apiKey, apiVersion, decodeResponse, decodePredicate);
+        if (LOGGER.isDebugEnabled()) { // avoid boxing
+            LOGGER.debug("{}: {} downstream correlation id: {}", ctx, apiKey, correlationId);
+            LOGGER.debug("Decode {}/v{} request? {}, Predicate {} ", apiKey, apiVersion, decodeRequest, decodePredicate);
+            LOGGER.debug("Decode {}/v{} response? {}, Predicate {}", apiKey, apiVersion, decodeResponse, decodePredicate);
+        }
         short headerVersion = apiKey.requestHeaderVersion(apiVersion);
         if (decodeRequest) {
             if (log().isTraceEnabled()) { // avoid boxing
@@ -99,7 +126,8 @@ public class KafkaRequestDecoder extends KafkaMessageDecoder {
             // TODO Decide whether to decode this API at all
             // TODO Can we implement ApiMessage using an opaque wrapper around a bytebuf?
 
-            accessor = new ByteBufAccessorImpl(in);
+            // Record payloads are exposed as views of the inbound buffer, owned by the frame
+            accessor = new ByteBufAccessorImpl(in, true);
             header = readHeader(headerVersion, accessor);
             if (log().isTraceEnabled()) {
                 log().trace("{}: header: {}", ctx, header);
@@ -110,12 +138,21 @@ public class KafkaRequestDecoder extends KafkaMessageDecoder {
         }
         final RequestFrame frame;
         if (decodeRequest) {
-            ApiMessage body = readBody(apiId, apiVersion, accessor);
+            ApiMessage body;
+            try {
+                body = readBody(apiId, apiVersion, accessor);
+            }
+            catch (RuntimeException e) {
+                accessor.releaseSlices();
+                throw e;
+            }
             if (log().isTraceEnabled()) {
                 log().trace("{}: body {}", ctx, body);
             }
 
-            frame = new DecodedRequestFrame<ApiMessage>(apiVersion, correlationId, decodeResponse, header, body);
+            var decodedFrame = new DecodedRequestFrame<ApiMessage>(apiVersion, correlationId, decodeResponse, header, body);
+            accessor.transferSlicesTo(decodedFrame);
+            frame = decodedFrame;
             if (log().isTraceEnabled()) {
                 log().trace("{}: frame {}", ctx, frame);
             }
@@ -129,6 +166,38 @@ public class KafkaRequestDecoder extends KafkaMessageDecoder {
         return frame;
     }
 
+    @Override
+    protected Frame decodeStreamedHead(ChannelHandlerContext ctx, ByteBuf in, int length) {
+        final int sof = in.readerIndex();
+        short apiId = in.getShort(sof);
+        short apiVersion = in.getShort(sof + Short.BYTES);
+        int correlationId = in.getInt(sof + Short.BYTES + Short.BYTES);
+        ApiKeys apiKey = ApiKeys.forId(apiId);
+        if (decodePredicate.shouldDecodeRequest(apiKey, apiVersion)) {
+            return null;
+        }
+        if (apiKey == ApiKeys.PRODUCE) {
+            // The encoder needs the acks from the head to know whether there will be a response
+            try {
+                in.readerIndex(sof + Short.BYTES + Short.BYTES);
+                KafkaRequestEncoder.readAcks(in, sof, apiId, apiVersion);
+            }
+            catch (IndexOutOfBoundsException e) {
+                return null;
+            }
+        }
+        boolean decodeResponse = decodePredicate.shouldDecodeResponse(apiKey, apiVersion);
+        if (latencyTracker != null) {
+            latencyTracker.requestReceived(correlationId, apiId, apiVersion, System.nanoTime());
+        }
+        return new OpaqueRequestFrame(
+                in.readSlice(in.readableBytes()).retain(),
+                correlationId,
+                decodeResponse,
+                length,
+                true);
+    }
+
     private OpaqueRequestFrame opaqueFrame(ByteBuf in,
                                            int correlationId,
                                            boolean decodeResponse,
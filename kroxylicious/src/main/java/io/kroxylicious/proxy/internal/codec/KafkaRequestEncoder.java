@@ -11,6 +11,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 
 import io.kroxylicious.proxy.frame.DecodedRequestFrame;
@@ -27,6 +28,11 @@ public class KafkaRequestEncoder extends KafkaMessageEncoder<RequestFrame> {
     private final CorrelationManager correlationManager;
 
     public KafkaRequestEncoder(CorrelationManager correlationManager) {
+        this(correlationManager, DEFAULT_COMPOSITE_THRESHOLD);
+    }
+
+    public KafkaRequestEncoder(CorrelationManager correlationManager, int compositeThreshold) {
+        super(compositeThreshold);
         this.correlationManager = correlationManager;
     }
 
@@ -54,7 +60,8 @@ public class KafkaRequestEncoder extends KafkaMessageEncoder<RequestFrame> {
                 hasResponse,
                 frame instanceof InternalRequestFrame ? ((InternalRequestFrame<?>) frame).recipient() : null,
                 frame instanceof InternalRequestFrame ? ((InternalRequestFrame<?>) frame).promise() : null,
-                decodeResponse);
+                decodeResponse,
+                multiplexedChannel());
         out.writerIndex(LENGTH + API_KEY + API_VERSION);
         out.writeInt(upstreamCorrelationId);
         if (LOGGER.isDebugEnabled()) {
@@ -71,6 +78,14 @@ public class KafkaRequestEncoder extends KafkaMessageEncoder<RequestFrame> {
         }
     }
 
+    /**
+     * @return The channel on whose behalf the frame being encoded was written, if the upstream connection
+     * is shared between several client connections, otherwise null.
+     */
+    protected Channel multiplexedChannel() {
+        return null;
+    }
+
     private boolean hasResponse(RequestFrame frame, ByteBuf out, int ri, short apiKey, short apiVersion) {
         if (frame instanceof DecodedRequestFrame) {
             return apiKey != ApiKeys.PRODUCE.id
@@ -5,6 +5,8 @@
  */
 package io.kroxylicious.proxy.internal.codec;
 
+import java.util.Set;
+
 import org.apache.kafka.common.message.AddOffsetsToTxnResponseData;
 import org.apache.kafka.common.message.AddPartitionsToTxnResponseData;
 import org.apache.kafka.common.message.ApiVersionsResponseData;
@@ -43,13 +45,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 
 import io.kroxylicious.proxy.filter.KrpcFilter;
+import io.kroxylicious.proxy.frame.BodyPrefixCodec;
 import io.kroxylicious.proxy.frame.DecodedResponseFrame;
 import io.kroxylicious.proxy.frame.Frame;
 import io.kroxylicious.proxy.frame.OpaqueFrame;
 import io.kroxylicious.proxy.frame.OpaqueResponseFrame;
+import io.kroxylicious.proxy.frame.PartiallyDecodedResponseFrame;
+import io.kroxylicious.proxy.future.Promise;
+import io.kroxylicious.proxy.internal.ApiLatencyMetrics;
 import io.kroxylicious.proxy.internal.InternalResponseFrame;
 
 public class KafkaResponseDecoder extends KafkaMessageDecoder {
@@ -57,10 +64,34 @@ public class KafkaResponseDecoder extends KafkaMessageDecoder {
     private static final Logger LOGGER = LoggerFactory.getLogger(KafkaResponseDecoder.class);
 
     private final CorrelationManager correlationManager;
+    private final DecodePredicate decodePredicate;
 
     public KafkaResponseDecoder(CorrelationManager correlationManager) {
+        this(correlationManager, null);
+    }
+
+    /**
+     * @param correlationManager The correlation manager.
+     * @param decodePredicate Determines which fields of decoded responses are used,
+     * or null if responses should always be decoded fully.
+     */
+    public KafkaResponseDecoder(CorrelationManager correlationManager, DecodePredicate decodePredicate) {
         super();
         this.correlationManager = correlationManager;
+        this.decodePredicate = decodePredicate;
+    }
+
+    /**
+     * @param correlationManager The correlation manager.
+     * @param decodePredicate Determines which fields of decoded responses are used,
+     * or null if responses should always be decoded fully.
+     * @param maxFrameSize The size, in bytes, of the largest response which will be buffered.
+     * @param streaming Whether larger responses which need not be decoded are streamed, rather than rejected.
+     */
+    public KafkaResponseDecoder(CorrelationManager correlationManager, DecodePredicate decodePredicate, int maxFrameSize, boolean streaming) {
+        super(maxFrameSize, streaming);
+        this.correlationManager = correlationManager;
+        this.decodePredicate = decodePredicate;
     }
 
     @Override
@@ -69,7 +100,7 @@ public class KafkaResponseDecoder extends KafkaMessageDecoder {
     }
 
     @Override
-    protected Frame decodeHeaderAndBody(ChannelHandlerContext ctx, ByteBuf in, int length) {
+    protected Object decodeHeaderAndBody(ChannelHandlerContext ctx, ByteBuf in, int length) {
         var wi = in.writerIndex();
         var ri = in.readerIndex();
         var upstreamCorrelationId = in.readInt();
@@ -82,7 +113,12 @@ public class KafkaResponseDecoder extends KafkaMessageDecoder {
         else if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("{}: Recovered correlation {} for upstream correlation id {}", ctx, correlation, upstreamCorrelationId);
         }
+        recordUpstreamLatency(correlation);
         int correlationId = correlation.downstreamCorrelationId();
+        Channel channel = correlation.channel();
+        KrpcFilter recipient = correlation.recipient();
+        Promise<?> promise = correlation.promise();
+        correlation.release();
         in.writerIndex(ri);
         in.writeInt(correlationId);
         in.writerIndex(wi);
@@ -91,26 +127,97 @@ public class KafkaResponseDecoder extends KafkaMessageDecoder {
         if (correlation.decodeResponse()) {
             ApiKeys apiKey = ApiKeys.forId(correlation.apiKey());
             short apiVersion = correlation.apiVersion();
-            var accessor = new ByteBufAccessorImpl(in);
+            // Responses to filter-originated requests are consumed by the filter's promise, rather than
+            // being encoded (and thus released), so their record payloads must not pin the inbound buffer
+            var accessor = new ByteBufAccessorImpl(in, recipient == null);
             short headerVersion = apiKey.responseHeaderVersion(apiVersion);
             log().trace("{}: Header version: {}", ctx, headerVersion);
-            ResponseHeaderData header = readHeader(headerVersion, accessor);
-            log().trace("{}: Header: {}", ctx, header);
-            ApiMessage body = readBody(apiKey, apiVersion, accessor);
+            // Filter-originated requests get the whole body, since we don't know what they'll read from it
+            BodyPrefixCodec<?> prefixCodec = recipient == null ? prefixCodec(apiKey, apiVersion) : null;
+            ResponseHeaderData header;
+            ApiMessage body;
+            DecodedResponseFrame<?> decodedFrame = null;
+            try {
+                header = readHeader(headerVersion, accessor);
+                log().trace("{}: Header: {}", ctx, header);
+                if (prefixCodec != null) {
+                    decodedFrame = partiallyDecodedFrame(prefixCodec, accessor, in, ri + length, apiVersion, correlationId, header);
+                    body = decodedFrame.body();
+                }
+                else {
+                    body = readBody(apiKey, apiVersion, accessor);
+                }
+            }
+            catch (RuntimeException e) {
+                accessor.releaseSlices();
+                throw e;
+            }
             log().trace("{}: Body: {}", ctx, body);
-            KrpcFilter recipient = correlation.recipient();
             if (recipient == null) {
-                frame = new DecodedResponseFrame<>(apiVersion, correlationId, header, body);
+                if (decodedFrame == null) {
+                    decodedFrame = new DecodedResponseFrame<>(apiVersion, correlationId, header, body);
+                }
+                accessor.transferSlicesTo(decodedFrame);
+                frame = decodedFrame;
             }
             else {
-                frame = new InternalResponseFrame<>(recipient, correlation.promise(), apiVersion, correlationId, header, body);
+                frame = new InternalResponseFrame<>(recipient, promise, apiVersion, correlationId, header, body);
             }
         }
         else {
             frame = opaqueFrame(in, correlationId, length);
         }
         log().trace("{}: Frame: {}", ctx, frame);
-        return frame;
+        // When the upstream connection is shared the response needs to be routed to the channel which sent the request
+        return channel == null ? frame : new MultiplexedFrame(channel, frame);
+    }
+
+    @Override
+    protected Frame decodeStreamedHead(ChannelHandlerContext ctx, ByteBuf in, int length) {
+        var ri = in.readerIndex();
+        var upstreamCorrelationId = in.getInt(ri);
+        CorrelationManager.Correlation correlation = this.correlationManager.getBrokerCorrelation(upstreamCorrelationId);
+        if (correlation == null) {
+            throw new AssertionError("Missing correlation id " + upstreamCorrelationId);
+        }
+        recordUpstreamLatency(correlation);
+        boolean shared = correlation.channel() != null;
+        correlation.release();
+        // The continuation of a streamed response can't be routed to the channel of a shared connection
+        if (correlation.decodeResponse() || shared) {
+            return null;
+        }
+        int correlationId = correlation.downstreamCorrelationId();
+        in.setInt(ri, correlationId);
+        return new OpaqueResponseFrame(in.readSlice(in.readableBytes()).retain(), correlationId, length, true);
+    }
+
+    private static void recordUpstreamLatency(CorrelationManager.Correlation correlation) {
+        ApiLatencyMetrics.UPSTREAM.record(correlation.apiKey(), correlation.apiVersion(), System.nanoTime() - correlation.sentNanos());
+    }
+
+    /**
+     * @return A codec for the part of the body which covers all the fields used by the filters,
+     * or null if the body should be decoded fully.
+     */
+    private BodyPrefixCodec<?> prefixCodec(ApiKeys apiKey, short apiVersion) {
+        if (decodePredicate == null || apiKey != ApiKeys.METADATA) {
+            return null;
+        }
+        Set<String> fields = decodePredicate.responseFields(apiKey, apiVersion);
+        return fields != null && MetadataResponsePrefixCodec.INSTANCE.fields().containsAll(fields) ? MetadataResponsePrefixCodec.INSTANCE : null;
+    }
+
+    private static <B extends ApiMessage> PartiallyDecodedResponseFrame<B> partiallyDecodedFrame(BodyPrefixCodec<B> prefixCodec,
+                                                                                                 Readable accessor,
+                                                                                                 ByteBuf in,
+                                                                                                 int endOfFrame,
+                                                                                                 short apiVersion,
+                                                                                                 int correlationId,
+                                                                                                 ResponseHeaderData header) {
+        B body = prefixCodec.read(accessor, apiVersion);
+        ByteBuf remainder = in.readRetainedSlice(endOfFrame - in.readerIndex());
+        return new PartiallyDecodedResponseFrame<>(apiVersion, correlationId, header, body, prefixCodec, remainder);
     }
 
     private OpaqueFrame opaqueFrame(ByteBuf in, int correlationId, int length) {
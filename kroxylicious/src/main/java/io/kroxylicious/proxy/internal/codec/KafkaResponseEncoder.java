@@ -8,15 +8,47 @@ package io.kroxylicious.proxy.internal.codec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+
+import io.kroxylicious.proxy.frame.BareSaslResponse;
 import io.kroxylicious.proxy.frame.ResponseFrame;
 
 public class KafkaResponseEncoder extends KafkaMessageEncoder<ResponseFrame> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(KafkaResponseEncoder.class);
 
+    private final RequestLatencyTracker latencyTracker;
+
+    public KafkaResponseEncoder() {
+        this(DEFAULT_COMPOSITE_THRESHOLD);
+    }
+
+    public KafkaResponseEncoder(int compositeThreshold) {
+        this(compositeThreshold, null);
+    }
+
+    /**
+     * @param compositeThreshold The composite threshold.
+     * @param latencyTracker The tracker to notify of each response, or null.
+     */
+    public KafkaResponseEncoder(int compositeThreshold, RequestLatencyTracker latencyTracker) {
+        super(compositeThreshold);
+        this.latencyTracker = latencyTracker;
+    }
+
     @Override
     protected Logger log() {
         return LOGGER;
     }
 
+    @Override
+    protected void encode(ChannelHandlerContext ctx, ResponseFrame frame, ByteBuf out) throws Exception {
+        super.encode(ctx, frame, out);
+        // Bare SASL responses have no correlation id
+        if (latencyTracker != null && !(frame instanceof BareSaslResponse)) {
+            latencyTracker.responseSent(frame.correlationId(), System.nanoTime());
+        }
+    }
+
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.codec;
+
+import java.util.Set;
+
+import org.apache.kafka.common.errors.UnsupportedVersionException;
+import org.apache.kafka.common.message.MetadataResponseData;
+import org.apache.kafka.common.message.MetadataResponseData.MetadataResponseBroker;
+import org.apache.kafka.common.message.MetadataResponseData.MetadataResponseBrokerCollection;
+import org.apache.kafka.common.protocol.MessageSizeAccumulator;
+import org.apache.kafka.common.protocol.ObjectSerializationCache;
+import org.apache.kafka.common.protocol.Readable;
+import org.apache.kafka.common.protocol.Writable;
+import org.apache.kafka.common.utils.ByteUtils;
+
+import io.kroxylicious.proxy.frame.BodyPrefixCodec;
+
+/**
+ * Decodes the {@code ThrottleTimeMs} and {@code Brokers} of a {@code Metadata} response,
+ * which precede the topics and their partitions, which, for large clusters, make up most of the response.
+ */
+class MetadataResponsePrefixCodec implements BodyPrefixCodec<MetadataResponseData> {
+
+    static final MetadataResponsePrefixCodec INSTANCE = new MetadataResponsePrefixCodec();
+
+    private static final Set<String> FIELDS = Set.of("ThrottleTimeMs", "Brokers");
+
+    private static final short FIRST_FLEXIBLE_VERSION = 9;
+
+    private MetadataResponsePrefixCodec() {
+    }
+
+    @Override
+    public Set<String> fields() {
+        return FIELDS;
+    }
+
+    @Override
+    public MetadataResponseData read(Readable in, short apiVersion) {
+        if (apiVersion > MetadataResponseData.HIGHEST_SUPPORTED_VERSION) {
+            throw new UnsupportedVersionException("Can't read version " + apiVersion + " of MetadataResponseData");
+        }
+        var body = new MetadataResponseData();
+        if (apiVersion >= 3) {
+            body.setThrottleTimeMs(in.readInt());
+        }
+        int length = apiVersion >= FIRST_FLEXIBLE_VERSION ? in.readUnsignedVarint() - 1 : in.readInt();
+        if (length < 0) {
+            throw new RuntimeException("non-nullable field brokers was serialized as null");
+        }
+        var brokers = new MetadataResponseBrokerCollection(length);
+        for (int i = 0; i < length; i++) {
+            brokers.add(new MetadataResponseBroker(in, apiVersion));
+        }
+        return body.setBrokers(brokers);
+    }
+
+    @Override
+    public void addSize(MetadataResponseData body, MessageSizeAccumulator sizer, ObjectSerializationCache cache, short apiVersion) {
+        if (apiVersion >= 3) {
+            sizer.addBytes(4);
+        }
+        var brokers = body.brokers();
+        sizer.addBytes(apiVersion >= FIRST_FLEXIBLE_VERSION ? ByteUtils.sizeOfUnsignedVarint(brokers.size() + 1) : 4);
+        for (MetadataResponseBroker broker : brokers) {
+            broker.addSize(sizer, cache, apiVersion);
+        }
+    }
+
+    @Override
+    public void write(MetadataResponseData body, Writable out, ObjectSerializationCache cache, short apiVersion) {
+        if (apiVersion >= 3) {
+            out.writeInt(body.throttleTimeMs());
+        }
+        var brokers = body.brokers();
+        if (apiVersion >= FIRST_FLEXIBLE_VERSION) {
+            out.writeUnsignedVarint(brokers.size() + 1);
+        }
+        else {
+            out.writeInt(brokers.size());
+        }
+        for (MetadataResponseBroker broker : brokers) {
+            broker.write(out, cache, apiVersion);
+        }
+    }
+}
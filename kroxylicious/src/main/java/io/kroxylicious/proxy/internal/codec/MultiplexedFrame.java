@@ -0,0 +1,51 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.codec;
+
+import io.netty.channel.Channel;
+
+import io.kroxylicious.proxy.frame.Frame;
+
+/**
+ * A frame passing through an upstream connection which is shared between several client connections,
+ * together with the channel it belongs to.
+ * Requests are written to the shared connection wrapped in one of these, so that the
+ * {@link MultiplexingRequestEncoder} can record where the response should go,
+ * and the {@link KafkaResponseDecoder} wraps the corresponding responses so that they can be routed
+ * back to that channel.
+ */
+public final class MultiplexedFrame {
+
+    private final Channel channel;
+    private final Frame frame;
+
+    public MultiplexedFrame(Channel channel, Frame frame) {
+        this.channel = channel;
+        this.frame = frame;
+    }
+
+    /**
+     * @return The channel on whose behalf the request was sent.
+     */
+    public Channel channel() {
+        return channel;
+    }
+
+    /**
+     * @return The frame.
+     */
+    public Frame frame() {
+        return frame;
+    }
+
+    @Override
+    public String toString() {
+        return "MultiplexedFrame(" +
+                "channel=" + channel +
+                ", frame=" + frame +
+                ')';
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.codec;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * A request encoder for an upstream connection which is shared between several client connections.
+ * Requests are written to it as {@link MultiplexedFrame}s, and the channel of each is recorded
+ * with its correlation so that the response can be routed back to it.
+ */
+public class MultiplexingRequestEncoder extends KafkaRequestEncoder {
+
+    /** The channel of the frame being written, if any */
+    private Channel channel;
+
+    public MultiplexingRequestEncoder(CorrelationManager correlationManager) {
+        super(correlationManager);
+    }
+
+    public MultiplexingRequestEncoder(CorrelationManager correlationManager, int compositeThreshold) {
+        super(correlationManager, compositeThreshold);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof MultiplexedFrame) {
+            MultiplexedFrame multiplexedFrame = (MultiplexedFrame) msg;
+            channel = multiplexedFrame.channel();
+            try {
+                super.write(ctx, multiplexedFrame.frame(), promise);
+            }
+            finally {
+                channel = null;
+            }
+        }
+        else {
+            super.write(ctx, msg, promise);
+        }
+    }
+
+    @Override
+    protected Channel multiplexedChannel() {
+        return channel;
+    }
+}
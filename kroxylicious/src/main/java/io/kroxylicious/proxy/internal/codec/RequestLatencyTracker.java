@@ -0,0 +1,74 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.codec;
+
+import io.kroxylicious.proxy.internal.ApiLatencyMetrics;
+
+/**
+ * Tracks the requests of a single client connection from when they're decoded by the {@link KafkaRequestDecoder}
+ * until their responses are encoded by the {@link KafkaResponseEncoder}, recording the elapsed time
+ * in {@link ApiLatencyMetrics#PROXY}.
+ *
+ * <p>Like the {@link CorrelationManager}, requests are held in a ring of slots indexed by the low bits of
+ * their (downstream) correlation id, with the fields flattened into parallel arrays so that nothing is allocated
+ * per request.
+ * Unlike it, the ring has a fixed size: if a request's slot is still in use by an older request
+ * (which will be the case for requests without responses, such as {@code acks=0} Produce requests)
+ * the older request is forgotten, and its latency isn't recorded.</p>
+ */
+public class RequestLatencyTracker {
+
+    private static final int CAPACITY = 64;
+    private static final int MASK = CAPACITY - 1;
+
+    private final int[] correlationIds = new int[CAPACITY];
+    private final boolean[] used = new boolean[CAPACITY];
+    private final short[] apiKeys = new short[CAPACITY];
+    private final short[] apiVersions = new short[CAPACITY];
+    private final long[] startNanos = new long[CAPACITY];
+
+    private final ApiLatencyMetrics metrics;
+
+    public RequestLatencyTracker() {
+        this(ApiLatencyMetrics.PROXY);
+    }
+
+    RequestLatencyTracker(ApiLatencyMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Called when a request has been received from the client.
+     * @param correlationId The (downstream) correlation id.
+     * @param apiKey The API key.
+     * @param apiVersion The API version.
+     * @param nanos The {@link System#nanoTime()} at which the request was received.
+     */
+    public void requestReceived(int correlationId, short apiKey, short apiVersion, long nanos) {
+        int slot = correlationId & MASK;
+        correlationIds[slot] = correlationId;
+        used[slot] = true;
+        apiKeys[slot] = apiKey;
+        apiVersions[slot] = apiVersion;
+        startNanos[slot] = nanos;
+    }
+
+    /**
+     * Called when the response to a request is sent to the client.
+     * @param correlationId The (downstream) correlation id.
+     * @param nanos The {@link System#nanoTime()} at which the response was sent.
+     * @return Whether the request was being tracked, and its latency recorded.
+     */
+    public boolean responseSent(int correlationId, long nanos) {
+        int slot = correlationId & MASK;
+        if (!used[slot] || correlationIds[slot] != correlationId) {
+            return false;
+        }
+        used[slot] = false;
+        metrics.record(apiKeys[slot], apiVersions[slot], nanos - startNanos[slot]);
+        return true;
+    }
+}
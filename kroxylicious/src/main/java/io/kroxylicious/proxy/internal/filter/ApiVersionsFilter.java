@@ -24,12 +24,18 @@ public class ApiVersionsFilter implements ApiVersionsResponseFilter {
     public static class ApiVersionsFilterConfig extends FilterConfig {
     }
 
-    private static void intersectApiVersions(String channel, ApiVersionsResponseData resp) {
+    /**
+     * Update the given response so that it gives the versions mutually understood by both the proxy and the broker.
+     * @param channel A description of where the response came from, for logging.
+     * @param resp The broker's response.
+     */
+    public static void intersectApiVersions(String channel, ApiVersionsResponseData resp) {
+        boolean trace = LOGGER.isTraceEnabled();
         for (var key : resp.apiKeys()) {
             short apiId = key.apiKey();
             if (ApiKeys.hasId(apiId)) {
                 ApiKeys apiKey = ApiKeys.forId(apiId);
-                intersectApiVersion(channel, key, apiKey);
+                intersectApiVersion(channel, key, apiKey, trace);
             }
         }
     }
@@ -40,16 +46,20 @@ public class ApiVersionsFilter implements ApiVersionsResponseFilter {
      * @param channel The channel.
      * @param key The key data from an upstream API_VERSIONS response.
      * @param apiKey The proxy's API key for this API.
+     * @param trace Whether to log the changes, which is checked once per response
+     * rather than paying for the log arguments of every key.
      */
-    private static void intersectApiVersion(String channel, ApiVersionsResponseData.ApiVersion key, ApiKeys apiKey) {
+    private static void intersectApiVersion(String channel, ApiVersionsResponseData.ApiVersion key, ApiKeys apiKey, boolean trace) {
         short mutualMin = (short) Math.max(
                 key.minVersion(),
                 apiKey.messageType.lowestSupportedVersion());
         if (mutualMin != key.minVersion()) {
-            LOGGER.trace("{}: {} min version changed to {} (was: {})", channel, apiKey, mutualMin, key.maxVersion());
+            if (trace) {
+                LOGGER.trace("{}: {} min version changed to {} (was: {})", channel, apiKey, mutualMin, key.maxVersion());
+            }
             key.setMinVersion(mutualMin);
         }
-        else {
+        else if (trace) {
             LOGGER.trace("{}: {} min version unchanged (is: {})", channel, apiKey, mutualMin);
         }
 
@@ -57,10 +67,12 @@ public class ApiVersionsFilter implements ApiVersionsResponseFilter {
                 key.maxVersion(),
                 apiKey.messageType.highestSupportedVersion());
         if (mutualMax != key.maxVersion()) {
-            LOGGER.trace("{}: {} max version changed to {} (was: {})", channel, apiKey, mutualMin, key.maxVersion());
+            if (trace) {
+                LOGGER.trace("{}: {} max version changed to {} (was: {})", channel, apiKey, mutualMin, key.maxVersion());
+            }
             key.setMaxVersion(mutualMax);
         }
-        else {
+        else if (trace) {
             LOGGER.trace("{}: {} max version unchanged (is: {})", channel, apiKey, mutualMin);
         }
     }
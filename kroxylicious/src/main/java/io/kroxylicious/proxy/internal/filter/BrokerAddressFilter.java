@@ -5,6 +5,7 @@
  */
 package io.kroxylicious.proxy.internal.filter;
 
+import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.ObjIntConsumer;
@@ -16,6 +17,7 @@ import org.apache.kafka.common.message.FindCoordinatorResponseData;
 import org.apache.kafka.common.message.FindCoordinatorResponseData.Coordinator;
 import org.apache.kafka.common.message.MetadataResponseData;
 import org.apache.kafka.common.message.MetadataResponseData.MetadataResponseBroker;
+import org.apache.kafka.common.protocol.ApiKeys;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,13 +34,26 @@ public class BrokerAddressFilter implements MetadataResponseFilter, FindCoordina
 
     private static final Logger LOGGER = LoggerFactory.getLogger(BrokerAddressFilter.class);
 
+    /** The type of this filter in the configuration. */
+    public static final String TYPE = "BrokerAddress";
+
     public static class BrokerAddressFilterConfig extends FilterConfig {
     }
 
     public interface AddressMapping {
-        String downstreamHost(String upstreamHost, int upstreamPort);
 
-        int downstreamPort(String upstreamHost, int upstreamPort);
+        /**
+         * Called for each broker in a response, before its address is rewritten.
+         * @param nodeId The broker's id.
+         * @param upstreamHost The broker's host.
+         * @param upstreamPort The broker's port.
+         */
+        default void brokerSeen(int nodeId, String upstreamHost, int upstreamPort) {
+        }
+
+        String downstreamHost(int nodeId, String upstreamHost, int upstreamPort);
+
+        int downstreamPort(int nodeId, String upstreamHost, int upstreamPort);
     }
 
     private static class FixedAddressMapping implements AddressMapping {
@@ -52,16 +67,18 @@ public class BrokerAddressFilter implements MetadataResponseFilter, FindCoordina
         }
 
         @Override
-        public String downstreamHost(String host, int port) {
+        public String downstreamHost(int nodeId, String host, int port) {
             return targetHost;
         }
 
         @Override
-        public int downstreamPort(String host, int port) {
+        public int downstreamPort(int nodeId, String host, int port) {
             return targetPort;
         }
     }
 
+    private static final Set<String> METADATA_RESPONSE_FIELDS = Set.of("Brokers");
+
     private final AddressMapping mapping;
 
     public BrokerAddressFilter(ProxyConfig config) {
@@ -71,10 +88,21 @@ public class BrokerAddressFilter implements MetadataResponseFilter, FindCoordina
         this.mapping = new FixedAddressMapping(proxyAddressParts[0], Integer.valueOf(proxyAddressParts[1]));
     }
 
+    public BrokerAddressFilter(AddressMapping mapping) {
+        this.mapping = mapping;
+    }
+
+    @Override
+    public Set<String> responseFields(ApiKeys apiKey, short apiVersion) {
+        // Only the brokers of a Metadata response are rewritten, so there's no need to decode its topics
+        return apiKey == ApiKeys.METADATA ? METADATA_RESPONSE_FIELDS : null;
+    }
+
     @Override
     public void onMetadataResponse(MetadataResponseData data, KrpcFilterContext context) {
         for (MetadataResponseBroker broker : data.brokers()) {
-            apply(context, broker, MetadataResponseBroker::host, MetadataResponseBroker::port, MetadataResponseBroker::setHost, MetadataResponseBroker::setPort);
+            apply(context, broker, MetadataResponseBroker::nodeId, MetadataResponseBroker::host, MetadataResponseBroker::port, MetadataResponseBroker::setHost,
+                    MetadataResponseBroker::setPort);
         }
         context.forwardResponse(data);
     }
@@ -82,7 +110,8 @@ public class BrokerAddressFilter implements MetadataResponseFilter, FindCoordina
     @Override
     public void onDescribeClusterResponse(DescribeClusterResponseData data, KrpcFilterContext context) {
         for (DescribeClusterBroker broker : data.brokers()) {
-            apply(context, broker, DescribeClusterBroker::host, DescribeClusterBroker::port, DescribeClusterBroker::setHost, DescribeClusterBroker::setPort);
+            apply(context, broker, DescribeClusterBroker::brokerId, DescribeClusterBroker::host, DescribeClusterBroker::port, DescribeClusterBroker::setHost,
+                    DescribeClusterBroker::setPort);
         }
         context.forwardResponse(data);
     }
@@ -90,18 +119,25 @@ public class BrokerAddressFilter implements MetadataResponseFilter, FindCoordina
     @Override
     public void onFindCoordinatorResponse(FindCoordinatorResponseData data, KrpcFilterContext context) {
         for (Coordinator coordinator : data.coordinators()) {
-            apply(context, coordinator, Coordinator::host, Coordinator::port, Coordinator::setHost, Coordinator::setPort);
+            apply(context, coordinator, Coordinator::nodeId, Coordinator::host, Coordinator::port, Coordinator::setHost, Coordinator::setPort);
+        }
+        if (data.coordinators().isEmpty() && !data.host().isEmpty()) {
+            // Versions before 4 have a single coordinator, at the top level
+            apply(context, data, FindCoordinatorResponseData::nodeId, FindCoordinatorResponseData::host, FindCoordinatorResponseData::port,
+                    FindCoordinatorResponseData::setHost, FindCoordinatorResponseData::setPort);
         }
         context.forwardResponse(data);
     }
 
-    private <T> void apply(KrpcFilterContext context, T broker, Function<T, String> hostGetter, ToIntFunction<T> portGetter, BiConsumer<T, String> hostSetter,
-                           ObjIntConsumer<T> portSetter) {
+    private <T> void apply(KrpcFilterContext context, T broker, ToIntFunction<T> nodeIdGetter, Function<T, String> hostGetter, ToIntFunction<T> portGetter,
+                           BiConsumer<T, String> hostSetter, ObjIntConsumer<T> portSetter) {
+        int nodeId = nodeIdGetter.applyAsInt(broker);
         String incomingHost = hostGetter.apply(broker);
         int incomingPort = portGetter.applyAsInt(broker);
 
-        String host = mapping.downstreamHost(incomingHost, incomingPort);
-        int port = mapping.downstreamPort(incomingHost, incomingPort);
+        mapping.brokerSeen(nodeId, incomingHost, incomingPort);
+        String host = mapping.downstreamHost(nodeId, incomingHost, incomingPort);
+        int port = mapping.downstreamPort(nodeId, incomingHost, incomingPort);
 
         LOGGER.trace("{}: Rewriting broker address in response {}:{} -> {}:{}", context, incomingHost, incomingPort, host, port);
         hostSetter.accept(broker, host);
@@ -0,0 +1,93 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.filter;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.kroxylicious.proxy.filter.NetFilter.NetFilterContext;
+import io.kroxylicious.proxy.internal.filter.BrokerAddressFilter.AddressMapping;
+
+/**
+ * The routes through the proxy to the individual brokers of a single cluster, so that clients can send each request
+ * to the broker which leads the partitions concerned, rather than to the bootstrap broker.
+ * How a client's connection identifies its broker, and so what address the proxy gives each broker, is up to subclasses.
+ *
+ * <p>The brokers' actual addresses are learned from the metadata which passes through the {@link BrokerAddressFilter},
+ * which uses these routes to rewrite them to the proxy's.
+ * Since a client only learns of a broker from such metadata, the proxy knows of a broker before any client
+ * connects to it, except when the proxy has restarted and a client is using metadata it had before.</p>
+ */
+public abstract class BrokerRoutes implements AddressMapping {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BrokerRoutes.class);
+
+    private final String clusterName;
+    private final InetSocketAddress bootstrapBroker;
+    private final Map<Integer, InetSocketAddress> brokers = new ConcurrentHashMap<>();
+
+    /**
+     * @param clusterName The name of the cluster, for logging.
+     * @param bootstrapHost The host of the cluster's bootstrap broker.
+     * @param bootstrapPort The port of the cluster's bootstrap broker.
+     */
+    protected BrokerRoutes(String clusterName, String bootstrapHost, int bootstrapPort) {
+        this.clusterName = clusterName;
+        this.bootstrapBroker = InetSocketAddress.createUnresolved(bootstrapHost, bootstrapPort);
+    }
+
+    /**
+     * @param context The context of a client connection.
+     * @return The address of the broker to which the client connection should be routed,
+     * or null if the broker's address is not yet known.
+     */
+    public abstract InetSocketAddress upstreamAddress(NetFilterContext context);
+
+    /**
+     * @return Whether the given broker has an address of its own, rather than being reached via the bootstrap address.
+     */
+    protected abstract boolean hasOwnAddress(int nodeId);
+
+    protected String clusterName() {
+        return clusterName;
+    }
+
+    protected InetSocketAddress bootstrapBroker() {
+        return bootstrapBroker;
+    }
+
+    /**
+     * @return The address of the given broker, or null if it is not yet known.
+     */
+    protected InetSocketAddress broker(int nodeId) {
+        return brokers.get(nodeId);
+    }
+
+    @Override
+    public void brokerSeen(int nodeId, String upstreamHost, int upstreamPort) {
+        if (nodeId < 0) {
+            // E.g. a coordinator which isn't available, so there's no broker to learn of
+            return;
+        }
+        InetSocketAddress address = brokers.get(nodeId);
+        if (address == null
+                || !address.getHostString().equals(upstreamHost)
+                || address.getPort() != upstreamPort) {
+            LOGGER.info("Routing {}:{} to cluster {} broker {} at {}:{}", downstreamHost(nodeId, upstreamHost, upstreamPort),
+                    downstreamPort(nodeId, upstreamHost, upstreamPort), clusterName, nodeId, upstreamHost, upstreamPort);
+            brokers.put(nodeId, InetSocketAddress.createUnresolved(upstreamHost, upstreamPort));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{cluster = " + clusterName + ", brokers = " + brokers + "}";
+    }
+}
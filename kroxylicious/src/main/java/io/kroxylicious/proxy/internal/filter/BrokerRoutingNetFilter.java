@@ -0,0 +1,37 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.filter;
+
+import java.net.InetSocketAddress;
+
+import io.kroxylicious.proxy.bootstrap.FilterChainFactory;
+import io.kroxylicious.proxy.filter.NetFilter;
+
+/**
+ * Implementation of {@link NetFilter} that connects each client to the broker of a single cluster
+ * which corresponds to the proxy port or SNI hostname the client connected to, according to the cluster's {@link BrokerRoutes}.
+ */
+public class BrokerRoutingNetFilter implements NetFilter {
+
+    private final BrokerRoutes routes;
+    private final FilterChainFactory filterChainFactory;
+
+    public BrokerRoutingNetFilter(BrokerRoutes routes, FilterChainFactory filterChainFactory) {
+        this.routes = routes;
+        this.filterChainFactory = filterChainFactory;
+    }
+
+    @Override
+    public void selectServer(NetFilterContext context) {
+        InetSocketAddress upstream = routes.upstreamAddress(context);
+        if (upstream == null) {
+            // The client will refresh its metadata via the bootstrap address, from which the route is learned
+            throw new IllegalStateException("No route from " + context.localAddress() + " (SNI hostname " + context.sniHostname() + ") in " + routes
+                    + ": the client is using broker metadata the proxy hasn't seen");
+        }
+        FilterChainConnector.initiateConnect(context, upstream.getHostString(), upstream.getPort(), filterChainFactory);
+    }
+}
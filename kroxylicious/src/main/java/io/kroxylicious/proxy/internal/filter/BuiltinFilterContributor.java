@@ -9,6 +9,7 @@ import io.kroxylicious.proxy.config.ProxyConfig;
 import io.kroxylicious.proxy.filter.FilterContributor;
 import io.kroxylicious.proxy.filter.KrpcFilter;
 import io.kroxylicious.proxy.internal.filter.ApiVersionsFilter.ApiVersionsFilterConfig;
+import io.kroxylicious.proxy.internal.filter.BrokerAddressFilter.AddressMapping;
 import io.kroxylicious.proxy.internal.filter.BrokerAddressFilter.BrokerAddressFilterConfig;
 import io.kroxylicious.proxy.internal.filter.FetchResponseTransformationFilter.FetchResponseTransformationFilterConfig;
 import io.kroxylicious.proxy.internal.filter.ProduceRequestTransformationFilter.ProduceRequestTransformationFilterConfig;
@@ -20,7 +21,7 @@ public class BuiltinFilterContributor implements FilterContributor {
         switch (shortName) {
             case "ApiVersions":
                 return ApiVersionsFilterConfig.class;
-            case "BrokerAddress":
+            case BrokerAddressFilter.TYPE:
                 return BrokerAddressFilterConfig.class;
             case "ProduceRequestTransformation":
                 return ProduceRequestTransformationFilterConfig.class;
@@ -36,7 +37,7 @@ public class BuiltinFilterContributor implements FilterContributor {
         switch (shortName) {
             case "ApiVersions":
                 return new ApiVersionsFilter();
-            case "BrokerAddress":
+            case BrokerAddressFilter.TYPE:
                 return new BrokerAddressFilter(proxyConfig);
             case "ProduceRequestTransformation":
                 return new ProduceRequestTransformationFilter((ProduceRequestTransformationFilterConfig) filterConfig);
@@ -46,4 +47,12 @@ public class BuiltinFilterContributor implements FilterContributor {
                 return null;
         }
     }
+
+    @Override
+    public KrpcFilter getFilter(String shortName, ProxyConfig proxyConfig, FilterConfig filterConfig, AddressMapping addressMapping) {
+        if (BrokerAddressFilter.TYPE.equals(shortName)) {
+            return new BrokerAddressFilter(addressMapping);
+        }
+        return getFilter(shortName, proxyConfig, filterConfig);
+    }
 }
@@ -70,6 +70,16 @@ public class FetchResponseTransformationFilter implements FetchResponseFilter {
 
     @Override
     public void onFetchResponse(FetchResponseData fetchResponse, KrpcFilterContext context) {
+        // Resolve what names we can from the cache, and only ask the broker about the rest
+        var topicMetadata = context.topicMetadata();
+        for (var fetchableTopicResponse : fetchResponse.responses()) {
+            if (fetchableTopicResponse.topic().isEmpty()) {
+                String name = topicMetadata.topicName(fetchableTopicResponse.topicId());
+                if (name != null) {
+                    fetchableTopicResponse.setTopic(name);
+                }
+            }
+        }
         List<MetadataRequestData.MetadataRequestTopic> requestTopics = fetchResponse.responses().stream()
                 .filter(t -> t.topic().isEmpty())
                 .map(fetchableTopicResponse -> {
@@ -88,7 +98,9 @@ public class FetchResponseTransformationFilter implements FetchResponseFilter {
                         Map<Uuid, String> uidToName = metadataResponse.topics().stream().collect(Collectors.toMap(ti -> ti.topicId(), ti -> ti.name()));
                         LOGGER.debug("Metadata response yields {}, updating original Fetch response", uidToName);
                         for (var fetchableTopicResponse : fetchResponse.responses()) {
-                            fetchableTopicResponse.setTopic(uidToName.get(fetchableTopicResponse.topicId()));
+                            if (fetchableTopicResponse.topic().isEmpty()) {
+                                fetchableTopicResponse.setTopic(uidToName.get(fetchableTopicResponse.topicId()));
+                            }
                         }
                         applyTransformation(context, fetchResponse);
                         LOGGER.debug("Forwarding original Fetch response");
@@ -0,0 +1,46 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.filter;
+
+import io.kroxylicious.proxy.bootstrap.FilterChainFactory;
+import io.kroxylicious.proxy.filter.KrpcFilter;
+import io.kroxylicious.proxy.filter.NetFilter;
+
+/**
+ * A {@link NetFilter.NetFilterContext} which can connect using a chain of filters created by a {@link FilterChainFactory},
+ * so that which requests and responses the chain needs decoded is only worked out once per factory,
+ * rather than once per connection.
+ * This is internal to the proxy's own net filters, which connect via {@link #initiateConnect(NetFilter.NetFilterContext, String, int, FilterChainFactory)}.
+ */
+public interface FilterChainConnector {
+
+    /**
+     * Connect to the Kafka server at the given {@code host} and {@code port},
+     * using a new chain of protocol filters created by the given {@code filterChainFactory}.
+     * @param host The host
+     * @param port The port
+     * @param filterChainFactory The filter chain factory
+     */
+    void initiateConnect(String host, int port, FilterChainFactory filterChainFactory);
+
+    /**
+     * Connect the given context to the Kafka server at the given {@code host} and {@code port},
+     * using a new chain of protocol filters created by the given {@code filterChainFactory}.
+     * @param context The context
+     * @param host The host
+     * @param port The port
+     * @param filterChainFactory The filter chain factory
+     * @see NetFilter.NetFilterContext#initiateConnect(String, int, KrpcFilter[])
+     */
+    static void initiateConnect(NetFilter.NetFilterContext context, String host, int port, FilterChainFactory filterChainFactory) {
+        if (context instanceof FilterChainConnector) {
+            ((FilterChainConnector) context).initiateConnect(host, port, filterChainFactory);
+        }
+        else {
+            context.initiateConnect(host, port, filterChainFactory.createFilters());
+        }
+    }
+}
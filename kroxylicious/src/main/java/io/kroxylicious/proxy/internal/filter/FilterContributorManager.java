@@ -11,6 +11,7 @@ import java.util.ServiceLoader;
 import io.kroxylicious.proxy.config.ProxyConfig;
 import io.kroxylicious.proxy.filter.FilterContributor;
 import io.kroxylicious.proxy.filter.KrpcFilter;
+import io.kroxylicious.proxy.internal.filter.BrokerAddressFilter.AddressMapping;
 
 public class FilterContributorManager {
 
@@ -51,4 +52,17 @@ public class FilterContributorManager {
 
         throw new IllegalArgumentException("No filter found for name '" + shortName + "'");
     }
+
+    public KrpcFilter getFilter(String shortName, ProxyConfig proxyConfig, FilterConfig filterConfig, AddressMapping addressMapping) {
+        Iterator<FilterContributor> it = contributors.iterator();
+        while (it.hasNext()) {
+            FilterContributor contributor = it.next();
+            KrpcFilter filter = contributor.getFilter(shortName, proxyConfig, filterConfig, addressMapping);
+            if (filter != null) {
+                return filter;
+            }
+        }
+
+        throw new IllegalArgumentException("No filter found for name '" + shortName + "'");
+    }
 }
@@ -26,6 +26,6 @@ public class FixedNetFilter implements NetFilter {
 
     @Override
     public void selectServer(NetFilterContext context) {
-        context.initiateConnect(remoteHost, remotePort, filterChainFactory.createFilters());
+        FilterChainConnector.initiateConnect(context, remoteHost, remotePort, filterChainFactory);
     }
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.filter;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.kroxylicious.proxy.filter.NetFilter.NetFilterContext;
+
+/**
+ * The routes to the brokers of a cluster for which the proxy has a port for each broker,
+ * following the cluster's bootstrap port.
+ * Each broker is given the next free port the first time it's seen, since broker ids
+ * needn't be small or dense: ZooKeeper-based clusters often number their brokers from 1001,
+ * and KRaft node ids are arbitrary.
+ * The ports are assigned afresh when the proxy restarts, so a client using metadata it had before
+ * may reach another broker, which will tell it to refresh its metadata.
+ */
+public class PortPerBrokerRoutes extends BrokerRoutes {
+
+    private final String proxyHost;
+    private final int bootstrapPort;
+    private final int brokerPorts;
+    /** The slot of each broker seen, where slot {@code n} is port {@code bootstrapPort + 1 + n} */
+    private final Map<Integer, Integer> slots = new ConcurrentHashMap<>();
+    /** The broker given each slot */
+    private final Map<Integer, Integer> nodeIds = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSlot = new AtomicInteger();
+
+    /**
+     * @param clusterName The name of the cluster, for logging.
+     * @param proxyHost The host of the proxy, as advertised to clients.
+     * @param bootstrapPort The proxy port via which clients bootstrap.
+     * @param brokerPorts The number of ports, following the bootstrap port, for the individual brokers.
+     * @param bootstrapHost The host of the cluster's bootstrap broker.
+     * @param bootstrapBrokerPort The port of the cluster's bootstrap broker.
+     */
+    public PortPerBrokerRoutes(String clusterName, String proxyHost, int bootstrapPort, int brokerPorts, String bootstrapHost, int bootstrapBrokerPort) {
+        super(clusterName, bootstrapHost, bootstrapBrokerPort);
+        if (brokerPorts <= 0) {
+            throw new IllegalArgumentException("brokerPorts must be positive");
+        }
+        this.proxyHost = proxyHost;
+        this.bootstrapPort = bootstrapPort;
+        this.brokerPorts = brokerPorts;
+    }
+
+    /**
+     * @return The proxy port of the given broker, or the bootstrap port if the broker hasn't been seen,
+     * for example because its id is negative, as it is in the response of a coordinator which isn't available.
+     */
+    public int brokerPort(int nodeId) {
+        Integer slot = slots.get(nodeId);
+        return slot != null ? bootstrapPort + 1 + slot : bootstrapPort;
+    }
+
+    /**
+     * @return The proxy ports of the cluster: the bootstrap port and those of the brokers.
+     */
+    public int[] ports() {
+        int[] ports = new int[1 + brokerPorts];
+        for (int i = 0; i < ports.length; i++) {
+            ports[i] = bootstrapPort + i;
+        }
+        return ports;
+    }
+
+    @Override
+    public InetSocketAddress upstreamAddress(NetFilterContext context) {
+        return upstreamAddress(((InetSocketAddress) context.localAddress()).getPort());
+    }
+
+    /**
+     * @param proxyPort A proxy port of the cluster.
+     * @return The address of the broker to which a client connecting to the given port should be routed,
+     * or null if the broker's address is not yet known.
+     */
+    public InetSocketAddress upstreamAddress(int proxyPort) {
+        if (proxyPort == bootstrapPort) {
+            return bootstrapBroker();
+        }
+        Integer nodeId = nodeIds.get(proxyPort - bootstrapPort - 1);
+        return nodeId != null ? broker(nodeId) : null;
+    }
+
+    @Override
+    public void brokerSeen(int nodeId, String upstreamHost, int upstreamPort) {
+        if (nodeId >= 0 && assignSlot(nodeId) == null) {
+            // Advertising the bootstrap port instead would have clients send the broker's requests to another broker,
+            // which would just tell them to try the broker again
+            throw new IllegalStateException("Cluster " + clusterName() + " broker " + nodeId + " at " + upstreamHost + ":" + upstreamPort
+                    + " has no proxy port of its own: the cluster's " + brokerPorts + " broker ports have all been given to other brokers");
+        }
+        super.brokerSeen(nodeId, upstreamHost, upstreamPort);
+    }
+
+    /**
+     * @return The slot of the given broker, which is assigned the next free slot if it hasn't got one,
+     * or null if there are no free slots.
+     */
+    private Integer assignSlot(int nodeId) {
+        return slots.computeIfAbsent(nodeId, id -> {
+            int slot = nextSlot.getAndUpdate(n -> n < brokerPorts ? n + 1 : n);
+            if (slot == brokerPorts) {
+                return null;
+            }
+            nodeIds.put(slot, id);
+            return slot;
+        });
+    }
+
+    @Override
+    protected boolean hasOwnAddress(int nodeId) {
+        return slots.containsKey(nodeId);
+    }
+
+    @Override
+    public String downstreamHost(int nodeId, String upstreamHost, int upstreamPort) {
+        return proxyHost;
+    }
+
+    @Override
+    public int downstreamPort(int nodeId, String upstreamHost, int upstreamPort) {
+        return brokerPort(nodeId);
+    }
+}
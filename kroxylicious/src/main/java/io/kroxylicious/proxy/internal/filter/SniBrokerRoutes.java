@@ -0,0 +1,116 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.filter;
+
+import java.net.InetSocketAddress;
+import java.util.Locale;
+
+import io.kroxylicious.proxy.filter.NetFilter.NetFilterContext;
+
+/**
+ * The routes to the brokers of a cluster whose clients identify the broker they want by the
+ * <a href="https://en.wikipedia.org/wiki/Server_Name_Indication">SNI</a> hostname of their TLS connection,
+ * so that any number of clusters and brokers can share a single proxy port.
+ * Broker {@code n}'s hostname is the cluster's broker hostname pattern, with {@value #NODE_ID} replaced by {@code n};
+ * each such hostname must resolve to the proxy, e.g. via a wildcard DNS record.
+ */
+public class SniBrokerRoutes extends BrokerRoutes {
+
+    /** The placeholder for the broker id in a broker hostname pattern. */
+    public static final String NODE_ID = "$(nodeId)";
+
+    private final String bootstrapHostname;
+    private final String brokerHostnamePattern;
+    private final String brokerHostnamePrefix;
+    private final String brokerHostnameSuffix;
+    private final int proxyPort;
+
+    /**
+     * @param clusterName The name of the cluster, for logging.
+     * @param bootstrapHostname The SNI hostname via which clients bootstrap.
+     * @param brokerHostnamePattern The pattern of the SNI hostnames of the individual brokers,
+     * which contains {@value #NODE_ID} once.
+     * @param proxyPort The proxy port, as advertised to clients.
+     * @param bootstrapHost The host of the cluster's bootstrap broker.
+     * @param bootstrapBrokerPort The port of the cluster's bootstrap broker.
+     */
+    public SniBrokerRoutes(String clusterName, String bootstrapHostname, String brokerHostnamePattern, int proxyPort,
+                           String bootstrapHost, int bootstrapBrokerPort) {
+        super(clusterName, bootstrapHost, bootstrapBrokerPort);
+        // SNI hostnames are case-insensitive, and Netty gives us them in lower case
+        this.bootstrapHostname = bootstrapHostname.toLowerCase(Locale.ROOT);
+        int index = brokerHostnamePattern.indexOf(NODE_ID);
+        if (index < 0 || brokerHostnamePattern.indexOf(NODE_ID, index + 1) >= 0) {
+            throw new IllegalArgumentException("Broker hostname pattern " + brokerHostnamePattern + " must contain " + NODE_ID + " once");
+        }
+        this.brokerHostnamePrefix = brokerHostnamePattern.substring(0, index).toLowerCase(Locale.ROOT);
+        this.brokerHostnameSuffix = brokerHostnamePattern.substring(index + NODE_ID.length()).toLowerCase(Locale.ROOT);
+        this.brokerHostnamePattern = brokerHostnamePrefix + NODE_ID + brokerHostnameSuffix;
+        if (brokerHostnamePrefix.matches(".*[0-9]") || brokerHostnameSuffix.matches("[0-9].*")) {
+            // Otherwise the broker id couldn't be told apart from the digits around it
+            throw new IllegalArgumentException("Broker hostname pattern " + brokerHostnamePattern + " must not have a digit next to " + NODE_ID);
+        }
+        this.proxyPort = proxyPort;
+    }
+
+    public String bootstrapHostname() {
+        return bootstrapHostname;
+    }
+
+    public String brokerHostnamePattern() {
+        return brokerHostnamePattern;
+    }
+
+    /**
+     * @param hostname An SNI hostname.
+     * @return The id of the broker with the given hostname, or -1 if the hostname doesn't match the pattern.
+     */
+    public int nodeId(String hostname) {
+        int end = hostname.length() - brokerHostnameSuffix.length();
+        if (end <= brokerHostnamePrefix.length()
+                || !hostname.startsWith(brokerHostnamePrefix)
+                || !hostname.endsWith(brokerHostnameSuffix)) {
+            return -1;
+        }
+        int nodeId = 0;
+        for (int i = brokerHostnamePrefix.length(); i < end; i++) {
+            char c = hostname.charAt(i);
+            if (c < '0' || c > '9' || nodeId > (Integer.MAX_VALUE - 9) / 10) {
+                return -1;
+            }
+            nodeId = nodeId * 10 + (c - '0');
+        }
+        return nodeId;
+    }
+
+    @Override
+    public InetSocketAddress upstreamAddress(NetFilterContext context) {
+        String hostname = context.sniHostname();
+        if (hostname == null) {
+            return null;
+        }
+        if (hostname.equals(bootstrapHostname)) {
+            return bootstrapBroker();
+        }
+        int nodeId = nodeId(hostname);
+        return nodeId >= 0 ? broker(nodeId) : null;
+    }
+
+    @Override
+    protected boolean hasOwnAddress(int nodeId) {
+        return nodeId >= 0;
+    }
+
+    @Override
+    public String downstreamHost(int nodeId, String upstreamHost, int upstreamPort) {
+        return hasOwnAddress(nodeId) ? brokerHostnamePrefix + nodeId + brokerHostnameSuffix : bootstrapHostname;
+    }
+
+    @Override
+    public int downstreamPort(int nodeId, String upstreamHost, int upstreamPort) {
+        return proxyPort;
+    }
+}
@@ -12,6 +12,8 @@ package io.kroxylicious.proxy.internal.future;
 
 import java.util.function.Function;
 
+import io.netty.util.concurrent.EventExecutor;
+
 import io.kroxylicious.proxy.future.Future;
 
 /**
@@ -24,8 +26,8 @@ class Composition<T, U> extends Operation<U> implements Listener<T> {
     private final Function<T, Future<U>> successMapper;
     private final Function<Throwable, Future<U>> failureMapper;
 
-    Composition(Function<T, Future<U>> successMapper, Function<Throwable, Future<U>> failureMapper) {
-        super();
+    Composition(EventExecutor executor, Function<T, Future<U>> successMapper, Function<Throwable, Future<U>> failureMapper) {
+        super(executor);
         this.successMapper = successMapper;
         this.failureMapper = failureMapper;
     }
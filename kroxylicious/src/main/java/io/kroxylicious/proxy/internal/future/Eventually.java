@@ -12,6 +12,8 @@ package io.kroxylicious.proxy.internal.future;
 
 import java.util.function.Function;
 
+import io.netty.util.concurrent.EventExecutor;
+
 import io.kroxylicious.proxy.future.Future;
 
 /**
@@ -23,8 +25,8 @@ class Eventually<T, U> extends Operation<T> implements Listener<T> {
 
     private final Function<Void, Future<U>> mapper;
 
-    Eventually(Function<Void, Future<U>> mapper) {
-        super();
+    Eventually(EventExecutor executor, Function<Void, Future<U>> mapper) {
+        super(executor);
         this.mapper = mapper;
     }
 
@@ -10,6 +10,8 @@
  */
 package io.kroxylicious.proxy.internal.future;
 
+import io.netty.util.concurrent.EventExecutor;
+
 /**
  * Map value transformation.
  *
@@ -19,8 +21,8 @@ class FixedMapping<T, U> extends Operation<U> implements Listener<T> {
 
     private final U value;
 
-    FixedMapping(U value) {
-        super();
+    FixedMapping(EventExecutor executor, U value) {
+        super(executor);
         this.value = value;
     }
 
@@ -10,6 +10,8 @@
  */
 package io.kroxylicious.proxy.internal.future;
 
+import io.netty.util.concurrent.EventExecutor;
+
 /**
  * Otherwise value transformation.
  *
@@ -19,8 +21,8 @@ class FixedOtherwise<T> extends Operation<T> implements Listener<T> {
 
     private final T value;
 
-    FixedOtherwise(T value) {
-        super();
+    FixedOtherwise(EventExecutor executor, T value) {
+        super(executor);
         this.value = value;
     }
 
@@ -14,6 +14,8 @@ package io.kroxylicious.proxy.internal.future;
 import java.util.Objects;
 import java.util.function.Function;
 
+import io.netty.util.concurrent.EventExecutor;
+
 import io.kroxylicious.proxy.future.AsyncResult;
 import io.kroxylicious.proxy.future.Future;
 
@@ -30,6 +32,14 @@ abstract class FutureBase<T> implements FutureInternal<T> {
     FutureBase() {
     }
 
+    /**
+     * @return The event loop which this future, and so the futures derived from it, are confined to,
+     * or null if they're not confined.
+     */
+    EventExecutor executor() {
+        return null;
+    }
+
     protected final void emitSuccess(T value, Listener<T> listener) {
         listener.onSuccess(value);
     }
@@ -42,7 +52,7 @@ abstract class FutureBase<T> implements FutureInternal<T> {
     public <U> Future<U> compose(Function<T, Future<U>> successMapper, Function<Throwable, Future<U>> failureMapper) {
         Objects.requireNonNull(successMapper, "No null success mapper accepted");
         Objects.requireNonNull(failureMapper, "No null failure mapper accepted");
-        Composition<T, U> operation = new Composition<>(successMapper, failureMapper);
+        Composition<T, U> operation = new Composition<>(executor(), successMapper, failureMapper);
         addListener(operation);
         return operation;
     }
@@ -50,7 +60,7 @@ abstract class FutureBase<T> implements FutureInternal<T> {
     @Override
     public <U> Future<U> transform(Function<AsyncResult<T>, Future<U>> mapper) {
         Objects.requireNonNull(mapper, "No null mapper accepted");
-        Transformation<T, U> operation = new Transformation<>(this, mapper);
+        Transformation<T, U> operation = new Transformation<>(executor(), this, mapper);
         addListener(operation);
         return operation;
     }
@@ -58,7 +68,7 @@ abstract class FutureBase<T> implements FutureInternal<T> {
     @Override
     public <U> Future<T> eventually(Function<Void, Future<U>> mapper) {
         Objects.requireNonNull(mapper, "No null mapper accepted");
-        Eventually<T, U> operation = new Eventually<>(mapper);
+        Eventually<T, U> operation = new Eventually<>(executor(), mapper);
         addListener(operation);
         return operation;
     }
@@ -66,14 +76,14 @@ abstract class FutureBase<T> implements FutureInternal<T> {
     @Override
     public <U> Future<U> map(Function<T, U> mapper) {
         Objects.requireNonNull(mapper, "No null mapper accepted");
-        Mapping<T, U> operation = new Mapping<>(mapper);
+        Mapping<T, U> operation = new Mapping<>(executor(), mapper);
         addListener(operation);
         return operation;
     }
 
     @Override
     public <V> Future<V> map(V value) {
-        FixedMapping<T, V> transformation = new FixedMapping<>(value);
+        FixedMapping<T, V> transformation = new FixedMapping<>(executor(), value);
         addListener(transformation);
         return transformation;
     }
@@ -81,14 +91,14 @@ abstract class FutureBase<T> implements FutureInternal<T> {
     @Override
     public Future<T> otherwise(Function<Throwable, T> mapper) {
         Objects.requireNonNull(mapper, "No null mapper accepted");
-        Otherwise<T> transformation = new Otherwise<>(mapper);
+        Otherwise<T> transformation = new Otherwise<>(executor(), mapper);
         addListener(transformation);
         return transformation;
     }
 
     @Override
     public Future<T> otherwise(T value) {
-        FixedOtherwise<T> operation = new FixedOtherwise<>(value);
+        FixedOtherwise<T> operation = new FixedOtherwise<>(executor(), value);
         addListener(operation);
         return operation;
     }
@@ -11,9 +11,11 @@
 
 package io.kroxylicious.proxy.internal.future;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Objects;
 
+import io.netty.util.concurrent.EventExecutor;
+
 import io.kroxylicious.proxy.future.AsyncResult;
 import io.kroxylicious.proxy.future.Future;
 import io.kroxylicious.proxy.future.Handler;
@@ -21,239 +23,292 @@ import io.kroxylicious.proxy.future.Handler;
 /**
  * Future implementation.
  *
+ * <p>A future may be confined to an event loop, in which case it is completed on that event loop,
+ * and it is not synchronized. Listeners added, and completions made, from other threads are
+ * handed to the event loop.</p>
+ *
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  */
 class FutureImpl<T> extends FutureBase<T> {
 
     private static final Object NULL_VALUE = new Object();
 
-    private Object value;
-    private Listener<T> listener;
+    // The kinds of callback, so that handlers need not be wrapped in a Listener
+    private static final byte LISTENER = 0;
+    private static final byte SUCCESS_HANDLER = 1;
+    private static final byte FAILURE_HANDLER = 2;
+    private static final byte COMPLETION_HANDLER = 3;
+
+    private final EventExecutor executor;
+    private volatile Object value;
+    // The first callback is held inline, any others in moreCallbacks
+    private Object callback;
+    private byte callbackKind;
+    private Callbacks moreCallbacks;
 
     /**
      * Create a future that hasn't completed yet
      */
     FutureImpl() {
+        this(null);
+    }
+
+    /**
+     * Create a future that hasn't completed yet
+     *
+     * @param executor The event loop the future is confined to, or null if it may be completed on any thread.
+     */
+    FutureImpl(EventExecutor executor) {
         super();
+        this.executor = executor;
+    }
+
+    @Override
+    EventExecutor executor() {
+        return executor;
     }
 
     /**
      * The result of the operation. This will be null if the operation failed.
      */
-    public synchronized T result() {
-        return value instanceof CauseHolder ? null : value == NULL_VALUE ? null : (T) value;
+    public T result() {
+        Object v = value;
+        return v instanceof CauseHolder ? null : v == NULL_VALUE ? null : (T) v;
     }
 
     /**
      * An exception describing failure. This will be null if the operation succeeded.
      */
-    public synchronized Throwable cause() {
-        return value instanceof CauseHolder ? ((CauseHolder) value).cause : null;
+    public Throwable cause() {
+        Object v = value;
+        return v instanceof CauseHolder ? ((CauseHolder) v).cause : null;
     }
 
     /**
      * Did it succeed?
      */
-    public synchronized boolean succeeded() {
-        return value != null && !(value instanceof CauseHolder);
+    public boolean succeeded() {
+        Object v = value;
+        return v != null && !(v instanceof CauseHolder);
     }
 
     /**
      * Did it fail?
      */
-    public synchronized boolean failed() {
+    public boolean failed() {
         return value instanceof CauseHolder;
     }
 
     /**
      * Has it completed?
      */
-    public synchronized boolean isComplete() {
+    public boolean isComplete() {
         return value != null;
     }
 
     @Override
     public Future<T> onSuccess(Handler<T> handler) {
         Objects.requireNonNull(handler, "No null handler accepted");
-        addListener(new Listener<T>() {
-            @Override
-            public void onSuccess(T value) {
-                try {
-                    handler.handle(value);
-                }
-                catch (Throwable t) {
-                    throw t;
-                }
-            }
-
-            @Override
-            public void onFailure(Throwable failure) {
-            }
-        });
+        addCallback(handler, SUCCESS_HANDLER);
         return this;
     }
 
     @Override
     public Future<T> onFailure(Handler<Throwable> handler) {
         Objects.requireNonNull(handler, "No null handler accepted");
-        addListener(new Listener<T>() {
-            @Override
-            public void onSuccess(T value) {
-            }
-
-            @Override
-            public void onFailure(Throwable failure) {
-                try {
-                    handler.handle(failure);
-                }
-                catch (Throwable t) {
-                    throw t;
-                }
-            }
-        });
+        addCallback(handler, FAILURE_HANDLER);
         return this;
     }
 
     @Override
     public Future<T> onComplete(Handler<AsyncResult<T>> handler) {
         Objects.requireNonNull(handler, "No null handler accepted");
-        Listener<T> listener;
-        if (handler instanceof Listener) {
-            listener = (Listener<T>) handler;
-        }
-        else {
-            listener = new Listener<T>() {
-                @Override
-                public void onSuccess(T value) {
-                    try {
-                        handler.handle(FutureImpl.this);
-                    }
-                    catch (Throwable t) {
-                        throw t;
-                    }
-                }
-
-                @Override
-                public void onFailure(Throwable failure) {
-                    try {
-                        handler.handle(FutureImpl.this);
-                    }
-                    catch (Throwable t) {
-                        throw t;
-                    }
-                }
-            };
-        }
-        addListener(listener);
+        addCallback(handler, handler instanceof Listener ? LISTENER : COMPLETION_HANDLER);
         return this;
     }
 
     @Override
     public void addListener(Listener<T> listener) {
+        addCallback(listener, LISTENER);
+    }
+
+    private void addCallback(Object callback, byte kind) {
         Object v;
-        synchronized (this) {
+        if (executor != null) {
+            if (!executor.inEventLoop()) {
+                executor.execute(() -> addCallback(callback, kind));
+                return;
+            }
             v = value;
             if (v == null) {
-                if (this.listener == null) {
-                    this.listener = listener;
-                }
-                else {
-                    ListenerArray<T> listeners;
-                    if (this.listener instanceof FutureImpl.ListenerArray) {
-                        listeners = (ListenerArray<T>) this.listener;
-                    }
-                    else {
-                        listeners = new ListenerArray<>();
-                        listeners.add(this.listener);
-                        this.listener = listeners;
-                    }
-                    listeners.add(listener);
-                }
+                storeCallback(callback, kind);
                 return;
             }
         }
-        if (v instanceof CauseHolder) {
-            emitFailure(((CauseHolder) v).cause, listener);
-        }
         else {
-            if (v == NULL_VALUE) {
-                v = null;
+            synchronized (this) {
+                v = value;
+                if (v == null) {
+                    storeCallback(callback, kind);
+                    return;
+                }
             }
-            emitSuccess((T) v, listener);
         }
+        emit(v, callback, kind);
     }
 
-    public boolean tryComplete(T result) {
-        Listener<T> l;
-        synchronized (this) {
-            if (value != null) {
-                return false;
-            }
-            value = result == null ? NULL_VALUE : result;
-            l = listener;
-            listener = null;
+    private void storeCallback(Object callback, byte kind) {
+        if (this.callback == null) {
+            this.callback = callback;
+            this.callbackKind = kind;
         }
-        if (l != null) {
-            emitSuccess(result, l);
+        else {
+            if (moreCallbacks == null) {
+                moreCallbacks = new Callbacks();
+            }
+            moreCallbacks.add(callback, kind);
         }
-        return true;
     }
 
+    /**
+     * Completes this future, if it hasn't already completed.
+     * If this future is confined to an event loop and this is called from another thread, the completion is
+     * handed to the event loop, and the return value only says whether the future had completed when this was called.
+     *
+     * @return false if this future had already completed.
+     */
+    public boolean tryComplete(T result) {
+        return complete(result == null ? NULL_VALUE : result);
+    }
+
+    /**
+     * Fails this future, if it hasn't already completed.
+     * Like {@link #tryComplete(Object)} the failure is handed to the event loop this future is confined to,
+     * when called from another thread.
+     *
+     * @return false if this future had already completed.
+     */
     public boolean tryFail(Throwable cause) {
         if (cause == null) {
             cause = new RuntimeException();
         }
-        Listener<T> l;
-        synchronized (this) {
+        return complete(new CauseHolder(cause));
+    }
+
+    private boolean complete(Object v) {
+        Object c;
+        byte kind;
+        Callbacks more;
+        if (executor != null) {
+            if (!executor.inEventLoop()) {
+                executor.execute(() -> complete(v));
+                return value == null;
+            }
             if (value != null) {
                 return false;
             }
-            value = new CauseHolder(cause);
-            l = listener;
-            listener = null;
+            value = v;
+            c = callback;
+            kind = callbackKind;
+            more = moreCallbacks;
+            callback = null;
+            moreCallbacks = null;
+        }
+        else {
+            synchronized (this) {
+                if (value != null) {
+                    return false;
+                }
+                value = v;
+                c = callback;
+                kind = callbackKind;
+                more = moreCallbacks;
+                callback = null;
+                moreCallbacks = null;
+            }
         }
-        if (l != null) {
-            emitFailure(cause, l);
+        if (c != null) {
+            emit(v, c, kind);
+            if (more != null) {
+                for (int i = 0; i < more.size; i++) {
+                    emit(v, more.callbacks[i], more.kinds[i]);
+                }
+            }
         }
         return true;
     }
 
+    private void emit(Object v, Object callback, byte kind) {
+        if (v instanceof CauseHolder) {
+            Throwable cause = ((CauseHolder) v).cause;
+            switch (kind) {
+                case LISTENER:
+                    emitFailure(cause, (Listener<T>) callback);
+                    break;
+                case FAILURE_HANDLER:
+                    ((Handler<Throwable>) callback).handle(cause);
+                    break;
+                case COMPLETION_HANDLER:
+                    ((Handler<AsyncResult<T>>) callback).handle(this);
+                    break;
+                default:
+                    break;
+            }
+        }
+        else {
+            T result = v == NULL_VALUE ? null : (T) v;
+            switch (kind) {
+                case LISTENER:
+                    emitSuccess(result, (Listener<T>) callback);
+                    break;
+                case SUCCESS_HANDLER:
+                    ((Handler<T>) callback).handle(result);
+                    break;
+                case COMPLETION_HANDLER:
+                    ((Handler<AsyncResult<T>>) callback).handle(this);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
     @Override
     public String toString() {
-        synchronized (this) {
-            if (value instanceof CauseHolder) {
-                return "Future{cause=" + ((CauseHolder) value).cause.getMessage() + "}";
-            }
-            if (value != null) {
-                if (value == NULL_VALUE) {
-                    return "Future{result=null}";
-                }
-                StringBuilder sb = new StringBuilder("Future{result=");
-                formatValue(value, sb);
-                sb.append("}");
-                return sb.toString();
+        Object v = value;
+        if (v instanceof CauseHolder) {
+            return "Future{cause=" + ((CauseHolder) v).cause.getMessage() + "}";
+        }
+        if (v != null) {
+            if (v == NULL_VALUE) {
+                return "Future{result=null}";
             }
-            return "Future{unresolved}";
+            StringBuilder sb = new StringBuilder("Future{result=");
+            formatValue(v, sb);
+            sb.append("}");
+            return sb.toString();
         }
+        return "Future{unresolved}";
     }
 
     protected void formatValue(Object value, StringBuilder sb) {
         sb.append(value);
     }
 
-    private static class ListenerArray<T> extends ArrayList<Listener<T>> implements Listener<T> {
-        @Override
-        public void onSuccess(T value) {
-            for (Listener<T> handler : this) {
-                handler.onSuccess(value);
-            }
-        }
+    private static class Callbacks {
+
+        private Object[] callbacks = new Object[4];
+        private byte[] kinds = new byte[4];
+        private int size;
 
-        @Override
-        public void onFailure(Throwable failure) {
-            for (Listener<T> handler : this) {
-                handler.onFailure(failure);
+        void add(Object callback, byte kind) {
+            if (size == callbacks.length) {
+                callbacks = Arrays.copyOf(callbacks, size * 2);
+                kinds = Arrays.copyOf(kinds, size * 2);
             }
+            callbacks[size] = callback;
+            kinds[size] = kind;
+            size++;
         }
     }
 
@@ -12,6 +12,8 @@ package io.kroxylicious.proxy.internal.future;
 
 import java.util.function.Function;
 
+import io.netty.util.concurrent.EventExecutor;
+
 /**
  * Function map transformation.
  *
@@ -21,8 +23,8 @@ class Mapping<T, U> extends Operation<U> implements Listener<T> {
 
     private final Function<T, U> successMapper;
 
-    Mapping(Function<T, U> successMapper) {
-        super();
+    Mapping(EventExecutor executor, Function<T, U> successMapper) {
+        super(executor);
         this.successMapper = successMapper;
     }
 
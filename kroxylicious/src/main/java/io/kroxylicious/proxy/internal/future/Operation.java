@@ -10,6 +10,8 @@
  */
 package io.kroxylicious.proxy.internal.future;
 
+import io.netty.util.concurrent.EventExecutor;
+
 /**
  * Base class for transforming the completion of a future.
  *
@@ -17,7 +19,7 @@ package io.kroxylicious.proxy.internal.future;
  */
 abstract class Operation<T> extends FutureImpl<T> {
 
-    protected Operation() {
-        super();
+    protected Operation(EventExecutor executor) {
+        super(executor);
     }
 }
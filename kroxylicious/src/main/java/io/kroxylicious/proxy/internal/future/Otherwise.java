@@ -12,12 +12,14 @@ package io.kroxylicious.proxy.internal.future;
 
 import java.util.function.Function;
 
+import io.netty.util.concurrent.EventExecutor;
+
 class Otherwise<T> extends Operation<T> implements Listener<T> {
 
     private final Function<Throwable, T> mapper;
 
-    Otherwise(Function<Throwable, T> mapper) {
-        super();
+    Otherwise(EventExecutor executor, Function<Throwable, T> mapper) {
+        super(executor);
         this.mapper = mapper;
     }
 
@@ -11,6 +11,8 @@
 
 package io.kroxylicious.proxy.internal.future;
 
+import io.netty.util.concurrent.EventExecutor;
+
 import io.kroxylicious.proxy.future.AsyncResult;
 import io.kroxylicious.proxy.future.Future;
 
@@ -28,6 +30,16 @@ public final class PromiseImpl<T> extends FutureImpl<T> implements PromiseIntern
         super();
     }
 
+    /**
+     * Create a promise that hasn't completed yet, which must be completed on the given event loop.
+     * Such a promise, and the futures derived from it, avoid the synchronization which an unconfined promise needs.
+     *
+     * @param executor The event loop.
+     */
+    public PromiseImpl(EventExecutor executor) {
+        super(executor);
+    }
+
     public void handle(AsyncResult<T> ar) {
         if (ar.succeeded()) {
             onSuccess(ar.result());
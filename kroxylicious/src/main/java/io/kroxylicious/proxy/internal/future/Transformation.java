@@ -12,6 +12,8 @@ package io.kroxylicious.proxy.internal.future;
 
 import java.util.function.Function;
 
+import io.netty.util.concurrent.EventExecutor;
+
 import io.kroxylicious.proxy.future.AsyncResult;
 import io.kroxylicious.proxy.future.Future;
 
@@ -25,8 +27,8 @@ class Transformation<T, U> extends Operation<U> implements Listener<T> {
     private final Future<T> future;
     private final Function<AsyncResult<T>, Future<U>> mapper;
 
-    Transformation(Future<T> future, Function<AsyncResult<T>, Future<U>> mapper) {
-        super();
+    Transformation(EventExecutor executor, Future<T> future, Function<AsyncResult<T>, Future<U>> mapper) {
+        super(executor);
         this.future = future;
         this.mapper = mapper;
     }
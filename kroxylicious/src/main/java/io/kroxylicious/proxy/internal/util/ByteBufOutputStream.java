@@ -15,6 +15,8 @@ import io.netty.buffer.ByteBuf;
  * This class has been introduced as a work-around to allow using pooled {@link ByteBuf} instances
  * that are allowed to grow on demand while used on {@link org.apache.kafka.common.record.MemoryRecordsBuilder}
  * to create records (using {@link NettyMemoryRecords} factory methods).<br>
+ * Both heap and direct buffers are supported: {@link #buffer()} is an NIO view of the buffer's memory
+ * from the writer index at construction, which is replaced whenever the buffer grows.
  */
 public class ByteBufOutputStream extends ByteBufferOutputStream {
 
@@ -105,7 +107,7 @@ public class ByteBufOutputStream extends ByteBufferOutputStream {
         byteBuf.ensureWritable(remainingRequired);
         final int position = nioBuffer.position();
         nioBuffer.position(0);
-        nioBuffer = byteBuf.nioBuffer(initialPosition, byteBuf.capacity());
+        nioBuffer = byteBuf.nioBuffer(initialPosition, byteBuf.capacity() - initialPosition);
         nioBuffer.position(position);
     }
 
@@ -23,6 +23,8 @@
  */
 package ${outputPackage};
 
+import java.util.Set;
+
 <#list messageSpecs as messageSpec>
 import org.apache.kafka.common.message.${messageSpec.name}Data;
 </#list>
@@ -161,4 +163,22 @@ public /* sealed */ interface KrpcFilter /* TODO permits ... */ {
         }
     }
 
+    /**
+     * <p>Returns the names of the top-level fields of responses with the given {@code apiKey} and {@code apiVersion}
+     * which this filter reads or modifies, or null if it may use any of them.
+     * The names are those used in the Kafka message schemas, for example {@code "Brokers"}.
+     * This is only called when {@link #shouldDeserializeResponse(ApiKeys, short)} returns true.</p>
+     *
+     * <p>When every filter deserializing a response declares its fields the proxy may decode only
+     * a leading part of the response which covers those fields, passing the rest through undecoded.
+     * Other fields of the body passed to the filter then have their default values,
+     * and changes to them are not forwarded.</p>
+     * @param apiKey The API key
+     * @param apiVersion The API version
+     * @return The names of the fields used, or null.
+     */
+    default Set<String> responseFields(ApiKeys apiKey, short apiVersion) {
+        return null;
+    }
+
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy;
+
+import org.junit.jupiter.api.Test;
+
+import io.kroxylicious.proxy.config.ConfigParser;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KafkaProxyTest {
+
+    private static KafkaProxy proxy(String clusters) {
+        return new KafkaProxy(new ConfigParser().parseConfiguration(
+                "proxy:\n" +
+                        "  address: localhost:9192\n" +
+                        "  keyStoreFile: /tmp/keystore.p12\n" +
+                        "clusters:\n" +
+                        clusters +
+                        "filters:\n" +
+                        "- type: BrokerAddress\n"));
+    }
+
+    @Test
+    public void testClustersWithDistinctPortsAccepted() {
+        assertDoesNotThrow(() -> proxy(
+                "  a:\n" +
+                        "    bootstrap_servers: a:9092\n" +
+                        "    broker_ports: 3\n" +
+                        "  b:\n" +
+                        "    bootstrap_servers: b:9092\n" +
+                        "    proxy_address: localhost:9196\n" +
+                        "    broker_ports: 3\n"));
+    }
+
+    @Test
+    public void testOverlappingBrokerPortsRejected() {
+        var e = assertThrows(IllegalArgumentException.class, () -> proxy(
+                "  a:\n" +
+                        "    bootstrap_servers: a:9092\n" +
+                        "    broker_ports: 3\n" +
+                        "  b:\n" +
+                        "    bootstrap_servers: b:9092\n" +
+                        "    proxy_address: localhost:9195\n"));
+        assertTrue(e.getMessage().contains("localhost:9195"), e.getMessage());
+    }
+
+    @Test
+    public void testSniClustersMayShareAnAddress() {
+        assertDoesNotThrow(() -> proxy(
+                "  a:\n" +
+                        "    bootstrap_servers: a:9092\n" +
+                        "    sni_bootstrap_hostname: bootstrap.a.example.com\n" +
+                        "    sni_broker_hostname_pattern: broker-$(nodeId).a.example.com\n" +
+                        "  b:\n" +
+                        "    bootstrap_servers: b:9092\n" +
+                        "    sni_bootstrap_hostname: bootstrap.b.example.com\n" +
+                        "    sni_broker_hostname_pattern: broker-$(nodeId).b.example.com\n"));
+    }
+
+    @Test
+    public void testSniClusterMayNotShareBrokerPorts() {
+        assertThrows(IllegalArgumentException.class, () -> proxy(
+                "  a:\n" +
+                        "    bootstrap_servers: a:9092\n" +
+                        "    sni_bootstrap_hostname: bootstrap.a.example.com\n" +
+                        "    sni_broker_hostname_pattern: broker-$(nodeId).a.example.com\n" +
+                        "    proxy_address: localhost:9193\n" +
+                        "  b:\n" +
+                        "    bootstrap_servers: b:9092\n" +
+                        "    broker_ports: 3\n"));
+    }
+}
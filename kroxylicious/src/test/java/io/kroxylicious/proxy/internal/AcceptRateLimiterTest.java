@@ -0,0 +1,65 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AcceptRateLimiterTest {
+
+    /** The time seen by the limiter, which only moves when a test says so */
+    private final AtomicLong nanoTime = new AtomicLong(System.nanoTime());
+    private final EmbeddedChannel channel = new EmbeddedChannel(new AcceptRateLimiter(10, nanoTime::get));
+
+    @AfterEach
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    private void acceptBurst() {
+        for (int i = 0; i < 10; i++) {
+            channel.writeInbound("connection" + i);
+            assertTrue(channel.config().isAutoRead(), "Burst of 10 connections should be accepted");
+        }
+    }
+
+    @Test
+    public void testPausesAcceptsOnceBurstIsExhausted() throws InterruptedException {
+        acceptBurst();
+        channel.writeInbound("connection10");
+        assertFalse(channel.config().isAutoRead(), "11th connection should pause accepts");
+        // Connections already read are still passed on
+        assertEquals(11, channel.inboundMessages().size());
+
+        long untilResumeNanos = channel.runScheduledPendingTasks();
+        assertTrue(untilResumeNanos > 0 && untilResumeNanos <= TimeUnit.MILLISECONDS.toNanos(100),
+                "Accepts should be paused until the rate allows another connection, but were paused for " + untilResumeNanos + "ns");
+        TimeUnit.NANOSECONDS.sleep(untilResumeNanos);
+        channel.runScheduledPendingTasks();
+        assertTrue(channel.config().isAutoRead(), "Accepts should resume once the rate allows");
+    }
+
+    @Test
+    public void testAcceptsAtTheSustainedRate() {
+        acceptBurst();
+        for (int i = 0; i < 10; i++) {
+            nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+            channel.writeInbound("later" + i);
+            assertTrue(channel.config().isAutoRead(), "A connection every 100ms is within the rate");
+        }
+        channel.writeInbound("sooner");
+        assertFalse(channel.config().isAutoRead(), "A second connection within 100ms exceeds the rate");
+    }
+}
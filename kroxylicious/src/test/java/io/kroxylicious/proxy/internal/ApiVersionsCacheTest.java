@@ -0,0 +1,103 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.common.message.ApiVersionsResponseData;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.protocol.ByteBufferAccessor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ApiVersionsCacheTest {
+
+    private static ApiVersionsResponseData readResponse(ApiVersionsCache cache, short apiVersion, int correlationId) {
+        var frame = cache.responseFrame(UnpooledByteBufAllocator.DEFAULT, apiVersion, correlationId);
+        try {
+            ByteBuffer buffer = frame.buf().nioBuffer();
+            assertEquals(correlationId, buffer.getInt());
+            return new ApiVersionsResponseData(new ByteBufferAccessor(buffer), apiVersion);
+        }
+        finally {
+            frame.buf().release();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(shorts = { 0, 1, 2, 3 })
+    public void testDefaultResponse(short apiVersion) {
+        var response = readResponse(new ApiVersionsCache(), apiVersion, 42);
+        var produce = response.apiKeys().find(ApiKeys.PRODUCE.id);
+        assertEquals(ApiKeys.PRODUCE.oldestVersion(), produce.minVersion());
+        assertEquals(9, produce.maxVersion());
+    }
+
+    @Test
+    public void testUpdateIntersectsWithProxyVersions() {
+        var cache = new ApiVersionsCache();
+        var clusterResponse = new ApiVersionsResponseData()
+                .setFinalizedFeaturesEpoch(7);
+        clusterResponse.apiKeys().add(new ApiVersionsResponseData.ApiVersion()
+                .setApiKey(ApiKeys.PRODUCE.id)
+                .setMinVersion((short) 0)
+                .setMaxVersion((short) (ApiKeys.PRODUCE.latestVersion() + 1)));
+        clusterResponse.apiKeys().add(new ApiVersionsResponseData.ApiVersion()
+                .setApiKey(ApiKeys.FETCH.id)
+                .setMinVersion((short) 4)
+                .setMaxVersion((short) 5));
+        cache.update("test", clusterResponse);
+
+        for (short apiVersion = 0; apiVersion <= ApiKeys.API_VERSIONS.latestVersion(); apiVersion++) {
+            var response = readResponse(cache, apiVersion, apiVersion);
+            assertEquals(2, response.apiKeys().size());
+            assertEquals(ApiKeys.PRODUCE.latestVersion(), response.apiKeys().find(ApiKeys.PRODUCE.id).maxVersion());
+            assertEquals(4, response.apiKeys().find(ApiKeys.FETCH.id).minVersion());
+            assertEquals(5, response.apiKeys().find(ApiKeys.FETCH.id).maxVersion());
+            assertNull(response.apiKeys().find(ApiKeys.METADATA.id));
+        }
+        assertEquals(7, readResponse(cache, (short) 3, 0).finalizedFeaturesEpoch());
+    }
+
+    @ParameterizedTest
+    @ValueSource(shorts = { -1, 4, Short.MAX_VALUE })
+    public void testNoResponseForUnknownVersion(short apiVersion) {
+        var cache = new ApiVersionsCache();
+        assertFalse(cache.hasResponse(apiVersion));
+        assertThrows(IllegalArgumentException.class, () -> cache.responseFrame(UnpooledByteBufAllocator.DEFAULT, apiVersion, 42));
+    }
+
+    @Test
+    public void testRefreshClosesConnectionWithoutResponse() throws Exception {
+        var group = new NioEventLoopGroup(1);
+        // A cluster which accepts the connection, but never responds
+        try (var server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            var cache = new ApiVersionsCache();
+            Channel channel = cache.refresh(group, NioSocketChannel.class, null, server.getInetAddress().getHostAddress(), server.getLocalPort(), 100)
+                    .sync().channel();
+            assertTrue(channel.closeFuture().await(10, TimeUnit.SECONDS), "The connection should be closed once the request times out");
+            assertEquals(ApiKeys.PRODUCE.oldestVersion(), readResponse(cache, (short) 3, 0).apiKeys().find(ApiKeys.PRODUCE.id).minVersion());
+        }
+        finally {
+            group.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import org.apache.kafka.common.Uuid;
+import org.apache.kafka.common.message.CreateTopicsResponseData;
+import org.apache.kafka.common.message.DeleteTopicsResponseData;
+import org.apache.kafka.common.message.MetadataResponseData;
+import org.apache.kafka.common.protocol.Errors;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class DefaultTopicMetadataCacheTest {
+
+    private static MetadataResponseData metadata(String name, Uuid id, int... leaders) {
+        var topic = new MetadataResponseData.MetadataResponseTopic()
+                .setName(name)
+                .setTopicId(id);
+        for (int i = 0; i < leaders.length; i++) {
+            topic.partitions().add(new MetadataResponseData.MetadataResponsePartition()
+                    .setPartitionIndex(i)
+                    .setLeaderId(leaders[i]));
+        }
+        var response = new MetadataResponseData();
+        response.topics().add(topic);
+        return response;
+    }
+
+    @Test
+    public void testLearnsFromMetadataResponse() {
+        var cache = new DefaultTopicMetadataCache();
+        var id = Uuid.randomUuid();
+        cache.update(metadata("foo", id, 1, 2, 0));
+
+        assertEquals("foo", cache.topicName(id));
+        assertEquals(id, cache.topicId("foo"));
+        assertEquals(2, cache.partitionLeader("foo", 1));
+        assertEquals(-1, cache.partitionLeader("foo", 3));
+        assertEquals(-1, cache.partitionLeader("bar", 0));
+        assertNull(cache.topicName(Uuid.randomUuid()));
+    }
+
+    @Test
+    public void testResponseWithoutTopicIdKeepsKnownId() {
+        var cache = new DefaultTopicMetadataCache();
+        var id = Uuid.randomUuid();
+        var created = new CreateTopicsResponseData();
+        created.topics().add(new CreateTopicsResponseData.CreatableTopicResult().setName("foo").setTopicId(id));
+        cache.update(created);
+        assertEquals(-1, cache.partitionLeader("foo", 0));
+
+        // e.g. from an older version of Metadata
+        cache.update(metadata("foo", Uuid.ZERO_UUID, 3));
+        assertEquals(id, cache.topicId("foo"));
+        assertEquals("foo", cache.topicName(id));
+        assertEquals(3, cache.partitionLeader("foo", 0));
+    }
+
+    @Test
+    public void testRecreatedTopicReplacesOldId() {
+        var cache = new DefaultTopicMetadataCache();
+        var oldId = Uuid.randomUuid();
+        var newId = Uuid.randomUuid();
+        cache.update(metadata("foo", oldId, 1));
+        cache.update(metadata("foo", newId, 2));
+
+        assertNull(cache.topicName(oldId));
+        assertEquals("foo", cache.topicName(newId));
+        assertEquals(2, cache.partitionLeader("foo", 0));
+    }
+
+    @Test
+    public void testForgetsDeletedAndUnknownTopics() {
+        var cache = new DefaultTopicMetadataCache();
+        var fooId = Uuid.randomUuid();
+        var barId = Uuid.randomUuid();
+        cache.update(metadata("foo", fooId, 1));
+        cache.update(metadata("bar", barId, 1));
+
+        var deleted = new DeleteTopicsResponseData();
+        deleted.responses().add(new DeleteTopicsResponseData.DeletableTopicResult().setName(null).setTopicId(fooId));
+        cache.update(deleted);
+        assertNull(cache.topicName(fooId));
+        assertNull(cache.topicId("foo"));
+
+        var unknown = metadata("bar", barId);
+        unknown.topics().iterator().next().setErrorCode(Errors.UNKNOWN_TOPIC_OR_PARTITION.code());
+        cache.update(unknown);
+        assertNull(cache.topicName(barId));
+        assertNull(cache.topicId("bar"));
+    }
+}
@@ -5,6 +5,10 @@
  */
 package io.kroxylicious.proxy.internal;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.kafka.common.errors.TimeoutException;
 import org.apache.kafka.common.message.ApiVersionsRequestData;
 import org.apache.kafka.common.message.ApiVersionsResponseData;
@@ -15,6 +19,14 @@ import org.apache.kafka.common.protocol.ApiKeys;
 import org.apache.kafka.common.protocol.ApiMessage;
 import org.junit.jupiter.api.Test;
 
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+
 import io.kroxylicious.proxy.filter.ApiVersionsRequestFilter;
 import io.kroxylicious.proxy.filter.ApiVersionsResponseFilter;
 import io.kroxylicious.proxy.filter.KrpcFilterContext;
@@ -23,7 +35,10 @@ import io.kroxylicious.proxy.future.Promise;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -38,6 +53,74 @@ public class FilterHandlerTest extends FilterHarness {
         assertEquals(frame, propagated, "Expect it to be the frame that was sent");
     }
 
+    @Test
+    public void testFilterLatencyExcludesHandlersForwardedTo() {
+        var registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+        try {
+            ApiVersionsRequestFilter filter = (request, context) -> context.forwardRequest(request);
+            var slowUpstream = new ChannelOutboundHandlerAdapter() {
+                @Override
+                public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+                    Thread.sleep(100);
+                    ctx.write(msg, promise);
+                }
+            };
+            channel = new EmbeddedChannel(slowUpstream, new FilterHandler(filter, 1000L));
+            writeRequest(new ApiVersionsRequestData());
+            channel.readOutbound();
+
+            Timer timer = registry.find(ApiLatencyMetrics.FILTER.name()).tag("api_key", ApiKeys.API_VERSIONS.name()).timer();
+            assertEquals(1, timer.count());
+            assertTrue(timer.max(TimeUnit.MILLISECONDS) < 100, "Recorded " + timer.max(TimeUnit.MILLISECONDS) + "ms");
+        }
+        finally {
+            Metrics.removeRegistry(registry);
+        }
+    }
+
+    @Test
+    public void testFilterContextReusedOnceFrameForwarded() {
+        List<KrpcFilterContext> contexts = new ArrayList<>();
+        ApiVersionsRequestFilter filter = (request, context) -> {
+            contexts.add(context);
+            context.forwardRequest(request);
+        };
+        buildChannel(filter);
+        writeRequest(new ApiVersionsRequestData());
+        var frame = writeRequest(new ApiVersionsRequestData());
+        channel.readOutbound();
+        assertEquals(frame, channel.readOutbound(), "Expect the second frame to be forwarded");
+        assertEquals(2, contexts.size());
+        assertSame(contexts.get(0), contexts.get(1), "Expect the context to be reused");
+    }
+
+    @Test
+    public void testFilterContextNotReusedWhileForwardingDeferred() {
+        List<KrpcFilterContext> contexts = new ArrayList<>();
+        List<ApiVersionsRequestData> requests = new ArrayList<>();
+        ApiVersionsRequestFilter filter = (request, context) -> {
+            contexts.add(context);
+            requests.add(request);
+        };
+        buildChannel(filter);
+        var frame = writeRequest(new ApiVersionsRequestData());
+        writeRequest(new ApiVersionsRequestData());
+        assertEquals(2, contexts.size());
+        assertNotSame(contexts.get(0), contexts.get(1), "Expect a context per deferred frame");
+
+        contexts.get(0).forwardRequest(requests.get(0));
+        channel.flushOutbound();
+        assertEquals(frame, channel.readOutbound(), "Expect the first frame to be forwarded by its context");
+    }
+
+    @Test
+    public void testForwardRequestOfResponseFails() {
+        ApiVersionsResponseFilter filter = (response, context) -> context.forwardRequest(response);
+        buildChannel(filter);
+        assertThrows(AssertionError.class, () -> writeResponse(new ApiVersionsResponseData()));
+    }
+
     @Test
     public void testShouldNotDeserialiseRequest() {
         ApiVersionsRequestFilter filter = new ApiVersionsRequestFilter() {
@@ -121,6 +204,9 @@ public class FilterHandlerTest extends FilterHarness {
 
         assertFalse(fut[0].isComplete(),
                 "Future should not be finished yet");
+        var timeouts = RequestTimeouts.forEventLoop(channel.eventLoop());
+        assertEquals(1, timeouts.size(),
+                "Expect the request to have a timeout");
 
         // test the response path
         Promise<?> p = (Promise<?>) fut[0];
@@ -129,6 +215,8 @@ public class FilterHandlerTest extends FilterHarness {
                 "Future should be finished now");
         assertEquals(responseFrame.body(), fut[0].result(),
                 "Expect the body that was sent");
+        assertEquals(0, timeouts.size(),
+                "Expect the timeout to be cancelled by the response");
     }
 
     /**
@@ -205,4 +293,35 @@ public class FilterHandlerTest extends FilterHarness {
                 "Cause should be timeout");
     }
 
+    @Test
+    public void testSendRequestTimeoutCompletingOtherRequests() throws InterruptedException {
+        List<Future<?>> futures = new ArrayList<>();
+        ApiVersionsRequestFilter filter = (request, context) -> {
+            // Sent together, so they're timed out together
+            futures.add(context.sendRequest((short) 3, new FetchRequestData()));
+            Promise<?> second = (Promise<?>) context.sendRequest((short) 3, new FetchRequestData());
+            futures.add(second.future());
+            Future<?> third = context.sendRequest((short) 3, new FetchRequestData());
+            futures.add(third);
+            // As a filter might when one of its requests fails
+            third.onComplete(result -> second.tryComplete(null));
+        };
+
+        buildChannel(filter, 50L);
+        writeRequest(new ApiVersionsRequestData());
+        var timeouts = RequestTimeouts.forEventLoop(channel.eventLoop());
+        assertEquals(3, timeouts.size());
+
+        Thread.sleep(60L);
+        channel.runPendingTasks();
+
+        assertTrue(futures.get(0).failed(), "First request should have timed out");
+        assertTrue(futures.get(0).cause() instanceof TimeoutException, "Cause should be timeout");
+        assertTrue(futures.get(1).succeeded(), "Second request should have been completed by the filter");
+        assertTrue(futures.get(2).failed(), "Third request should have timed out");
+        assertTrue(futures.get(2).cause() instanceof TimeoutException, "Cause should be timeout");
+        assertEquals(0, timeouts.size(), "Expect no requests to be outstanding");
+        channel.releaseOutbound();
+    }
+
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FlushConsolidatorTest {
+
+    private DistributionSummary writesPerFlush;
+    private EmbeddedChannel channel;
+
+    @BeforeEach
+    public void setUp() {
+        writesPerFlush = DistributionSummary.builder("test.writes.per.flush").register(new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    private void write(int bytes) {
+        channel.pipeline().write(Unpooled.wrappedBuffer(new byte[bytes]));
+    }
+
+    @Test
+    public void testFlushesStraightAwayWithoutLimit() {
+        channel = new EmbeddedChannel(new FlushConsolidator(0, 0, writesPerFlush));
+        write(10);
+        write(10);
+        channel.pipeline().flush();
+        assertEquals(2, channel.outboundMessages().size());
+        write(10);
+        channel.pipeline().flush();
+        assertEquals(3, channel.outboundMessages().size());
+        assertEquals(2, writesPerFlush.count());
+        assertEquals(3, writesPerFlush.totalAmount());
+    }
+
+    @Test
+    public void testFlushesPutOffUntilTheEventLoopRunsTasks() {
+        channel = new EmbeddedChannel(new FlushConsolidator(10, 0, writesPerFlush));
+        // An embedded channel runs its pending tasks on each write, so the writes come first
+        write(10);
+        write(10);
+        channel.pipeline().flush();
+        channel.pipeline().flush();
+        assertEquals(0, channel.outboundMessages().size());
+        channel.runPendingTasks();
+        assertEquals(2, channel.outboundMessages().size());
+        assertEquals(1, writesPerFlush.count());
+        assertEquals(2, writesPerFlush.totalAmount());
+    }
+
+    @Test
+    public void testFlushesStraightAwayAtTheLimits() {
+        channel = new EmbeddedChannel(new FlushConsolidator(3, 100, writesPerFlush));
+        write(10);
+        write(10);
+        write(10);
+        channel.pipeline().flush();
+        assertEquals(3, channel.outboundMessages().size(), "Limit on the number of writes reached");
+        write(100);
+        channel.pipeline().flush();
+        assertEquals(4, channel.outboundMessages().size(), "Limit on the number of bytes reached");
+        write(10);
+        channel.pipeline().flush();
+        assertEquals(4, channel.outboundMessages().size());
+        channel.runPendingTasks();
+        assertEquals(5, channel.outboundMessages().size());
+    }
+
+    @Test
+    public void testFlushDuringReadWaitsForReadComplete() {
+        channel = new EmbeddedChannel(new FlushConsolidator(10, 0, writesPerFlush));
+        channel.pipeline().fireChannelRead(Unpooled.EMPTY_BUFFER);
+        write(10);
+        channel.pipeline().flush();
+        assertEquals(0, channel.outboundMessages().size());
+        channel.pipeline().fireChannelReadComplete();
+        assertEquals(1, channel.outboundMessages().size());
+        channel.releaseInbound();
+    }
+
+    @Test
+    public void testCloseFlushesPendingWrites() {
+        channel = new EmbeddedChannel(new FlushConsolidator(10, 0, writesPerFlush));
+        write(10);
+        channel.pipeline().flush();
+        channel.close();
+        assertEquals(1, channel.outboundMessages().size());
+    }
+}
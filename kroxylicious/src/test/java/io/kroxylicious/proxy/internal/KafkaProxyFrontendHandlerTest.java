@@ -18,12 +18,17 @@ import org.apache.kafka.common.protocol.ApiKeys;
 import org.apache.kafka.common.protocol.ApiMessage;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.mockito.ArgumentCaptor;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.DefaultChannelPromise;
@@ -33,16 +38,23 @@ import io.netty.handler.codec.haproxy.HAProxyMessage;
 import io.netty.handler.codec.haproxy.HAProxyProtocolVersion;
 import io.netty.handler.codec.haproxy.HAProxyProxiedProtocol;
 import io.netty.handler.ssl.SniCompletionEvent;
+import io.netty.util.concurrent.ImmediateEventExecutor;
 
 import io.kroxylicious.proxy.filter.KrpcFilter;
 import io.kroxylicious.proxy.filter.NetFilter;
 import io.kroxylicious.proxy.frame.DecodedRequestFrame;
 import io.kroxylicious.proxy.internal.KafkaProxyFrontendHandler.State;
+import io.kroxylicious.proxy.internal.codec.KafkaMessageDecoder;
+import io.kroxylicious.proxy.internal.codec.KafkaMessageEncoder;
+import io.kroxylicious.proxy.internal.codec.KafkaRequestDecoder;
+import io.kroxylicious.proxy.internal.codec.KafkaResponseEncoder;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -220,6 +232,120 @@ class KafkaProxyFrontendHandlerTest {
 
     }
 
+    /**
+     * Connects a handler which passes through once nothing needs decoding, with the codecs and backend handler
+     * of a real pipeline, and forwards a Metadata request, which awaits a response.
+     */
+    private KafkaProxyFrontendHandler passthroughHandler() throws Exception {
+        var dp = new SaslDecodePredicate(false);
+        var filter = mock(NetFilter.class);
+        doAnswer(i -> {
+            NetFilter.NetFilterContext ctx = i.getArgument(0);
+            ctx.initiateConnect(CLUSTER_HOST, CLUSTER_PORT, new KrpcFilter[0]);
+            return null;
+        }).when(filter).selectServer(any());
+        var handler = new KafkaProxyFrontendHandler(filter, dp, false, false, null, null, null, 0,
+                new DefaultTopicMetadataCache(), new ApiVersionsCache(), true, -1) {
+            @Override
+            ChannelFuture initConnection(String remoteHost, int remotePort, Bootstrap b) {
+                // The backend handler is added once registered, behind the codecs, and becomes active then
+                outboundChannel = new EmbeddedChannel(false, false, b.config().handler());
+                return new DefaultChannelPromise(outboundChannel, ImmediateEventExecutor.INSTANCE).setSuccess();
+            }
+        };
+        inboundChannel.pipeline().addLast("requestDecoder", new KafkaRequestDecoder(dp));
+        inboundChannel.pipeline().addLast("responseEncoder", new KafkaResponseEncoder());
+        inboundChannel.pipeline().addLast(handler);
+        inboundChannel.pipeline().fireChannelActive();
+
+        var header = new RequestHeaderData()
+                .setRequestApiKey(ApiKeys.METADATA.id)
+                .setRequestApiVersion(MetadataRequestData.HIGHEST_SUPPORTED_VERSION)
+                .setClientId("client-id")
+                .setCorrelationId(7);
+        inboundChannel.writeInbound(new DecodedRequestFrame<>(MetadataRequestData.HIGHEST_SUPPORTED_VERSION, 7, false, header, new MetadataRequestData()));
+        outboundChannel.register();
+        assertEquals(State.OUTBOUND_ACTIVE, handler.state());
+        return handler;
+    }
+
+    /**
+     * Reads the request forwarded upstream and responds to it, as the broker would.
+     */
+    private void respondUpstream() {
+        ByteBuf request = outboundChannel.readOutbound();
+        assertNotNull(request, "Expected the request to be forwarded");
+        int upstreamCorrelationId = request.getInt(Integer.BYTES + Short.BYTES + Short.BYTES);
+        request.release();
+        outboundChannel.writeInbound(Unpooled.buffer()
+                .writeInt(Integer.BYTES + 16)
+                .writeInt(upstreamCorrelationId)
+                .writeZero(16));
+    }
+
+    private static void assertRelayed(EmbeddedChannel from, EmbeddedChannel to) {
+        ByteBuf bytes = Unpooled.wrappedBuffer(new byte[]{ 0, 0, 0, 1, 42 });
+        from.writeInbound(bytes.retainedDuplicate());
+        ByteBuf relayed = to.readOutbound();
+        assertEquals(bytes, relayed);
+        bytes.release();
+        relayed.release();
+    }
+
+    @Test
+    public void testPassthroughOnceNothingAwaitsResponse() throws Exception {
+        var handler = passthroughHandler();
+        assertNotNull(inboundChannel.pipeline().get(KafkaRequestDecoder.class), "A request awaits a response");
+
+        respondUpstream();
+        ByteBuf response = inboundChannel.readOutbound();
+        assertEquals(4 + 4 + 16, response.readableBytes());
+        response.release();
+
+        for (var pipeline : List.of(inboundChannel.pipeline(), outboundChannel.pipeline())) {
+            pipeline.forEach(entry -> assertFalse(entry.getValue() instanceof KafkaMessageDecoder || entry.getValue() instanceof KafkaMessageEncoder,
+                    "Codec still in the pipeline: " + pipeline.names()));
+        }
+        // Bytes which would no longer frame are relayed as they are
+        assertRelayed(inboundChannel, outboundChannel);
+        assertRelayed(outboundChannel, inboundChannel);
+    }
+
+    @Test
+    public void testPassthroughWaitsForConsolidatedFlush() throws Exception {
+        DistributionSummary writesPerFlush = DistributionSummary.builder("test.writes.per.flush").register(new SimpleMeterRegistry());
+        inboundChannel.pipeline().addFirst("flushConsolidator", new FlushConsolidator(10, 0, writesPerFlush));
+        var handler = passthroughHandler();
+
+        // The backend handler writes the response and flushes it, but the flush is held back
+        respondUpstream();
+        assertNotNull(inboundChannel.pipeline().get(KafkaRequestDecoder.class), "Passthrough would overtake the unflushed response");
+        assertNull(inboundChannel.readOutbound());
+
+        inboundChannel.runPendingTasks();
+        ByteBuf flushed = inboundChannel.readOutbound();
+        assertNotNull(flushed, "Expected the response to have been flushed");
+        flushed.release();
+        // As on the next read of the upstream channel
+        handler.maybeStartPassthrough();
+        assertNull(inboundChannel.pipeline().get(KafkaRequestDecoder.class));
+        assertNull(inboundChannel.pipeline().get(KafkaResponseEncoder.class));
+    }
+
+    @Test
+    public void testApiVersionsOfUnknownVersionForwarded() {
+        var filter = mock(NetFilter.class);
+        var handler = new KafkaProxyFrontendHandler(filter, new SaslDecodePredicate(false), false, false);
+        inboundChannel.pipeline().addLast(handler);
+        inboundChannel.pipeline().fireChannelActive();
+
+        // A client newer than the proxy, which the cluster might know how to answer
+        writeRequest((short) (ApiVersionsRequestData.HIGHEST_SUPPORTED_VERSION + 1), new ApiVersionsRequestData());
+        assertNull(inboundChannel.readOutbound(), "The proxy has no response for that version");
+        verify(filter).selectServer(handler);
+        assertEquals(State.CONNECTING, handler.state());
+    }
+
     private void handleConnect(NetFilter filter, KafkaProxyFrontendHandler handler) {
         verify(filter).selectServer(handler);
         assertEquals(State.CONNECTED, handler.state());
@@ -0,0 +1,231 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+
+import io.kroxylicious.proxy.frame.OpaqueRequestFrame;
+import io.kroxylicious.proxy.frame.OpaqueResponseFrame;
+import io.kroxylicious.proxy.internal.codec.CorrelationManager;
+import io.kroxylicious.proxy.internal.codec.KafkaResponseDecoder;
+import io.kroxylicious.proxy.internal.codec.MultiplexingRequestEncoder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MultiplexedUpstreamTest {
+
+    private static final int DOWNSTREAM_CORRELATION_ID = 7;
+
+    private EmbeddedChannel upstream;
+    private MultiplexedUpstreamHandler upstreamHandler;
+
+    @BeforeEach
+    public void setUp() {
+        var correlationManager = new CorrelationManager();
+        upstreamHandler = new MultiplexedUpstreamHandler();
+        upstream = new EmbeddedChannel(new MultiplexingRequestEncoder(correlationManager),
+                new KafkaResponseDecoder(correlationManager),
+                upstreamHandler);
+    }
+
+    private static class Responses extends ChannelInboundHandlerAdapter {
+        final List<OpaqueResponseFrame> frames = new ArrayList<>();
+        int readCompletes;
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            frames.add((OpaqueResponseFrame) msg);
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) {
+            readCompletes++;
+        }
+    }
+
+    private MultiplexedUpstreamChannel connectedChannel(Responses responses) {
+        var channel = new MultiplexedUpstreamChannel(upstream.newSucceededFuture(), upstreamHandler);
+        channel.pipeline().addLast(responses);
+        upstream.eventLoop().register(channel);
+        var connectFuture = channel.connect(InetSocketAddress.createUnresolved("broker", 9092));
+        upstream.runPendingTasks();
+        assertTrue(connectFuture.isSuccess());
+        assertTrue(channel.isActive());
+        return channel;
+    }
+
+    /** A v0 Metadata request for all topics */
+    private static OpaqueRequestFrame metadataRequest() {
+        ByteBuf buf = Unpooled.buffer()
+                .writeShort(ApiKeys.METADATA.id)
+                .writeShort(0)
+                .writeInt(DOWNSTREAM_CORRELATION_ID)
+                .writeShort(-1)
+                .writeInt(0);
+        return new OpaqueRequestFrame(buf, DOWNSTREAM_CORRELATION_ID, false, buf.readableBytes());
+    }
+
+    /** A response with the given upstream correlation id, with the given int as its body */
+    private static ByteBuf response(int upstreamCorrelationId, int body) {
+        return Unpooled.buffer()
+                .writeInt(8)
+                .writeInt(upstreamCorrelationId)
+                .writeInt(body);
+    }
+
+    private int writeRequest(MultiplexedUpstreamChannel channel) {
+        channel.writeAndFlush(metadataRequest());
+        ByteBuf out = upstream.readOutbound();
+        try {
+            return out.getInt(Integer.BYTES + Short.BYTES + Short.BYTES);
+        }
+        finally {
+            out.release();
+        }
+    }
+
+    @Test
+    public void testResponsesRoutedToRequestingChannel() {
+        var responsesA = new Responses();
+        var responsesB = new Responses();
+        var channelA = connectedChannel(responsesA);
+        var channelB = connectedChannel(responsesB);
+
+        // Both clients use the same correlation id, but get distinct upstream ids
+        int upstreamIdA = writeRequest(channelA);
+        int upstreamIdB = writeRequest(channelB);
+        assertTrue(upstreamIdA != upstreamIdB);
+
+        upstream.writeInbound(Unpooled.wrappedBuffer(response(upstreamIdB, 222), response(upstreamIdA, 111)));
+
+        assertEquals(1, responsesA.frames.size());
+        assertEquals(1, responsesB.frames.size());
+        assertEquals(1, responsesA.readCompletes);
+        assertEquals(1, responsesB.readCompletes);
+        var frameA = responsesA.frames.get(0);
+        var frameB = responsesB.frames.get(0);
+        assertEquals(DOWNSTREAM_CORRELATION_ID, frameA.buf().getInt(0));
+        assertEquals(111, frameA.buf().getInt(4));
+        assertEquals(DOWNSTREAM_CORRELATION_ID, frameB.buf().getInt(0));
+        assertEquals(222, frameB.buf().getInt(4));
+        frameA.buf().release();
+        frameB.buf().release();
+    }
+
+    @Test
+    public void testResponseForClosedChannelIsReleased() {
+        var responsesA = new Responses();
+        var responsesB = new Responses();
+        var channelA = connectedChannel(responsesA);
+        var channelB = connectedChannel(responsesB);
+        int upstreamIdA = writeRequest(channelA);
+
+        channelA.close();
+        ByteBuf response = response(upstreamIdA, 111);
+        upstream.writeInbound(response);
+
+        assertTrue(responsesA.frames.isEmpty());
+        assertEquals(0, response.refCnt(), "Expected the response to be released");
+        assertTrue(upstream.isActive(), "Expected the shared connection to remain open");
+        assertTrue(channelB.isActive());
+        assertEquals(1, upstreamHandler.channels());
+    }
+
+    @Test
+    public void testResponsesBufferedWhileAutoReadDisabled() {
+        var responses = new Responses();
+        var channel = connectedChannel(responses);
+        int upstreamId = writeRequest(channel);
+
+        channel.config().setAutoRead(false);
+        upstream.writeInbound(response(upstreamId, 111));
+        assertTrue(responses.frames.isEmpty());
+
+        channel.config().setAutoRead(true);
+        assertEquals(1, responses.frames.size());
+        responses.frames.get(0).buf().release();
+    }
+
+    @Test
+    public void testWriteCompletesWithSharedConnectionWrite() {
+        var channel = connectedChannel(new Responses());
+        // Holds back the writes of the shared connection, then fails the first and completes the second
+        List<ChannelPromise> upstreamWrites = new ArrayList<>();
+        upstream.pipeline().addFirst(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+                ReferenceCountUtil.release(msg);
+                upstreamWrites.add(promise);
+            }
+        });
+
+        var failed = channel.writeAndFlush(metadataRequest());
+        var succeeded = channel.writeAndFlush(metadataRequest());
+        assertEquals(2, upstreamWrites.size());
+        assertFalse(failed.isDone(), "The write is outstanding until the shared connection's write completes");
+        assertFalse(succeeded.isDone());
+        assertTrue(channel.unsafe().outboundBuffer().totalPendingWriteBytes() > 0);
+
+        var cause = new IOException("Write failed");
+        upstreamWrites.get(0).setFailure(cause);
+        assertSame(cause, failed.cause());
+        assertFalse(succeeded.isDone());
+        upstreamWrites.get(1).setSuccess();
+        assertTrue(succeeded.isSuccess());
+        assertEquals(0, channel.unsafe().outboundBuffer().totalPendingWriteBytes());
+    }
+
+    @Test
+    public void testSaslRequestsRejected() {
+        var channel = connectedChannel(new Responses());
+        for (ApiKeys apiKey : List.of(ApiKeys.SASL_HANDSHAKE, ApiKeys.SASL_AUTHENTICATE)) {
+            ByteBuf buf = Unpooled.buffer()
+                    .writeShort(apiKey.id)
+                    .writeShort(1)
+                    .writeInt(DOWNSTREAM_CORRELATION_ID)
+                    .writeShort(-1);
+            var future = channel.writeAndFlush(new OpaqueRequestFrame(buf, DOWNSTREAM_CORRELATION_ID, false, buf.readableBytes()));
+            assertInstanceOf(IllegalStateException.class, future.cause(), "One client mustn't authenticate the connection of others");
+            assertEquals(0, buf.refCnt(), "Expected the request to be released");
+            assertNull(upstream.readOutbound());
+        }
+        assertTrue(channel.isActive());
+        assertEquals(1, upstreamHandler.channels());
+    }
+
+    @Test
+    public void testClosingSharedConnectionClosesChannels() {
+        var channelA = connectedChannel(new Responses());
+        var channelB = connectedChannel(new Responses());
+
+        upstream.close();
+
+        assertFalse(channelA.isOpen());
+        assertFalse(channelB.isOpen());
+        assertEquals(0, upstreamHandler.channels());
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoop;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.EventExecutor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PrewarmedUpstreamPoolTest {
+
+    private static final String HOST = "127.0.0.1";
+
+    private NioEventLoopGroup brokerGroup;
+    private NioEventLoopGroup clientGroup;
+    private final List<EventLoop> loops = new ArrayList<>();
+    /** The connections each broker has accepted */
+    private final BlockingQueue<Channel> accepted = new LinkedBlockingQueue<>();
+
+    @BeforeEach
+    public void setUp() {
+        brokerGroup = new NioEventLoopGroup(1);
+        clientGroup = new NioEventLoopGroup(2);
+        for (EventExecutor executor : clientGroup) {
+            loops.add((EventLoop) executor);
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        clientGroup.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+        brokerGroup.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    /**
+     * @return The port of a broker, which accepts connections and says nothing.
+     */
+    private int startBroker() throws InterruptedException {
+        Channel server = new ServerBootstrap()
+                .group(brokerGroup)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        accepted.add(ch);
+                    }
+                })
+                .bind(HOST, 0).sync().channel();
+        return ((InetSocketAddress) server.localAddress()).getPort();
+    }
+
+    private static <T> T onLoop(EventLoop loop, Callable<T> callable) throws Exception {
+        return loop.submit(callable).get(10, TimeUnit.SECONDS);
+    }
+
+    private static Channel take(PrewarmedUpstreamPool pool, EventLoop loop, int port) throws Exception {
+        return onLoop(loop, () -> pool.take(loop, NioSocketChannel.class, HOST, port));
+    }
+
+    private static void awaitIdle(PrewarmedUpstreamPool pool, EventLoop loop, int port, int expected) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        int idle;
+        while ((idle = onLoop(loop, () -> pool.idle(loop, HOST, port))) != expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, idle, "Idle connections of " + loop + " to port " + port);
+    }
+
+    @Test
+    public void testTakeAdoptsIdleConnectionAndReplacesIt() throws Exception {
+        int port = startBroker();
+        var pool = new PrewarmedUpstreamPool(1);
+        EventLoop loop = loops.get(0);
+
+        assertNull(take(pool, loop, port), "Nothing to adopt before the pool has connected");
+        awaitIdle(pool, loop, port, 1);
+
+        Channel channel = take(pool, loop, port);
+        assertNotNull(channel);
+        assertTrue(channel.isActive());
+        assertSame(loop, channel.eventLoop());
+        assertNull(channel.pipeline().first(), "The pipeline of an adopted connection should be empty");
+
+        // The adopted connection is replaced
+        awaitIdle(pool, loop, port, 1);
+        Channel replacement = take(pool, loop, port);
+        assertNotNull(replacement);
+        assertNotSame(channel, replacement);
+        channel.close().sync();
+        replacement.close().sync();
+    }
+
+    @Test
+    public void testIdleConnectionClosedByBrokerIsDropped() throws Exception {
+        int port = startBroker();
+        var pool = new PrewarmedUpstreamPool(1);
+        EventLoop loop = loops.get(0);
+        take(pool, loop, port);
+        awaitIdle(pool, loop, port, 1);
+
+        // As the broker does to connections which are idle for too long
+        accepted.poll(10, TimeUnit.SECONDS).close().sync();
+        awaitIdle(pool, loop, port, 0);
+        assertNull(take(pool, loop, port), "A closed connection shouldn't be adopted");
+        awaitIdle(pool, loop, port, 1);
+    }
+
+    @Test
+    public void testIdleConnectionsArePerEventLoopAndBroker() throws Exception {
+        int port = startBroker();
+        int otherPort = startBroker();
+        var pool = new PrewarmedUpstreamPool(2);
+        pool.prewarm(clientGroup, NioSocketChannel.class, HOST, port);
+        for (EventLoop loop : loops) {
+            awaitIdle(pool, loop, port, 2);
+            awaitIdle(pool, loop, otherPort, 0);
+        }
+
+        EventLoop loop = loops.get(0);
+        EventLoop otherLoop = loops.get(1);
+        Channel channel = take(pool, loop, port);
+        assertSame(loop, channel.eventLoop());
+        assertEquals(port, ((InetSocketAddress) channel.remoteAddress()).getPort());
+        assertEquals(2, (int) onLoop(otherLoop, () -> pool.idle(otherLoop, HOST, port)), "Another event loop's connections aren't taken");
+        assertNull(take(pool, loop, otherPort), "Connections to one broker aren't adopted for another");
+        channel.close().sync();
+    }
+}
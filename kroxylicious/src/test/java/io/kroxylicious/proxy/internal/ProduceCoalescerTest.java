@@ -0,0 +1,184 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import java.util.List;
+
+import org.apache.kafka.common.message.MetadataRequestData;
+import org.apache.kafka.common.message.ProduceRequestData;
+import org.apache.kafka.common.message.ProduceResponseData;
+import org.apache.kafka.common.message.RequestHeaderData;
+import org.apache.kafka.common.message.ResponseHeaderData;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.protocol.ApiMessage;
+import org.apache.kafka.common.protocol.Errors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import io.kroxylicious.proxy.frame.DecodedRequestFrame;
+import io.kroxylicious.proxy.frame.DecodedResponseFrame;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class ProduceCoalescerTest {
+
+    private EmbeddedChannel channel;
+
+    @AfterEach
+    public void tearDown() {
+        assertFalse(channel.finish(), "Unexpected requests or responses");
+    }
+
+    private static ProduceRequestData produce(short acks, String topic, int partition) {
+        var body = new ProduceRequestData().setAcks(acks).setTimeoutMs(30000);
+        body.topicData().add(new ProduceRequestData.TopicProduceData()
+                .setName(topic)
+                .setPartitionData(List.of(new ProduceRequestData.PartitionProduceData().setIndex(partition))));
+        return body;
+    }
+
+    private static <B extends ApiMessage> DecodedRequestFrame<B> request(int correlationId, B body) {
+        var apiKey = ApiKeys.forId(body.apiKey());
+        var header = new RequestHeaderData()
+                .setRequestApiKey(apiKey.id)
+                .setRequestApiVersion(apiKey.latestVersion())
+                .setCorrelationId(correlationId)
+                .setClientId("test-client");
+        return new DecodedRequestFrame<>(apiKey.latestVersion(), correlationId, false, header, body);
+    }
+
+    private static ProduceResponseData.TopicProduceResponse topicResponse(String topic, int... partitions) {
+        var topicResponse = new ProduceResponseData.TopicProduceResponse().setName(topic);
+        for (int partition : partitions) {
+            topicResponse.partitionResponses().add(new ProduceResponseData.PartitionProduceResponse().setIndex(partition).setBaseOffset(partition * 100L));
+        }
+        return topicResponse;
+    }
+
+    private void writeResponse(int correlationId, ProduceResponseData body) {
+        channel.writeInbound(new DecodedResponseFrame<>(ApiKeys.PRODUCE.latestVersion(), correlationId,
+                new ResponseHeaderData().setCorrelationId(correlationId), body));
+    }
+
+    @Test
+    public void testRequestsWrittenTogetherAreMerged() {
+        channel = new EmbeddedChannel(new ProduceCoalescer(0));
+        channel.write(request(1, produce((short) -1, "a", 0)));
+        channel.write(request(2, produce((short) -1, "a", 1)));
+        channel.write(request(3, produce((short) -1, "b", 0)));
+        assertNull(channel.readOutbound(), "Requests should be held until flushed");
+        channel.flush();
+
+        DecodedRequestFrame<ProduceRequestData> merged = channel.readOutbound();
+        assertEquals(1, merged.correlationId());
+        assertEquals(2, merged.body().topicData().size());
+        assertEquals(2, merged.body().topicData().find("a").partitionData().size());
+        assertEquals(1, merged.body().topicData().find("b").partitionData().size());
+
+        var response = new ProduceResponseData().setThrottleTimeMs(5);
+        response.responses().add(topicResponse("a", 1, 0));
+        response.responses().add(topicResponse("b", 0));
+        writeResponse(1, response);
+
+        for (int correlationId = 1; correlationId <= 3; correlationId++) {
+            DecodedResponseFrame<ProduceResponseData> frame = channel.readInbound();
+            assertEquals(correlationId, frame.correlationId());
+            assertEquals(correlationId, frame.header().correlationId());
+            assertEquals(5, frame.body().throttleTimeMs());
+            assertEquals(1, frame.body().responses().size());
+        }
+    }
+
+    @Test
+    public void testResponsesSplitByPartition() {
+        channel = new EmbeddedChannel(new ProduceCoalescer(0));
+        channel.write(request(1, produce((short) 1, "a", 0)));
+        channel.write(request(2, produce((short) 1, "a", 1)));
+        channel.flush();
+        channel.readOutbound();
+
+        var response = new ProduceResponseData();
+        response.responses().add(topicResponse("a", 1));
+        writeResponse(1, response);
+
+        DecodedResponseFrame<ProduceResponseData> first = channel.readInbound();
+        var missing = first.body().responses().find("a").partitionResponses().get(0);
+        assertEquals(0, missing.index());
+        assertEquals(Errors.UNKNOWN_SERVER_ERROR.code(), missing.errorCode(), "The broker didn't respond for partition 0");
+        DecodedResponseFrame<ProduceResponseData> second = channel.readInbound();
+        var present = second.body().responses().find("a").partitionResponses().get(0);
+        assertEquals(1, present.index());
+        assertEquals(100L, present.baseOffset());
+    }
+
+    @Test
+    public void testSingleRequestNotMerged() {
+        channel = new EmbeddedChannel(new ProduceCoalescer(0));
+        var frame = request(1, produce((short) -1, "a", 0));
+        channel.writeOutbound(frame);
+        assertSame(frame, channel.readOutbound());
+
+        var response = new ProduceResponseData();
+        response.responses().add(topicResponse("a", 0));
+        writeResponse(1, response);
+        DecodedResponseFrame<ProduceResponseData> responseFrame = channel.readInbound();
+        assertSame(response, responseFrame.body());
+    }
+
+    @Test
+    public void testIncompatibleRequestsNotMerged() {
+        channel = new EmbeddedChannel(new ProduceCoalescer(0));
+        var first = request(1, produce((short) -1, "a", 0));
+        var samePartition = request(2, produce((short) -1, "a", 0));
+        var otherAcks = request(3, produce((short) 1, "a", 1));
+        var noAcks = request(4, produce((short) 0, "a", 2));
+        channel.write(first);
+        channel.write(samePartition);
+        channel.write(otherAcks);
+        channel.write(noAcks);
+        channel.flush();
+        assertSame(first, channel.readOutbound());
+        assertSame(samePartition, channel.readOutbound());
+        assertSame(otherAcks, channel.readOutbound());
+        assertSame(noAcks, channel.readOutbound());
+    }
+
+    @Test
+    public void testOtherRequestsNotReordered() {
+        channel = new EmbeddedChannel(new ProduceCoalescer(0));
+        channel.write(request(1, produce((short) -1, "a", 0)));
+        channel.write(request(2, produce((short) -1, "a", 1)));
+        var metadata = request(3, new MetadataRequestData());
+        channel.write(metadata);
+        var last = request(4, produce((short) -1, "a", 2));
+        channel.write(last);
+        channel.flush();
+
+        DecodedRequestFrame<ProduceRequestData> merged = channel.readOutbound();
+        assertEquals(1, merged.correlationId());
+        assertEquals(2, merged.body().topicData().find("a").partitionData().size());
+        assertSame(metadata, channel.readOutbound());
+        assertSame(last, channel.readOutbound());
+    }
+
+    @Test
+    public void testWindowDelaysFlush() throws InterruptedException {
+        channel = new EmbeddedChannel(new ProduceCoalescer(1000));
+        channel.writeOutbound(request(1, produce((short) -1, "a", 0)));
+        channel.writeOutbound(request(2, produce((short) -1, "a", 1)));
+        assertNull(channel.readOutbound(), "Requests should be held for the window");
+
+        Thread.sleep(2);
+        channel.runScheduledPendingTasks();
+        DecodedRequestFrame<ProduceRequestData> merged = channel.readOutbound();
+        assertEquals(2, merged.body().topicData().find("a").partitionData().size());
+    }
+}
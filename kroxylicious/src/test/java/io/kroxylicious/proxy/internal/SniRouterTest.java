@@ -0,0 +1,86 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.kroxylicious.proxy.internal.filter.SniBrokerRoutes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SniRouterTest {
+
+    private SniRouter router;
+    private SniBrokerRoutes routes1;
+    private KafkaProxyInitializer initializer1;
+    private KafkaProxyInitializer initializer2;
+
+    @BeforeEach
+    public void setUp() {
+        router = new SniRouter(null);
+        routes1 = new SniBrokerRoutes("cluster1", "bootstrap.cluster1.example.com", "broker-$(nodeId).cluster1.example.com", 9192, "broker", 9092);
+        initializer1 = newInitializer();
+        router.addCluster(routes1, initializer1);
+        initializer2 = newInitializer();
+        router.addCluster(new SniBrokerRoutes("cluster2", "Bootstrap.Cluster2.example.com", "cluster2-$(nodeId).example.com", 9192, "broker", 9092),
+                initializer2);
+    }
+
+    private static KafkaProxyInitializer newInitializer() {
+        return new KafkaProxyInitializer(false, Map.of(), null, false, false, Optional.empty());
+    }
+
+    @Test
+    public void testRoutesBootstrapHostnames() {
+        assertSame(initializer1, router.route("bootstrap.cluster1.example.com"));
+        assertSame(initializer2, router.route("bootstrap.cluster2.example.com"));
+    }
+
+    @Test
+    public void testRoutesBrokerHostnames() {
+        assertSame(initializer1, router.route("broker-0.cluster1.example.com"));
+        assertSame(initializer1, router.route("broker-123.cluster1.example.com"));
+        assertSame(initializer2, router.route("cluster2-7.example.com"));
+    }
+
+    @Test
+    public void testUnknownHostnames() {
+        assertNull(router.route("broker-1.cluster3.example.com"));
+        assertNull(router.route("broker-.cluster1.example.com"));
+        assertNull(router.route("broker-x.cluster1.example.com"));
+        assertNull(router.route("example.com"));
+    }
+
+    @Test
+    public void testHostnameUsedByTwoClusters() {
+        assertThrows(IllegalArgumentException.class, () -> router.addCluster(
+                new SniBrokerRoutes("cluster3", "bootstrap.cluster1.example.com", "broker-$(nodeId).cluster3.example.com", 9192, "broker", 9092),
+                newInitializer()));
+    }
+
+    @Test
+    public void testBrokerHostnames() {
+        assertEquals(12, routes1.nodeId("broker-12.cluster1.example.com"));
+        assertEquals(-1, routes1.nodeId("broker-12.cluster2.example.com"));
+        assertEquals(-1, routes1.nodeId("broker-99999999999.cluster1.example.com"));
+        assertEquals("broker-12.cluster1.example.com", routes1.downstreamHost(12, "broker12", 9092));
+        assertEquals(9192, routes1.downstreamPort(12, "broker12", 9092));
+    }
+
+    @Test
+    public void testInvalidBrokerHostnamePatterns() {
+        assertThrows(IllegalArgumentException.class, () -> new SniBrokerRoutes("c", "b", "broker.example.com", 9192, "broker", 9092));
+        assertThrows(IllegalArgumentException.class, () -> new SniBrokerRoutes("c", "b", "b$(nodeId)-$(nodeId).example.com", 9192, "broker", 9092));
+        assertThrows(IllegalArgumentException.class, () -> new SniBrokerRoutes("c", "b", "broker1$(nodeId).example.com", 9192, "broker", 9092));
+    }
+}
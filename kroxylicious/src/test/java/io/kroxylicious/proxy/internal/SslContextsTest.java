@@ -0,0 +1,187 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLHandshakeException;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.util.concurrent.Future;
+
+import io.kroxylicious.proxy.config.Cluster;
+import io.kroxylicious.proxy.config.ConfigParser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class SslContextsTest {
+
+    private static final String PASSWORD = "changeit";
+
+    @TempDir
+    static Path dir;
+    private static File keyStore;
+    private static File trustStore;
+
+    private static void keytool(String... args) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "keytool").toString());
+        command.addAll(List.of(args));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes());
+        assertTrue(process.waitFor(60, TimeUnit.SECONDS));
+        assertEquals(0, process.exitValue(), output);
+    }
+
+    /**
+     * Creates a self-signed certificate for {@code localhost}, in a key store, and a trust store which trusts it.
+     */
+    @BeforeAll
+    public static void createStores() throws Exception {
+        keyStore = dir.resolve("keystore.p12").toFile();
+        trustStore = dir.resolve("truststore.p12").toFile();
+        File cert = dir.resolve("cert.der").toFile();
+        keytool("-genkeypair", "-alias", "localhost", "-keyalg", "RSA", "-keysize", "2048", "-validity", "1",
+                "-dname", "CN=localhost", "-ext", "SAN=dns:localhost",
+                "-storetype", "PKCS12", "-keystore", keyStore.toString(), "-storepass", PASSWORD, "-keypass", PASSWORD);
+        keytool("-exportcert", "-alias", "localhost", "-keystore", keyStore.toString(), "-storepass", PASSWORD, "-file", cert.toString());
+        keytool("-importcert", "-noprompt", "-alias", "localhost", "-file", cert.toString(),
+                "-storetype", "PKCS12", "-keystore", trustStore.toString(), "-storepass", PASSWORD);
+    }
+
+    private static void assumeAvailable(SslProvider provider) {
+        assumeTrue(provider != SslProvider.OPENSSL || OpenSsl.isAvailable(), "OpenSSL is not available");
+    }
+
+    private static SslContext serverContext(SslProvider provider) {
+        return SslContexts.forServer(provider, keyStore, Optional.of(PASSWORD), null, 0, 0);
+    }
+
+    private static SslContext clientContext(SslProvider provider, Cluster cluster) {
+        assertTrue(cluster.tls());
+        return SslContexts.forClient(provider, cluster.trustStoreFile(), cluster.trustStorePassword(), null, 0, 0);
+    }
+
+    private static Cluster cluster(String trustStoreOptions) {
+        return new ConfigParser().parseConfiguration(
+                "proxy:\n" +
+                        "  address: localhost:9192\n" +
+                        "clusters:\n" +
+                        "  demo:\n" +
+                        "    bootstrap_servers: localhost:9092\n" +
+                        "    tls: true\n" +
+                        trustStoreOptions)
+                .clusters().get("demo");
+    }
+
+    private static Cluster clusterTrustingProxy() {
+        return cluster("    trust_store_file: " + trustStore + "\n" +
+                "    trust_store_password: " + PASSWORD + "\n");
+    }
+
+    /**
+     * Handshakes between the given handlers, passing the bytes each writes to the other until neither has more to say.
+     * @return The client's handshake.
+     */
+    private static Future<?> handshake(SslHandler client, SslHandler server) {
+        var clientChannel = new EmbeddedChannel(client);
+        var serverChannel = new EmbeddedChannel(server);
+        try {
+            boolean moved;
+            do {
+                moved = move(clientChannel, serverChannel) | move(serverChannel, clientChannel);
+            } while (moved);
+            return client.handshakeFuture();
+        }
+        finally {
+            finish(clientChannel);
+            finish(serverChannel);
+        }
+    }
+
+    private static void finish(EmbeddedChannel channel) {
+        try {
+            channel.finishAndReleaseAll();
+        }
+        catch (DecoderException e) {
+            // A failed handshake, which the tests see via the handshake future
+            assertInstanceOf(SSLHandshakeException.class, e.getCause());
+        }
+    }
+
+    private static boolean move(EmbeddedChannel from, EmbeddedChannel to) {
+        boolean moved = false;
+        ByteBuf bytes;
+        while ((bytes = from.readOutbound()) != null) {
+            moved = true;
+            if (to.isOpen()) {
+                // Via the pipeline, since a failed handshake closes the channel, which the channel's own methods complain about
+                to.pipeline().fireChannelRead(bytes);
+                to.pipeline().fireChannelReadComplete();
+            }
+            else {
+                bytes.release();
+            }
+        }
+        return moved;
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = SslProvider.class, names = { "JDK", "OPENSSL" })
+    public void testHandshakeWithBrokerInTrustStore(SslProvider provider) {
+        assumeAvailable(provider);
+        var client = SslContexts.newUpstreamHandler(clientContext(provider, clusterTrustingProxy()), ByteBufAllocator.DEFAULT, "localhost", 9092);
+        var server = serverContext(provider).newHandler(ByteBufAllocator.DEFAULT);
+
+        Future<?> handshake = handshake(client, server);
+        assertTrue(handshake.isSuccess(), () -> "Handshake failed: " + handshake.cause());
+        assertTrue(server.handshakeFuture().isSuccess());
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = SslProvider.class, names = { "JDK", "OPENSSL" })
+    public void testHandshakeFailsWhenBrokerHostDoesNotMatchCertificate(SslProvider provider) {
+        assumeAvailable(provider);
+        var client = SslContexts.newUpstreamHandler(clientContext(provider, clusterTrustingProxy()), ByteBufAllocator.DEFAULT, "broker.example.com", 9092);
+        var server = serverContext(provider).newHandler(ByteBufAllocator.DEFAULT);
+
+        Future<?> handshake = handshake(client, server);
+        assertInstanceOf(SSLHandshakeException.class, handshake.cause());
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = SslProvider.class, names = { "JDK", "OPENSSL" })
+    public void testHandshakeFailsWhenBrokerNotTrusted(SslProvider provider) {
+        assumeAvailable(provider);
+        // Without a trust store only the JDK's default CAs are trusted
+        var client = SslContexts.newUpstreamHandler(clientContext(provider, cluster("")), ByteBufAllocator.DEFAULT, "localhost", 9092);
+        var server = serverContext(provider).newHandler(ByteBufAllocator.DEFAULT);
+
+        Future<?> handshake = handshake(client, server);
+        assertInstanceOf(SSLHandshakeException.class, handshake.cause());
+    }
+}
@@ -12,6 +12,8 @@ import java.util.stream.Stream;
 
 import org.apache.kafka.common.message.ApiVersionsRequestData;
 import org.apache.kafka.common.message.ApiVersionsResponseData;
+import org.apache.kafka.common.message.ProduceRequestData;
+import org.apache.kafka.common.message.RequestHeaderData;
 import org.apache.kafka.common.protocol.ApiKeys;
 import org.apache.kafka.common.protocol.ByteBufferAccessor;
 import org.apache.kafka.common.protocol.Errors;
@@ -21,8 +23,11 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 
+import io.kroxylicious.proxy.frame.DecodedRequestFrame;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -119,6 +124,156 @@ public class ByteBufAccessorTest {
         }
     }
 
+    @Test
+    public void testReadByteBufferCopiesByDefault() {
+        ByteBuf bbuf = Unpooled.buffer(8).writeLong(0x0102030405060708L);
+        var accessor = new ByteBufAccessorImpl(bbuf);
+        ByteBuffer read = accessor.readByteBuffer(4);
+        assertEquals(4, bbuf.readerIndex());
+        assertEquals(0x01020304, read.getInt(0));
+        bbuf.setInt(0, 0);
+        assertEquals(0x01020304, read.getInt(0), "Expected a copy");
+        assertEquals(1, bbuf.refCnt());
+    }
+
+    @Test
+    public void testReadByteBufferZeroCopy() {
+        ByteBuf bbuf = Unpooled.buffer(8).writeLong(0x0102030405060708L);
+        var accessor = new ByteBufAccessorImpl(bbuf, true);
+        assertEquals(0x0102, accessor.readShort());
+        ByteBuffer read = accessor.readByteBuffer(4);
+        assertEquals(6, bbuf.readerIndex());
+        assertEquals(0, read.position());
+        assertEquals(4, read.remaining());
+        assertEquals(0x03040506, read.getInt(0));
+        bbuf.setInt(2, 0);
+        assertEquals(0, read.getInt(0), "Expected a view of the original buffer");
+        assertEquals(2, bbuf.refCnt(), "Expected the slice to retain the buffer");
+
+        var frame = new DecodedRequestFrame<>((short) 0, 1, false, new RequestHeaderData(), new ProduceRequestData());
+        accessor.transferSlicesTo(frame);
+        assertEquals(2, bbuf.refCnt(), "Expected the frame to own the slice");
+        frame.release();
+        assertEquals(1, bbuf.refCnt(), "Expected releasing the frame to release the slice");
+    }
+
+    @Test
+    public void testReleaseSlices() {
+        ByteBuf bbuf = Unpooled.buffer(8).writeLong(0x0102030405060708L);
+        var accessor = new ByteBufAccessorImpl(bbuf, true);
+        accessor.readByteBuffer(4);
+        accessor.readByteBuffer(4);
+        assertEquals(3, bbuf.refCnt());
+        accessor.releaseSlices();
+        assertEquals(1, bbuf.refCnt());
+    }
+
+    @Test
+    public void testReadByteBufferZeroCopyFallsBackToCopyForComposite() {
+        ByteBuf bbuf = Unpooled.wrappedBuffer(Unpooled.buffer(2).writeShort(0x0102), Unpooled.buffer(2).writeShort(0x0304));
+        var accessor = new ByteBufAccessorImpl(bbuf, true);
+        ByteBuffer read = accessor.readByteBuffer(4);
+        assertEquals(0x01020304, read.getInt(0));
+        assertEquals(1, bbuf.refCnt(), "Expected a copy, not a retained slice");
+    }
+
+    @Test
+    public void testWriteByteBuffer() {
+        var bbuf = Unpooled.buffer(16);
+        var accessor = new ByteBufAccessorImpl(bbuf);
+        var source = ByteBuffer.allocate(12).putInt(1).putInt(2).putInt(3).flip();
+        source.getInt();
+        accessor.writeByte((byte) 7);
+        accessor.writeByteBuffer(source);
+        assertFalse(source.hasRemaining());
+        assertEquals(9, bbuf.writerIndex());
+        assertEquals(7, bbuf.readByte());
+        assertEquals(2, bbuf.readInt());
+        assertEquals(3, bbuf.readInt());
+    }
+
+    @Test
+    public void testWriteByteBufferComposesLargeBuffers() {
+        var composite = Unpooled.compositeBuffer(Integer.MAX_VALUE);
+        var accessor = new ByteBufAccessorImpl(composite);
+        byte[] large = new byte[ByteBufAccessorImpl.MIN_COMPONENT_BYTES];
+        large[0] = 42;
+        var source = ByteBuffer.wrap(large);
+        accessor.writeInt(large.length);
+        accessor.writeByteBuffer(source);
+        accessor.writeInt(-1);
+        assertFalse(source.hasRemaining());
+        assertEquals(8 + large.length, composite.writerIndex());
+        assertEquals(3, composite.numComponents());
+
+        large[1] = 43;
+        assertEquals(large.length, composite.readInt());
+        assertEquals(42, composite.readByte());
+        assertEquals(43, composite.readByte(), "Expected a view of the source, not a copy");
+        composite.skipBytes(large.length - 2);
+        assertEquals(-1, composite.readInt());
+    }
+
+    @Test
+    public void testWriteByteBufferCopiesSmallBuffersIntoComposite() {
+        var composite = Unpooled.compositeBuffer(Integer.MAX_VALUE);
+        var accessor = new ByteBufAccessorImpl(composite);
+        var source = ByteBuffer.allocate(8).putLong(99L).flip();
+        accessor.writeInt(8);
+        accessor.writeByteBuffer(source);
+        assertEquals(1, composite.numComponents());
+        assertEquals(8, composite.readInt());
+        assertEquals(99L, composite.readLong());
+    }
+
+    @Test
+    public void testWriteBytesComposesLargeBuffers() {
+        var composite = Unpooled.compositeBuffer(Integer.MAX_VALUE);
+        var accessor = new ByteBufAccessorImpl(composite);
+        ByteBuf source = Unpooled.buffer(ByteBufAccessorImpl.MIN_COMPONENT_BYTES);
+        source.writerIndex(source.capacity());
+        accessor.writeInt(1);
+        accessor.writeBytes(source, source.readableBytes());
+        assertEquals(0, source.readableBytes());
+        assertEquals(2, source.refCnt(), "Expected the composite to retain the source");
+        assertEquals(2, composite.numComponents());
+        composite.release();
+        assertEquals(1, source.refCnt());
+    }
+
+    @Test
+    public void testCompositeCapacityFollowsWrites() {
+        var composite = Unpooled.compositeBuffer(Integer.MAX_VALUE);
+        var accessor = new ByteBufAccessorImpl(composite);
+        ByteBuf first = Unpooled.buffer(1024 * 1024);
+        first.writerIndex(first.capacity());
+        ByteBuf second = Unpooled.buffer(1024 * 1024);
+        second.writerIndex(second.capacity());
+        int size = 4 + first.readableBytes() + 4 + 2 + second.readableBytes() + 8;
+        accessor.ensureWritable(size);
+        accessor.writeInt(1);
+        accessor.writeBytes(first, first.readableBytes());
+        accessor.writeInt(2);
+        accessor.writeShort((short) 3);
+        accessor.writeBytes(second, second.readableBytes());
+        accessor.writeLong(4L);
+
+        assertEquals(size, composite.writerIndex());
+        assertTrue(composite.capacity() - composite.writerIndex() < ByteBufAccessorImpl.SCRATCH_BYTES,
+                "Expected the capacity of the composite to follow its writer index, but capacity is " + composite.capacity()
+                        + " for " + composite.writerIndex() + " bytes written");
+        assertEquals(5, composite.numComponents());
+        assertEquals(1, composite.readInt());
+        composite.skipBytes(1024 * 1024);
+        assertEquals(2, composite.readInt());
+        assertEquals(3, composite.readShort());
+        composite.skipBytes(1024 * 1024);
+        assertEquals(4L, composite.readLong());
+        composite.release();
+        assertEquals(1, first.refCnt());
+        assertEquals(1, second.refCnt());
+    }
+
     public static Stream<Object[]> requestApiVersions() {
         return IntStream.range(0, ApiVersionsRequestData.SCHEMAS.length)
                 .mapToObj(index -> new Object[]{ (short) (ApiVersionsRequestData.LOWEST_SUPPORTED_VERSION + index), ApiVersionsRequestData.SCHEMAS[index] });
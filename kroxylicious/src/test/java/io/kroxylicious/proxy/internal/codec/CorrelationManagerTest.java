@@ -0,0 +1,144 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.codec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.junit.jupiter.api.Test;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import io.kroxylicious.proxy.filter.KrpcFilter;
+import io.kroxylicious.proxy.future.Promise;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class CorrelationManagerTest {
+
+    @Test
+    public void testPutAndGet() {
+        var mgr = new CorrelationManager(5);
+        var recipient = mock(KrpcFilter.class);
+        Promise<?> promise = Promise.promise();
+        int upstream = mgr.putBrokerRequest(ApiKeys.FETCH.id, (short) 12, 42, true, recipient, promise, true);
+        assertEquals(5, upstream);
+        assertEquals(1, mgr.pendingRequests());
+
+        var correlation = mgr.getBrokerCorrelation(upstream);
+        assertNotNull(correlation);
+        assertEquals(ApiKeys.FETCH.id, correlation.apiKey());
+        assertEquals(12, correlation.apiVersion());
+        assertEquals(42, correlation.downstreamCorrelationId());
+        assertTrue(correlation.decodeResponse());
+        assertSame(recipient, correlation.recipient());
+        assertSame(promise, correlation.promise());
+
+        assertEquals(0, mgr.pendingRequests());
+        assertNull(mgr.getBrokerCorrelation(upstream));
+    }
+
+    @Test
+    public void testRequestWithoutResponseIsNotTracked() {
+        var mgr = new CorrelationManager();
+        int first = mgr.putBrokerRequest(ApiKeys.PRODUCE.id, (short) 9, 1, false, null, null, false);
+        int second = mgr.putBrokerRequest(ApiKeys.PRODUCE.id, (short) 9, 2, true, null, null, false);
+        assertEquals(first + 1, second);
+        assertEquals(1, mgr.pendingRequests());
+        assertFalse(mgr.hasBrokerCorrelation(first));
+        assertFalse(mgr.getBrokerCorrelation(second).decodeResponse());
+    }
+
+    @Test
+    public void testUpstreamIdWraparound() {
+        var mgr = new CorrelationManager(Integer.MAX_VALUE - 2);
+        List<Integer> upstreamIds = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            upstreamIds.add(mgr.putBrokerRequest(ApiKeys.METADATA.id, (short) 12, i, true, null, null, false));
+        }
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i, mgr.getBrokerCorrelation(upstreamIds.get(i)).downstreamCorrelationId());
+        }
+        assertEquals(0, mgr.pendingRequests());
+    }
+
+    @Test
+    public void testOutOfOrderRemovalAcrossResizes() {
+        var mgr = new CorrelationManager();
+        var random = new Random(17);
+        List<Integer> pending = new ArrayList<>();
+        for (int round = 0; round < 50; round++) {
+            int puts = random.nextInt(200);
+            for (int i = 0; i < puts; i++) {
+                int upstream = mgr.putBrokerRequest(ApiKeys.METADATA.id, (short) 12, -i, true, null, null, false);
+                pending.add(upstream);
+            }
+            Collections.shuffle(pending, random);
+            int gets = random.nextInt(pending.size() + 1);
+            for (int i = 0; i < gets; i++) {
+                int upstream = pending.remove(pending.size() - 1);
+                assertNotNull(mgr.getBrokerCorrelation(upstream), "Missing correlation " + upstream);
+                assertFalse(mgr.hasBrokerCorrelation(upstream));
+            }
+            assertEquals(pending.size(), mgr.pendingRequests());
+        }
+        for (int upstream : pending) {
+            assertTrue(mgr.hasBrokerCorrelation(upstream), "Missing correlation " + upstream);
+        }
+    }
+
+    @Test
+    public void testStaleRequestDoesNotGrowRingWithoutBound() {
+        var mgr = new CorrelationManager();
+        int stale = mgr.putBrokerRequest(ApiKeys.METADATA.id, (short) 12, -1, true, null, null, false);
+        for (int i = 0; i < 100_000; i++) {
+            int upstream = mgr.putBrokerRequest(ApiKeys.METADATA.id, (short) 12, i, true, null, null, false);
+            assertEquals(i, mgr.getBrokerCorrelation(upstream).downstreamCorrelationId());
+        }
+        assertTrue(mgr.capacity() <= 16384, "Ring grew to " + mgr.capacity());
+        assertEquals(1, mgr.pendingRequests());
+        assertEquals(-1, mgr.getBrokerCorrelation(stale).downstreamCorrelationId());
+        assertEquals(0, mgr.pendingRequests());
+    }
+
+    @Test
+    public void testMorePendingRequestsThanRingCapacity() {
+        var mgr = new CorrelationManager();
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < 40_000; i++) {
+            pending.add(mgr.putBrokerRequest(ApiKeys.METADATA.id, (short) 12, i, true, null, null, false));
+        }
+        assertTrue(mgr.capacity() <= 16384, "Ring grew to " + mgr.capacity());
+        Collections.shuffle(pending, new Random(17));
+        for (int upstream : pending) {
+            assertEquals(upstream, mgr.getBrokerCorrelation(upstream).downstreamCorrelationId());
+        }
+        assertEquals(0, mgr.pendingRequests());
+    }
+
+    @Test
+    public void testReleaseDropsReferences() {
+        var mgr = new CorrelationManager();
+        var recipient = mock(KrpcFilter.class);
+        int upstream = mgr.putBrokerRequest(ApiKeys.FETCH.id, (short) 12, 42, true, recipient, Promise.promise(), true, new EmbeddedChannel());
+        var correlation = mgr.getBrokerCorrelation(upstream);
+        assertSame(recipient, correlation.recipient());
+        correlation.release();
+        assertNull(correlation.recipient());
+        assertNull(correlation.promise());
+        assertNull(correlation.channel());
+        assertEquals(42, correlation.downstreamCorrelationId());
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.codec;
+
+import java.util.Set;
+
+import org.apache.kafka.common.message.FetchResponseData;
+import org.apache.kafka.common.message.MetadataResponseData;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.junit.jupiter.api.Test;
+
+import io.kroxylicious.proxy.filter.FetchResponseFilter;
+import io.kroxylicious.proxy.filter.KrpcFilter;
+import io.kroxylicious.proxy.filter.KrpcFilterContext;
+import io.kroxylicious.proxy.filter.MetadataResponseFilter;
+import io.kroxylicious.proxy.filter.ProduceRequestFilter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DecodePredicateTest {
+
+    private static class BrokersFilter implements MetadataResponseFilter {
+        @Override
+        public Set<String> responseFields(ApiKeys apiKey, short apiVersion) {
+            return Set.of("Brokers");
+        }
+
+        @Override
+        public void onMetadataResponse(MetadataResponseData response, KrpcFilterContext context) {
+            context.forwardResponse(response);
+        }
+    }
+
+    private static class ThrottleFilter implements MetadataResponseFilter, FetchResponseFilter {
+        @Override
+        public Set<String> responseFields(ApiKeys apiKey, short apiVersion) {
+            return Set.of("ThrottleTimeMs");
+        }
+
+        @Override
+        public void onMetadataResponse(MetadataResponseData response, KrpcFilterContext context) {
+            context.forwardResponse(response);
+        }
+
+        @Override
+        public void onFetchResponse(FetchResponseData response, KrpcFilterContext context) {
+            context.forwardResponse(response);
+        }
+    }
+
+    @Test
+    public void testAgreesWithFilters() {
+        KrpcFilter produceFilter = (ProduceRequestFilter) (request, context) -> context.forwardRequest(request);
+        KrpcFilter[] filters = { produceFilter, new BrokersFilter() };
+        var predicate = DecodePredicate.forFilters(filters);
+        for (ApiKeys apiKey : ApiKeys.values()) {
+            for (short apiVersion = apiKey.oldestVersion(); apiVersion <= apiKey.latestVersion(); apiVersion++) {
+                assertEquals(apiKey == ApiKeys.PRODUCE, predicate.shouldDecodeRequest(apiKey, apiVersion), apiKey + " v" + apiVersion);
+                assertEquals(apiKey == ApiKeys.METADATA, predicate.shouldDecodeResponse(apiKey, apiVersion), apiKey + " v" + apiVersion);
+            }
+        }
+    }
+
+    @Test
+    public void testVersionNewerThanKnown() {
+        var predicate = DecodePredicate.forFilters((ProduceRequestFilter) (request, context) -> context.forwardRequest(request));
+        short apiVersion = (short) (ApiKeys.PRODUCE.latestVersion() + 1);
+        assertTrue(predicate.shouldDecodeRequest(ApiKeys.PRODUCE, apiVersion));
+        assertFalse(predicate.shouldDecodeResponse(ApiKeys.PRODUCE, apiVersion));
+    }
+
+    @Test
+    public void testResponseFieldsAreUnionOfFilters() {
+        var predicate = DecodePredicate.forFilters(new BrokersFilter(), new ThrottleFilter());
+        short apiVersion = ApiKeys.METADATA.latestVersion();
+        assertEquals(Set.of("Brokers", "ThrottleTimeMs"), predicate.responseFields(ApiKeys.METADATA, apiVersion));
+        assertEquals(Set.of("ThrottleTimeMs"), predicate.responseFields(ApiKeys.FETCH, ApiKeys.FETCH.latestVersion()));
+    }
+
+    @Test
+    public void testResponseFieldsNullIfAnyFilterUsesAll() {
+        KrpcFilter allFields = (MetadataResponseFilter) (response, context) -> context.forwardResponse(response);
+        var predicate = DecodePredicate.forFilters(new BrokersFilter(), allFields);
+        assertNull(predicate.responseFields(ApiKeys.METADATA, ApiKeys.METADATA.latestVersion()));
+    }
+}
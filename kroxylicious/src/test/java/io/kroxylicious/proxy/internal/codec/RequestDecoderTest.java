@@ -10,20 +10,31 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.kafka.common.message.ApiVersionsRequestData;
+import org.apache.kafka.common.message.ProduceRequestData;
 import org.apache.kafka.common.message.RequestHeaderData;
 import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.MemoryRecordsBuilder;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.TooLongFrameException;
 
 import io.kroxylicious.proxy.filter.ApiVersionsRequestFilter;
+import io.kroxylicious.proxy.filter.ProduceRequestFilter;
 import io.kroxylicious.proxy.filter.KrpcFilterContext;
 import io.kroxylicious.proxy.frame.DecodedRequestFrame;
 import io.kroxylicious.proxy.frame.OpaqueRequestFrame;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class RequestDecoderTest extends AbstractCodecTest {
 
@@ -154,4 +165,96 @@ public class RequestDecoderTest extends AbstractCodecTest {
 
         assertEquals(byteBuf.writerIndex(), byteBuf.readerIndex());
     }
+
+    private static ByteBuffer largeProduceRequest() {
+        return produceRequest(60000);
+    }
+
+    private static ByteBuffer produceRequest(int valueSize) {
+        short produceVersion = ApiKeys.PRODUCE.latestVersion();
+        var header = new RequestHeaderData()
+                .setRequestApiKey(ApiKeys.PRODUCE.id)
+                .setRequestApiVersion(produceVersion)
+                .setCorrelationId(45)
+                .setClientId("client");
+        MemoryRecordsBuilder builder = MemoryRecords.builder(ByteBuffer.allocate(65536), CompressionType.NONE, TimestampType.CREATE_TIME, 0);
+        builder.append(0, null, new byte[valueSize]);
+        var topics = new ProduceRequestData.TopicProduceDataCollection();
+        topics.add(new ProduceRequestData.TopicProduceData()
+                .setName("topic")
+                .setPartitionData(List.of(new ProduceRequestData.PartitionProduceData().setRecords(builder.build()))));
+        var body = new ProduceRequestData()
+                .setAcks((short) -1)
+                .setTopicData(topics);
+        return serializeUsingKafkaApis(ApiKeys.PRODUCE.requestHeaderVersion(produceVersion), header, produceVersion, body);
+    }
+
+    @Test
+    public void testOversizedOpaqueFrameIsStreamed() {
+        ByteBuf byteBuf = Unpooled.wrappedBuffer(largeProduceRequest());
+        int frameSize = byteBuf.getInt(0);
+        var decoder = new KafkaRequestDecoder(DecodePredicate.forFilters(), 32 * 1024, true);
+
+        // The first part of the frame yields the head and what's available of the rest
+        var messages = new ArrayList<>();
+        decoder.decode(null, byteBuf.readSlice(20000), messages);
+        assertEquals(2, messages.size());
+        var head = assertInstanceOf(OpaqueRequestFrame.class, messages.get(0));
+        assertInstanceOf(ByteBuf.class, messages.get(1));
+        assertTrue(head.isStreamed());
+        assertEquals(45, head.correlationId());
+        assertEquals(Integer.BYTES + KafkaMessageDecoder.STREAMED_HEAD_LENGTH, head.estimateEncodedSize());
+
+        // The rest of the frame is forwarded as it arrives
+        decoder.decode(null, byteBuf, messages);
+        assertEquals(3, messages.size());
+        assertEquals(0, byteBuf.readableBytes());
+
+        ByteBuf streamed = Unpooled.buffer(frameSize);
+        streamed.writeBytes(head.buf());
+        streamed.writeBytes((ByteBuf) messages.get(1));
+        streamed.writeBytes((ByteBuf) messages.get(2));
+        assertEquals(byteBuf.slice(Integer.BYTES, frameSize), streamed);
+        head.release();
+        ((ByteBuf) messages.get(1)).release();
+        ((ByteBuf) messages.get(2)).release();
+    }
+
+    @Test
+    public void testFrameJustOverSmallMaxFrameSizeIsStreamed() {
+        ByteBuf byteBuf = Unpooled.wrappedBuffer(produceRequest(2000));
+        int frameSize = byteBuf.getInt(0);
+        int maxFrameSize = frameSize - 100;
+        assertTrue(frameSize < KafkaMessageDecoder.STREAMED_HEAD_LENGTH);
+        var decoder = new KafkaRequestDecoder(DecodePredicate.forFilters(), maxFrameSize, true);
+
+        var messages = new ArrayList<>();
+        decoder.decode(null, byteBuf, messages);
+        assertEquals(2, messages.size());
+        var head = assertInstanceOf(OpaqueRequestFrame.class, messages.get(0));
+        assertTrue(head.isStreamed());
+        assertEquals(Integer.BYTES + maxFrameSize, head.estimateEncodedSize());
+        var rest = assertInstanceOf(ByteBuf.class, messages.get(1));
+        assertEquals(frameSize - maxFrameSize, rest.readableBytes());
+        assertEquals(0, byteBuf.readableBytes());
+        head.release();
+        rest.release();
+    }
+
+    @Test
+    public void testOversizedDecodedFrameIsRejected() {
+        ByteBuf byteBuf = Unpooled.wrappedBuffer(largeProduceRequest());
+        var decoder = new KafkaRequestDecoder(
+                DecodePredicate.forFilters((ProduceRequestFilter) (request, context) -> context.forwardRequest(request)), 1024, true);
+
+        assertThrows(TooLongFrameException.class, () -> decoder.decode(null, byteBuf, new ArrayList<>()));
+    }
+
+    @Test
+    public void testOversizedFrameIsRejectedWithoutStreaming() {
+        ByteBuf byteBuf = Unpooled.wrappedBuffer(largeProduceRequest());
+        var decoder = new KafkaRequestDecoder(DecodePredicate.forFilters(), 1024, false);
+
+        assertThrows(TooLongFrameException.class, () -> decoder.decode(null, byteBuf, new ArrayList<>()));
+    }
 }
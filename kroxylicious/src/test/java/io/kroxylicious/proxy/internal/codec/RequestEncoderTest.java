@@ -16,17 +16,24 @@ import org.apache.kafka.common.message.ApiVersionsRequestData;
 import org.apache.kafka.common.message.ProduceRequestData;
 import org.apache.kafka.common.message.RequestHeaderData;
 import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.MemoryRecordsBuilder;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
 
 import io.kroxylicious.proxy.frame.DecodedRequestFrame;
 import io.kroxylicious.proxy.frame.OpaqueRequestFrame;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class RequestEncoderTest extends AbstractCodecTest {
@@ -95,14 +102,100 @@ public class RequestEncoderTest extends AbstractCodecTest {
         new KafkaRequestEncoder(correlationManager).encode(null, frame, out);
 
         if (acks == 0) {
-            assertTrue(correlationManager.brokerRequests.isEmpty(),
+            assertEquals(0, correlationManager.pendingRequests(),
                     "Expect acks == 0 to not have a correlation");
         }
         else {
-            assertNotNull(correlationManager.brokerRequests.get(78),
+            assertTrue(correlationManager.hasBrokerCorrelation(78),
                     "Expect acks != 0 to have a correlation");
-            assertEquals(1, correlationManager.brokerRequests.size(),
+            assertEquals(1, correlationManager.pendingRequests(),
                     "Expect acks != 0 to have a correlation");
         }
     }
+
+    @Test
+    public void testCompositeEncodingOfOpaqueFrame() {
+        short produceVersion = ApiKeys.PRODUCE.latestVersion();
+        var header = new RequestHeaderData()
+                .setRequestApiKey(ApiKeys.PRODUCE.id)
+                .setRequestApiVersion(produceVersion)
+                .setCorrelationId(45)
+                .setClientId("client");
+        MemoryRecordsBuilder builder = MemoryRecords.builder(ByteBuffer.allocate(8192), CompressionType.NONE, TimestampType.CREATE_TIME, 0);
+        builder.append(0, null, new byte[4096]);
+        var topics = new ProduceRequestData.TopicProduceDataCollection();
+        topics.add(new ProduceRequestData.TopicProduceData()
+                .setName("topic")
+                .setPartitionData(List.of(new ProduceRequestData.PartitionProduceData().setRecords(builder.build()))));
+        var body = new ProduceRequestData()
+                .setAcks((short) -1)
+                .setTopicData(topics);
+        short headerVersion = ApiKeys.PRODUCE.requestHeaderVersion(produceVersion);
+        ByteBuffer byteBuffer = serializeUsingKafkaApis(headerVersion, header, produceVersion, body);
+        ByteBuf expected = Unpooled.copiedBuffer(byteBuffer.duplicate());
+        int frameSize = byteBuffer.getInt();
+        ByteBuf buf = Unpooled.copiedBuffer(byteBuffer);
+
+        var correlationManager = new CorrelationManager(78);
+        var channel = new EmbeddedChannel(new KafkaRequestEncoder(correlationManager, 0));
+        channel.writeOutbound(new OpaqueRequestFrame(buf, 45, false, frameSize));
+        ByteBuf out = channel.readOutbound();
+
+        try {
+            var composite = assertInstanceOf(CompositeByteBuf.class, out);
+            assertTrue(composite.numComponents() > 1, "Expected the records to be a separate component");
+            expected.setInt(KafkaRequestEncoder.LENGTH + KafkaRequestEncoder.API_KEY + KafkaRequestEncoder.API_VERSION, 78);
+            assertSameBytes(expected, out);
+            assertEquals(45, correlationManager.getBrokerCorrelation(78).downstreamCorrelationId());
+        }
+        finally {
+            out.release();
+        }
+        assertEquals(0, buf.refCnt(), "Expected the inbound buffer to be released with the composite");
+    }
+
+    private static MemoryRecords records(int valueSize) {
+        MemoryRecordsBuilder builder = MemoryRecords.builder(ByteBuffer.allocate(valueSize + 1024), CompressionType.NONE, TimestampType.CREATE_TIME, 0);
+        builder.append(0, null, new byte[valueSize]);
+        return builder.build();
+    }
+
+    @Test
+    public void testCompositeCapacityOfDecodedFrame() {
+        short produceVersion = ApiKeys.PRODUCE.latestVersion();
+        var header = new RequestHeaderData()
+                .setRequestApiKey(ApiKeys.PRODUCE.id)
+                .setRequestApiVersion(produceVersion)
+                .setCorrelationId(45)
+                .setClientId("client");
+        var topics = new ProduceRequestData.TopicProduceDataCollection();
+        topics.add(new ProduceRequestData.TopicProduceData()
+                .setName("topic")
+                .setPartitionData(List.of(
+                        new ProduceRequestData.PartitionProduceData().setIndex(0).setRecords(records(1024 * 1024)),
+                        new ProduceRequestData.PartitionProduceData().setIndex(1).setRecords(records(512 * 1024)))));
+        var body = new ProduceRequestData()
+                .setAcks((short) -1)
+                .setTopicData(topics);
+        short headerVersion = ApiKeys.PRODUCE.requestHeaderVersion(produceVersion);
+        ByteBuf expected = Unpooled.wrappedBuffer(serializeUsingKafkaApis(headerVersion, header, produceVersion, body));
+
+        var correlationManager = new CorrelationManager(78);
+        var channel = new EmbeddedChannel(new KafkaRequestEncoder(correlationManager));
+        channel.writeOutbound(new DecodedRequestFrame<>(produceVersion, 45, false, header, body));
+        ByteBuf out = channel.readOutbound();
+
+        try {
+            var composite = assertInstanceOf(CompositeByteBuf.class, out);
+            assertEquals(expected.readableBytes(), composite.writerIndex());
+            assertTrue(composite.capacity() - composite.writerIndex() < ByteBufAccessorImpl.SCRATCH_BYTES,
+                    "Expected the capacity of the composite to follow the frame size, but capacity is " + composite.capacity()
+                            + " for a frame of " + composite.writerIndex() + " bytes");
+            expected.setInt(KafkaRequestEncoder.LENGTH + KafkaRequestEncoder.API_KEY + KafkaRequestEncoder.API_VERSION, 78);
+            assertSameBytes(expected, out);
+        }
+        finally {
+            out.release();
+        }
+    }
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.codec;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import io.kroxylicious.proxy.internal.ApiLatencyMetrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestLatencyTrackerTest {
+
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        Metrics.removeRegistry(registry);
+    }
+
+    private Timer proxyTimer(ApiKeys apiKey, short apiVersion) {
+        return registry.find(ApiLatencyMetrics.PROXY.name())
+                .tag("api_key", apiKey.name())
+                .tag("api_version", Short.toString(apiVersion))
+                .timer();
+    }
+
+    @Test
+    public void testLatencyRecordedWhenResponseSent() {
+        var tracker = new RequestLatencyTracker();
+        tracker.requestReceived(3, ApiKeys.METADATA.id, (short) 9, 1_000);
+        tracker.requestReceived(4, ApiKeys.FETCH.id, (short) 12, 2_000);
+
+        assertTrue(tracker.responseSent(4, 7_000));
+        assertTrue(tracker.responseSent(3, 11_000));
+
+        Timer metadata = proxyTimer(ApiKeys.METADATA, (short) 9);
+        assertEquals(1, metadata.count());
+        assertEquals(10_000, metadata.totalTime(TimeUnit.NANOSECONDS));
+        Timer fetch = proxyTimer(ApiKeys.FETCH, (short) 12);
+        assertEquals(1, fetch.count());
+        assertEquals(5_000, fetch.totalTime(TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void testUnknownResponseNotRecorded() {
+        var tracker = new RequestLatencyTracker();
+        tracker.requestReceived(3, ApiKeys.METADATA.id, (short) 8, 1_000);
+
+        assertFalse(tracker.responseSent(5, 2_000));
+        assertTrue(tracker.responseSent(3, 2_000));
+        assertFalse(tracker.responseSent(3, 3_000), "Expected each request to be recorded once");
+    }
+
+    @Test
+    public void testCollidingRequestReplacesOlder() {
+        var tracker = new RequestLatencyTracker();
+        // e.g. an acks=0 produce, which has no response
+        tracker.requestReceived(1, ApiKeys.PRODUCE.id, (short) 9, 1_000);
+        tracker.requestReceived(65, ApiKeys.PRODUCE.id, (short) 9, 2_000);
+
+        assertFalse(tracker.responseSent(1, 3_000));
+        assertTrue(tracker.responseSent(65, 3_000));
+    }
+}
@@ -5,14 +5,29 @@
  */
 package io.kroxylicious.proxy.internal.codec;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.apache.kafka.common.message.ApiMessageType;
+import org.apache.kafka.common.message.MetadataResponseData;
+import org.apache.kafka.common.message.ResponseHeaderData;
 import org.apache.kafka.common.protocol.ApiKeys;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
 import io.kroxylicious.proxy.frame.DecodedResponseFrame;
 import io.kroxylicious.proxy.frame.OpaqueResponseFrame;
+import io.kroxylicious.proxy.frame.PartiallyDecodedResponseFrame;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ResponseDecoderTest extends AbstractCodecTest {
 
@@ -47,4 +62,104 @@ public class ResponseDecoderTest extends AbstractCodecTest {
                 "Unexpected correlation id");
     }
 
+    public static Stream<Short> metadataApiVersions() {
+        return requestApiVersions(ApiMessageType.METADATA);
+    }
+
+    private static MetadataResponseData exampleMetadataResponse(short apiVersion) {
+        var body = new MetadataResponseData()
+                .setThrottleTimeMs(apiVersion >= 3 ? 23 : 0)
+                .setClusterId(apiVersion >= 2 ? "cluster" : null)
+                .setControllerId(apiVersion >= 1 ? 1 : -1);
+        for (int i = 0; i < 3; i++) {
+            body.brokers().add(new MetadataResponseData.MetadataResponseBroker()
+                    .setNodeId(i)
+                    .setHost("broker" + i)
+                    .setPort(9092)
+                    .setRack(apiVersion >= 1 ? "rack" + i : null));
+        }
+        for (int i = 0; i < 10; i++) {
+            var topic = new MetadataResponseData.MetadataResponseTopic()
+                    .setName("topic" + i);
+            for (int p = 0; p < 10; p++) {
+                topic.partitions().add(new MetadataResponseData.MetadataResponsePartition()
+                        .setPartitionIndex(p)
+                        .setLeaderId(p % 3)
+                        .setReplicaNodes(List.of(0, 1, 2))
+                        .setIsrNodes(List.of(0, 1, 2)));
+            }
+            body.topics().add(topic);
+        }
+        return body;
+    }
+
+    @ParameterizedTest
+    @MethodSource("metadataApiVersions")
+    public void testMetadataPartiallyDecoded(short apiVersion) {
+        var mgr = new CorrelationManager(12);
+        mgr.putBrokerRequest(ApiKeys.METADATA.id, apiVersion, 52, true, null, null, true);
+        var decodePredicate = new DecodePredicate() {
+            @Override
+            public boolean shouldDecodeRequest(ApiKeys apiKey, short apiVersion) {
+                return false;
+            }
+
+            @Override
+            public boolean shouldDecodeResponse(ApiKeys apiKey, short apiVersion) {
+                return true;
+            }
+
+            @Override
+            public Set<String> responseFields(ApiKeys apiKey, short apiVersion) {
+                return Set.of("Brokers");
+            }
+        };
+        short headerVersion = ApiKeys.METADATA.responseHeaderVersion(apiVersion);
+        var body = exampleMetadataResponse(apiVersion);
+        ByteBuf in = Unpooled.wrappedBuffer(serializeUsingKafkaApis(headerVersion, new ResponseHeaderData().setCorrelationId(12), apiVersion, body));
+
+        var messages = new ArrayList<>();
+        new KafkaResponseDecoder(mgr, decodePredicate).decode(null, in, messages);
+        assertEquals(in.writerIndex(), in.readerIndex(), "Expect to have read whole buf");
+        assertEquals(1, messages.size());
+        PartiallyDecodedResponseFrame<?> frame = assertInstanceOf(PartiallyDecodedResponseFrame.class, messages.get(0));
+        var decodedBody = (MetadataResponseData) frame.body();
+        assertEquals(body.brokers(), decodedBody.brokers());
+        assertEquals(body.throttleTimeMs(), decodedBody.throttleTimeMs());
+        assertTrue(decodedBody.topics().isEmpty(), "Expected the topics not to be decoded");
+
+        // Rewriting a broker changes the encoded size, but the remainder of the body is encoded verbatim
+        decodedBody.brokers().find(1).setHost("a-much-longer-host-name").setPort(19092);
+        body.brokers().find(1).setHost("a-much-longer-host-name").setPort(19092);
+        ByteBuf expected = Unpooled.wrappedBuffer(serializeUsingKafkaApis(headerVersion, new ResponseHeaderData().setCorrelationId(52), apiVersion, body));
+        ByteBuf out = Unpooled.buffer(frame.estimateEncodedSize());
+        frame.encode(new ByteBufAccessorImpl(out));
+        assertSameBytes(expected, out);
+        frame.release();
+    }
+
+    @Test
+    public void testOversizedOpaqueFrameIsStreamed() {
+        var mgr = new CorrelationManager(12);
+        mgr.putBrokerRequest(ApiKeys.FETCH.id, ApiKeys.FETCH.latestVersion(), 52, true, null, null, false);
+        int frameSize = 100000;
+        ByteBuf in = Unpooled.buffer(Integer.BYTES + frameSize)
+                .writeInt(frameSize)
+                .writeInt(12)
+                .writeZero(frameSize - Integer.BYTES);
+
+        var messages = new ArrayList<>();
+        new KafkaResponseDecoder(mgr, null, 1024, true).decode(null, in, messages);
+        assertEquals(in.writerIndex(), in.readerIndex(), "Expect to have read whole buf");
+        assertEquals(2, messages.size());
+        var head = assertInstanceOf(OpaqueResponseFrame.class, messages.get(0));
+        assertTrue(head.isStreamed());
+        assertEquals(52, head.correlationId());
+        assertEquals(52, head.buf().getInt(0), "Expected the correlation id to be rewritten");
+        var rest = assertInstanceOf(ByteBuf.class, messages.get(1));
+        assertEquals(frameSize, head.buf().readableBytes() + rest.readableBytes());
+        head.release();
+        rest.release();
+    }
+
 }
@@ -10,11 +10,20 @@ import java.nio.ByteBuffer;
 import org.apache.kafka.common.message.ApiVersionsResponseData;
 import org.apache.kafka.common.message.ResponseHeaderData;
 import org.apache.kafka.common.protocol.ApiKeys;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+
 import io.kroxylicious.proxy.frame.DecodedResponseFrame;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
 public class ResponseEncoderTest extends AbstractCodecTest {
     @ParameterizedTest
     @MethodSource("requestApiVersions")
@@ -25,4 +34,27 @@ public class ResponseEncoderTest extends AbstractCodecTest {
         ByteBuffer expected = serializeUsingKafkaApis(headerVersion, exampleHeader, apiVersion, exampleBody);
         testEncode(expected, new DecodedResponseFrame<>(apiVersion, exampleHeader.correlationId(), exampleHeader, exampleBody), new KafkaResponseEncoder());
     }
+
+    @Test
+    public void testCompositeEncodingReleasesFrameAfterWrite() {
+        short apiVersion = ApiKeys.API_VERSIONS.latestVersion();
+        ResponseHeaderData exampleHeader = exampleResponseHeader();
+        ApiVersionsResponseData exampleBody = exampleApiVersionsResponse();
+        short headerVersion = ApiKeys.API_VERSIONS.responseHeaderVersion(apiVersion);
+        ByteBuffer expected = serializeUsingKafkaApis(headerVersion, exampleHeader, apiVersion, exampleBody);
+        var frame = new DecodedResponseFrame<>(apiVersion, exampleHeader.correlationId(), exampleHeader, exampleBody);
+
+        var channel = new EmbeddedChannel(new KafkaResponseEncoder(0));
+        channel.writeOutbound(frame);
+        ByteBuf out = channel.readOutbound();
+
+        try {
+            assertInstanceOf(CompositeByteBuf.class, out);
+            assertSameBytes(Unpooled.wrappedBuffer(expected), out);
+            assertEquals(0, frame.refCnt(), "Expected the frame to be released once written");
+        }
+        finally {
+            out.release();
+        }
+    }
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.filter;
+
+import java.net.InetSocketAddress;
+
+import org.apache.kafka.common.message.FindCoordinatorResponseData;
+import org.apache.kafka.common.message.MetadataResponseData;
+import org.apache.kafka.common.message.MetadataResponseData.MetadataResponseBroker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.kroxylicious.proxy.frame.DecodedResponseFrame;
+import io.kroxylicious.proxy.internal.FilterHarness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BrokerAddressFilterTest extends FilterHarness {
+
+    private PortPerBrokerRoutes routes;
+
+    @BeforeEach
+    public void setUp() {
+        routes = new PortPerBrokerRoutes("demo", "proxy", 9192, 3, "broker0", 9092);
+        buildChannel(new BrokerAddressFilter(routes));
+    }
+
+    private static MetadataResponseData metadata(int... nodeIds) {
+        var metadata = new MetadataResponseData();
+        for (int nodeId : nodeIds) {
+            metadata.brokers().add(new MetadataResponseBroker().setNodeId(nodeId).setHost("broker" + nodeId).setPort(9092));
+        }
+        return metadata;
+    }
+
+    @Test
+    public void testMetadataBrokersRewrittenToTheirOwnPorts() {
+        writeResponse(metadata(1001, 1003));
+
+        DecodedResponseFrame<MetadataResponseData> frame = channel.readInbound();
+        var brokers = frame.body().brokers();
+        assertEquals("proxy", brokers.find(1001).host());
+        assertEquals(9193, brokers.find(1001).port());
+        assertEquals("proxy", brokers.find(1003).host());
+        assertEquals(9194, brokers.find(1003).port());
+
+        assertEquals(InetSocketAddress.createUnresolved("broker0", 9092), routes.upstreamAddress(9192));
+        assertEquals(InetSocketAddress.createUnresolved("broker1001", 9092), routes.upstreamAddress(9193));
+        assertEquals(InetSocketAddress.createUnresolved("broker1003", 9092), routes.upstreamAddress(9194));
+        assertNull(routes.upstreamAddress(9195), "No broker has been given the third port yet");
+    }
+
+    @Test
+    public void testBrokersKeepTheirPorts() {
+        writeResponse(metadata(7, 3));
+        channel.readInbound();
+        writeResponse(metadata(5, 3, 7));
+
+        DecodedResponseFrame<MetadataResponseData> frame = channel.readInbound();
+        var brokers = frame.body().brokers();
+        assertEquals(9193, brokers.find(7).port());
+        assertEquals(9194, brokers.find(3).port());
+        assertEquals(9195, brokers.find(5).port());
+        assertEquals(InetSocketAddress.createUnresolved("broker5", 9092), routes.upstreamAddress(9195));
+    }
+
+    @Test
+    public void testBrokerWithoutPortRejected() {
+        writeResponse(metadata(1001, 1002, 1003));
+        channel.readInbound();
+        var e = assertThrows(IllegalStateException.class, () -> writeResponse(metadata(1004)));
+        assertTrue(e.getMessage().contains("broker 1004"), e.getMessage());
+        assertEquals(9192, routes.brokerPort(1004));
+    }
+
+    @Test
+    public void testUnavailableCoordinatorRewrittenToBootstrapPort() {
+        var response = new FindCoordinatorResponseData();
+        response.coordinators().add(new FindCoordinatorResponseData.Coordinator().setKey("group").setNodeId(-1).setHost("").setPort(-1));
+        writeResponse(response);
+
+        DecodedResponseFrame<FindCoordinatorResponseData> frame = channel.readInbound();
+        assertEquals(9192, frame.body().coordinators().get(0).port());
+    }
+
+    @Test
+    public void testSingleCoordinatorRewritten() {
+        writeResponse(new FindCoordinatorResponseData().setNodeId(1).setHost("broker1").setPort(9092));
+
+        DecodedResponseFrame<FindCoordinatorResponseData> frame = channel.readInbound();
+        assertEquals("proxy", frame.body().host());
+        assertEquals(9193, frame.body().port());
+        assertEquals(InetSocketAddress.createUnresolved("broker1", 9092), routes.upstreamAddress(9193));
+    }
+}
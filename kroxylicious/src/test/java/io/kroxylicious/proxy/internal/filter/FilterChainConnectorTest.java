@@ -0,0 +1,40 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.filter;
+
+import org.junit.jupiter.api.Test;
+
+import io.kroxylicious.proxy.bootstrap.FilterChainFactory;
+import io.kroxylicious.proxy.filter.KrpcFilter;
+import io.kroxylicious.proxy.filter.NetFilter;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class FilterChainConnectorTest {
+
+    @Test
+    public void testConnectorConnectsWithFactory() {
+        var factory = mock(FilterChainFactory.class);
+        var context = mock(NetFilter.NetFilterContext.class, withSettings().extraInterfaces(FilterChainConnector.class));
+
+        FilterChainConnector.initiateConnect(context, "broker", 9092, factory);
+        verify((FilterChainConnector) context).initiateConnect("broker", 9092, factory);
+    }
+
+    @Test
+    public void testOtherContextConnectsWithCreatedFilters() {
+        var factory = mock(FilterChainFactory.class);
+        KrpcFilter[] filters = { mock(KrpcFilter.class) };
+        when(factory.createFilters()).thenReturn(filters);
+        var context = mock(NetFilter.NetFilterContext.class);
+
+        FilterChainConnector.initiateConnect(context, "broker", 9092, factory);
+        verify(context).initiateConnect("broker", 9092, filters);
+    }
+}
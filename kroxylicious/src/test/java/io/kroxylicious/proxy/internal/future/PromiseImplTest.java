@@ -0,0 +1,153 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.future;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import io.netty.channel.DefaultEventLoop;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+
+import io.kroxylicious.proxy.future.Future;
+import io.kroxylicious.proxy.future.Promise;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PromiseImplTest {
+
+    @Test
+    public void testCallbacksNotifiedInOrderOfAddition() {
+        for (var promise : List.<Promise<String>> of(new PromiseImpl<>(), new PromiseImpl<>(ImmediateEventExecutor.INSTANCE))) {
+            List<String> calls = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                int n = i;
+                promise.future()
+                        .onSuccess(value -> calls.add("success" + n + ":" + value))
+                        .onFailure(cause -> calls.add("failure" + n))
+                        .onComplete(ar -> calls.add("complete" + n + ":" + ar.result()));
+            }
+            assertTrue(promise.tryComplete("x"));
+            assertFalse(promise.tryComplete("y"));
+            assertFalse(promise.tryFail(new RuntimeException()));
+            assertEquals(List.of("success0:x", "complete0:x", "success1:x", "complete1:x", "success2:x", "complete2:x"), calls);
+
+            // A callback added after completion is notified immediately
+            promise.future().onSuccess(value -> calls.add("late:" + value));
+            assertEquals("late:x", calls.get(calls.size() - 1));
+        }
+    }
+
+    @Test
+    public void testFailureNotifiesFailureAndCompletionHandlers() {
+        Promise<String> promise = new PromiseImpl<>(ImmediateEventExecutor.INSTANCE);
+        List<Object> calls = new ArrayList<>();
+        promise.future()
+                .onSuccess(calls::add)
+                .onFailure(calls::add)
+                .onComplete(ar -> calls.add(ar.cause()));
+        var cause = new IllegalStateException();
+        promise.fail(cause);
+        assertEquals(List.of(cause, cause), calls);
+        assertTrue(promise.future().failed());
+        assertSame(cause, promise.future().cause());
+        assertNull(promise.future().result());
+    }
+
+    @Test
+    public void testMapAndComposeOfConfinedPromiseAreConfined() {
+        var executor = ImmediateEventExecutor.INSTANCE;
+        PromiseImpl<Integer> promise = new PromiseImpl<>(executor);
+        Promise<String> inner = new PromiseImpl<>(executor);
+        Future<Integer> mapped = promise.map(i -> i + 1);
+        Future<String> composed = mapped.compose(i -> inner.future().map(s -> s + i));
+        assertSame(executor, ((FutureBase<?>) mapped).executor());
+        assertSame(executor, ((FutureBase<?>) composed).executor());
+
+        promise.complete(1);
+        assertEquals(2, mapped.result());
+        assertFalse(composed.isComplete());
+        inner.complete("x");
+        assertEquals("x2", composed.result());
+    }
+
+    @Test
+    public void testCallbackAddedOffEventLoopIsAddedOnEventLoop() throws Exception {
+        var eventLoop = new DefaultEventLoop();
+        try {
+            PromiseImpl<String> promise = new PromiseImpl<>(eventLoop);
+            var notified = new CompletableFuture<Thread>();
+            promise.onSuccess(value -> notified.complete(Thread.currentThread()));
+            Thread loopThread = eventLoop.submit(() -> {
+                promise.complete("x");
+                return Thread.currentThread();
+            }).get(10, TimeUnit.SECONDS);
+            assertSame(loopThread, notified.get(10, TimeUnit.SECONDS));
+            assertEquals("x", promise.result());
+        }
+        finally {
+            eventLoop.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testPromiseCompletedOffEventLoopCompletesOnEventLoop() throws Exception {
+        var eventLoop = new DefaultEventLoop();
+        try {
+            PromiseImpl<String> promise = new PromiseImpl<>(eventLoop);
+            var notified = new CompletableFuture<Thread>();
+            Thread loopThread = eventLoop.submit(() -> {
+                promise.onSuccess(value -> notified.complete(Thread.currentThread()));
+                return Thread.currentThread();
+            }).get(10, TimeUnit.SECONDS);
+
+            // Completed from the test's thread
+            assertTrue(promise.tryComplete("x"));
+            assertSame(loopThread, notified.get(10, TimeUnit.SECONDS));
+            assertEquals("x", promise.result());
+            assertFalse(promise.tryComplete("y"));
+            assertThrows(IllegalStateException.class, () -> promise.fail(new RuntimeException()));
+            assertEquals("x", eventLoop.submit(promise::result).get(10, TimeUnit.SECONDS));
+        }
+        finally {
+            eventLoop.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testComposedFutureCompletedOffEventLoopCompletesOnEventLoop() throws Exception {
+        var eventLoop = new DefaultEventLoop();
+        var otherLoop = new DefaultEventLoop();
+        try {
+            PromiseImpl<Integer> promise = new PromiseImpl<>(eventLoop);
+            // The inner future isn't confined, so it completes on the thread which completes it
+            Promise<String> inner = new PromiseImpl<>();
+            var notified = new CompletableFuture<Thread>();
+            var composed = promise.compose(i -> inner.future());
+            composed.onSuccess(value -> notified.complete(Thread.currentThread()));
+            Thread loopThread = eventLoop.submit(() -> {
+                promise.complete(1);
+                return Thread.currentThread();
+            }).get(10, TimeUnit.SECONDS);
+            otherLoop.submit(() -> inner.complete("x")).get(10, TimeUnit.SECONDS);
+
+            assertSame(loopThread, notified.get(10, TimeUnit.SECONDS));
+            assertEquals("x", composed.result());
+        }
+        finally {
+            eventLoop.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+            otherLoop.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+        }
+    }
+}
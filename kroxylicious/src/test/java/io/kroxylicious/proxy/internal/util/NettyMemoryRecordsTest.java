@@ -0,0 +1,55 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.util;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.Record;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class NettyMemoryRecordsTest {
+
+    @ParameterizedTest
+    @ValueSource(booleans = { true, false })
+    public void testBuffersGrowAsRecordsAreAppended(boolean direct) {
+        ByteBuf buffer = direct ? PooledByteBufAllocator.DEFAULT.directBuffer(16) : PooledByteBufAllocator.DEFAULT.heapBuffer(16);
+        try {
+            // Records needn't start at the beginning of the buffer
+            buffer.writeInt(42);
+            var builder = NettyMemoryRecords.builder(buffer, CompressionType.NONE, TimestampType.CREATE_TIME, 0);
+            for (int i = 0; i < 100; i++) {
+                builder.append(i, null, ("value-" + i).getBytes(StandardCharsets.UTF_8));
+            }
+            MemoryRecords records = builder.build();
+
+            assertEquals(direct, buffer.isDirect());
+            assertEquals(4 + records.sizeInBytes(), buffer.writerIndex());
+            assertEquals(42, buffer.getInt(0));
+            int i = 0;
+            for (Record record : records.records()) {
+                assertEquals(i, record.timestamp());
+                assertEquals("value-" + i, StandardCharsets.UTF_8.decode(record.value()).toString());
+                i++;
+            }
+            assertEquals(100, i);
+            // The records are in the buffer, where they're written from
+            var fromBuffer = MemoryRecords.readableRecords(buffer.nioBuffer(4, records.sizeInBytes()));
+            assertEquals(100, fromBuffer.firstBatch().countOrNull());
+        }
+        finally {
+            buffer.release();
+        }
+    }
+}